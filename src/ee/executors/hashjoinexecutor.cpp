@@ -0,0 +1,202 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <vector>
+#include "hashjoinexecutor.h"
+#include "boost/unordered_map.hpp"
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "expressions/abstractexpression.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "storage/TempTableLimits.h"
+#include "plannodes/hashjoinnode.h"
+
+using namespace std;
+using namespace voltdb;
+
+namespace
+{
+    typedef boost::unordered_multimap<size_t, char*> TupleHashTable;
+
+    // Rough per-entry cost of the hash table: the entry and its node and bucket links
+    const int BYTES_PER_ENTRY = static_cast<int>(sizeof(std::pair<const size_t, char*>) + 3 * sizeof(void*));
+    // Entries are charged to the limits in batches to keep the build loop tight
+    const int ENTRIES_PER_CHARGE = 1024;
+
+    /**
+     * Releases whatever the build charged to the temp table limits,
+     * including when a limit violation or SQL error unwinds the executor.
+     */
+    class HashTableAllocation {
+    public:
+        HashTableAllocation(TempTableLimits* limits) : m_limits(limits), m_bytes(0) { }
+        ~HashTableAllocation() {
+            if (m_limits != NULL && m_bytes > 0) {
+                m_limits->reduceAllocated(m_bytes);
+            }
+        }
+        void charge(int entries) {
+            if (m_limits != NULL) {
+                const int bytes = entries * BYTES_PER_ENTRY;
+                // counted before the limit can throw, the limits count it that way too
+                m_bytes += bytes;
+                m_limits->increaseAllocated(bytes);
+            }
+        }
+    private:
+        TempTableLimits* m_limits;
+        int m_bytes;
+    };
+
+    /**
+     * Hash the key values of a tuple. Each side's expressions only reference
+     * its own input, so the tuple is passed as both eval() arguments and the
+     * expressions need no outer/inner tuple index assignment.
+     * @return false if any key is NULL, since such a tuple can't match anything
+     */
+    bool hashTuple(const vector<AbstractExpression*>& expressions,
+                   const TableTuple& tuple, size_t& hash)
+    {
+        hash = 0;
+        for (int i = 0; i < expressions.size(); i++) {
+            NValue value = expressions[i]->eval(&tuple, &tuple);
+            if (value.isNull()) {
+                return false;
+            }
+            value.hashCombine(hash);
+        }
+        return true;
+    }
+}
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstract_node,
+                              TempTableLimits* limits)
+{
+    VOLT_TRACE("init HashJoin Executor");
+    m_limits = limits;
+    return NestLoopExecutor::p_init(abstract_node, limits);
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTables().size() == 2);
+
+    TempTable* output_table = dynamic_cast<TempTable*>(node->getOutputTable());
+    assert(output_table);
+
+    Table* outer_table = node->getInputTables()[0];
+    assert(outer_table);
+    Table* inner_table = node->getInputTables()[1];
+    assert(inner_table);
+
+    const vector<AbstractExpression*>& outerHashExpressions = node->getOuterHashExpressions();
+    const vector<AbstractExpression*>& innerHashExpressions = node->getInnerHashExpressions();
+    assert(outerHashExpressions.size() == innerHashExpressions.size());
+    for (int i = 0; i < outerHashExpressions.size(); i++) {
+        outerHashExpressions[i]->substitute(params);
+        innerHashExpressions[i]->substitute(params);
+    }
+
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    if (preJoinPredicate) {
+        preJoinPredicate->substitute(params);
+    }
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    if (joinPredicate) {
+        joinPredicate->substitute(params);
+    }
+    AbstractExpression *wherePredicate = node->getWherePredicate();
+    if (wherePredicate) {
+        wherePredicate->substitute(params);
+    }
+
+    JoinType join_type = node->getJoinType();
+    assert(join_type == JOIN_TYPE_INNER || join_type == JOIN_TYPE_LEFT);
+
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(outer_table->schema());
+    TableTuple inner_tuple(inner_table->schema());
+    TableTuple &joined = output_table->tempTuple();
+    TableTuple null_tuple = m_null_tuple;
+
+    //
+    // Build the hash table over the inner input. Tuples are referenced in place,
+    // the input tables outlive this executor's run.
+    //
+    HashTableAllocation allocation(m_limits);
+    TupleHashTable hashTable(static_cast<size_t>(inner_table->activeTupleCount()));
+    int uncharged = 0;
+    size_t hash;
+    TableIterator inner_iterator = inner_table->iterator();
+    while (inner_iterator.next(inner_tuple)) {
+        if (hashTuple(innerHashExpressions, inner_tuple, hash)) {
+            hashTable.insert(std::make_pair(hash, inner_tuple.address()));
+            if (++uncharged == ENTRIES_PER_CHARGE) {
+                allocation.charge(uncharged);
+                uncharged = 0;
+            }
+        }
+    }
+    allocation.charge(uncharged);
+    VOLT_TRACE("built hash table of %d entries", (int) hashTable.size());
+
+    //
+    // Probe it with each outer tuple
+    //
+    TableIterator outer_iterator = outer_table->iterator();
+    while (outer_iterator.next(outer_tuple)) {
+        // did this loop body find at least one match for this tuple?
+        bool match = false;
+        if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+            hashTuple(outerHashExpressions, outer_tuple, hash)) {
+
+            joined.setNValues(0, outer_tuple, 0, outer_cols);
+
+            std::pair<TupleHashTable::iterator, TupleHashTable::iterator> range =
+                hashTable.equal_range(hash);
+            for (TupleHashTable::iterator it = range.first; it != range.second; ++it) {
+                inner_tuple.move(it->second);
+                // The join predicate includes the hashed equalities, which weeds out collisions
+                if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                    match = true;
+                    if (wherePredicate == NULL || wherePredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                        joined.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        output_table->insertTupleNonVirtual(joined);
+                    }
+                }
+            }
+        }
+        //
+        // Left Outer Join
+        //
+        if (join_type == JOIN_TYPE_LEFT && !match) {
+            if (wherePredicate == NULL || wherePredicate->eval(&outer_tuple, &null_tuple).isTrue()) {
+                joined.setNValues(outer_cols, null_tuple, 0, inner_cols);
+                output_table->insertTupleNonVirtual(joined);
+            }
+        }
+    }
+
+    return (true);
+}
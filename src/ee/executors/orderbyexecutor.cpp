@@ -68,6 +68,14 @@ OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
 
     OrderByPlanNode* node = dynamic_cast<OrderByPlanNode*>(abstract_node);
     assert(node);
+
+    //
+    // Skip if we are inline -- a merging receive evaluates our sort keys
+    //
+    if (node->isInline()) {
+        return true;
+    }
+
     assert(node->getInputTables().size() == 1);
 
     assert(node->getChildren()[0] != NULL);
@@ -90,49 +98,6 @@ OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
     return true;
 }
 
-class TupleComparer
-{
-public:
-    TupleComparer(const vector<AbstractExpression*>& keys,
-                  const vector<SortDirectionType>& dirs)
-        : m_keys(keys), m_dirs(dirs), m_keyCount(keys.size())
-    {
-        assert(keys.size() == dirs.size());
-    }
-
-    bool operator()(TableTuple ta, TableTuple tb)
-    {
-        for (size_t i = 0; i < m_keyCount; ++i)
-        {
-            AbstractExpression* k = m_keys[i];
-            SortDirectionType dir = m_dirs[i];
-            int cmp = k->eval(&ta, NULL).compare(k->eval(&tb, NULL));
-            if (dir == SORT_DIRECTION_TYPE_ASC)
-            {
-                if (cmp < 0) return true;
-                if (cmp > 0) return false;
-            }
-            else if (dir == SORT_DIRECTION_TYPE_DESC)
-            {
-                if (cmp < 0) return false;
-                if (cmp > 0) return true;
-            }
-            else
-            {
-                throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
-                                              "Attempted to sort using"
-                                              " SORT_DIRECTION_TYPE_INVALID");
-            }
-        }
-        return false; // ta == tb on these keys
-    }
-
-private:
-    const vector<AbstractExpression*>& m_keys;
-    const vector<SortDirectionType>& m_dirs;
-    size_t m_keyCount;
-};
-
 bool
 OrderByExecutor::p_execute(const NValueArray &params)
 {
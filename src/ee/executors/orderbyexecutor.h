@@ -48,7 +48,11 @@
 
 #include "common/common.h"
 #include "common/valuevector.h"
+#include "common/tabletuple.h"
+#include "common/SerializableEEException.h"
 #include "executors/abstractexecutor.h"
+#include "expressions/abstractexpression.h"
+#include <vector>
 
 namespace voltdb {
 
@@ -56,6 +60,53 @@ namespace voltdb {
     class ReadWriteSet;
     class LimitPlanNode;
 
+    /**
+     * Strict weak ordering of tuples on a list of sort expressions and
+     * directions, shared by the sort and the merging receive.
+     */
+    class TupleComparer
+    {
+    public:
+        TupleComparer(const std::vector<AbstractExpression*>& keys,
+                      const std::vector<SortDirectionType>& dirs)
+            : m_keys(keys), m_dirs(dirs), m_keyCount(keys.size())
+        {
+            assert(keys.size() == dirs.size());
+        }
+
+        bool operator()(TableTuple ta, TableTuple tb)
+        {
+            for (size_t i = 0; i < m_keyCount; ++i)
+            {
+                AbstractExpression* k = m_keys[i];
+                SortDirectionType dir = m_dirs[i];
+                int cmp = k->eval(&ta, NULL).compare(k->eval(&tb, NULL));
+                if (dir == SORT_DIRECTION_TYPE_ASC)
+                {
+                    if (cmp < 0) return true;
+                    if (cmp > 0) return false;
+                }
+                else if (dir == SORT_DIRECTION_TYPE_DESC)
+                {
+                    if (cmp < 0) return false;
+                    if (cmp > 0) return true;
+                }
+                else
+                {
+                    throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
+                                                  "Attempted to sort using"
+                                                  " SORT_DIRECTION_TYPE_INVALID");
+                }
+            }
+            return false; // ta == tb on these keys
+        }
+
+    private:
+        const std::vector<AbstractExpression*>& m_keys;
+        const std::vector<SortDirectionType>& m_dirs;
+        size_t m_keyCount;
+    };
+
     /**
      *
      */
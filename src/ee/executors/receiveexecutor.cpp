@@ -47,15 +47,51 @@
 #include "common/debuglog.h"
 #include "common/common.h"
 #include "common/tabletuple.h"
+#include "executors/orderbyexecutor.h"
+#include "plannodes/limitnode.h"
+#include "plannodes/orderbynode.h"
 #include "plannodes/receivenode.h"
 #include "execution/VoltDBEngine.h"
 #include "storage/table.h"
 #include "storage/tablefactory.h"
 #include "storage/tableiterator.h"
 #include "storage/tableutil.h"
+#include "storage/temptable.h"
+
+#include <algorithm>
+#include <utility>
+#include <vector>
 
 namespace voltdb {
 
+namespace {
+
+// A merge cursor is the [next, end) range of one dependency's tuples.
+typedef std::pair<size_t, size_t> MergeCursor;
+
+// Heap ordering that keeps the cursor whose next tuple sorts first at the
+// front of a std heap (which otherwise surfaces the largest element).
+class MergeCursorComparer
+{
+public:
+    MergeCursorComparer(const TupleComparer& comparer,
+                        const std::vector<TableTuple>& tuples)
+        : m_comparer(comparer), m_tuples(tuples)
+    {
+    }
+
+    bool operator()(const MergeCursor& a, const MergeCursor& b)
+    {
+        return m_comparer(m_tuples[b.first], m_tuples[a.first]);
+    }
+
+private:
+    TupleComparer m_comparer;
+    const std::vector<TableTuple>& m_tuples;
+};
+
+}
+
 bool ReceiveExecutor::p_init(AbstractPlanNode* abstract_node,
                              TempTableLimits* limits)
 {
@@ -65,6 +101,20 @@ bool ReceiveExecutor::p_init(AbstractPlanNode* abstract_node,
 
     // Create output table based on output schema from the plan
     setTempOutputTable(limits);
+
+    // pickup an inlined order by (and limit) for merging sorted dependencies
+    m_orderByNode = dynamic_cast<OrderByPlanNode*>(abstract_node->
+            getInlinePlanNode(PLAN_NODE_TYPE_ORDERBY));
+    m_limitNode = dynamic_cast<LimitPlanNode*>(abstract_node->
+            getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    if (m_orderByNode != NULL) {
+        Table* output_table = abstract_node->getOutputTable();
+        m_mergeInputTable =
+            TableFactory::getCopiedTempTable(abstract_node->databaseId(),
+                                             output_table->name(),
+                                             output_table,
+                                             limits);
+    }
     return true;
 }
 
@@ -73,6 +123,10 @@ bool ReceiveExecutor::p_execute(const NValueArray &params) {
     ReceivePlanNode* node = dynamic_cast<ReceivePlanNode*>(m_abstractNode);
     Table* output_table = dynamic_cast<Table*>(node->getOutputTable());
 
+    if (m_orderByNode != NULL) {
+        return mergeSortedDependencies(params, output_table);
+    }
+
     // iterate dependencies stored in the frontend and union them
     // into the output_table. The engine does this work for peanuts.
 
@@ -86,7 +140,85 @@ bool ReceiveExecutor::p_execute(const NValueArray &params) {
     return true;
 }
 
+/*
+ * Every partition already produced its dependency in the order requested by
+ * the inlined ORDER BY, so a k-way merge of the dependencies replaces a full
+ * sort and stops as soon as the inlined LIMIT is satisfied.
+ */
+bool ReceiveExecutor::mergeSortedDependencies(const NValueArray &params,
+                                              Table* output_table) {
+    int limit = -1;
+    int offset = -1;
+    if (m_limitNode != NULL) {
+        m_limitNode->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    std::vector<AbstractExpression*>& keys = m_orderByNode->getSortExpressions();
+    for (size_t i = 0; i < keys.size(); i++) {
+        keys[i]->substitute(params);
+    }
+
+    // Stage the dependencies back to back, remembering where each one ends.
+    std::vector<int64_t> dependencyEnds;
+    while (engine->loadNextDependency(m_mergeInputTable) > 0) {
+        dependencyEnds.push_back(m_mergeInputTable->tempTableTupleCount());
+    }
+
+    std::vector<TableTuple> tuples;
+    tuples.reserve(static_cast<size_t>(m_mergeInputTable->tempTableTupleCount()));
+    TableIterator iterator = m_mergeInputTable->iterator();
+    TableTuple tuple(m_mergeInputTable->schema());
+    while (iterator.next(tuple)) {
+        tuples.push_back(tuple);
+    }
+
+    std::vector<MergeCursor> cursors;
+    size_t begin = 0;
+    for (size_t i = 0; i < dependencyEnds.size(); i++) {
+        size_t end = static_cast<size_t>(dependencyEnds[i]);
+        if (begin < end) {
+            cursors.push_back(MergeCursor(begin, end));
+        }
+        begin = end;
+    }
+
+    MergeCursorComparer comparer(TupleComparer(keys, m_orderByNode->getSortDirections()),
+                                 tuples);
+    std::make_heap(cursors.begin(), cursors.end(), comparer);
+
+    int tuple_ctr = 0;
+    int tuple_skipped = 0;
+    while ( ! cursors.empty() && (limit < 0 || tuple_ctr < limit)) {
+        std::pop_heap(cursors.begin(), cursors.end(), comparer);
+        MergeCursor& cursor = cursors.back();
+        TableTuple next = tuples[cursor.first];
+        if (++cursor.first < cursor.second) {
+            std::push_heap(cursors.begin(), cursors.end(), comparer);
+        }
+        else {
+            cursors.pop_back();
+        }
+
+        if (tuple_skipped < offset) {
+            tuple_skipped++;
+            continue;
+        }
+        if (!output_table->insertTuple(next)) {
+            VOLT_ERROR("Failed to insert merged tuple into output table '%s'",
+                       output_table->name().c_str());
+            m_mergeInputTable->deleteAllTuplesNonVirtual(false);
+            return false;
+        }
+        tuple_ctr++;
+    }
+
+    // The tuples' strings belong to the engine's string pool.
+    m_mergeInputTable->deleteAllTuplesNonVirtual(false);
+    return true;
+}
+
 ReceiveExecutor::~ReceiveExecutor() {
+    delete m_mergeInputTable;
 }
 
 }
@@ -55,6 +55,9 @@ namespace voltdb {
 
 class UndoLog;
 class ReadWriteSet;
+class LimitPlanNode;
+class OrderByPlanNode;
+class TempTable;
 
 /**
  *
@@ -62,7 +65,8 @@ class ReadWriteSet;
 class ReceiveExecutor : public AbstractExecutor {
     public:
         ReceiveExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
-            : AbstractExecutor(engine, abstract_node)
+            : AbstractExecutor(engine, abstract_node),
+              m_orderByNode(NULL), m_limitNode(NULL), m_mergeInputTable(NULL)
     {
         this->engine = engine;
     }
@@ -73,7 +77,14 @@ class ReceiveExecutor : public AbstractExecutor {
                     TempTableLimits* limits);
         bool p_execute(const NValueArray &params);
     private:
+        bool mergeSortedDependencies(const NValueArray &params, Table* output_table);
+
         VoltDBEngine *engine;
+        // Set when the planner inlined the coordinator's ORDER BY (and
+        // optionally a LIMIT): each dependency arrives sorted and is merged.
+        OrderByPlanNode* m_orderByNode;
+        LimitPlanNode* m_limitNode;
+        TempTable* m_mergeInputTable;
 };
 
 }
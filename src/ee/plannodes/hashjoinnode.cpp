@@ -0,0 +1,78 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <sstream>
+#include "hashjoinnode.h"
+
+#include "expressions/abstractexpression.h"
+
+using namespace std;
+using namespace voltdb;
+
+HashJoinPlanNode::HashJoinPlanNode(CatalogId id)
+  : NestLoopPlanNode(id)
+{
+}
+
+HashJoinPlanNode::HashJoinPlanNode()
+  : NestLoopPlanNode()
+{
+}
+
+HashJoinPlanNode::~HashJoinPlanNode()
+{
+    for (int i = 0; i < m_outerHashExpressions.size(); i++) {
+        delete m_outerHashExpressions[i];
+    }
+    for (int i = 0; i < m_innerHashExpressions.size(); i++) {
+        delete m_innerHashExpressions[i];
+    }
+}
+
+PlanNodeType
+HashJoinPlanNode::getPlanNodeType() const
+{
+    return PLAN_NODE_TYPE_HASHJOIN;
+}
+
+string HashJoinPlanNode::debugInfo(const string& spacer) const
+{
+    ostringstream buffer;
+    buffer << NestLoopPlanNode::debugInfo(spacer);
+    for (int i = 0; i < m_outerHashExpressions.size(); i++) {
+        buffer << spacer << "Hash Key " << i << "\n";
+        buffer << m_outerHashExpressions[i]->debug(spacer);
+        buffer << m_innerHashExpressions[i]->debug(spacer);
+    }
+    return (buffer.str());
+}
+
+void
+HashJoinPlanNode::loadFromJSONObject(PlannerDomValue obj)
+{
+    NestLoopPlanNode::loadFromJSONObject(obj);
+
+    PlannerDomValue outerArray = obj.valueForKey("OUTER_HASH_EXPRESSIONS");
+    for (int i = 0; i < outerArray.arrayLen(); i++) {
+        m_outerHashExpressions.push_back(AbstractExpression::buildExpressionTree(outerArray.valueAtIndex(i)));
+    }
+    PlannerDomValue innerArray = obj.valueForKey("INNER_HASH_EXPRESSIONS");
+    for (int i = 0; i < innerArray.arrayLen(); i++) {
+        m_innerHashExpressions.push_back(AbstractExpression::buildExpressionTree(innerArray.valueAtIndex(i)));
+    }
+    assert(m_outerHashExpressions.size() == m_innerHashExpressions.size());
+}
@@ -0,0 +1,62 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef HASHJOINNODE_H
+#define HASHJOINNODE_H
+
+#include <vector>
+#include "nestloopnode.h"
+
+namespace voltdb
+{
+
+class AbstractExpression;
+
+/**
+ * An equi-join that builds a hash table over its inner input and probes it
+ * with each outer tuple. The outer and inner hash expressions are evaluated
+ * against their own input's tuples and pair up positionally. The join
+ * predicate still holds every join condition, so collisions are filtered
+ * exactly as a nested loop join would filter them.
+ */
+class HashJoinPlanNode : public NestLoopPlanNode
+{
+public:
+    HashJoinPlanNode(CatalogId id);
+    HashJoinPlanNode();
+    ~HashJoinPlanNode();
+
+    virtual PlanNodeType getPlanNodeType() const;
+
+    const std::vector<AbstractExpression*>& getOuterHashExpressions() const
+    { return m_outerHashExpressions; }
+
+    const std::vector<AbstractExpression*>& getInnerHashExpressions() const
+    { return m_innerHashExpressions; }
+
+    virtual std::string debugInfo(const std::string& spacer) const;
+
+protected:
+    virtual void loadFromJSONObject(PlannerDomValue obj);
+
+    std::vector<AbstractExpression*> m_outerHashExpressions;
+    std::vector<AbstractExpression*> m_innerHashExpressions;
+};
+
+}
+
+#endif
@@ -23,6 +23,9 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,7 +35,7 @@ import org.voltcore.network.Connection;
 import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.utils.CoreUtils;
-import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.RateLimitedLogger;
 import org.voltdb.VoltDB;
@@ -41,8 +44,6 @@ public class ForeignHost {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
     private static final RateLimitedLogger rateLimitedLogger = new RateLimitedLogger(10 * 1000, hostLog, Level.WARN);
 
-    private Connection m_connection;
-    final FHInputHandler m_handler;
     private final HostMessenger m_hostMessenger;
     private final Integer m_hostId;
     final InetSocketAddress m_listeningAddress;
@@ -50,9 +51,12 @@ public class ForeignHost {
     private boolean m_closing;
     boolean m_isUp;
 
-    // hold onto the socket so we can kill it
-    private final Socket m_socket;
-    private final SocketChannel m_sc;
+    /*
+     * One or more sockets to the foreign host, each serviced by its own network thread.
+     * Messages are striped across them by destination site so that the messages for any
+     * one site stay in order.
+     */
+    private final FHConnection m_connections[];
 
     // Set the default here for TestMessaging, which currently has no VoltDB instance
     private long m_deadHostTimeout;
@@ -60,6 +64,123 @@ public class ForeignHost {
 
     private AtomicInteger m_deadReportsCount = new AtomicInteger(0);
 
+    private static class PendingSend {
+        final long m_destinations[];
+        final VoltMessage m_message;
+
+        PendingSend(long destinations[], VoltMessage message) {
+            m_destinations = destinations;
+            m_message = message;
+        }
+
+        int getSerializedSize() {
+            return 4            /* length prefix */
+                 + 8            /* source hsid */
+                 + 4            /* destinationCount */
+                 + 8 * m_destinations.length  /* destination list */
+                 + m_message.getSerializedSize();
+        }
+
+        // messages expect to fill buf exactly
+        void flattenToBuffer(ByteBuffer buf) throws IOException {
+            buf.putInt(buf.capacity() - 4);
+            buf.putLong(m_message.m_sourceHSId);
+            buf.putInt(m_destinations.length);
+            for (int ii = 0; ii < m_destinations.length; ii++) {
+                buf.putLong(m_destinations[ii]);
+            }
+            m_message.flattenToBuffer(buf);
+        }
+    }
+
+    /**
+     * A single socket to the foreign host. Sends go onto a pending queue and the
+     * connection enqueues itself on its write stream once per network thread wakeup.
+     * Serializing it writes every pending message back to back, flattening the ones
+     * that fit straight into pooled network buffers.
+     */
+    private class FHConnection implements DirectDeferredSerialization {
+        // hold onto the socket so we can kill it
+        final Socket m_socket;
+        final SocketChannel m_sc;
+        final FHInputHandler m_handler = new FHInputHandler();
+        Connection m_connection;
+
+        private final ConcurrentLinkedQueue<PendingSend> m_pendingSends = new ConcurrentLinkedQueue<PendingSend>();
+        private final AtomicBoolean m_flushQueued = new AtomicBoolean(false);
+        private volatile boolean m_flushCancelled = false;
+        private final ArrayList<PendingSend> m_drained = new ArrayList<PendingSend>();
+
+        FHConnection(SocketChannel sc) {
+            m_sc = sc;
+            m_socket = sc.socket();
+        }
+
+        void send(long destinations[], VoltMessage message) {
+            if (m_flushCancelled) {
+                return;
+            }
+            m_pendingSends.offer(new PendingSend(destinations, message));
+            if (m_flushQueued.compareAndSet(false, true)) {
+                m_connection.writeStream().enqueue(this);
+            }
+        }
+
+        // Reset before draining so a send that misses this drain queues another flush
+        private int drain() {
+            m_flushQueued.set(false);
+            m_drained.clear();
+            PendingSend send;
+            while ((send = m_pendingSends.poll()) != null) {
+                m_drained.add(send);
+            }
+            return m_drained.size();
+        }
+
+        @Override
+        public int serialize(PooledBuffers buffers) throws IOException {
+            final int count = drain();
+            for (PendingSend send : m_drained) {
+                final int len = send.getSerializedSize();
+                if (len <= buffers.maxClaim()) {
+                    send.flattenToBuffer(buffers.claim(len));
+                } else {
+                    ByteBuffer buf = ByteBuffer.allocate(len);
+                    send.flattenToBuffer(buf);
+                    buf.flip();
+                    buffers.put(buf);
+                }
+            }
+            m_drained.clear();
+            return count;
+        }
+
+        @Override
+        public ByteBuffer[] serialize() throws IOException {
+            drain();
+            int len = 0;
+            for (PendingSend send : m_drained) {
+                len += send.getSerializedSize();
+            }
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            for (PendingSend send : m_drained) {
+                buf.limit(buf.position() + send.getSerializedSize());
+                send.flattenToBuffer(buf.slice());
+                buf.position(buf.limit());
+            }
+            buf.clear();
+            m_drained.clear();
+            return len == 0 ? new ByteBuffer[0] : new ByteBuffer[] { buf };
+        }
+
+        @Override
+        public void cancel() {
+            // the connection is gone, stop queueing
+            m_flushCancelled = true;
+            m_pendingSends.clear();
+        }
+    }
+
     /** ForeignHost's implementation of InputHandler */
     public class FHInputHandler extends VoltProtocolHandler {
 
@@ -108,27 +229,35 @@ public class ForeignHost {
     }
 
     /** Create a ForeignHost and install in VoltNetwork */
-    ForeignHost(HostMessenger host, int hostId, SocketChannel socket, int deadHostTimeout,
+    ForeignHost(HostMessenger host, int hostId, SocketChannel sockets[], int deadHostTimeout,
             InetSocketAddress listeningAddress)
     throws IOException
     {
+        if (sockets.length == 0) {
+            throw new IllegalArgumentException("A foreign host needs at least one socket");
+        }
         m_hostMessenger = host;
-        m_handler = new FHInputHandler();
         m_hostId = hostId;
         m_closing = false;
         m_isUp = true;
-        m_sc = socket;
-        m_socket = socket.socket();
+        m_connections = new FHConnection[sockets.length];
+        for (int ii = 0; ii < sockets.length; ii++) {
+            m_connections[ii] = new FHConnection(sockets[ii]);
+        }
         m_deadHostTimeout = deadHostTimeout;
         m_listeningAddress = listeningAddress;
     }
 
     public void register(HostMessenger host) throws IOException {
-        m_connection = host.getNetwork().registerChannel( m_sc, m_handler, 0);
+        for (FHConnection c : m_connections) {
+            c.m_connection = host.getNetwork().registerChannel( c.m_sc, c.m_handler, 0);
+        }
     }
 
     public void enableRead() {
-        m_connection.enableReadSelection();
+        for (FHConnection c : m_connections) {
+            c.m_connection.enableReadSelection();
+        }
     }
 
     synchronized void close()
@@ -136,8 +265,10 @@ public class ForeignHost {
         m_isUp = false;
         if (m_closing) return;
         m_closing = true;
-        if (m_connection != null)
-            m_connection.unregister();
+        for (FHConnection c : m_connections) {
+            if (c.m_connection != null)
+                c.m_connection.unregister();
+        }
     }
 
     /**
@@ -146,10 +277,14 @@ public class ForeignHost {
     void killSocket() {
         try {
             m_closing = true;
-            m_socket.setKeepAlive(false);
-            m_socket.setSoLinger(false, 0);
+            for (FHConnection c : m_connections) {
+                c.m_socket.setKeepAlive(false);
+                c.m_socket.setSoLinger(false, 0);
+            }
             Thread.sleep(25);
-            m_socket.close();
+            for (FHConnection c : m_connections) {
+                c.m_socket.close();
+            }
             Thread.sleep(25);
             System.gc();
             Thread.sleep(25);
@@ -186,34 +321,11 @@ public class ForeignHost {
             return;
         }
 
-        m_connection.writeStream().enqueue(
-            new DeferredSerialization() {
-                @Override
-                public final ByteBuffer[] serialize() throws IOException{
-                    int len = 4            /* length prefix */
-                            + 8            /* source hsid */
-                            + 4            /* destinationCount */
-                            + 8 * destinations.length  /* destination list */
-                            + message.getSerializedSize();
-                    ByteBuffer buf = ByteBuffer.allocate(len);
-                    buf.putInt(len - 4);
-                    buf.putLong(message.m_sourceHSId);
-                    buf.putInt(destinations.length);
-                    for (int ii = 0; ii < destinations.length; ii++) {
-                        buf.putLong(destinations[ii]);
-                    }
-                    message.flattenToBuffer(buf);
-                    buf.flip();
-                    return new ByteBuffer[] { buf };
-                }
-
-                @Override
-                public final void cancel() {
-                    /*
-                     * Can this be removed?
-                     */
-                }
-            });
+        if (m_connections.length == 1) {
+            m_connections[0].send(destinations, message);
+        } else {
+            sendStriped(destinations, message);
+        }
 
         long current_time = EstTime.currentTimeMillis();
         long current_delta = current_time - m_lastMessageMillis.get();
@@ -246,8 +358,55 @@ public class ForeignHost {
     }
 
 
+    /*
+     * Split the destinations by the connection their site is striped to. The common
+     * cases of a single destination, or all of them on one connection, don't copy.
+     */
+    private void sendStriped(long destinations[], VoltMessage message) {
+        final int first = connectionIndex(destinations[0]);
+        int ii = 1;
+        while (ii < destinations.length && connectionIndex(destinations[ii]) == first) {
+            ii++;
+        }
+        if (ii == destinations.length) {
+            m_connections[first].send(destinations, message);
+            return;
+        }
+
+        final int indexes[] = new int[destinations.length];
+        final int counts[] = new int[m_connections.length];
+        for (ii = 0; ii < destinations.length; ii++) {
+            indexes[ii] = connectionIndex(destinations[ii]);
+            counts[indexes[ii]]++;
+        }
+        for (int c = 0; c < m_connections.length; c++) {
+            if (counts[c] == 0) {
+                continue;
+            }
+            final long stripe[] = new long[counts[c]];
+            int next = 0;
+            for (ii = 0; ii < destinations.length; ii++) {
+                if (indexes[ii] == c) {
+                    stripe[next++] = destinations[ii];
+                }
+            }
+            m_connections[c].send(stripe, message);
+        }
+    }
+
+    /**
+     * @return the connection that carries all messages for the destination site
+     */
+    int connectionIndex(long destinationHSId) {
+        return (CoreUtils.getSiteIdFromHSId(destinationHSId) & Integer.MAX_VALUE) % m_connections.length;
+    }
+
+    int getConnectionCount() {
+        return m_connections.length;
+    }
+
     String hostname() {
-        return m_connection.getHostnameOrIP();
+        return m_connections[0].m_connection.getHostnameOrIP();
     }
 
     /** Deliver a deserialized message from the network to a local mailbox */
@@ -257,7 +416,7 @@ public class ForeignHost {
                     m_hostMessenger.getHostId() + " from " + CoreUtils.hsIdToString(message.m_sourceHSId) +
                     " which is a known failed host. The message will be dropped\n",
                     message.getClass().getSimpleName(),
-                    CoreUtils.hsIdToString(destinationHSId), m_socket.getRemoteSocketAddress().toString()));
+                    CoreUtils.hsIdToString(destinationHSId), m_connections[0].m_socket.getRemoteSocketAddress().toString()));
             return;
         }
 
@@ -270,7 +429,7 @@ public class ForeignHost {
             hostLog.info(String.format("Message (%s) sent to unknown site id: %s @ (%s) at " +
                     m_hostMessenger.getHostId() + " from " + CoreUtils.hsIdToString(message.m_sourceHSId) + "\n",
                     message.getClass().getSimpleName(),
-                    CoreUtils.hsIdToString(destinationHSId), m_socket.getRemoteSocketAddress().toString()));
+                    CoreUtils.hsIdToString(destinationHSId), m_connections[0].m_socket.getRemoteSocketAddress().toString()));
             /*
              * If it is for the wrong host, that definitely isn't cool
              */
@@ -347,7 +506,7 @@ public class ForeignHost {
         message.putInt(errBytes.length);
         message.put(errBytes);
         message.flip();
-        m_connection.writeStream().enqueue(message);
+        m_connections[0].m_connection.writeStream().enqueue(message);
     }
 
     public void updateDeadHostTimeout(int timeout) {
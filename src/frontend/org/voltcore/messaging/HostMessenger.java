@@ -85,6 +85,11 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         public long backwardsTimeForgivenessWindow = 1000 * 60 * 60 * 24 * 7;
         public VoltMessageFactory factory = new VoltMessageFactory();
         public int networkThreads =  Math.max(2, CoreUtils.availableProcessors() / 4);
+        /*
+         * Sockets opened to each host when this node joins the cluster. Messages are
+         * striped across them by destination site.
+         */
+        public int connectionsPerHost = 1;
         public Queue<String> coreBindIds;;
 
         public Config(String coordIp, int coordPort) {
@@ -136,6 +141,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 js.key("deadhosttimeout").value(deadHostTimeout);
                 js.key("backwardstimeforgivenesswindow").value(backwardsTimeForgivenessWindow);
                 js.key("networkThreads").value(networkThreads);
+                js.key("connectionsPerHost").value(connectionsPerHost);
                 js.endObject();
 
                 return js.toString();
@@ -214,6 +220,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 m_config.coordinatorIp,
                 m_config.internalInterface,
                 m_config.internalPort,
+                m_config.connectionsPerHost,
                 this);
     }
 
@@ -384,12 +391,12 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      * and put it in the map of foreign hosts
      */
     @Override
-    public void notifyOfJoin(int hostId, SocketChannel socket, InetSocketAddress listeningAddress) {
+    public void notifyOfJoin(int hostId, SocketChannel sockets[], InetSocketAddress listeningAddress) {
         System.out.println(getHostId() + " notified of " + hostId);
-        prepSocketChannel(socket);
+        prepSocketChannels(sockets);
         ForeignHost fhost = null;
         try {
-            fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress);
+            fhost = new ForeignHost(this, hostId, sockets, m_config.deadHostTimeout, listeningAddress);
             fhost.register(this);
             putForeignHost(hostId, fhost);
             fhost.enableRead();
@@ -410,6 +417,12 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         }
     }
 
+    private void prepSocketChannels(SocketChannel sockets[]) {
+        for (SocketChannel sc : sockets) {
+            prepSocketChannel(sc);
+        }
+    }
+
     /*
      * Convenience method for doing the verbose COW insert into the map
      */
@@ -432,12 +445,13 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      * is done via ZK
      */
     @Override
-    public void requestJoin(SocketChannel socket, InetSocketAddress listeningAddress) throws Exception {
+    public void requestJoin(SocketChannel sockets[], InetSocketAddress listeningAddress) throws Exception {
+        final SocketChannel socket = sockets[0];
         /*
          * Generate the host id via creating an ephemeral sequential node
          */
         Integer hostId = selectNewHostId(socket.socket().getInetAddress().getHostAddress());
-        prepSocketChannel(socket);
+        prepSocketChannels(sockets);
         ForeignHost fhost = null;
         try {
             try {
@@ -467,7 +481,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 /*
                  * Now add the host to the mailbox system
                  */
-                fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress);
+                fhost = new ForeignHost(this, hostId, sockets, m_config.deadHostTimeout, listeningAddress);
                 fhost.register(this);
                 putForeignHost(hostId, fhost);
                 fhost.enableRead();
@@ -561,7 +575,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     public void notifyOfHosts(
             int yourHostId,
             int[] hosts,
-            SocketChannel[] sockets,
+            SocketChannel sockets[][],
             InetSocketAddress listeningAddresses[]) throws Exception {
         m_localHostId = yourHostId;
         long agreementHSId = getHSIdForLocalSite(AGREEMENT_SITE_ID);
@@ -577,7 +591,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         for (int ii = 0; ii < hosts.length; ii++) {
             System.out.println(yourHostId + " Notified of host " + hosts[ii]);
             agreementSites.add(CoreUtils.getHSIdFromHostAndSite(hosts[ii], AGREEMENT_SITE_ID));
-            prepSocketChannel(sockets[ii]);
+            prepSocketChannels(sockets[ii]);
             ForeignHost fhost = null;
             try {
                 fhost = new ForeignHost(this, hosts[ii], sockets[ii], m_config.deadHostTimeout, listeningAddresses[ii]);
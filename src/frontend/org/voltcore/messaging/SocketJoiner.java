@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -67,12 +68,12 @@ public class SocketJoiner {
         /*
          * Notify that a specific host has joined with the specified host id.
          */
-        public void notifyOfJoin(int hostId, SocketChannel socket, InetSocketAddress listeningAddress);
+        public void notifyOfJoin(int hostId, SocketChannel sockets[], InetSocketAddress listeningAddress);
 
         /*
-         * A node wants to join the socket mesh
+         * A node wants to join the socket mesh. The join handshake is done on the first socket.
          */
-        public void requestJoin(SocketChannel socket, InetSocketAddress listeningAddress ) throws Exception;
+        public void requestJoin(SocketChannel sockets[], InetSocketAddress listeningAddress ) throws Exception;
 
         /*
          * A connection has been made to all of the specified hosts. Invoked by
@@ -81,7 +82,7 @@ public class SocketJoiner {
         public void notifyOfHosts(
                 int yourLocalHostId,
                 int hosts[],
-                SocketChannel sockets[],
+                SocketChannel sockets[][],
                 InetSocketAddress listeningAddresses[]) throws Exception;
     }
 
@@ -98,6 +99,19 @@ public class SocketJoiner {
     private Selector m_selector;
     private final JoinHandler m_joinHandler;
 
+    /*
+     * Sockets this node opens to each host in the cluster when it joins. The pair keeps
+     * using this many, whatever the other host is configured with.
+     */
+    private final int m_connectionsPerHost;
+
+    /*
+     * Additional connections from a joining host, keyed by the token that the host's
+     * REQUEST_HOSTID or PUBLISH_HOSTID message will claim them with
+     */
+    private final Map<String, List<SocketChannel>> m_pendingConnections =
+            new HashMap<String, List<SocketChannel>>();
+
     // from configuration data
     int m_internalPort = 3021;
     String m_internalInterface = "";
@@ -207,13 +221,23 @@ public class SocketJoiner {
             String internalInterface,
             int internalPort,
             JoinHandler jh) {
-        if (internalInterface == null || coordIp == null || jh == null) {
+        this(coordIp, internalInterface, internalPort, 1, jh);
+    }
+
+    public SocketJoiner(
+            InetSocketAddress coordIp,
+            String internalInterface,
+            int internalPort,
+            int connectionsPerHost,
+            JoinHandler jh) {
+        if (internalInterface == null || coordIp == null || jh == null || connectionsPerHost < 1) {
             throw new IllegalArgumentException();
         }
         m_coordIp = coordIp;
         m_joinHandler = jh;
         m_internalInterface = internalInterface;
         m_internalPort = internalPort;
+        m_connectionsPerHost = connectionsPerHost;
     }
 
     /*
@@ -312,6 +336,22 @@ public class SocketJoiner {
              */
             String type = jsObj.getString("type");
 
+            /*
+             * An additional connection from a host that is joining, hold onto it
+             * until the host's first connection claims it
+             */
+            if (type.equals("ADD_CONNECTION")) {
+                final String token = jsObj.getString("token");
+                List<SocketChannel> pending = m_pendingConnections.get(token);
+                if (pending == null) {
+                    pending = new ArrayList<SocketChannel>();
+                    m_pendingConnections.put(token, pending);
+                }
+                pending.add(sc);
+                continue;
+            }
+            SocketChannel sockets[] = claimConnections(sc, jsObj);
+
             /*
              * The new connection may specify the address it is listening on,
              * or it can be derived from the connection itself
@@ -331,15 +371,45 @@ public class SocketJoiner {
 
             hostLog.info("Received request type " + type);
             if (type.equals("REQUEST_HOSTID")) {
-                m_joinHandler.requestJoin( sc, listeningAddress);
+                m_joinHandler.requestJoin( sockets, listeningAddress);
             } else if (type.equals("PUBLISH_HOSTID")){
-                m_joinHandler.notifyOfJoin(jsObj.getInt("hostId"), sc, listeningAddress);
+                m_joinHandler.notifyOfJoin(jsObj.getInt("hostId"), sockets, listeningAddress);
             } else {
                 throw new RuntimeException("Unexpected message type " + type + " from " + remoteAddress);
             }
         }
     }
 
+    /*
+     * Gather the first connection from a host with the additional connections it opened
+     * beforehand. The host opens and identifies all of them before the first connection, and
+     * they are accepted one at a time, so they are already waiting here.
+     */
+    private SocketChannel[] claimConnections(SocketChannel sc, JSONObject jsObj) throws Exception {
+        if (!jsObj.has("token")) {
+            return new SocketChannel[] { sc };
+        }
+        final int connections = jsObj.getInt("connections");
+        List<SocketChannel> pending = m_pendingConnections.remove(jsObj.getString("token"));
+        if (pending == null) {
+            pending = Collections.emptyList();
+        }
+        if (pending.size() != connections - 1) {
+            for (SocketChannel extra : pending) {
+                extra.close();
+            }
+            sc.close();
+            throw new IOException("Expected " + (connections - 1) + " additional connections from " +
+                    sc.socket().getRemoteSocketAddress() + " but found " + pending.size());
+        }
+        SocketChannel sockets[] = new SocketChannel[connections];
+        sockets[0] = sc;
+        for (int ii = 1; ii < connections; ii++) {
+            sockets[ii] = pending.get(ii - 1);
+        }
+        return sockets;
+    }
+
     /*
      * After startup everything is a primary and can accept
      * new nodes into the cluster. This loop accepts the new socket
@@ -397,6 +467,15 @@ public class SocketJoiner {
             LOG.debug("Non-Primary Starting");
             LOG.debug("Non-Primary Connecting to Primary");
 
+            /*
+             * Additional connections to each host are opened and identified by a token before
+             * the first one, which claims them. The leader is busy with the first connection's
+             * join request until this node has connected to everyone, so it can't accept them after.
+             */
+            final String token = UUID.randomUUID().toString();
+            SocketChannel leaderSockets[] = new SocketChannel[m_connectionsPerHost];
+            openAdditionalConnections(m_coordIp, token, leaderSockets);
+
             while (socket == null) {
                 try {
                     socket = SocketChannel.open(m_coordIp);
@@ -426,6 +505,7 @@ public class SocketJoiner {
 
             JSONObject jsObj = new JSONObject();
             jsObj.put("type", "REQUEST_HOSTID");
+            putConnections(jsObj, token);
 
             /*
              * Advertise the port we are going to listen on based on
@@ -482,7 +562,7 @@ public class SocketJoiner {
              */
             JSONArray otherHosts = jsonObj.getJSONArray("hosts");
             int hostIds[] = new int[otherHosts.length()];
-            SocketChannel hostSockets[] = new SocketChannel[hostIds.length];
+            SocketChannel hostSockets[][] = new SocketChannel[hostIds.length][];
             InetSocketAddress listeningAddresses[] = new InetSocketAddress[hostIds.length];
 
             for (int ii = 0; ii < otherHosts.length(); ii++) {
@@ -497,10 +577,13 @@ public class SocketJoiner {
                     //Leader already has a socket
                     hostIds[ii] = hostId;
                     listeningAddresses[ii] = hostAddr;
-                    hostSockets[ii] = socket;
+                    leaderSockets[0] = socket;
+                    hostSockets[ii] = leaderSockets;
                     continue;
                 }
 
+                SocketChannel sockets[] = new SocketChannel[m_connectionsPerHost];
+                openAdditionalConnections(hostAddr, token, sockets);
                 SocketChannel hostSocket = null;
                 while (hostSocket == null) {
                     try {
@@ -530,6 +613,7 @@ public class SocketJoiner {
 
                 jsObj = new JSONObject();
                 jsObj.put("type", "PUBLISH_HOSTID");
+                putConnections(jsObj, token);
                 jsObj.put("hostId", m_localHostId);
                 jsObj.put("port", m_internalPort);
                 jsObj.put(
@@ -544,7 +628,8 @@ public class SocketJoiner {
                     hostSocket.write(pushHostId);
                 }
                 hostIds[ii] = hostId;
-                hostSockets[ii] = hostSocket;
+                sockets[0] = hostSocket;
+                hostSockets[ii] = sockets;
                 listeningAddresses[ii] = hostAddr;
             }
 
@@ -574,7 +659,7 @@ public class SocketJoiner {
              */
             ByteBuffer joinCompleteBuffer = ByteBuffer.allocate(1);
             while (joinCompleteBuffer.hasRemaining()) {
-                hostSockets[0].write(joinCompleteBuffer);
+                hostSockets[0][0].write(joinCompleteBuffer);
             }
 
             /*
@@ -590,6 +675,59 @@ public class SocketJoiner {
         }
     }
 
+    /*
+     * Open, identify and store connections 1..n - 1 of the array
+     */
+    private void openAdditionalConnections(
+            InetSocketAddress hostAddr, String token, SocketChannel sockets[]) throws Exception {
+        for (int ii = 1; ii < sockets.length; ii++) {
+            SocketChannel socket = null;
+            while (socket == null) {
+                try {
+                    socket = SocketChannel.open(hostAddr);
+                }
+                catch (java.net.ConnectException e) {
+                    LOG.warn("Connecting to host failed: " + e.getMessage() + " retrying..");
+                    try {
+                        Thread.sleep(250); //  milliseconds
+                    }
+                    catch (InterruptedException ex) {
+                        // don't really care.
+                    }
+                }
+            }
+            socket.socket().setTcpNoDelay(true);
+            socket.socket().setPerformancePreferences(0, 2, 1);
+
+            // every accepted connection starts with the time for the clock skew check
+            ByteBuffer currentTime = ByteBuffer.allocate(8);
+            while (currentTime.hasRemaining()) {
+                if (socket.read(currentTime) == -1) {
+                    throw new EOFException();
+                }
+            }
+
+            JSONObject jsObj = new JSONObject();
+            jsObj.put("type", "ADD_CONNECTION");
+            jsObj.put("token", token);
+            byte jsBytes[] = jsObj.toString(4).getBytes("UTF-8");
+            ByteBuffer addConnection = ByteBuffer.allocate(4 + jsBytes.length);
+            addConnection.putInt(jsBytes.length);
+            addConnection.put(jsBytes).flip();
+            while (addConnection.hasRemaining()) {
+                socket.write(addConnection);
+            }
+            sockets[ii] = socket;
+        }
+    }
+
+    private void putConnections(JSONObject jsObj, String token) throws Exception {
+        if (m_connectionsPerHost > 1) {
+            jsObj.put("token", token);
+            jsObj.put("connections", m_connectionsPerHost);
+        }
+    }
+
     public void shutdown() throws InterruptedException {
         if (m_selector != null) {
             try {
@@ -25,6 +25,7 @@ import java.util.ArrayDeque;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.EstTime;
 
@@ -73,6 +74,8 @@ public class NIOWriteStream implements WriteStream {
 
     private ArrayDeque<DeferredSerialization> m_queuedWrites = m_queuedWrites1;
 
+    private final QueuedBuffers m_pooledBuffers = new QueuedBuffers();
+
     private final int m_maxQueuedWritesBeforeBackpressure = 100;
 
     private final Runnable m_offBackPressureCallback;
@@ -235,7 +238,6 @@ public class NIOWriteStream implements WriteStream {
             } else {
                 m_currentWriteBuffer.discard();
                 m_currentWriteBuffer = null;
-                m_messagesWritten++;
             }
             bytesWritten += rc;
 
@@ -350,33 +352,83 @@ public class NIOWriteStream implements WriteStream {
             }
         }
 
+        m_pooledBuffers.m_pool = pool;
+        m_pooledBuffers.m_bytesQueued = 0;
         DeferredSerialization ds = null;
-        int bytesQueued = 0;
         while ((ds = oldlist.poll()) != null) {
+            if (ds instanceof DirectDeferredSerialization) {
+                m_messagesWritten += ((DirectDeferredSerialization)ds).serialize(m_pooledBuffers);
+                continue;
+            }
+            m_messagesWritten++;
             ByteBuffer data[] = ds.serialize();
             for (ByteBuffer buf : data) {
                 assert(buf.limit() == buf.capacity());//No sloppy serialization, we can allow it later if necessary
                 buf.clear();
-                bytesQueued += buf.remaining();
-                while (buf.hasRemaining()) {
-                    BBContainer outCont = m_queuedBuffers.peekLast();
-                    if (outCont == null || !outCont.b.hasRemaining()) {
-                        outCont = pool.acquire();
-                        outCont.b.clear();
-                        m_queuedBuffers.offer(outCont);
-                    }
-                    if (outCont.b.remaining() >= buf.remaining()) {
-                        outCont.b.put(buf);
-                    } else {
-                        final int oldLimit = buf.limit();
-                        buf.limit(buf.position() + outCont.b.remaining());
-                        outCont.b.put(buf);
-                        buf.limit(oldLimit);
-                    }
+                m_pooledBuffers.put(buf);
+            }
+        }
+        m_pooledBuffers.m_pool = null;
+        updateQueued(m_pooledBuffers.m_bytesQueued, true);
+    }
+
+    /**
+     * Appends serialized data to the tail of m_queuedBuffers, acquiring buffers from the network
+     * pool as needed. Only used from swapAndSerializeQueuedWrites on the network thread.
+     */
+    private class QueuedBuffers implements DirectDeferredSerialization.PooledBuffers {
+        private NetworkDBBPool m_pool;
+        private int m_bytesQueued;
+
+        @Override
+        public int maxClaim() {
+            return NetworkDBBPool.BUFFER_SIZE;
+        }
+
+        @Override
+        public ByteBuffer claim(int size) {
+            if (size > NetworkDBBPool.BUFFER_SIZE) {
+                throw new IllegalArgumentException("Can't claim " + size + " bytes from the network pool");
+            }
+            BBContainer outCont = m_queuedBuffers.peekLast();
+            if (outCont == null || outCont.b.remaining() < size) {
+                outCont = acquire();
+            }
+            m_bytesQueued += size;
+            final ByteBuffer b = outCont.b;
+            final int position = b.position();
+            b.limit(position + size);
+            final ByteBuffer claimed = b.slice();
+            b.limit(b.capacity());
+            b.position(position + size);
+            return claimed;
+        }
+
+        @Override
+        public void put(ByteBuffer buf) {
+            m_bytesQueued += buf.remaining();
+            while (buf.hasRemaining()) {
+                BBContainer outCont = m_queuedBuffers.peekLast();
+                if (outCont == null || !outCont.b.hasRemaining()) {
+                    outCont = acquire();
+                }
+                if (outCont.b.remaining() >= buf.remaining()) {
+                    outCont.b.put(buf);
+                } else {
+                    final int oldLimit = buf.limit();
+                    buf.limit(buf.position() + outCont.b.remaining());
+                    outCont.b.put(buf);
+                    buf.limit(oldLimit);
                 }
             }
         }
-        updateQueued(bytesQueued, true);
+
+        private BBContainer acquire() {
+            BBContainer outCont = m_pool.acquire();
+            outCont.b.clear();
+            m_queuedBuffers.offer(outCont);
+            return outCont;
+        }
     }
 
     /**
@@ -0,0 +1,61 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A DeferredSerialization that can write itself straight into the network's pooled
+ * direct buffers instead of returning freshly allocated heap buffers that are then
+ * copied into the pool. Write streams that don't pool their buffers still call
+ * {@link #serialize()}.
+ */
+public interface DirectDeferredSerialization extends DeferredSerialization {
+    /**
+     * Serialize the Object contained in this DeferredSerialization into buffers
+     * provided by the network pool
+     * @return the number of messages serialized, counted as messages written by the stream
+     * @throws IOException Thrown here because FastSerialzier throws IOException
+     */
+    int serialize(PooledBuffers buffers) throws IOException;
+
+    /**
+     * The pool side of a direct serialization, only valid for the duration of the
+     * {@link DirectDeferredSerialization#serialize(PooledBuffers)} call.
+     */
+    public interface PooledBuffers {
+        /**
+         * @return the largest size that can be passed to {@link #claim(int)}
+         */
+        int maxClaim();
+
+        /**
+         * Get a buffer with a capacity of exactly size bytes that is backed by the pool.
+         * The buffer is already queued for writing and must be filled completely.
+         * @param size bytes to be written, no more than {@link #maxClaim()}
+         */
+        ByteBuffer claim(int size);
+
+        /**
+         * Copy the remaining bytes of a buffer into the pool, for data that is too large
+         * to claim space for.
+         */
+        void put(ByteBuffer buf);
+    }
+}
@@ -0,0 +1,249 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from primitive long keys to object values using open addressing with linear probing.
+ * Keys are never boxed and there are no per-entry nodes, so put, get and remove don't allocate
+ * unless the table has to grow. Removal uses backward shift deletion rather than tombstones,
+ * so slots freed by removes are immediately reusable and probe sequences stay short under
+ * the steady insert/remove churn of in-flight transaction tracking.
+ *
+ * Null values are not allowed, a null value marks an empty slot. Not thread safe.
+ */
+public class LongObjectHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    // kept low, lookups of absent keys have to probe to an empty slot
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+
+    private long m_keys[];
+    private Object m_values[];
+    private int m_mask;
+    private int m_shift;
+    private int m_size = 0;
+    private int m_resizeThreshold;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of entries the map should hold without growing.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size can't be negative: " + expectedSize);
+        }
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int)(expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+        m_shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        m_resizeThreshold = (int)(capacity * MAX_LOAD_FACTOR);
+    }
+
+    /*
+     * Fibonacci hashing, taking the high bits of the key times 2^64 / phi. Handles and ids
+     * are mostly sequential and this spreads any window of sequential keys evenly across
+     * the table, so they rarely collide, without the branchy probing a random scramble causes.
+     */
+    private int slot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> m_shift);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = slot(key); m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                return (V)m_values[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value for the key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        int i = slot(key);
+        for (; m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                V previous = (V)m_values[i];
+                m_values[i] = value;
+                return previous;
+            }
+        }
+        m_keys[i] = key;
+        m_values[i] = value;
+        if (++m_size > m_resizeThreshold) {
+            rehash(m_keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (m_size == 0) {
+            return null;
+        }
+        int i = slot(key);
+        for (; m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                V previous = (V)m_values[i];
+                shiftBack(i);
+                m_size--;
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close the gap at the given slot by moving back any following entries in the same
+     * cluster whose home slot does not lie between the gap and their current position.
+     */
+    private void shiftBack(int gap) {
+        int i = (gap + 1) & m_mask;
+        while (m_values[i] != null) {
+            final int home = slot(m_keys[i]);
+            // distance from home to the current slot vs from home to the gap, modulo capacity
+            if (((i - home) & m_mask) >= ((i - gap) & m_mask)) {
+                m_keys[gap] = m_keys[i];
+                m_values[gap] = m_values[i];
+                gap = i;
+            }
+            i = (i + 1) & m_mask;
+        }
+        m_values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        final long oldKeys[] = m_keys;
+        final Object oldValues[] = m_values;
+        allocate(capacity);
+        for (int ii = 0; ii < oldValues.length; ii++) {
+            if (oldValues[ii] != null) {
+                int i = slot(oldKeys[ii]);
+                while (m_values[i] != null) {
+                    i = (i + 1) & m_mask;
+                }
+                m_keys[i] = oldKeys[ii];
+                m_values[i] = oldValues[ii];
+            }
+        }
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /** Remove all entries without shrinking the table */
+    public void clear() {
+        Arrays.fill(m_values, null);
+        m_size = 0;
+    }
+
+    /** @return the number of slots in the table */
+    public int capacity() {
+        return m_values.length;
+    }
+
+    /** @return the fraction of slots in use */
+    public double occupancy() {
+        return m_size / (double)m_values.length;
+    }
+
+    /**
+     * @return the longest distance any entry is from its home slot. This walks the whole
+     * table and is meant for statistics, not for the data path.
+     */
+    public int maxProbeLength() {
+        int max = 0;
+        for (int i = 0; i < m_values.length; i++) {
+            if (m_values[i] != null) {
+                max = Math.max(max, (i - slot(m_keys[i])) & m_mask);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Iterate over the values. The map must not be modified during iteration.
+     */
+    public Iterable<V> values() {
+        return new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<V>() {
+                    private int m_next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < m_values.length && m_values[from] == null) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return m_next < m_values.length;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public V next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        V value = (V)m_values[m_next];
+                        m_next = advance(m_next + 1);
+                        return value;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,138 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, array backed FIFO for many producers and a single consumer. Each slot carries
+ * a sequence number that tells producers when the slot is free and the consumer when it has
+ * been filled, so producers only contend on claiming the tail and the consumer never uses
+ * atomic read-modify-write operations. Nothing is allocated per element.
+ *
+ * offer() publishes the element with a volatile write, so a consumer that announces it is
+ * about to block (with a volatile write) and then polls again can't miss an element whose
+ * producer subsequently checks for the blocked consumer.
+ *
+ * poll(), drainTo() and peek() may only be called from one thread at a time.
+ */
+public class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> m_buffer;
+    private final AtomicLongArray m_sequences;
+    private final int m_mask;
+    private final AtomicLong m_tail = new AtomicLong(0);
+    // only written by the consumer, volatile for size() from other threads
+    private volatile long m_head = 0;
+
+    /**
+     * @param capacity Maximum number of elements, rounded up to a power of two.
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 2 and 2^30: " + capacity);
+        }
+        capacity = Integer.highestOneBit(capacity - 1) << 1;
+        m_buffer = new AtomicReferenceArray<E>(capacity);
+        m_sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            m_sequences.set(i, i);
+        }
+        m_mask = capacity - 1;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new IllegalArgumentException("Null elements are not supported");
+        }
+        while (true) {
+            final long tail = m_tail.get();
+            final int index = (int)tail & m_mask;
+            final long available = m_sequences.get(index) - tail;
+            if (available == 0) {
+                if (m_tail.compareAndSet(tail, tail + 1)) {
+                    m_buffer.lazySet(index, e);
+                    m_sequences.set(index, tail + 1);
+                    return true;
+                }
+            } else if (available < 0) {
+                // the consumer hasn't freed this slot from the previous lap
+                return false;
+            }
+            // else another producer claimed this tail, retry
+        }
+    }
+
+    /**
+     * @return the next element or null if the buffer is empty (or the next producer
+     * has claimed its slot but not yet published)
+     */
+    public E poll() {
+        final long head = m_head;
+        final int index = (int)head & m_mask;
+        if (m_sequences.get(index) != head + 1) {
+            return null;
+        }
+        final E e = m_buffer.get(index);
+        m_buffer.lazySet(index, null);
+        // free the slot for the producer one lap ahead
+        m_sequences.lazySet(index, head + m_mask + 1);
+        m_head = head + 1;
+        return e;
+    }
+
+    public E peek() {
+        final long head = m_head;
+        final int index = (int)head & m_mask;
+        if (m_sequences.get(index) != head + 1) {
+            return null;
+        }
+        return m_buffer.get(index);
+    }
+
+    /**
+     * Move up to max available elements into dest starting at offset.
+     * @return the number of elements moved
+     */
+    public int drainTo(E dest[], int offset, int max) {
+        int count = 0;
+        E e;
+        while (count < max && (e = poll()) != null) {
+            dest[offset + count++] = e;
+        }
+        return count;
+    }
+
+    public int capacity() {
+        return m_mask + 1;
+    }
+
+    /** @return an estimate of the number of elements, exact if producers and the consumer are quiescent */
+    public int size() {
+        return (int)Math.max(0, Math.min(m_tail.get() - m_head, capacity()));
+    }
+
+    /** @return true if no element has been offered that hasn't been polled, safe from any thread */
+    public boolean isEmpty() {
+        return m_tail.get() == m_head;
+    }
+}
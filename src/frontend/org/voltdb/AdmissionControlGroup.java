@@ -97,9 +97,8 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
     private final ConcurrentHashMap<Long, Map<String, org.voltdb.dtxn.InitiatorStats.InvocationInfo>> m_connectionStates =
                  new ConcurrentHashMap<Long, Map<String, org.voltdb.dtxn.InitiatorStats.InvocationInfo>>(1024, .75f, 1);
 
-    // Use the same-ish trick for the latency stats.  LatencyInfo keeps
-    // volatile ImmutableLists for the buckets and a separate volatile max.
-    // Same single-writer, unsynchronized reader pattern as initiator stats.
+    // Same single-writer, unsynchronized reader pattern as initiator stats
+    // for the latency histogram.
     private final LatencyInfo m_latencyInfo = new LatencyInfo();
 
     public AdmissionControlGroup(int maxBytes, int maxRequests)
@@ -280,6 +279,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
             String connectionHostname,
             String procedureName,
             int delta,
+            long deltaMicros,
             byte status) {
         boolean needToInsert = false;
         Map<String, InvocationInfo> procInfoMap = m_connectionStates.get(connectionId);
@@ -293,7 +293,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
             procInfoMap.put(procedureName, info);
         }
         info.processInvocation(delta, status);
-        m_latencyInfo.addSample(delta);
+        m_latencyInfo.addSample(deltaMicros);
         if (needToInsert) {
             m_connectionStates.put(connectionId, procInfoMap);
         }
@@ -72,6 +72,8 @@ import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.network.WriteStream;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.DirectDeferredSerialization;
+import org.voltcore.utils.DirectDeferredSerialization.PooledBuffers;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.Pair;
 
@@ -930,11 +932,45 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         }
     }
 
+    /**
+     * Stand-in for the network pool when a streamed response has to be serialized
+     * into heap buffers, one buffer per claim or put.
+     */
+    private static class HeapBuffers implements PooledBuffers {
+        private final List<ByteBuffer> m_buffers = new ArrayList<ByteBuffer>();
+
+        @Override
+        public int maxClaim() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public ByteBuffer claim(int size) {
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            m_buffers.add(buf);
+            return buf;
+        }
+
+        @Override
+        public void put(ByteBuffer buf) {
+            ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+            copy.put(buf);
+            m_buffers.add(copy);
+        }
+
+        ByteBuffer[] toArray() {
+            for (ByteBuffer buf : m_buffers) {
+                buf.flip();
+            }
+            return m_buffers.toArray(new ByteBuffer[m_buffers.size()]);
+        }
+    }
+
     /**
      * Runs on the network thread to prepare client response. If a transaction needs to be
      * restarted, it will get restarted here.
      */
-    private class ClientResponseWork implements DeferredSerialization {
+    private class ClientResponseWork implements DirectDeferredSerialization {
         private final ClientInterfaceHandleManager cihm;
         private final InitiateResponseMessage response;
         private final StoredProcedureInvocation invocation;
@@ -952,8 +988,50 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             this.catProc = catProc;
         }
 
+        // rows per chunk if the client asked for a streamed result, set by prepareResponse().
+        // All chunks are serialized at once, see ClientResponseImpl.flattenChunksToBuffers.
+        private int fetchSize = 0;
+
         @Override
         public ByteBuffer[] serialize() throws IOException
+        {
+            if (!prepareResponse()) {
+                return new ByteBuffer[] {};
+            }
+            if (fetchSize > 0) {
+                HeapBuffers buffers = new HeapBuffers();
+                clientResponse.flattenChunksToBuffers(buffers, fetchSize);
+                return buffers.toArray();
+            }
+            ByteBuffer results = ByteBuffer.allocate(clientResponse.getSerializedSize() + 4);
+            results.putInt(results.capacity() - 4);
+            clientResponse.flattenToBuffer(results);
+            return new ByteBuffer[] { results };
+        }
+
+        /**
+         * Skips the intermediate heap buffer and writes the response into the
+         * write stream's pooled buffers directly.
+         */
+        @Override
+        public int serialize(PooledBuffers buffers) throws IOException
+        {
+            if (!prepareResponse()) {
+                return 0;
+            }
+            if (fetchSize > 0) {
+                clientResponse.flattenChunksToBuffers(buffers, fetchSize);
+            } else {
+                clientResponse.flattenToBuffers(buffers);
+            }
+            return 1;
+        }
+
+        /**
+         * Resolve the client handle, restart the transaction if needed and log stats.
+         * @return true if the response should be sent to the client
+         */
+        private boolean prepareResponse()
         {
             // HACK-O-RIFFIC
             // For now, figure out if this is a transaction that was ignored
@@ -969,16 +1047,17 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 clientData = cihm.findHandle(response.getClientInterfaceHandle());
             }
             if (clientData == null) {
-                return new ByteBuffer[] {};
+                return false;
             }
             final long now = System.currentTimeMillis();
             final int delta = (int)(now - clientData.m_creationTime);
+            final long deltaMicros = (System.nanoTime() - clientData.m_creationTimeNanos) / 1000;
 
             // Reuse the creation time of the original invocation to have accurate internal latency
             if (restartTransaction(clientData.m_messageSize, clientData.m_creationTime)) {
                 // If the transaction is successfully restarted, don't send a response to the
                 // client yet.
-                return new ByteBuffer[] {};
+                return false;
             }
 
             /*
@@ -989,16 +1068,14 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     cihm.connection.getHostnameOrIP(),
                     clientData.m_procName,
                     delta,
+                    deltaMicros,
                     clientResponse.getStatus());
 
             clientResponse.setClientHandle(clientData.m_clientHandle);
             clientResponse.setClusterRoundtrip(delta);
             clientResponse.setHash(null); // not part of wire protocol
-
-            ByteBuffer results = ByteBuffer.allocate(clientResponse.getSerializedSize() + 4);
-            results.putInt(results.capacity() - 4);
-            clientResponse.flattenToBuffer(results);
-            return new ByteBuffer[] { results };
+            fetchSize = clientData.m_fetchSize;
+            return true;
         }
 
         @Override
@@ -1176,7 +1253,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         }
 
         long handle = cihm.getHandle(isSinglePartition, partitions[0], invocation.getClientHandle(),
-                messageSize, now, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead);
+                messageSize, now, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead,
+                invocation.getFetchSize());
 
         Iv2InitiateTaskMessage workRequest =
             new Iv2InitiateTaskMessage(m_siteId,
@@ -1644,6 +1722,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         if( isExplain ){
             ahpw.setIsExplainWork();
         }
+        ahpw.setFetchSize(task.getFetchSize());
         LocalObjectMessage work = new LocalObjectMessage( ahpw );
 
         m_mailbox.send(m_plannerSiteId, work);
@@ -1782,7 +1861,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         int pid = (Integer) invocation.getParameterAtIndex(0);
         final long initiatorHSId = m_cartographer.getHSIdForSinglePartitionMaster(pid);
         long handle = cihm.getHandle(true, pid, invocation.getClientHandle(), size, now,
-                invocation.getProcName(), initiatorHSId, true, false);
+                invocation.getProcName(), initiatorHSId, true, false, 0);
 
         /*
          * Sentinels will be deduped by ReplaySequencer. They don't advance the
@@ -2122,6 +2201,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             task.setParams(buf.array());
         }
         task.clientHandle = plannedStmtBatch.clientHandle;
+        task.fetchSize = plannedStmtBatch.getFetchSize();
 
         /*
          * Round trip the invocation to initialize it for command logging
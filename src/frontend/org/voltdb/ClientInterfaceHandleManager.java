@@ -21,16 +21,12 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Iterator;
 import java.util.List;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
-
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMap.Builder;
+import org.voltcore.utils.LongObjectHashMap;
 
 /**
  * This manages per-partition handles used to identify responses for
@@ -39,6 +35,9 @@ import com.google.common.collect.ImmutableMap.Builder;
  * ordered and completed, we can use the per-partition lists to determine which
  * transactions have been dropped due to faults and potentially report that
  * back to the client.
+ *
+ * Lookups by handle and by partition id use primitive keyed maps so that tracking a transaction
+ * allocates nothing beyond its Iv2InFlight.
  */
 public class ClientInterfaceHandleManager
 {
@@ -62,7 +61,7 @@ public class ClientInterfaceHandleManager
 
     private HandleGenerator m_shortCircuitHG = new HandleGenerator(SHORT_CIRCUIT_PART_ID);
 
-    private final Map<Long, Iv2InFlight> m_shortCircuitReads = new HashMap<Long, Iv2InFlight>();
+    private final LongObjectHashMap<Iv2InFlight> m_shortCircuitReads = new LongObjectHashMap<Iv2InFlight>();
 
     private static class HandleGenerator
     {
@@ -104,10 +103,15 @@ public class ClientInterfaceHandleManager
         final long m_clientHandle;
         final int m_messageSize;
         final long m_creationTime;
+        // System.nanoTime() when the handle was created, for latency stats
+        final long m_creationTimeNanos = System.nanoTime();
         final String m_procName;
         final long m_initiatorHSId;
+        // rows per chunk if the client asked for a streamed result, otherwise 0
+        final int m_fetchSize;
         Iv2InFlight(long ciHandle, long clientHandle,
-                int messageSize, long creationTime, String procName, long initiatorHSId)
+                int messageSize, long creationTime, String procName, long initiatorHSId,
+                int fetchSize)
         {
             m_ciHandle = ciHandle;
             m_clientHandle = clientHandle;
@@ -115,6 +119,7 @@ public class ClientInterfaceHandleManager
             m_creationTime = creationTime;
             m_procName = procName;
             m_initiatorHSId = initiatorHSId;
+            m_fetchSize = fetchSize;
         }
     }
 
@@ -128,8 +133,7 @@ public class ClientInterfaceHandleManager
         }
     }
 
-    private ImmutableMap<Integer, PartitionData> m_partitionStuff =
-            new Builder<Integer, PartitionData>().build();
+    private final LongObjectHashMap<PartitionData> m_partitionStuff = new LongObjectHashMap<PartitionData>();
 
     ClientInterfaceHandleManager(boolean isAdmin, Connection connection, AdmissionControlGroup acg)
     {
@@ -150,9 +154,10 @@ public class ClientInterfaceHandleManager
             @Override
             synchronized long getHandle(boolean isSinglePartition, int partitionId,
                     long clientHandle, int messageSize, long creationTime, String procName, long initiatorHSId,
-                    boolean readOnly, boolean isShortCircuitRead) {
+                    boolean readOnly, boolean isShortCircuitRead, int fetchSize) {
                 return super.getHandle(isSinglePartition, partitionId,
-                        clientHandle, messageSize, creationTime, procName, initiatorHSId, readOnly, isShortCircuitRead);
+                        clientHandle, messageSize, creationTime, procName, initiatorHSId, readOnly, isShortCircuitRead,
+                        fetchSize);
             }
             @Override
             synchronized Iv2InFlight findHandle(long ciHandle) {
@@ -201,7 +206,8 @@ public class ClientInterfaceHandleManager
             String procName,
             long initiatorHSId,
             boolean readOnly,
-            boolean isShortCircuitRead)
+            boolean isShortCircuitRead,
+            int fetchSize)
     {
         assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
         if (!isSinglePartition) {
@@ -215,16 +221,14 @@ public class ClientInterfaceHandleManager
         PartitionData partitionStuff = m_partitionStuff.get(partitionId);
         if (partitionStuff == null) {
             partitionStuff = new PartitionData(partitionId);
-            m_partitionStuff =
-                    new Builder<Integer, PartitionData>().
-                        putAll(m_partitionStuff).
-                        put(partitionId, partitionStuff).build();
+            m_partitionStuff.put(partitionId, partitionStuff);
         }
 
         long ciHandle =
                 isShortCircuitRead ? m_shortCircuitHG.getNextHandle() : partitionStuff.m_generator.getNextHandle();
         Iv2InFlight inFlight =
-                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTime, procName, initiatorHSId);
+                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTime, procName, initiatorHSId,
+                        fetchSize);
 
         if (isShortCircuitRead) {
             /*
@@ -425,12 +429,12 @@ public class ClientInterfaceHandleManager
         assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
         List<Iv2InFlight> retval = new ArrayList<Iv2InFlight>();
 
-        if (!m_partitionStuff.containsKey(partitionId)) return retval;
+        PartitionData partitionStuff = m_partitionStuff.get(partitionId);
+        if (partitionStuff == null) return retval;
 
         /*
          * First clear the pending reads
          */
-        PartitionData partitionStuff = m_partitionStuff.get(partitionId);
         Deque<Iv2InFlight> inFlight = partitionStuff.m_reads;
         Iterator<Iv2InFlight> i = inFlight.iterator();
         while (i.hasNext()) {
@@ -22,6 +22,7 @@ import java.nio.ByteBuffer;
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.voltcore.utils.DirectDeferredSerialization.PooledBuffers;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.exceptions.SerializableException;
 import org.voltdb.messaging.FastDeserializer;
@@ -47,6 +48,10 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     private int clientRoundTripTime = 0;
     private SerializableException m_exception = null;
 
+    // Index of the result table a partial (streamed) response carries rows for,
+    // -1 for a complete response or the final response of a stream
+    private int m_partialTableIndex = -1;
+
     // JSON KEYS FOR SERIALIZATION
     static final String JSON_STATUS_KEY = "status";
     static final String JSON_STATUSSTRING_KEY = "statusstring";
@@ -164,6 +169,23 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         return m_hash;
     }
 
+    /**
+     * A partial response is one of the chunks of a streamed result. It is always
+     * followed by more responses with the same client handle, the last of which is
+     * complete and carries the status.
+     */
+    public boolean isPartial() {
+        return m_partialTableIndex >= 0;
+    }
+
+    /**
+     * @return the index of the result table the rows of a partial response belong to,
+     * or -1 if this is not a partial response
+     */
+    public int getPartialTableIndex() {
+        return m_partialTableIndex;
+    }
+
     @Override
     public SerializableException getException() {
         return m_exception;
@@ -197,6 +219,11 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         } else {
             m_hash = null;
         }
+        if ((presentFields & (1 << 3)) != 0) {
+            m_partialTableIndex = in.readShort();
+        } else {
+            m_partialTableIndex = -1;
+        }
         results = (VoltTable[]) in.readArray(VoltTable.class);
         setProperly = true;
     }
@@ -224,6 +251,9 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             if (m_hash != null) {
                 msgsize += 4;
             }
+            if (m_partialTableIndex >= 0) {
+                msgsize += 2;
+            }
             for (VoltTable vt : results) {
                 msgsize += vt.getSerializedSize();
             }
@@ -237,6 +267,116 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
      * @return buf to allow call chaining.
      */
     public ByteBuffer flattenToBuffer(ByteBuffer buf) {
+        flattenHeaderToBuffer(buf);
+        for (VoltTable vt : results)
+        {
+            vt.flattenToBuffer(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Write this response, preceded by its 4 byte length, straight into the network's
+     * pooled buffers. A response that fits in one claim is flattened in place. Larger
+     * responses have the header flattened in place and each result table's backing
+     * buffer put into the pool as is, so table data is copied once instead of being
+     * staged in an intermediate heap buffer first.
+     */
+    public void flattenToBuffers(PooledBuffers buffers) {
+        final int msgsize = getSerializedSize();
+        if (msgsize + 4 <= buffers.maxClaim()) {
+            ByteBuffer buf = buffers.claim(msgsize + 4);
+            buf.putInt(msgsize);
+            flattenToBuffer(buf);
+            return;
+        }
+
+        int headerSize = msgsize;
+        for (VoltTable vt : results) {
+            headerSize -= vt.getSerializedSize();
+        }
+        if (headerSize + 4 <= buffers.maxClaim()) {
+            ByteBuffer buf = buffers.claim(headerSize + 4);
+            buf.putInt(msgsize);
+            flattenHeaderToBuffer(buf);
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(headerSize + 4);
+            buf.putInt(msgsize);
+            flattenHeaderToBuffer(buf);
+            buf.flip();
+            buffers.put(buf);
+        }
+        for (VoltTable vt : results) {
+            final int tableSize = vt.getSerializedSize();
+            if (tableSize <= buffers.maxClaim()) {
+                vt.flattenToBuffer(buffers.claim(tableSize));
+            } else {
+                buffers.claim(4).putInt(tableSize - 4);
+                buffers.put(vt.getTableDataReference());
+            }
+        }
+    }
+
+    /**
+     * Write this response as a stream: every result table with more than rowsPerChunk
+     * rows is sent as partial responses of rowsPerChunk rows each, then a final
+     * complete response carries the status and whatever rows of each table were not
+     * already sent. Unsuccessful responses and results that fit in a chunk go out as usual.
+     *
+     * Every chunk is written to buffers in this one call, so until the result is released
+     * the serialized stream is held alongside it, about twice the size of the result.
+     * Chunking bounds the size of each frame and lets the client consume rows as they
+     * arrive, but it doesn't throttle the server: backpressure on the write stream only
+     * affects what is queued after this response.
+     */
+    public void flattenChunksToBuffers(PooledBuffers buffers, int rowsPerChunk) {
+        assert(rowsPerChunk > 0);
+        if (status != ClientResponse.SUCCESS) {
+            flattenToBuffers(buffers);
+            return;
+        }
+
+        VoltTable[] remainders = results;
+        for (int i = 0; i < results.length; i++) {
+            final VoltTable vt = results[i];
+            if (vt.getRowCount() <= rowsPerChunk) {
+                continue;
+            }
+            if (remainders == results) {
+                remainders = results.clone();
+            }
+
+            int rowsLeft = vt.getRowCount();
+            int offset = vt.getRowStart() + 4;
+            while (rowsLeft > rowsPerChunk) {
+                final int end = vt.skipRows(offset, rowsPerChunk);
+                ClientResponseImpl chunk = new ClientResponseImpl(
+                        ClientResponse.SUCCESS,
+                        new VoltTable[] { vt.copyRows(offset, end, rowsPerChunk) },
+                        null,
+                        clientHandle);
+                chunk.m_partialTableIndex = i;
+                chunk.flattenToBuffers(buffers);
+                offset = end;
+                rowsLeft -= rowsPerChunk;
+            }
+            remainders[i] = vt.copyRows(offset, vt.skipRows(offset, rowsLeft), rowsLeft);
+        }
+
+        final VoltTable[] complete = results;
+        results = remainders;
+        try {
+            flattenToBuffers(buffers);
+        } finally {
+            results = complete;
+        }
+    }
+
+    /**
+     * Everything but the result tables, ending with the table count.
+     * getSerializedSize() must have been called first to encode the status strings.
+     */
+    private void flattenHeaderToBuffer(ByteBuffer buf) {
         assert setProperly;
         buf.put((byte)0); //version
         buf.putLong(clientHandle);
@@ -253,6 +393,9 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             presentFields |= 1 << 4;
         }
+        if (m_partialTableIndex >= 0) {
+            presentFields |= 1 << 3;
+        }
         buf.put(presentFields);
         buf.put(status);
         if (statusString != null) {
@@ -273,12 +416,10 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             buf.putInt(m_hash.intValue());
         }
-        buf.putShort((short)results.length);
-        for (VoltTable vt : results)
-        {
-            vt.flattenToBuffer(buf);
+        if (m_partialTableIndex >= 0) {
+            buf.putShort((short)m_partialTableIndex);
         }
-        return buf;
+        buf.putShort((short)results.length);
     }
 
     @Override
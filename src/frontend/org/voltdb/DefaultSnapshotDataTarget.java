@@ -45,6 +45,7 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.utils.CLibrary;
 import org.voltdb.utils.CompressionService;
 
 import com.google.common.util.concurrent.Callables;
@@ -92,6 +93,56 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
      */
     private volatile boolean m_acceptOneWrite = false;
 
+    /*
+     * Host wide ceiling on the rate chunks are written across all targets, set once at
+     * startup with the SNAPSHOT_WRITE_RATE_LIMIT_MB property
+     */
+    private static final WritePacer m_writePacer =
+            new WritePacer(Integer.getInteger("SNAPSHOT_WRITE_RATE_LIMIT_MB", 0), System.nanoTime());
+
+    /*
+     * Hands out time on a shared schedule so the writes it is asked about stay under a
+     * rate in MB/s, 0 means no limit. A write that finds the schedule behind restarts it,
+     * so idle time doesn't build up credit for a burst.
+     */
+    static final class WritePacer {
+        private final int m_writeRateLimitMB;
+        private long m_nextWriteNanos;
+
+        WritePacer(int writeRateLimitMB, long nowNanos) {
+            m_writeRateLimitMB = writeRateLimitMB;
+            m_nextWriteNanos = nowNanos;
+        }
+
+        /*
+         * Reserve the time a write of the given size takes at the limit,
+         * returns how long to wait before starting it
+         */
+        synchronized long reserve(int bytes, long nowNanos) {
+            if (m_writeRateLimitMB <= 0) {
+                return 0;
+            }
+            // nanoTime can be negative, only the difference is meaningful
+            if (m_nextWriteNanos - nowNanos < 0) {
+                m_nextWriteNanos = nowNanos;
+            }
+            final long delay = m_nextWriteNanos - nowNanos;
+            m_nextWriteNanos += (bytes * 1000000000L) / (m_writeRateLimitMB * 1024L * 1024L);
+            return delay;
+        }
+    }
+
+    /*
+     * Written data is pushed to disk a window at a time and then dropped from the page cache
+     * so a large snapshot doesn't build up dirty pages that get flushed all at once in
+     * front of the command log and everything else on the disk. The offsets are only
+     * touched by the writer thread.
+     */
+    private static final long WRITE_BACK_WINDOW = 1024 * 1024 * 8;
+    private final int m_fd;
+    private long m_writeBackOffset = 0;
+    private long m_evictedOffset = 0;
+
     private boolean m_needsFinalClose = true;
 
     @SuppressWarnings("unused")
@@ -102,7 +153,11 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private final Condition m_noMoreOutstandingWriteTasksCondition =
             m_outstandingWriteTasksLock.newCondition();
 
-    private static final ListeningExecutorService m_es = CoreUtils.getSingleThreadExecutor("Snapshot write service ");
+    /*
+     * Each target gets its own writer so waiting on write back of one file
+     * doesn't hold up the others
+     */
+    private final ListeningExecutorService m_es;
     private static final ListeningScheduledExecutorService m_syncService = MoreExecutors.listeningDecorator(
             Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Snapshot sync service")));
 
@@ -152,6 +207,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_tableName = tableName;
         m_fos = new FileOutputStream(file);
         m_channel = m_fos.getChannel();
+        m_fd = CLibrary.getfd(m_fos.getFD());
         m_needsFinalClose = !isReplicated;
         final FastSerializer fs = new FastSerializer();
         fs.writeInt(0);//CRC
@@ -228,19 +284,23 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
          * Be completely sure the write succeeded. If it didn't
          * the disk is probably full or the path is bunk etc.
          */
+        m_es = CoreUtils.getCachedSingleThreadExecutor("Snapshot write service " + tableName, 1000);
         m_acceptOneWrite = true;
         ListenableFuture<?> writeFuture =
                 write(Callables.returning((BBContainer)DBBPool.wrapBB(aggregateBuffer)), false);
         try {
             writeFuture.get();
         } catch (InterruptedException e) {
+            m_es.shutdown();
             m_fos.close();
             throw new java.io.InterruptedIOException();
         } catch (ExecutionException e) {
+            m_es.shutdown();
             m_fos.close();
             throw m_writeException;
         }
         if (m_writeFailed) {
+            m_es.shutdown();
             m_fos.close();
             throw m_writeException;
         }
@@ -284,6 +344,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             m_channel.force(false);
         } finally {
             m_bytesAllowedBeforeSync.release(m_bytesWrittenSinceLastSync.getAndSet(0));
+            m_es.shutdown();
         }
         m_channel.position(8);
         ByteBuffer completed = ByteBuffer.allocate(1);
@@ -377,6 +438,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
                             ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
                             m_bytesAllowedBeforeSync.acquire(payloadBuffer.remaining());
+                            throttleWrite(payloadBuffer.remaining());
                             //Length prefix does not include 4 header items, just compressd payload
                             //that follows
                             lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
@@ -398,6 +460,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                             while (payloadBuffer.hasRemaining()) {
                                 totalWritten += m_channel.write(payloadBuffer);
                             }
+                            progressiveWriteBack();
                         } finally {
                             payloadContainer.discard();
                         }
@@ -433,6 +496,37 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return writeTask;
     }
 
+    /*
+     * Pace writes so that all targets on this host together stay under the configured rate
+     */
+    private static void throttleWrite(int bytes) throws InterruptedException {
+        final long delay = m_writePacer.reserve(bytes, System.nanoTime());
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    /*
+     * Once a window of data has been written start write back for it, and wait for the
+     * window before it, which has had a window's worth of writing to make it to disk, before
+     * dropping it from the page cache. A noop where sync_file_range isn't available, the sync
+     * service still forces the file periodically.
+     */
+    private void progressiveWriteBack() throws IOException {
+        final long position = m_channel.position();
+        if (position - m_writeBackOffset < WRITE_BACK_WINDOW) {
+            return;
+        }
+        if (!CLibrary.startWriteBack(m_fd, m_writeBackOffset, position - m_writeBackOffset)) {
+            return;
+        }
+        if (m_evictedOffset < m_writeBackOffset) {
+            CLibrary.finishWriteBackAndEvict(m_fd, m_evictedOffset, m_writeBackOffset - m_evictedOffset);
+            m_evictedOffset = m_writeBackOffset;
+        }
+        m_writeBackOffset = position;
+    }
+
     @Override
     public ListenableFuture<?> write(final Callable<BBContainer> tupleData, SnapshotTableTask context) {
         return write(tupleData, true);
@@ -230,6 +230,11 @@ public class ElasticHashinator extends TheHashinator {
         return partitionForToken(token);
     }
 
+    @Override
+    protected HashinatorType pGetConfigurationType() {
+        return HashinatorType.ELASTIC;
+    }
+
     @Override
     protected Pair<HashinatorType, byte[]> pGetCurrentConfig() {
         return Pair.of(HashinatorType.ELASTIC, m_configBytes);
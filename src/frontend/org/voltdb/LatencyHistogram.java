@@ -0,0 +1,392 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>A log-linear histogram of latency values in the style of HdrHistogram.
+ * Values are plain longs (by convention, microseconds) and are tracked with a
+ * configurable number of significant decimal digits across the whole range
+ * from 1 to the highest trackable value. Values larger than the highest
+ * trackable value are clamped into the last bucket.</p>
+ *
+ * <p>Recording a value is a couple of shifts and an array increment and never
+ * allocates. Histograms with the same configuration can be added and
+ * subtracted, which is how interval statistics are produced, and can be
+ * converted to a compact byte form so that histograms from several hosts can
+ * be merged by whoever collects them.</p>
+ *
+ * <p>This class is not thread safe. A single writer with a reader that can
+ * tolerate a slightly stale view (as the stats sources do) is fine.</p>
+ */
+public class LatencyHistogram {
+
+    /** Version byte written at the front of the compact serialized form. */
+    private static final byte SERIALIZATION_VERSION = 1;
+
+    /** The configured highest value tracked without clamping. */
+    public final long highestTrackableValue;
+    /** The configured number of significant decimal digits, in [1, 5]. */
+    public final int significantDigits;
+
+    private final int m_subBucketHalfCountMagnitude;
+    private final int m_subBucketHalfCount;
+    private final long m_subBucketMask;
+    private final int m_bucketCount;
+
+    private long m_counts[];
+    private long m_totalCount = 0;
+    // unclamped sum of recorded values, used for the mean
+    private long m_totalValue = 0;
+
+    public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("LatencyHistogram highest trackable value must be >= 2");
+        }
+        if ((significantDigits < 1) || (significantDigits > 5)) {
+            throw new IllegalArgumentException("LatencyHistogram significant digits must be in [1, 5]");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        // the sub-bucket count is the smallest power of two that can
+        // represent values with the requested number of digits
+        long largestSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestSingleUnitResolution) / Math.log(2));
+        m_subBucketHalfCountMagnitude = Math.max(subBucketCountMagnitude, 1) - 1;
+        int subBucketCount = 1 << (m_subBucketHalfCountMagnitude + 1);
+        m_subBucketHalfCount = subBucketCount / 2;
+        m_subBucketMask = subBucketCount - 1;
+
+        // each additional bucket doubles the range covered
+        long smallestUntrackableValue = subBucketCount;
+        int bucketsNeeded = 1;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > (Long.MAX_VALUE / 2)) {
+                bucketsNeeded++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketsNeeded++;
+        }
+        m_bucketCount = bucketsNeeded;
+        m_counts = new long[(m_bucketCount + 1) * m_subBucketHalfCount];
+    }
+
+    /**
+     * Record a single occurrence of a value. Negative values (clocks going
+     * backwards) are recorded as zero.
+     */
+    public void recordValue(long value) {
+        recordValues(value, 1);
+    }
+
+    /**
+     * Record <code>count</code> occurrences of a value.
+     */
+    public void recordValues(long value, long count) {
+        if (value < 0) value = 0;
+        m_totalValue += value * count;
+        if (value > highestTrackableValue) value = highestTrackableValue;
+        m_counts[countsIndexFor(value)] += count;
+        m_totalCount += count;
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(m_counts, 0);
+        m_totalCount = 0;
+        m_totalValue = 0;
+    }
+
+    public long getTotalCount() {
+        return m_totalCount;
+    }
+
+    /**
+     * @return The mean of all recorded values, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        if (m_totalCount == 0) return 0;
+        return (double) m_totalValue / (double) m_totalCount;
+    }
+
+    /**
+     * @return The lowest recorded value, to the precision of the histogram,
+     * or 0 if nothing was recorded.
+     */
+    public long getMinValue() {
+        for (int i = 0; i < m_counts.length; i++) {
+            if (m_counts[i] != 0) {
+                return valueFromCountsIndex(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The highest recorded value, to the precision of the histogram,
+     * or 0 if nothing was recorded.
+     */
+    public long getMaxValue() {
+        for (int i = m_counts.length - 1; i >= 0; i--) {
+            if (m_counts[i] != 0) {
+                return Math.min(highestEquivalentValue(valueFromCountsIndex(i)), highestTrackableValue);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param percentile A number in [0.0, 1.0].
+     * @return The value that <code>percentile</code> of the recorded values are
+     * less than or equal to, to the precision of the histogram. 0.0 returns the
+     * minimum and 1.0 the maximum. Returns 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ((percentile > 1.0) || (percentile < 0.0)) {
+            throw new IllegalArgumentException(
+                    "getValueAtPercentile accepts values greater or equal to 0.0 " +
+                    "and less than or equal to 1.0");
+        }
+        if (m_totalCount == 0) return 0;
+        if (percentile == 0.0) return getMinValue();
+
+        long countAtPercentile = (long) Math.ceil(percentile * m_totalCount);
+        // ensure k=0 gives min latency and FP error can't run off the end
+        countAtPercentile = Math.max(1, Math.min(countAtPercentile, m_totalCount));
+
+        long sum = 0;
+        for (int i = 0; i < m_counts.length; i++) {
+            sum += m_counts[i];
+            if (sum >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(valueFromCountsIndex(i)), highestTrackableValue);
+            }
+        }
+        // only reachable if the counts are inconsistent with the total,
+        // e.g. a racing reader of a histogram being written
+        return getMaxValue();
+    }
+
+    /**
+     * @return The number of recorded values in [low, high], to the precision
+     * of the histogram. Values are attributed by the low end of their bucket.
+     */
+    public long getCountBetweenValues(long low, long high) {
+        if (high < low) return 0;
+        low = Math.max(low, 0);
+        if (low > highestTrackableValue) return 0;
+        high = Math.min(high, highestTrackableValue);
+        int lowIndex = countsIndexFor(low);
+        if (valueFromCountsIndex(lowIndex) < low) lowIndex++;
+        int highIndex = countsIndexFor(high);
+        long count = 0;
+        for (int i = lowIndex; i <= highIndex; i++) {
+            count += m_counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Add all the values recorded in <code>other</code> to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+        checkCompatible(other);
+        long total = 0;
+        for (int i = 0; i < m_counts.length; i++) {
+            m_counts[i] += other.m_counts[i];
+            total += m_counts[i];
+        }
+        // recompute rather than add so that a torn read of a histogram being
+        // written can't leave the total out of line with the counts
+        m_totalCount = total;
+        m_totalValue += other.m_totalValue;
+    }
+
+    public static LatencyHistogram merge(LatencyHistogram h1, LatencyHistogram h2) {
+        LatencyHistogram retval = (LatencyHistogram) h1.clone();
+        retval.add(h2);
+        return retval;
+    }
+
+    /**
+     * Produce a histogram of the values recorded in <code>newer</code> but not
+     * in <code>older</code>, where <code>older</code> is an earlier copy of the
+     * same histogram.
+     */
+    public static LatencyHistogram diff(LatencyHistogram newer, LatencyHistogram older) {
+        newer.checkCompatible(older);
+        LatencyHistogram retval = (LatencyHistogram) newer.clone();
+        long total = 0;
+        for (int i = 0; i < retval.m_counts.length; i++) {
+            retval.m_counts[i] = Math.max(0, retval.m_counts[i] - older.m_counts[i]);
+            total += retval.m_counts[i];
+        }
+        retval.m_totalCount = total;
+        retval.m_totalValue = Math.max(0, newer.m_totalValue - older.m_totalValue);
+        return retval;
+    }
+
+    /**
+     * Serialize to a compact form. Runs of empty buckets are collapsed, and
+     * counts are written as zig-zag var-longs, so a typical latency histogram
+     * is a few hundred bytes.
+     */
+    public byte[] toCompactBytes() {
+        // worst case is a 10 byte var-long for every bucket
+        ByteBuffer buf = ByteBuffer.allocate(1 + 1 + 8 + 8 + 4 + (m_counts.length * 10));
+        buf.put(SERIALIZATION_VERSION);
+        buf.put((byte) significantDigits);
+        buf.putLong(highestTrackableValue);
+        buf.putLong(m_totalValue);
+        // length of the counts that are written, trailing zeroes are omitted
+        int lastNonZero = m_counts.length - 1;
+        while (lastNonZero >= 0 && m_counts[lastNonZero] == 0) {
+            lastNonZero--;
+        }
+        buf.putInt(lastNonZero + 1);
+        int i = 0;
+        while (i <= lastNonZero) {
+            if (m_counts[i] == 0) {
+                int zeroes = 0;
+                while (i <= lastNonZero && m_counts[i] == 0) {
+                    zeroes++;
+                    i++;
+                }
+                // a negative entry is a run of empty buckets
+                putVarLong(buf, -zeroes);
+            }
+            else {
+                putVarLong(buf, m_counts[i++]);
+            }
+        }
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    /**
+     * Reconstruct a histogram from the output of {@link #toCompactBytes()}.
+     */
+    public static LatencyHistogram fromCompactBytes(byte bytes[]) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        byte version = buf.get();
+        if (version != SERIALIZATION_VERSION) {
+            throw new IllegalArgumentException("Unknown LatencyHistogram serialization version " + version);
+        }
+        int digits = buf.get();
+        long highest = buf.getLong();
+        LatencyHistogram retval = new LatencyHistogram(highest, digits);
+        retval.m_totalValue = buf.getLong();
+        int length = buf.getInt();
+        if (length > retval.m_counts.length) {
+            throw new IllegalArgumentException("Serialized LatencyHistogram has too many buckets");
+        }
+        int i = 0;
+        long total = 0;
+        while (i < length) {
+            long entry = getVarLong(buf);
+            if (entry < 0) {
+                i += (int) -entry;
+            }
+            else {
+                retval.m_counts[i++] = entry;
+                total += entry;
+            }
+        }
+        retval.m_totalCount = total;
+        return retval;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public Object clone() {
+        LatencyHistogram retval = new LatencyHistogram(highestTrackableValue, significantDigits);
+        System.arraycopy(m_counts, 0, retval.m_counts, 0, m_counts.length);
+        retval.m_totalCount = m_totalCount;
+        retval.m_totalValue = m_totalValue;
+        return retval;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("count %d, mean %.1f, min %d, 50%% %d, 95%% %d, 99%% %d, 99.9%% %d, max %d",
+                m_totalCount, getMean(), getMinValue(),
+                getValueAtPercentile(0.5), getValueAtPercentile(0.95),
+                getValueAtPercentile(0.99), getValueAtPercentile(0.999), getMaxValue());
+    }
+
+    private void checkCompatible(LatencyHistogram other) {
+        if ((highestTrackableValue != other.highestTrackableValue) ||
+                (significantDigits != other.significantDigits)) {
+            throw new IllegalArgumentException(
+                    "Combining LatencyHistogram instances requires both cover the same range and precision.");
+        }
+    }
+
+    private int countsIndexFor(long value) {
+        // the bucket is the power of two range the value falls in, the sub bucket
+        // is the linear position within it at the bucket's resolution
+        int bucketIndex = 63 - Long.numberOfLeadingZeros(value | m_subBucketMask) - m_subBucketHalfCountMagnitude;
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return (bucketIndex << m_subBucketHalfCountMagnitude) + subBucketIndex;
+    }
+
+    private long valueFromCountsIndex(int index) {
+        int bucketIndex = (index >> m_subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (m_subBucketHalfCount - 1)) + m_subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= m_subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex) << bucketIndex;
+    }
+
+    private long highestEquivalentValue(long value) {
+        int bucketIndex = 63 - Long.numberOfLeadingZeros(value | m_subBucketMask) - m_subBucketHalfCountMagnitude;
+        return value + (1L << bucketIndex) - 1;
+    }
+
+    private static void putVarLong(ByteBuffer buf, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buf.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buf.put((byte) zigzag);
+    }
+
+    private static long getVarLong(ByteBuffer buf) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            zigzag |= ((long) (b & 0x7F)) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
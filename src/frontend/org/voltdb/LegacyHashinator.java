@@ -60,6 +60,11 @@ public class LegacyHashinator extends TheHashinator {
         return buf.array();
     }
 
+    @Override
+    protected HashinatorType pGetConfigurationType() {
+        return HashinatorType.LEGACY;
+    }
+
     @Override
     protected Pair<HashinatorType, byte[]> pGetCurrentConfig() {
         return Pair.of(HashinatorType.LEGACY, m_configBytes);
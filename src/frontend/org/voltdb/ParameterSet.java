@@ -912,9 +912,9 @@ public class ParameterSet implements JSONString {
         return 42; // any arbitrary constant will do
     }
 
-    public Integer getHashinatedParam(int index) {
+    public Integer getHashinatedParam(TheHashinator hashinator, int index) {
         if (m_params.length > 0) {
-            return TheHashinator.hashToPartition(m_params[index]);
+            return hashinator.getHashedPartitionForParameter(m_params[index]);
         }
         return null;
     }
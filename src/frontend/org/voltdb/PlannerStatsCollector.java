@@ -95,6 +95,18 @@ public class PlannerStatsCollector extends StatsSource {
     long m_cacheMisses = 0;
     long m_lastCacheMisses = 0;
 
+    /**
+     * Cache 1 evictions
+     */
+    long m_cache1Evictions = 0;
+    long m_lastCache1Evictions = 0;
+
+    /**
+     * Cache 2 evictions
+     */
+    long m_cache2Evictions = 0;
+    long m_lastCache2Evictions = 0;
+
     /**
      * Time of last planning start
      */
@@ -186,6 +198,22 @@ public class PlannerStatsCollector extends StatsSource {
      * @param partitionId  partition id
      */
     public void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
+        endStatsCollection(cache1Size, cache2Size, m_cache1Evictions, m_cache2Evictions, cacheUse, partitionId);
+    }
+
+    /**
+     * Called after planning or failing to plan. Records timer and cache stats.
+     *
+     * @param cache1Size       number of entries in level 1 cache
+     * @param cache2Size       number of entries in level 2 cache
+     * @param cache1Evictions  entries evicted from the level 1 cache since it was created
+     * @param cache2Evictions  entries evicted from the level 2 cache since it was created
+     * @param cacheUse         where the planned statement came from
+     * @param partitionId      partition id
+     */
+    public void endStatsCollection(long cache1Size, long cache2Size,
+                                   long cache1Evictions, long cache2Evictions,
+                                   CacheUse cacheUse, long partitionId) {
         if (m_currentStartTime != null) {
             long delta = System.nanoTime() - m_currentStartTime;
             if (delta < 0) {
@@ -206,6 +234,8 @@ public class PlannerStatsCollector extends StatsSource {
 
         m_cache1Level = cache1Size;
         m_cache2Level = cache2Size;
+        m_cache1Evictions = cache1Evictions;
+        m_cache2Evictions = cache2Evictions;
 
         switch(cacheUse) {
           case HIT1:
@@ -244,6 +274,8 @@ public class PlannerStatsCollector extends StatsSource {
         long cache1Hits  = m_cache1Hits;
         long cache2Hits  = m_cache2Hits;
         long cacheMisses = m_cacheMisses;
+        long cache1Evictions = m_cache1Evictions;
+        long cache2Evictions = m_cache2Evictions;
         long failureCount = m_failures;
 
         if (m_interval) {
@@ -270,6 +302,12 @@ public class PlannerStatsCollector extends StatsSource {
             cacheMisses = m_cacheMisses - m_lastCacheMisses;
             m_lastCacheMisses = m_cacheMisses;
 
+            cache1Evictions = m_cache1Evictions - m_lastCache1Evictions;
+            m_lastCache1Evictions = m_cache1Evictions;
+
+            cache2Evictions = m_cache2Evictions - m_lastCache2Evictions;
+            m_lastCache2Evictions = m_cache2Evictions;
+
             failureCount = m_failures - m_lastFailures;
             m_lastFailures = m_failures;
         }
@@ -281,6 +319,8 @@ public class PlannerStatsCollector extends StatsSource {
         rowValues[columnNameToIndex.get("CACHE1_HITS" )] = cache1Hits;
         rowValues[columnNameToIndex.get("CACHE2_HITS" )] = cache2Hits;
         rowValues[columnNameToIndex.get("CACHE_MISSES")] = cacheMisses;
+        rowValues[columnNameToIndex.get("CACHE1_EVICTIONS")] = cache1Evictions;
+        rowValues[columnNameToIndex.get("CACHE2_EVICTIONS")] = cache2Evictions;
         rowValues[columnNameToIndex.get("PLAN_TIME_MIN")] = minExecutionTime;
         rowValues[columnNameToIndex.get("PLAN_TIME_MAX")] = maxExecutionTime;
         if (getSampleCount() != 0) {
@@ -306,6 +346,8 @@ public class PlannerStatsCollector extends StatsSource {
         columns.add(new ColumnInfo("CACHE1_HITS",   VoltType.INTEGER));
         columns.add(new ColumnInfo("CACHE2_HITS",   VoltType.INTEGER));
         columns.add(new ColumnInfo("CACHE_MISSES",  VoltType.INTEGER));
+        columns.add(new ColumnInfo("CACHE1_EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CACHE2_EVICTIONS", VoltType.BIGINT));
         columns.add(new ColumnInfo("PLAN_TIME_MIN", VoltType.BIGINT));
         columns.add(new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT));
         columns.add(new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT));
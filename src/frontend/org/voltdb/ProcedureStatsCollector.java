@@ -66,6 +66,18 @@ class ProcedureStatsCollector extends SiteStatsSource {
     private long m_maxExecutionTime = Long.MIN_VALUE;
     private long m_lastMaxExecutionTime = Long.MIN_VALUE;
 
+    private static final long EXECUTION_TIME_HISTOGRAM_HIGHEST_MICROS = 10L * 60 * 1000 * 1000;
+
+    /**
+     * Histogram of timed execution times in microseconds. One significant digit
+     * keeps the footprint small (a few KB per procedure per site) while still
+     * distinguishing tail latencies.
+     */
+    private final LatencyHistogram m_executionTimeHistogram =
+            new LatencyHistogram(EXECUTION_TIME_HISTOGRAM_HIGHEST_MICROS, 1);
+    private LatencyHistogram m_lastExecutionTimeHistogram =
+            new LatencyHistogram(EXECUTION_TIME_HISTOGRAM_HIGHEST_MICROS, 1);
+
     /**
      * Time the procedure was last started
      */
@@ -178,6 +190,7 @@ class ProcedureStatsCollector extends SiteStatsSource {
                 m_maxExecutionTime = Math.max( delta, m_maxExecutionTime);
                 m_lastMinExecutionTime = Math.min( delta, m_lastMinExecutionTime);
                 m_lastMaxExecutionTime = Math.max( delta, m_lastMaxExecutionTime);
+                m_executionTimeHistogram.recordValue(delta / 1000);
 
                 // sampled size statistics
                 int resultSize = 0;
@@ -234,6 +247,7 @@ class ProcedureStatsCollector extends SiteStatsSource {
         long minParameterSetSize = m_minParameterSetSize;
         long maxParameterSetSize = m_maxParameterSetSize;
         long totalParameterSetSize = m_totalParameterSetSize;
+        LatencyHistogram executionTimeHistogram = m_executionTimeHistogram;
 
         if (m_interval) {
             invocations = m_invocations - m_lastInvocations;
@@ -266,6 +280,10 @@ class ProcedureStatsCollector extends SiteStatsSource {
 
             totalParameterSetSize = m_totalParameterSetSize - m_lastTotalParameterSetSize;
             m_lastTotalParameterSetSize = m_totalParameterSetSize;
+
+            executionTimeHistogram =
+                    LatencyHistogram.diff(m_executionTimeHistogram, m_lastExecutionTimeHistogram);
+            m_lastExecutionTimeHistogram = (LatencyHistogram) m_executionTimeHistogram.clone();
         }
 
         rowValues[columnNameToIndex.get("INVOCATIONS")] = invocations;
@@ -290,6 +308,11 @@ class ProcedureStatsCollector extends SiteStatsSource {
         rowValues[columnNameToIndex.get("MAX_RESULT_SIZE")] = maxResultSize;
         rowValues[columnNameToIndex.get("MIN_PARAMETER_SET_SIZE")] = minParameterSetSize;
         rowValues[columnNameToIndex.get("MAX_PARAMETER_SET_SIZE")] = maxParameterSetSize;
+        // reported in nanoseconds like the other execution times
+        rowValues[columnNameToIndex.get("P95_EXECUTION_TIME")] =
+                executionTimeHistogram.getValueAtPercentile(0.95) * 1000;
+        rowValues[columnNameToIndex.get("P99_EXECUTION_TIME")] =
+                executionTimeHistogram.getValueAtPercentile(0.99) * 1000;
     }
 
     /**
@@ -314,6 +337,8 @@ class ProcedureStatsCollector extends SiteStatsSource {
         columns.add(new VoltTable.ColumnInfo("AVG_PARAMETER_SET_SIZE", VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo("ABORTS", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("FAILURES", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P95_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P99_EXECUTION_TIME", VoltType.BIGINT));
     }
 
     @Override
@@ -89,14 +89,17 @@ import org.voltdb.catalog.Database;
 import org.voltdb.compiler.AdHocCompilerCache;
 import org.voltdb.compiler.AsyncCompilerAgent;
 import org.voltdb.compiler.ClusterConfig;
+import org.voltdb.compiler.PlannerTool;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.compiler.deploymentfile.HeartbeatType;
 import org.voltdb.compiler.deploymentfile.SecurityType;
+import org.voltdb.compiler.deploymentfile.SystemSettingsType;
 import org.voltdb.compiler.deploymentfile.UsersType;
 import org.voltdb.dtxn.InitiatorStats;
 import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
+import org.voltdb.export.ExportStats;
 import org.voltdb.fault.FaultDistributor;
 import org.voltdb.fault.FaultDistributorInterface;
 import org.voltdb.fault.SiteFailureFault;
@@ -105,6 +108,8 @@ import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Initiator;
 import org.voltdb.iv2.LeaderAppointer;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.MpRoSitePool;
+import org.voltdb.iv2.SiteTaskerQueue;
 import org.voltdb.iv2.SpInitiator;
 import org.voltdb.iv2.TxnEgo;
 import org.voltdb.licensetool.LicenseApi;
@@ -566,6 +571,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             m_initiatorStats = new InitiatorStats(m_myHostId);
             m_liveClientsStats = new LiveClientsStats();
             getStatsAgent().registerStatsSource(StatsSelector.LIVECLIENTS, 0, m_liveClientsStats);
+            getStatsAgent().registerStatsSource(StatsSelector.EXPORT, 0, new ExportStats());
             m_latencyStats = new LatencyStats(m_myHostId);
 
             /*
@@ -985,9 +991,109 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
                 SystemStatsCollector.asyncSampleSystemNow(true, true);
             }
         }, 0, 6, TimeUnit.MINUTES);
+
+        // planner row count estimates
+        scheduleWork(new Runnable() {
+            @Override
+            public void run() {
+                PlannerTool.updateEstimatesFromStatistics(getStatsAgent());
+            }
+        }, 1, 1, TimeUnit.MINUTES);
         GCInspector.instance.start(m_periodicPriorityWorkThread);
     }
 
+    /**
+     * The mesh is built before the deployment is shared through ZooKeeper, so the number
+     * of connections to open to each host comes from the local deployment file if there is one.
+     */
+    static int readConnectionsPerHost(String pathToDeployment) {
+        byte deploymentBytes[] = null;
+        try {
+            deploymentBytes = org.voltcore.utils.CoreUtils.urlToBytes(pathToDeployment);
+        } catch (RuntimeException e) {
+            hostLog.info("No local deployment file, opening one connection to each host");
+        }
+        if (deploymentBytes == null) {
+            return 1;
+        }
+        DeploymentType deployment = CatalogUtil.getDeployment(new ByteArrayInputStream(deploymentBytes));
+        if (deployment == null ||
+                deployment.getSystemsettings() == null ||
+                deployment.getSystemsettings().getHostconnections() == null) {
+            return 1;
+        }
+        final int count = deployment.getSystemsettings().getHostconnections().getCount();
+        if (count < 1) {
+            VoltDB.crashLocalVoltDB("Error in deployment file, count attribute of hostconnections element " +
+                                    "must be at least 1 but was " + count, false, null);
+        }
+        if (count > 1) {
+            hostLog.info("Opening " + count + " connections to each host");
+        }
+        return count;
+    }
+
+    /**
+     * Apply the deployment's site task queue settings to the queues the initiators create.
+     */
+    static void configureSiteTaskerQueues(SystemSettingsType systemSettings) {
+        if (systemSettings == null || systemSettings.getSitequeue() == null) {
+            return;
+        }
+        final SystemSettingsType.Sitequeue sitequeue = systemSettings.getSitequeue();
+        final String typeSetting = sitequeue.getType().trim().toUpperCase();
+        SiteTaskerQueue.QueueType type;
+        try {
+            type = SiteTaskerQueue.QueueType.valueOf(typeSetting);
+        } catch (IllegalArgumentException e) {
+            VoltDB.crashLocalVoltDB("Error in deployment file, type attribute of sitequeue element " +
+                                    "must be 'linked' or 'ring' but was '" + sitequeue.getType() + "'", false, null);
+            return;
+        }
+        final String waitSetting = sitequeue.getWaitstrategy().trim().toUpperCase();
+        SiteTaskerQueue.WaitStrategy waitStrategy;
+        try {
+            waitStrategy = SiteTaskerQueue.WaitStrategy.valueOf(waitSetting);
+        } catch (IllegalArgumentException e) {
+            VoltDB.crashLocalVoltDB("Error in deployment file, waitstrategy attribute of sitequeue element " +
+                                    "must be 'park', 'spin', 'yield' or 'adaptive' but was '" +
+                                    sitequeue.getWaitstrategy() + "'", false, null);
+            return;
+        }
+        try {
+            SiteTaskerQueue.setDefaultConfiguration(type, sitequeue.getCapacity(), sitequeue.getDrainbatch());
+            SiteTaskerQueue.setDefaultWaitStrategy(waitStrategy, sitequeue.getSpinlimit());
+        } catch (IllegalArgumentException e) {
+            VoltDB.crashLocalVoltDB("Error in deployment file, " + e.getMessage(), false, null);
+            return;
+        }
+        hostLog.info("Site task queues are " + typeSetting +
+                     (type == SiteTaskerQueue.QueueType.RING ? " with capacity " + sitequeue.getCapacity() : "") +
+                     ", draining up to " + sitequeue.getDrainbatch() + " tasks at a time" +
+                     ", idle sites " + waitSetting +
+                     (waitStrategy == SiteTaskerQueue.WaitStrategy.PARK ? "" :
+                         " with a spin limit of " + sitequeue.getSpinlimit()));
+    }
+
+    /**
+     * Apply the deployment's setting for the number of sites the MPI runs read-only
+     * transactions on.
+     */
+    static void configureMpReadPool(SystemSettingsType systemSettings) {
+        if (systemSettings == null || systemSettings.getMpreadpool() == null) {
+            return;
+        }
+        final int size = systemSettings.getMpreadpool().getSize();
+        try {
+            MpRoSitePool.setDefaultPoolSize(size);
+        } catch (IllegalArgumentException e) {
+            VoltDB.crashLocalVoltDB("Error in deployment file, size attribute of mpreadpool element " +
+                                    "must not be negative but was " + size, false, null);
+            return;
+        }
+        hostLog.info("Multi-partition read-only transactions run on " + size + " sites");
+    }
+
     int readDeploymentAndCreateStarterCatalogContext() {
         /*
          * Debate with the cluster what the deployment file should be
@@ -1050,6 +1156,9 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
                                         "'enabled' or 'disabled' but was '" + elasticSetting + "'", false, null);
             }
 
+            configureSiteTaskerQueues(m_deployment.getSystemsettings());
+            configureMpReadPool(m_deployment.getSystemsettings());
+
 
             // create a dummy catalog to load deployment info into
             Catalog catalog = new Catalog();
@@ -1212,6 +1321,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
         hmconfig.deadHostTimeout = m_config.m_deadHostTimeoutMS;
         hmconfig.factory = new VoltDbMessageFactory();
         hmconfig.coreBindIds = m_config.m_networkCoreBindings;
+        hmconfig.connectionsPerHost = readConnectionsPerHost(m_config.m_pathToDeployment);
 
         m_messenger = new org.voltcore.messaging.HostMessenger(hmconfig);
 
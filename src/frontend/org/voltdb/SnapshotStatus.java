@@ -39,9 +39,16 @@ public class SnapshotStatus extends StatsSource {
         private final List<Pair<Snapshot, Table>> m_snapshots;
         private final Iterator<Pair<Snapshot, Table>> m_iter;
 
-        private StatusIterator(Iterator<Snapshot> i) {
+        private StatusIterator(Iterator<Snapshot> snapshots, Iterator<Snapshot> restores) {
             m_snapshots = new LinkedList<Pair<Snapshot, Table>>();
 
+            flatten(snapshots);
+            flatten(restores);
+
+            m_iter = m_snapshots.iterator();
+        }
+
+        private void flatten(Iterator<Snapshot> i) {
             while (i.hasNext()) {
                 final Snapshot s = i.next();
                 s.iterateTables(new Snapshot.TableIterator() {
@@ -51,8 +58,6 @@ public class SnapshotStatus extends StatsSource {
                     }
                 });
             }
-
-            m_iter = m_snapshots.iterator();
         }
 
         @Override
@@ -104,6 +109,12 @@ public class SnapshotStatus extends StatsSource {
             duration =
                 (s.timeFinished - timeStarted) / 1000.0;
             throughput = (s.bytesWritten / (1024.0 * 1024.0)) / duration;
+        } else {
+            // Still running, report progress so far
+            duration = (System.currentTimeMillis() - timeStarted) / 1000.0;
+            if (duration > 0) {
+                throughput = (s.bytesSoFar() / (1024.0 * 1024.0)) / duration;
+            }
         }
 
         rowValues[columnNameToIndex.get("TABLE")] = t.name;
@@ -116,13 +127,26 @@ public class SnapshotStatus extends StatsSource {
         rowValues[columnNameToIndex.get("SIZE")] = t.size;
         rowValues[columnNameToIndex.get("DURATION")] = duration;
         rowValues[columnNameToIndex.get("THROUGHPUT")] = throughput;
-        rowValues[columnNameToIndex.get("RESULT")] = t.error == null ? "SUCCESS" : "FAILURE";
+        rowValues[columnNameToIndex.get("RESULT")] = s.isRestore ? restoreResult(s) :
+            (t.error == null ? "SUCCESS" : "FAILURE");
         super.updateStatsRow(rowKey, rowValues);
     }
 
+    /*
+     * Restore rows are reported as RESTORE <outcome> so they can't be mistaken
+     * for a snapshot of the nonce they were restored from
+     */
+    private static String restoreResult(Snapshot s) {
+        if (s.timeFinished == 0) {
+            return "RESTORE IN PROGRESS";
+        }
+        return s.result ? "RESTORE SUCCESS" : "RESTORE FAILURE";
+    }
+
     @Override
     protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
-        return new StatusIterator(SnapshotRegistry.getSnapshotHistory().iterator());
+        return new StatusIterator(SnapshotRegistry.getSnapshotHistory().iterator(),
+                                  SnapshotRegistry.getRestoreHistory().iterator());
     }
 
 }
@@ -50,7 +50,18 @@ public class StarvationTracker extends SiteStatsSource {
     private long m_min = Long.MAX_VALUE;
     private long m_lastMin = Long.MAX_VALUE;
 
+    /*
+     * Starved time split into time the site spent spinning (or yielding) on its queue
+     * and time it spent parked in it
+     */
+    private long m_spinTime = 0;
+    private long m_lastSpinTime = 0;
+    private long m_parkedTime = 0;
+    private long m_lastParkedTime = 0;
+
     private long m_starvationStartTime;
+    private long m_parkStartTime;
+    private boolean m_parked = false;
 
     private boolean m_interval;
 
@@ -66,14 +77,33 @@ public class StarvationTracker extends SiteStatsSource {
         m_starvationStartTime = System.nanoTime();
     }
 
+    /**
+     * The site stopped spinning and is about to block until work arrives
+     */
+    public void beginParking() {
+        if (!m_starved || m_parked) {
+            return;
+        }
+        m_parked = true;
+        m_parkStartTime = System.nanoTime();
+    }
+
     public void endStarvation() {
         if (!m_starved) {
             return;
         }
         m_starved = false;
         m_count++;
-        long delta = System.nanoTime() - m_starvationStartTime;
+        final long now = System.nanoTime();
+        long delta = now - m_starvationStartTime;
         m_totalTime += delta;
+        if (m_parked) {
+            m_parked = false;
+            m_parkedTime += now - m_parkStartTime;
+            m_spinTime += m_parkStartTime - m_starvationStartTime;
+        } else {
+            m_spinTime += delta;
+        }
         m_sumOfSquares += delta * delta / 1000000;
         m_max = Math.max(m_max, delta);
         m_lastMax = Math.max(m_lastMax, delta);
@@ -90,6 +120,8 @@ public class StarvationTracker extends SiteStatsSource {
         columns.add(new ColumnInfo("MIN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
         columns.add(new ColumnInfo("STDDEV", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SPIN_PERCENT", VoltType.FLOAT));
+        columns.add(new ColumnInfo("PARK_PERCENT", VoltType.FLOAT));
     }
 
     @Override
@@ -101,7 +133,11 @@ public class StarvationTracker extends SiteStatsSource {
             final long totalStarvedTime = m_totalTime - m_lastTotalTime;
             final long sumOfSquares = m_sumOfSquares - m_lastSumOfSquares;
             final long uSecs = totalStarvedTime / 1000;
+            final long spinTime = m_spinTime - m_lastSpinTime;
+            final long parkedTime = m_parkedTime - m_lastParkedTime;
             m_lastStartTime = now;
+            m_lastSpinTime = m_spinTime;
+            m_lastParkedTime = m_parkedTime;
             m_lastSumOfSquares = m_sumOfSquares;
             m_lastTotalTime = m_totalTime;
             m_lastCount = m_count;
@@ -114,6 +150,8 @@ public class StarvationTracker extends SiteStatsSource {
                 rowValues[columnNameToIndex.get("MIN")] = m_lastMin;
                 rowValues[columnNameToIndex.get("MAX")] = m_lastMax;
                 rowValues[columnNameToIndex.get("STDDEV")] = (long)Math.sqrt(sumOfSquares / count - uSecs * uSecs);
+                rowValues[columnNameToIndex.get("SPIN_PERCENT")] = spinTime / (totalTime / 100.0);
+                rowValues[columnNameToIndex.get("PARK_PERCENT")] = parkedTime / (totalTime / 100.0);
             } else {
                 rowValues[columnNameToIndex.get("COUNT")] = 0L;
                 rowValues[columnNameToIndex.get("PERCENT")] = 0L;
@@ -121,6 +159,8 @@ public class StarvationTracker extends SiteStatsSource {
                 rowValues[columnNameToIndex.get("MIN")] = 0L;
                 rowValues[columnNameToIndex.get("MAX")] = 0L;
                 rowValues[columnNameToIndex.get("STDDEV")] = 0L;
+                rowValues[columnNameToIndex.get("SPIN_PERCENT")] = 0L;
+                rowValues[columnNameToIndex.get("PARK_PERCENT")] = 0L;
             }
         } else {
             final long totalTime = System.nanoTime() - m_startTime;
@@ -132,6 +172,8 @@ public class StarvationTracker extends SiteStatsSource {
                 rowValues[columnNameToIndex.get("MIN")] = m_min;
                 rowValues[columnNameToIndex.get("MAX")] = m_max;
                 rowValues[columnNameToIndex.get("STDDEV")] = (long)Math.sqrt(m_sumOfSquares / m_count - uSecs * uSecs);
+                rowValues[columnNameToIndex.get("SPIN_PERCENT")] = m_spinTime / (totalTime / 100.0);
+                rowValues[columnNameToIndex.get("PARK_PERCENT")] = m_parkedTime / (totalTime / 100.0);
             }
             else {
                 rowValues[columnNameToIndex.get("COUNT")] = 0L;
@@ -140,6 +182,8 @@ public class StarvationTracker extends SiteStatsSource {
                 rowValues[columnNameToIndex.get("MIN")] = 0L;
                 rowValues[columnNameToIndex.get("MAX")] = 0L;
                 rowValues[columnNameToIndex.get("STDDEV")] = 0L;
+                rowValues[columnNameToIndex.get("SPIN_PERCENT")] = 0L;
+                rowValues[columnNameToIndex.get("PARK_PERCENT")] = 0L;
             }
         }
         super.updateStatsRow(rowKey, rowValues);
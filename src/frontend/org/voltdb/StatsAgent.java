@@ -255,6 +255,9 @@ public class StatsAgent extends OpsAgent
             case SNAPSHOTSTATUS:
                 stats = collectSnapshotStatusStats();
                 break;
+            case EXPORT:
+                stats = collectExportStats();
+                break;
             case MEMORY:
                 stats = collectMemoryStats(interval);
                 break;
@@ -264,6 +267,9 @@ public class StatsAgent extends OpsAgent
             case INITIATOR:
                 stats = collectInitiatorStats(interval);
                 break;
+            case INITIATORQUEUE:
+                stats = collectInitiatorQueueStats(interval);
+                break;
             case TABLE:
                 stats = collectTableStats(interval);
                 break;
@@ -353,6 +359,19 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private VoltTable[] collectExportStats()
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable eStats = getStatsAggregate(StatsSelector.EXPORT, false, now);
+        if (eStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = eStats;
+        }
+        return stats;
+    }
+
     private VoltTable[] collectMemoryStats(boolean interval)
     {
         Long now = System.currentTimeMillis();
@@ -392,6 +411,19 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private VoltTable[] collectInitiatorQueueStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable qStats = getStatsAggregate(StatsSelector.INITIATORQUEUE, interval, now);
+        if (qStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = qStats;
+        }
+        return stats;
+    }
+
     private VoltTable[] collectTableStats(boolean interval)
     {
         Long now = System.currentTimeMillis();
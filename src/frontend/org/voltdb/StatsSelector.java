@@ -22,6 +22,7 @@ public enum StatsSelector {
     PROCEDURE,        // invoked as @stat procedure
     STARVATION,
     INITIATOR,        // invoked as @stat initiator
+    INITIATORQUEUE,   // invoked as @stat initiatorqueue
     LATENCY,          // invoked as @stat latency
     PARTITIONCOUNT,
     IOSTATS,
@@ -31,6 +32,7 @@ public enum StatsSelector {
     MANAGEMENT,       // Returns pretty much everything
     PROCEDUREPROFILE, // performs an aggregation of the procedure statistics
     SNAPSHOTSTATUS,
+    EXPORT,           // backlog of each export data source on this node
 
     /*
      * DRPARTITION and DRNODE are internal names
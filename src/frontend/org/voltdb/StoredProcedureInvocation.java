@@ -64,6 +64,12 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
         returned to the client in the ClientResponse */
     long clientHandle = -1;
 
+    /*
+     * Rows per chunk when the client asked for large results to be streamed
+     * back as a sequence of partial responses, 0 for a single response.
+     */
+    int fetchSize = 0;
+
     public StoredProcedureInvocation getShallowCopy()
     {
         StoredProcedureInvocation copy = new StoredProcedureInvocation();
@@ -73,6 +79,7 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
         copy.procName = procName;
         copy.originalTxnId = originalTxnId;
         copy.originalUniqueId = originalUniqueId;
+        copy.fetchSize = fetchSize;
         if (serializedParams != null)
         {
             copy.serializedParams = serializedParams.duplicate();
@@ -160,6 +167,24 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
         return clientHandle;
     }
 
+    public void setFetchSize(int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Fetch size must not be negative: " + rows);
+        }
+        fetchSize = rows;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    private byte getVersionByte() {
+        if (fetchSize > 0) {
+            return (byte) (type.getValue() | ProcedureInvocationType.STREAMED_RESULTS_FLAG);
+        }
+        return type.getValue();
+    }
+
     /** Read into an serialized parameter buffer to extract a single parameter */
     Object getParameterAtIndex(int partitionIndex) {
         try {
@@ -187,6 +212,11 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
                     8; // original timestamp for WAN replication procedures
         }
 
+        if (fetchSize > 0)
+        {
+            size += 4; // rows per chunk for streamed results
+        }
+
         if (serializedParams != null)
         {
             size += serializedParams.remaining();
@@ -211,11 +241,14 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
     {
         assert(!((params == null) && (serializedParams == null)));
         assert((params != null) || (serializedParams != null));
-        buf.put(type.getValue()); //version and type, version is currently 0
+        buf.put(getVersionByte()); //version and type, version is currently 0
         if (type == ProcedureInvocationType.REPLICATED) {
             buf.putLong(originalTxnId);
             buf.putLong(originalUniqueId);
         }
+        if (fetchSize > 0) {
+            buf.putInt(fetchSize);
+        }
         buf.putInt(procName.length());
         buf.put(procName.getBytes());
         buf.putLong(clientHandle);
@@ -266,6 +299,9 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
             originalTxnId = in.readLong();
             originalUniqueId = in.readLong();
         }
+        if ((version & ProcedureInvocationType.STREAMED_RESULTS_FLAG) != 0) {
+            fetchSize = in.readInt();
+        }
 
         procName = in.readString().intern();
         clientHandle = in.readLong();
@@ -295,6 +331,9 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
             originalTxnId = in.readLong();
             originalUniqueId = in.readLong();
         }
+        if ((version & ProcedureInvocationType.STREAMED_RESULTS_FLAG) != 0) {
+            fetchSize = in.readInt();
+        }
 
         procName = in.readString().intern();
         clientHandle = in.readLong();
@@ -314,11 +353,14 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
     public void writeExternal(FastSerializer out) throws IOException {
         assert(!((params == null) && (serializedParams == null)));
         assert((params != null) || (serializedParams != null));
-        out.write(type.getValue());//version and type, version is currently 0
+        out.write(getVersionByte());//version and type, version is currently 0
         if (type == ProcedureInvocationType.REPLICATED) {
             out.writeLong(originalTxnId);
             out.writeLong(originalUniqueId);
         }
+        if (fetchSize > 0) {
+            out.writeInt(fetchSize);
+        }
         out.writeString(procName);
         out.writeLong(clientHandle);
         if (serializedParams != null)
@@ -343,6 +385,9 @@ public class StoredProcedureInvocation implements FastSerializable, JSONString {
         retval += " clientHandle=" + String.valueOf(clientHandle);
         retval += " originalTxnId=" + String.valueOf(originalTxnId);
         retval += " originalUniqueId=" + String.valueOf(originalUniqueId);
+        if (fetchSize > 0) {
+            retval += " fetchSize=" + String.valueOf(fetchSize);
+        }
 
         return retval;
     }
@@ -97,6 +97,7 @@ public abstract class TheHashinator {
     abstract protected Map<Long, Integer> pPredecessors(int partition);
     abstract protected Pair<Long, Integer> pPredecessor(int partition, long token);
     abstract protected Map<Long, Long> pGetRanges(int partition);
+    abstract protected HashinatorType pGetConfigurationType();
 
     /**
      * Given a long value, pick a partition to store the data. It's only called for legacy
@@ -133,26 +134,41 @@ public abstract class TheHashinator {
      * @return The id of the partition desired.
      */
     public static int hashToPartition(Object obj) {
-        HashinatorType type = getConfiguredHashinatorType();
+        return hashToPartition(instance.get().getSecond(), getConfiguredHashinatorType(), obj);
+    }
+
+    /**
+     * Map an object to a partition using this hashinator rather than the process wide instance.
+     * The hash function is selected by the type of this hashinator, not by the locally configured
+     * type, so a client can route with whatever hashinator the cluster is running.
+     * @param obj The object to be mapped to a partition.
+     * @return The id of the partition desired.
+     */
+    public int getHashedPartitionForParameter(Object obj) {
+        return hashToPartition(this, pGetConfigurationType(), obj);
+    }
+
+    private static int hashToPartition(TheHashinator hashinator, HashinatorType type, Object obj) {
         if (type == HashinatorType.LEGACY) {
             // Annoying, legacy hashes numbers and bytes differently, need to preserve that.
             if (obj == null || VoltType.isNullVoltType(obj)) {
                 return 0;
             } else if (obj instanceof Long) {
                 long value = ((Long) obj).longValue();
-                return hashinateLong(value);
+                return hashinator.pHashinateLong(value);
             } else if (obj instanceof Integer) {
                 long value = ((Integer)obj).intValue();
-                return hashinateLong(value);
+                return hashinator.pHashinateLong(value);
             } else if (obj instanceof Short) {
                 long value = ((Short)obj).shortValue();
-                return hashinateLong(value);
+                return hashinator.pHashinateLong(value);
             } else if (obj instanceof Byte) {
                 long value = ((Byte)obj).byteValue();
-                return hashinateLong(value);
+                return hashinator.pHashinateLong(value);
             }
         }
-        return hashinateBytes(valueToBytes(obj));
+        byte bytes[] = valueToBytes(obj);
+        return bytes == null ? 0 : hashinator.pHashinateBytes(bytes);
     }
 
     /**
@@ -1428,6 +1428,46 @@ public final class VoltTable extends VoltTableRow implements FastSerializable, J
         return cloned;
     }
 
+    /**
+     * Walk the row length prefixes to find where a run of rows ends.
+     *
+     * @param offset Buffer offset of the first row's length prefix.
+     * @param rowCount Number of rows to skip.
+     * @return Buffer offset just past the last skipped row.
+     */
+    final int skipRows(int offset, int rowCount) {
+        for (int i = 0; i < rowCount; i++) {
+            offset += m_buffer.getInt(offset) + ROW_HEADER_SIZE;
+        }
+        assert(offset <= m_buffer.limit());
+        return offset;
+    }
+
+    /**
+     * Copy a contiguous run of rows into a new read-only table with the same schema.
+     * The offsets are those of the row length prefixes, as returned by
+     * {@link #skipRows(int, int)}; the first row is at getRowStart() + 4.
+     *
+     * @param startOffset Buffer offset of the first row to copy.
+     * @param endOffset Buffer offset just past the last row to copy.
+     * @param rowCount Number of rows between the two offsets.
+     * @return A new table holding only the given rows.
+     */
+    final VoltTable copyRows(int startOffset, int endOffset, int rowCount) {
+        assert(startOffset >= m_rowStart + 4 && endOffset <= m_buffer.limit());
+        ByteBuffer copy = ByteBuffer.allocate(m_rowStart + 4 + endOffset - startOffset);
+        ByteBuffer dup = m_buffer.duplicate();
+        dup.position(0);
+        dup.limit(m_rowStart);
+        copy.put(dup);
+        copy.putInt(rowCount);
+        dup.limit(endOffset);
+        dup.position(startOffset);
+        copy.put(dup);
+        copy.flip();
+        return new VoltTable(copy, true);
+    }
+
     boolean testForUTF8Encoding(byte strbytes[]) {
         try {
             // this doesn't prove definitively that the string is UTF-8
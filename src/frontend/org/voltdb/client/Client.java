@@ -121,6 +121,33 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * Asynchronously invoke a batch of procedures. Invocations bound for the same connection are
+     * serialized into one buffer and queued with a single network write. If there is backpressure
+     * this call will block until the whole batch is queued. If configureBlocking(false) is invoked
+     * then it will return immediately, and either all or none of the batch will have been queued.
+     * @param batch Invocations and their callbacks. The batch can be cleared and reused after this returns.
+     * @return <code>true</code> if the batch was queued and <code>false</code> otherwise
+     */
+    public boolean callProceduresBatch(ProcedureCallBatch batch)
+    throws IOException, NoConnectionsException;
+
+    /**
+     * Asynchronously invoke a procedure and have large results streamed back in chunks of
+     * at most fetchSize rows, so that no single response frame holds the whole result and
+     * the client can consume rows as they arrive. The server still serializes the whole
+     * result at once. Backpressure is handled as in {@link #callProcedure(ProcedureCallback, String, Object...)}.
+     * Requires a server that supports streamed results.
+     * @param callback StreamingProcedureCallback that will be invoked with the chunks and the final response.
+     * @param fetchSize Maximum number of rows delivered per chunk, must be positive.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return <code>true</code> if the procedure was queued and <code>false</code> otherwise
+     */
+    public boolean callProcedureStreamed(StreamingProcedureCallback callback, int fetchSize,
+            String procName, Object... parameters)
+    throws IOException, NoConnectionsException;
+
     /**
      * Deprecated because hinting at the serialized size no longer has any effect
      *
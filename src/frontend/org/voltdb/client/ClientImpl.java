@@ -22,6 +22,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -287,6 +288,75 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         return private_callProcedure(callback, 0, invocation);
     }
 
+    @Override
+    public final boolean callProceduresBatch(ProcedureCallBatch batch)
+            throws IOException, NoConnectionsException {
+        if (m_isShutdown) {
+            return false;
+        }
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        final int size = batch.size();
+        final List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>(size);
+        final List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>(size);
+        for (int i = 0; i < size; i++) {
+            ProcedureCallback callback = batch.m_callbacks.get(i);
+            final Object parameters[] = batch.m_parameters.get(i);
+            if (callback == null) {
+                callback = new NullCallback();
+            } else if (callback instanceof ProcedureArgumentCacher) {
+                ((ProcedureArgumentCacher)callback).setArgs(parameters);
+            }
+            invocations.add(new ProcedureInvocation(m_handle.getAndIncrement(), batch.m_procNames.get(i), parameters));
+            callbacks.add(callback);
+        }
+
+        //Blessed threads (the ones that invoke callbacks) are not subject to backpressure
+        boolean isBlessed = m_blessedThreadIds.contains(Thread.currentThread().getId());
+        if (m_blockingQueue) {
+            while (!m_distributer.queueBatch(
+                    invocations,
+                    callbacks,
+                    isBlessed)) {
+                try {
+                    backpressureBarrier();
+                } catch (InterruptedException e) {
+                    throw new java.io.InterruptedIOException("Interrupted while invoking procedures asynchronously");
+                }
+            }
+            return true;
+        } else {
+            return m_distributer.queueBatch(
+                    invocations,
+                    callbacks,
+                    isBlessed);
+        }
+    }
+
+    @Override
+    public final boolean callProcedureStreamed(
+            StreamingProcedureCallback callback,
+            int fetchSize,
+            String procName,
+            Object... parameters)
+            throws IOException, NoConnectionsException {
+        if (callback == null) {
+            throw new IllegalArgumentException("A streamed invocation needs a callback for its rows");
+        }
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+        }
+        if (callback instanceof ProcedureArgumentCacher) {
+            ((ProcedureArgumentCacher)callback).setArgs(parameters);
+        }
+        ProcedureInvocation invocation =
+            new ProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
+        invocation.setFetchSize(fetchSize);
+        return private_callProcedure(callback, 0, invocation);
+    }
+
     @Override
     public int calculateInvocationSerializedSize(String procName,
             Object... parameters) {
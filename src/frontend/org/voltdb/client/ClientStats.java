@@ -21,6 +21,7 @@ import java.util.Date;
 import java.util.Iterator;
 
 import org.voltdb.LatencyBucketSet;
+import org.voltdb.LatencyHistogram;
 
 /**
  * <p>Essentially a set of counters for a specific context with helper
@@ -52,7 +53,7 @@ public class ClientStats {
     // cumulative latency measured by client, used to calculate avg. lat.
     long m_roundTripTime; // microsecs
     // cumulative latency measured by the cluster, used to calculate avg lat.
-    long m_clusterRoundTripTime; // microsecs
+    long m_clusterRoundTripTime; // millisecs
 
     /** The number of buckets tracking latency with 1ms granularity. */
     final public static int ONE_MS_BUCKET_COUNT = 50;
@@ -61,9 +62,13 @@ public class ClientStats {
     /** The number of buckets tracking latency with 100ms granularity. */
     final public static int HUNDRED_MS_BUCKET_COUNT = 10;
 
-    LatencyBucketSet m_latencyBy1ms;
-    LatencyBucketSet m_latencyBy10ms;
-    LatencyBucketSet m_latencyBy100ms;
+    /** The number of significant decimal digits tracked by the latency histogram. */
+    final public static int LATENCY_SIGNIFICANT_DIGITS = 2;
+    /** The highest latency, in microseconds, the histogram tracks without clamping. */
+    final public static long HIGHEST_TRACKABLE_LATENCY_MICROS = 10L * 60 * 1000 * 1000; // 10 minutes
+
+    // client round trip latencies in microseconds
+    LatencyHistogram m_latencyHistogram;
 
     long m_bytesSent;
     long m_bytesReceived;
@@ -77,9 +82,7 @@ public class ClientStats {
         m_endTS = Long.MIN_VALUE;
         m_invocationsCompleted = m_invocationAborts = m_invocationErrors = 0;
         m_roundTripTime = m_clusterRoundTripTime = 0;
-        m_latencyBy1ms = new LatencyBucketSet(1, ONE_MS_BUCKET_COUNT);
-        m_latencyBy10ms = new LatencyBucketSet(10, TEN_MS_BUCKET_COUNT);
-        m_latencyBy100ms = new LatencyBucketSet(100, HUNDRED_MS_BUCKET_COUNT);
+        m_latencyHistogram = new LatencyHistogram(HIGHEST_TRACKABLE_LATENCY_MICROS, LATENCY_SIGNIFICANT_DIGITS);
         m_bytesSent = m_bytesReceived = 0;
     }
 
@@ -95,9 +98,7 @@ public class ClientStats {
         m_invocationErrors = other.m_invocationErrors;
         m_roundTripTime = other.m_roundTripTime;
         m_clusterRoundTripTime = other.m_clusterRoundTripTime;
-        m_latencyBy1ms = (LatencyBucketSet) other.m_latencyBy1ms.clone();
-        m_latencyBy10ms = (LatencyBucketSet) other.m_latencyBy10ms.clone();
-        m_latencyBy100ms = (LatencyBucketSet) other.m_latencyBy100ms.clone();
+        m_latencyHistogram = (LatencyHistogram) other.m_latencyHistogram.clone();
         m_bytesSent = other.m_bytesSent;
         m_bytesReceived = other.m_bytesReceived;
     }
@@ -125,9 +126,7 @@ public class ClientStats {
         retval.m_roundTripTime = newer.m_roundTripTime - older.m_roundTripTime;
         retval.m_clusterRoundTripTime = newer.m_clusterRoundTripTime - older.m_clusterRoundTripTime;
 
-        retval.m_latencyBy1ms = LatencyBucketSet.diff(newer.m_latencyBy1ms, older.m_latencyBy1ms);
-        retval.m_latencyBy10ms = LatencyBucketSet.diff(newer.m_latencyBy10ms, older.m_latencyBy10ms);
-        retval.m_latencyBy100ms = LatencyBucketSet.diff(newer.m_latencyBy100ms, older.m_latencyBy100ms);
+        retval.m_latencyHistogram = LatencyHistogram.diff(newer.m_latencyHistogram, older.m_latencyHistogram);
 
         retval.m_bytesSent = newer.m_bytesSent - older.m_bytesSent;
         retval.m_bytesReceived = newer.m_bytesReceived - older.m_bytesReceived;
@@ -174,25 +173,24 @@ public class ClientStats {
         m_roundTripTime += other.m_roundTripTime;
         m_clusterRoundTripTime += other.m_clusterRoundTripTime;
 
-        m_latencyBy1ms.add(other.m_latencyBy1ms);
-        m_latencyBy10ms.add(other.m_latencyBy10ms);
-        m_latencyBy100ms.add(other.m_latencyBy100ms);
+        m_latencyHistogram.add(other.m_latencyHistogram);
 
         m_bytesSent += other.m_bytesSent;
         m_bytesReceived += other.m_bytesReceived;
     }
 
-    void update(int roundTripTime, int clusterRoundTripTime, boolean abort, boolean error) {
+    /**
+     * @param roundTripTimeMicros client measured round trip in microseconds
+     * @param clusterRoundTripTime cluster measured round trip in milliseconds
+     */
+    void update(long roundTripTimeMicros, int clusterRoundTripTime, boolean abort, boolean error) {
         m_invocationsCompleted++;
         if (abort) m_invocationAborts++;
         if (error) m_invocationErrors++;
-        m_roundTripTime += roundTripTime;
+        m_roundTripTime += roundTripTimeMicros;
         m_clusterRoundTripTime += clusterRoundTripTime;
 
-        // calculate the latency buckets to increment and increment.
-        m_latencyBy1ms.update(roundTripTime);
-        m_latencyBy10ms.update(roundTripTime);
-        m_latencyBy100ms.update(roundTripTime);
+        m_latencyHistogram.recordValue(roundTripTimeMicros);
     }
 
     /**
@@ -309,7 +307,7 @@ public class ClientStats {
      */
     public double getAverageLatency() {
         if (m_invocationsCompleted == 0) return 0;
-        return (double)m_roundTripTime / (double)m_invocationsCompleted;
+        return (double)m_roundTripTime / 1000.0 / (double)m_invocationsCompleted;
     }
 
     /**
@@ -343,7 +341,7 @@ public class ClientStats {
      * @return An array containing counts for different latency values.
      */
     public long[] getLatencyBucketsBy1ms() {
-        return m_latencyBy1ms.buckets.clone();
+        return latencyBuckets(1, ONE_MS_BUCKET_COUNT).buckets;
     }
 
     /**
@@ -360,7 +358,7 @@ public class ClientStats {
      * @return An array containing counts for different latency values.
      */
     public long[] getLatencyBucketsBy10ms() {
-        return m_latencyBy10ms.buckets.clone();
+        return latencyBuckets(10, TEN_MS_BUCKET_COUNT).buckets;
     }
 
     /**
@@ -377,7 +375,41 @@ public class ClientStats {
      * @return An array containing counts for different latency values.
      */
     public long[] getLatencyBucketsBy100ms() {
-        return m_latencyBy100ms.buckets.clone();
+        return latencyBuckets(100, HUNDRED_MS_BUCKET_COUNT).buckets;
+    }
+
+    /**
+     * <p>Get a copy of the histogram of client measured round trip latencies, in
+     * microseconds, for the time period covered by this stats instance. The
+     * histogram tracks {@link LATENCY_SIGNIFICANT_DIGITS} significant digits up to
+     * {@link HIGHEST_TRACKABLE_LATENCY_MICROS}.</p>
+     *
+     * <p>Histograms from different stats instances can be combined with
+     * {@link LatencyHistogram#add(LatencyHistogram)}, and can be serialized with
+     * {@link LatencyHistogram#toCompactBytes()} to be merged elsewhere.</p>
+     *
+     * @return A latency histogram in microseconds.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return (LatencyHistogram) m_latencyHistogram.clone();
+    }
+
+    /**
+     * Bin the latency histogram into fixed-width millisecond buckets, as used by
+     * the legacy bucket accessors and the text histogram report.
+     */
+    LatencyBucketSet latencyBuckets(int msPerBucket, int numberOfBuckets) {
+        LatencyBucketSet lbs = new LatencyBucketSet(msPerBucket, numberOfBuckets);
+        long accounted = 0;
+        for (int i = 0; i < numberOfBuckets; i++) {
+            long lowMicros = i * msPerBucket * 1000L;
+            long highMicros = (i + 1) * msPerBucket * 1000L - 1;
+            lbs.buckets[i] = m_latencyHistogram.getCountBetweenValues(lowMicros, highMicros);
+            accounted += lbs.buckets[i];
+        }
+        lbs.totalTxns = m_latencyHistogram.getTotalCount();
+        lbs.unaccountedTxns = lbs.totalTxns - accounted;
+        return lbs;
     }
 
     /**
@@ -403,73 +435,67 @@ public class ClientStats {
     }
 
     /**
-     * <p>Using the latency bucketing statistics gathered by the client, estimate
+     * <p>Using the latency histogram gathered by the client, estimate
      * the k-percentile latency value for the time period covered by this stats
      * instance.</p>
      *
      * <p>For example, k=.5 returns an estimate of the median. k=0 returns the
      * minimum. k=1.0 returns the maximum.</p>
      *
-     * <p>The accuracy is limited by the precision of the buckets, and will have
-     * higher margin of error as courser sets of buckets are used. Small numbers
-     * of transactions in the period will also increase error. Finally, note that
-     * latency isn't tracked for transactions are outside values tracked by the
-     * largest set of buckets. If k=X implies latency greater than
-     * <code>{@link HUNDRED_MS_BUCKET_COUNT} * 100</code>, then it will return
-     * a number larger than <code>{@link HUNDRED_MS_BUCKET_COUNT} * 100</code>,
-     * but nothing more is promised.</p>
+     * <p>Latency is tracked in microseconds with {@link LATENCY_SIGNIFICANT_DIGITS}
+     * significant digits and rounded up to whole milliseconds here, so any
+     * non-zero latency under a millisecond is reported as 1. Use
+     * {@link kPercentileLatencyAsDouble(double)} for sub-millisecond precision.</p>
      *
      * @param percentile A floating point number between 0.0 and 1.0.
      * @return An estimate of k-percentile latency in whole milliseconds.
      */
     public int kPercentileLatency(double percentile) {
-        int kpl;
-
-        kpl = m_latencyBy1ms.kPercentileLatency(percentile);
-        if (kpl != Integer.MAX_VALUE) {
-            return kpl;
-        }
-
-        kpl = m_latencyBy10ms.kPercentileLatency(percentile);
-        if (kpl != Integer.MAX_VALUE) {
-            return kpl;
-        }
-
-        kpl = m_latencyBy100ms.kPercentileLatency(percentile);
-        if (kpl != Integer.MAX_VALUE) {
-            return kpl;
-        }
+        long micros = m_latencyHistogram.getValueAtPercentile(percentile);
+        return (int) Math.ceil(micros / 1000.0);
+    }
 
-        return m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets * 2;
+    /**
+     * <p>Like {@link kPercentileLatency(double)} but without rounding to
+     * whole milliseconds.</p>
+     *
+     * @param percentile A floating point number between 0.0 and 1.0.
+     * @return An estimate of k-percentile latency in milliseconds.
+     */
+    public double kPercentileLatencyAsDouble(double percentile) {
+        return m_latencyHistogram.getValueAtPercentile(percentile) / 1000.0;
     }
 
     public String latencyHistoReport() {
         StringBuilder sb = new StringBuilder();
+        LatencyBucketSet latencyBy1ms = latencyBuckets(1, ONE_MS_BUCKET_COUNT);
+        LatencyBucketSet latencyBy10ms = latencyBuckets(10, TEN_MS_BUCKET_COUNT);
+        LatencyBucketSet latencyBy100ms = latencyBuckets(100, HUNDRED_MS_BUCKET_COUNT);
 
         // for now, I believe 3 digit accuracy is enough
         int upper = kPercentileLatency(0.99999);
         int high = kPercentileLatency(0.99);
 
-        if(high <= m_latencyBy1ms.numberOfBuckets * m_latencyBy1ms.msPerBucket){
-            if(upper <= m_latencyBy1ms.numberOfBuckets * m_latencyBy1ms.msPerBucket) {
-                return m_latencyBy1ms.latencyHistoReport(upper);
+        if(high <= latencyBy1ms.numberOfBuckets * latencyBy1ms.msPerBucket){
+            if(upper <= latencyBy1ms.numberOfBuckets * latencyBy1ms.msPerBucket) {
+                return latencyBy1ms.latencyHistoReport(upper);
             } else {
                 // 99% are within the range, ignore 1% outliners for more accurate result
-                return m_latencyBy1ms.latencyHistoReport(high);
+                return latencyBy1ms.latencyHistoReport(high);
             }
-        } else if(upper <= m_latencyBy10ms.numberOfBuckets * m_latencyBy10ms.msPerBucket) {
-           return m_latencyBy10ms.latencyHistoReport(upper);
-        } else if(upper <= m_latencyBy100ms.numberOfBuckets * m_latencyBy100ms.msPerBucket) {
-            return m_latencyBy100ms.latencyHistoReport(upper);
+        } else if(upper <= latencyBy10ms.numberOfBuckets * latencyBy10ms.msPerBucket) {
+           return latencyBy10ms.latencyHistoReport(upper);
+        } else if(upper <= latencyBy100ms.numberOfBuckets * latencyBy100ms.msPerBucket) {
+            return latencyBy100ms.latencyHistoReport(upper);
         } else {
             // rare case; add one more bin to calculate percentile for txns with latency over 1000ms
-            sb.append(m_latencyBy100ms.latencyHistoReport(m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets));
-            sb.append(String.format(">%1-10sms:", m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets));
-            int height = (int)Math.ceil(m_latencyBy100ms.unaccountedTxns * m_latencyBy100ms.maxBinHeight / m_latencyBy100ms.totalTxns);
+            sb.append(latencyBy100ms.latencyHistoReport(latencyBy100ms.msPerBucket * latencyBy100ms.numberOfBuckets));
+            sb.append(String.format(">%1-10sms:", latencyBy100ms.msPerBucket * latencyBy100ms.numberOfBuckets));
+            int height = (int)Math.ceil(latencyBy100ms.unaccountedTxns * latencyBy100ms.maxBinHeight / latencyBy100ms.totalTxns);
             for(int i = 0; i < height; i++) {
                 sb.append("|");
             }
-            sb.append(String.format("]%7.3f%%\n", ((double)m_latencyBy100ms.unaccountedTxns / (double)m_latencyBy100ms.totalTxns * 100)));
+            sb.append(String.format("]%7.3f%%\n", ((double)latencyBy100ms.unaccountedTxns / (double)latencyBy100ms.totalTxns * 100)));
             return sb.toString();
         }
     }
@@ -555,11 +581,9 @@ public class ClientStats {
         sb.append(String.format("    invocations completed/aborted/errors: %d/%d/%d\n",
                 m_invocationsCompleted, m_invocationAborts, m_invocationErrors));
         if (m_invocationsCompleted > 0) {
-            sb.append(String.format("    avg latency client/internal: %d/%d\n",
-                    m_roundTripTime / m_invocationsCompleted, m_clusterRoundTripTime / m_invocationsCompleted));
-            sb.append(m_latencyBy1ms).append("\n");
-            sb.append(m_latencyBy10ms).append("\n");
-            sb.append(m_latencyBy100ms).append("\n");
+            sb.append(String.format("    avg latency client/internal: %.3f/%d\n",
+                    getAverageLatency(), m_clusterRoundTripTime / m_invocationsCompleted));
+            sb.append("    latency (us): ").append(m_latencyHistogram).append("\n");
         }
 
         return sb.toString();
@@ -30,8 +30,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -47,6 +49,7 @@ import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.Pair;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.JdbcDatabaseMetaDataGenerator;
@@ -60,6 +63,11 @@ import org.voltdb.iv2.MpInitiator;
 /**
  *   De/multiplexes transactions across a cluster
  *
+ *   The per-call path (queue, createWork and response handling) does not take the distributer
+ *   or connection monitors. Connection selection reads copy-on-write snapshots of the connection
+ *   list and the affinity maps, and outstanding calls are tracked in a concurrent map per connection.
+ *   The distributer monitor is only taken to change topology and to report backpressure.
+ *
  *   It is safe to synchronized on an individual connection and then the distributer, but it is always unsafe
  *   to synchronized on the distributer and then an individual connection.
  */
@@ -73,14 +81,18 @@ class Distributer {
     // collection of connections to the cluster
     private final CopyOnWriteArrayList<NodeConnection> m_connections =
             new CopyOnWriteArrayList<NodeConnection>();
+    // array snapshot of m_connections for indexed round-robin selection without locking,
+    // replaced under the distributer monitor whenever m_connections changes
+    private volatile NodeConnection m_connectionSnapshot[] = new NodeConnection[0];
 
-    private final ArrayList<ClientStatusListenerExt> m_listeners = new ArrayList<ClientStatusListenerExt>();
+    private final CopyOnWriteArrayList<ClientStatusListenerExt> m_listeners =
+            new CopyOnWriteArrayList<ClientStatusListenerExt>();
 
     //Selector and connection handling, does all work in blocking selection thread
     private final VoltNetworkPool m_network;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -97,12 +109,31 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<Integer, NodeConnection>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
+    /*
+     * Affinity maps are never modified once published. Updates build a new map under the
+     * distributer monitor and swap the reference so queue() can read them without locking.
+     */
+    private volatile Map<Integer, NodeConnection> m_partitionMasters = new HashMap<Integer, NodeConnection>();
+    private volatile Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
+    private volatile Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
+    // guarded by the distributer monitor
     private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
-    private final Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
 
-    private boolean m_hashinatorInitialized = false;
+    /*
+     * The hashinator the cluster reported with the most recently applied topology. This is
+     * private to the distributer rather than the process wide TheHashinator instance, so that
+     * routing follows the cluster's hash function and a client in the same process as a server
+     * can't clobber the server's hashinator. Null until the first topology arrives.
+     */
+    private volatile TheHashinator m_hashinator = null;
+    // handle of the most recently applied topology request, guarded by the distributer monitor.
+    // System handles count down so a newer request has a smaller handle.
+    private long m_lastTopoUpdateHandle = 0;
+
+    // how often the affinity topology is refreshed to pick up leader changes and elastic rebalances
+    static final long TOPOLOGY_REFRESH_INTERVAL_MS = 10 * 1000;
+    // delay before refreshing after a connection is lost, giving the cluster time to promote new leaders
+    static final long TOPOLOGY_FAILURE_REFRESH_DELAY_MS = 1000;
 
     // timeout for individual procedure calls
     private final long m_procedureCallTimeoutMS;
@@ -128,14 +159,24 @@ class Distributer {
      * Handles topology updates for client affinity
      */
     class TopoUpdateCallback implements ProcedureCallback {
+        private final long m_handle;
+
+        TopoUpdateCallback(long handle) {
+            m_handle = handle;
+        }
 
         @Override
         public void clientCallback(ClientResponse clientResponse) throws Exception {
             try {
                 synchronized (Distributer.this) {
+                    // responses to concurrent refreshes can arrive out of order, don't regress
+                    if (m_lastTopoUpdateHandle != 0 && m_handle > m_lastTopoUpdateHandle) {
+                        return;
+                    }
                     VoltTable results[] = clientResponse.getResults();
                     if (results != null && results.length > 1) {
                         updateAffinityTopology(results);
+                        m_lastTopoUpdateHandle = m_handle;
                     }
                 }
             }
@@ -171,76 +212,82 @@ class Distributer {
         @Override
         public void run() {
             try {
-                // make a threadsafe copy of all connections
-                ArrayList<NodeConnection> connections = new ArrayList<NodeConnection>();
-                synchronized (Distributer.this) {
-                    connections.addAll(m_connections);
-                }
-
                 long now = System.currentTimeMillis();
 
                 // for each connection
-                for (NodeConnection c : connections) {
-                    synchronized(c) {
-                        // check for connection age
-                        long sinceLastResponse = now - c.m_lastResponseTime;
-
-                        // if outstanding ping and timeout, close the connection
-                        if (c.m_outstandingPing && (sinceLastResponse > m_connectionResponseTimeoutMS)) {
-                            // memoize why it's closing
-                            c.m_closeCause = DisconnectCause.TIMEOUT;
-                            // this should trigger NodeConnection.stopping(..)
-                            c.m_connection.unregister();
-                        }
+                for (NodeConnection c : m_connections) {
+                    // a consumer holding back a stream stopped the reads, not the server
+                    if (c.areReadsPaused()) {
+                        c.m_lastResponseTime = now;
+                    }
 
-                        // if 1/3 of the timeout since last response, send a ping
-                        if ((!c.m_outstandingPing) && (sinceLastResponse > (m_connectionResponseTimeoutMS / 3))) {
-                            c.sendPing();
-                        }
+                    // check for connection age
+                    long sinceLastResponse = now - c.m_lastResponseTime;
 
-                        // for each outstanding procedure
-                        Iterator<Entry<Long, CallbackBookeeping>> iter = c.m_callbacks.entrySet().iterator();
-                        while (iter.hasNext()) {
-                            Entry<Long, CallbackBookeeping> e = iter.next();
-                            long handle = e.getKey();
-                            CallbackBookeeping cb = e.getValue();
-
-                            // if the timeout is expired, call the callback and remove the
-                            // bookeeping data
-                            if ((now - cb.timestamp) > m_procedureCallTimeoutMS) {
-
-                                // make the minimum timeout for certain long running system procedures
-                                //  higher than the default 2m.
-                                // you can still set the default timeout higher than even this value
-                                boolean isLongOp = false;
-                                // this form allows you to list ops to treat specially
-                                isLongOp |= cb.name.equals("@UpdateApplicationCatalog");
-                                isLongOp |= cb.name.equals("@SnapshotSave");
-                                if (isLongOp && ((now - cb.timestamp) < MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS)) {
-                                    continue;
-                                }
+                    // if outstanding ping and timeout, close the connection
+                    if (c.m_outstandingPing && (sinceLastResponse > m_connectionResponseTimeoutMS)) {
+                        // memoize why it's closing
+                        c.m_closeCause = DisconnectCause.TIMEOUT;
+                        // this should trigger NodeConnection.stopping(..)
+                        c.m_connection.unregister();
+                    }
 
-                                ClientResponseImpl r = new ClientResponseImpl(
-                                        ClientResponse.CONNECTION_TIMEOUT,
-                                        ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
-                                        "",
-                                        new VoltTable[0],
-                                        String.format("No response received in the allotted time (set to %d ms).",
-                                                m_procedureCallTimeoutMS));
-                                r.setClientHandle(handle);
-                                r.setClientRoundtrip((int) (now - cb.timestamp));
-                                r.setClusterRoundtrip((int) (now - cb.timestamp));
-
-                                try {
-                                    cb.callback.clientCallback(r);
-                                } catch (Exception e1) {
-                                    e1.printStackTrace();
-                                }
-                                iter.remove();
-                                m_rateLimiter.transactionResponseReceived(now, -1);
-                                int callbacksToInvoke = c.m_callbacksToInvoke.decrementAndGet();
-                                assert(callbacksToInvoke >= 0);
+                    // if 1/3 of the timeout since last response, send a ping
+                    if ((!c.m_outstandingPing) && (sinceLastResponse > (m_connectionResponseTimeoutMS / 3))) {
+                        c.sendPing();
+                    }
+
+                    // for each outstanding procedure
+                    Iterator<Entry<Long, CallbackBookeeping>> iter = c.m_callbacks.entrySet().iterator();
+                    while (iter.hasNext()) {
+                        Entry<Long, CallbackBookeeping> e = iter.next();
+                        long handle = e.getKey();
+                        CallbackBookeeping cb = e.getValue();
+
+                        // if the timeout is expired, call the callback and remove the
+                        // bookeeping data. A streamed result that is still delivering
+                        // chunks, or that its consumer paused, has not timed out.
+                        if (cb.readControl != null && cb.readControl.isPaused()) {
+                            cb.progressTimestamp = now;
+                        }
+                        if ((now - cb.progressTimestamp) > m_procedureCallTimeoutMS) {
+
+                            // make the minimum timeout for certain long running system procedures
+                            //  higher than the default 2m.
+                            // you can still set the default timeout higher than even this value
+                            boolean isLongOp = false;
+                            // this form allows you to list ops to treat specially
+                            isLongOp |= cb.name.equals("@UpdateApplicationCatalog");
+                            isLongOp |= cb.name.equals("@SnapshotSave");
+                            if (isLongOp && ((now - cb.timestamp) < MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS)) {
+                                continue;
+                            }
+
+                            ClientResponseImpl r = new ClientResponseImpl(
+                                    ClientResponse.CONNECTION_TIMEOUT,
+                                    ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
+                                    "",
+                                    new VoltTable[0],
+                                    String.format("No response received in the allotted time (set to %d ms).",
+                                            m_procedureCallTimeoutMS));
+                            r.setClientHandle(handle);
+                            r.setClientRoundtrip((int) (now - cb.timestamp));
+                            r.setClusterRoundtrip((int) (now - cb.timestamp));
+
+                            // the response may have arrived or the connection closed
+                            // concurrently, whoever removes the bookkeeping invokes the callback
+                            if (!c.m_callbacks.remove(handle, cb)) {
+                                continue;
+                            }
+                            c.callbackRemoved(cb);
+                            try {
+                                cb.callback.clientCallback(r);
+                            } catch (Exception e1) {
+                                e1.printStackTrace();
                             }
+                            m_rateLimiter.transactionResponseReceived(now, -1);
+                            int callbacksToInvoke = c.m_callbacksToInvoke.decrementAndGet();
+                            assert(callbacksToInvoke >= 0);
                         }
                     }
                 }
@@ -251,35 +298,57 @@ class Distributer {
     }
 
     class CallbackBookeeping {
-        public CallbackBookeeping(long timestamp, ProcedureCallback callback, String name) {
+        public CallbackBookeeping(long timestamp, long nanoTimestamp, ProcedureCallback callback, String name) {
             assert(callback != null);
             this.timestamp = timestamp;
+            this.nanoTimestamp = nanoTimestamp;
             this.callback = callback;
             this.name = name;
+            this.progressTimestamp = timestamp;
         }
         long timestamp;
+        // time of the last chunk of a streamed result, written by the network thread
+        volatile long progressTimestamp;
+        // System.nanoTime() at queue time, for the microsecond latency histogram
+        long nanoTimestamp;
         ProcedureCallback callback;
         String name;
+        // created by the network thread with the first chunk of a streamed result
+        volatile NodeConnection.StreamReadControl readControl;
     }
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final HashMap<Long, CallbackBookeeping> m_callbacks;
+        /*
+         * Outstanding calls. The caller threads, the network thread, the reaper and connection
+         * loss all race to remove entries, and only the thread whose remove succeeds invokes
+         * the callback.
+         */
+        private final ConcurrentHashMap<Long, CallbackBookeeping> m_callbacks;
+        // written by the network thread, guarded by its own monitor for stats snapshots
         private final HashMap<String, ClientStats> m_stats = new HashMap<String, ClientStats>();
         private Connection m_connection;
         private final InetSocketAddress m_socketAddress;
+
+        /*
+         * Streamed results whose consumers asked to stop reading. Reads are paused while such
+         * streams are the only calls outstanding, so they never hold back another response.
+         */
+        private final Object m_readPauseLock = new Object();
+        private volatile int m_pausedStreams = 0;
+        private boolean m_readsPaused = false;
         private String m_hostname;
         private int m_port;
-        private boolean m_isConnected = true;
+        private volatile boolean m_isConnected = true;
 
-        long m_lastResponseTime = System.currentTimeMillis();
-        boolean m_outstandingPing = false;
-        ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
+        volatile long m_lastResponseTime = System.currentTimeMillis();
+        volatile boolean m_outstandingPing = false;
+        volatile ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
 
         public NodeConnection(long ids[], InetSocketAddress socketAddress) {
             assert(socketAddress != null);
 
-            m_callbacks = new HashMap<Long, CallbackBookeeping>();
+            m_callbacks = new ConcurrentHashMap<Long, CallbackBookeeping>(1024, .75f, 16);
             m_socketAddress = socketAddress;
         }
 
@@ -289,8 +358,22 @@ class Distributer {
             long now = System.currentTimeMillis();
             now = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
                     now, ignoreBackpressure);
-            synchronized (this) {
-                if (!m_isConnected) {
+
+            final CallbackBookeeping cb = new CallbackBookeeping(now, System.nanoTime(), callback, name);
+            CallbackBookeeping previous = m_callbacks.put(handle, cb);
+            assert(previous == null);
+            m_callbacksToInvoke.incrementAndGet();
+            if (m_pausedStreams > 0) {
+                updateReadSelection();
+            }
+
+            /*
+             * The callback is published before checking for a lost connection. stopping() clears
+             * m_isConnected before it drains m_callbacks, so either it finds this callback or
+             * this thread sees the connection is gone. Whichever removes it invokes it.
+             */
+            if (!m_isConnected) {
+                if (m_callbacks.remove(handle, cb)) {
                     final ClientResponse r = new ClientResponseImpl(
                             ClientResponse.CONNECTION_LOST, new VoltTable[0],
                             "Connection to database host (" + m_hostname +
@@ -302,14 +385,156 @@ class Distributer {
                     }
                     // for bookkeeping, but it feels dishonest to call this here
                     m_rateLimiter.transactionResponseReceived(now, -1);
-                    return;
+                    m_callbacksToInvoke.decrementAndGet();
                 }
+                return;
+            }
+            m_connection.writeStream().enqueue(c);
+        }
 
-                assert(m_callbacks.containsKey(handle) == false);
-                m_callbacks.put(handle, new CallbackBookeeping(now, callback, name));
+        /**
+         * Register the callbacks for a batch of invocations and queue them for writing.
+         * Invocations are queued in as few writes as possible, but everything that already
+         * holds a rate limiter permit is queued before blocking for the next permit, so that
+         * a batch larger than the outstanding transaction limit can't wait on responses
+         * to invocations it hasn't sent.
+         */
+        public void createWorkBatch(ProcedureInvocation invocations[], int sizes[],
+                ProcedureCallback callbacks[], boolean ignoreBackpressure) {
+            final CallbackBookeeping bookkeeping[] = new CallbackBookeeping[invocations.length];
+            int queued = 0;
+            for (int i = 0; i < invocations.length; i++) {
+                assert(callbacks[i] != null);
+                long now = System.currentTimeMillis();
+                if (!m_rateLimiter.trySendTxn(now, ignoreBackpressure)) {
+                    queued = enqueueBatch(invocations, sizes, callbacks, bookkeeping, queued, i);
+                    now = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
+                            now, ignoreBackpressure);
+                }
+                bookkeeping[i] = new CallbackBookeeping(now, System.nanoTime(), callbacks[i],
+                        invocations[i].getProcName());
+                CallbackBookeeping previous = m_callbacks.put(invocations[i].getHandle(), bookkeeping[i]);
+                assert(previous == null);
                 m_callbacksToInvoke.incrementAndGet();
             }
-            m_connection.writeStream().enqueue(c);
+            if (m_pausedStreams > 0) {
+                updateReadSelection();
+            }
+            enqueueBatch(invocations, sizes, callbacks, bookkeeping, queued, invocations.length);
+        }
+
+        /**
+         * Queue the registered invocations [start, end) with a single write.
+         * @return end
+         */
+        private int enqueueBatch(ProcedureInvocation invocations[], int sizes[],
+                ProcedureCallback callbacks[], CallbackBookeeping bookkeeping[], int start, int end) {
+            if (start == end) {
+                return end;
+            }
+
+            // same protocol as createWork, see the comment there
+            if (!m_isConnected) {
+                final ClientResponse r = new ClientResponseImpl(
+                        ClientResponse.CONNECTION_LOST, new VoltTable[0],
+                        "Connection to database host (" + m_hostname +
+                ") was lost before a response was received");
+                for (int i = start; i < end; i++) {
+                    if (m_callbacks.remove(invocations[i].getHandle(), bookkeeping[i])) {
+                        try {
+                            callbacks[i].clientCallback(r);
+                        } catch (Exception e) {
+                            uncaughtException(callbacks[i], r, e);
+                        }
+                        m_rateLimiter.transactionResponseReceived(bookkeeping[i].timestamp, -1);
+                        m_callbacksToInvoke.decrementAndGet();
+                    }
+                }
+                return end;
+            }
+            m_connection.writeStream().enqueue(new InvocationBatch(invocations, sizes, start, end));
+            return end;
+        }
+
+        /**
+         * Pause reading while the paused streams are the only calls outstanding, otherwise read.
+         */
+        private void updateReadSelection() {
+            synchronized (m_readPauseLock) {
+                final boolean pause = m_pausedStreams > 0 && m_callbacks.size() <= m_pausedStreams;
+                if (pause != m_readsPaused) {
+                    m_readsPaused = pause;
+                    if (pause) {
+                        m_connection.disableReadSelection();
+                    } else {
+                        m_connection.enableReadSelection();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Called by whoever removed a call's bookkeeping, a finished stream is no longer paused
+         * and a finished call may leave only paused streams outstanding.
+         */
+        void callbackRemoved(CallbackBookeeping cb) {
+            if (cb.readControl != null) {
+                cb.readControl.finish();
+            } else if (m_pausedStreams > 0) {
+                updateReadSelection();
+            }
+        }
+
+        boolean areReadsPaused() {
+            synchronized (m_readPauseLock) {
+                return m_readsPaused;
+            }
+        }
+
+        class StreamReadControl implements StreamingProcedureCallback.ReadControl {
+            // guarded by m_readPauseLock
+            private boolean m_paused = false;
+            private boolean m_finished = false;
+
+            @Override
+            public void pause() {
+                synchronized (m_readPauseLock) {
+                    if (m_paused || m_finished) {
+                        return;
+                    }
+                    m_paused = true;
+                    m_pausedStreams++;
+                    updateReadSelection();
+                }
+            }
+
+            @Override
+            public void resume() {
+                synchronized (m_readPauseLock) {
+                    if (!m_paused) {
+                        return;
+                    }
+                    m_paused = false;
+                    m_pausedStreams--;
+                    updateReadSelection();
+                }
+            }
+
+            boolean isPaused() {
+                synchronized (m_readPauseLock) {
+                    return m_paused;
+                }
+            }
+
+            /**
+             * The stream's bookkeeping is gone, a late pause() must not stop reads
+             */
+            void finish() {
+                synchronized (m_readPauseLock) {
+                    m_finished = true;
+                    resume();
+                }
+            }
         }
 
         void sendPing() {
@@ -322,41 +547,45 @@ class Distributer {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            m_connection.writeStream().enqueue(buf);
+            // set before queueing, the response can arrive before enqueue returns
             m_outstandingPing = true;
+            m_connection.writeStream().enqueue(buf);
         }
 
         /**
          * Update the procedures statistics
          * @param procName Name of procedure being updated
-         * @param roundTrip round trip from client queued to client response callback invocation
-         * @param clusterRoundTrip round trip measured within the VoltDB cluster
+         * @param roundTrip round trip in microseconds from client queued to client response callback invocation
+         * @param clusterRoundTrip round trip in milliseconds measured within the VoltDB cluster
          * @param abort true of the procedure was aborted
          * @param failure true if the procedure failed
          */
         private void updateStats(
                 String procName,
-                int roundTrip,
+                long roundTrip,
                 int clusterRoundTrip,
                 boolean abort,
                 boolean failure) {
-            ClientStats stats = m_stats.get(procName);
-            if (stats == null) {
-                stats = new ClientStats();
-                stats.m_connectionId = connectionId();
-                stats.m_hostname = m_hostname;
-                stats.m_port = m_port;
-                stats.m_procName = procName;
-                stats.m_startTS = System.currentTimeMillis();
-                stats.m_endTS = Long.MIN_VALUE;
-                m_stats.put(procName, stats);
+            synchronized (m_stats) {
+                ClientStats stats = m_stats.get(procName);
+                if (stats == null) {
+                    stats = new ClientStats();
+                    stats.m_connectionId = connectionId();
+                    stats.m_hostname = m_hostname;
+                    stats.m_port = m_port;
+                    stats.m_procName = procName;
+                    stats.m_startTS = System.currentTimeMillis();
+                    stats.m_endTS = Long.MIN_VALUE;
+                    m_stats.put(procName, stats);
+                }
+                stats.update(roundTrip, clusterRoundTrip, abort, failure);
             }
-            stats.update(roundTrip, clusterRoundTrip, abort, failure);
         }
 
         @Override
         public void handleMessage(ByteBuffer buf, Connection c) {
             long now = System.currentTimeMillis();
+            long nowNanos = System.nanoTime();
             ClientResponseImpl response = new ClientResponseImpl();
             try {
                 response.initFromBuffer(buf);
@@ -368,46 +597,67 @@ class Distributer {
             long callTime = 0;
             int delta = 0;
             long handle = response.getClientHandle();
-            synchronized (this) {
-                // track the timestamp of the most recent read on this connection
-                m_lastResponseTime = now;
-
-                // handle ping response and get out
-                if (response.getClientHandle() == PING_HANDLE) {
-                    m_outstandingPing = false;
-                    return;
-                }
-
-                CallbackBookeeping stuff = m_callbacks.remove(response.getClientHandle());
-                // presumably (hopefully) this is a response for a timed-out message
-                if (stuff == null) {
-                    // also ignore internal (topology and procedure) calls
-                    if (handle >= 0) {
-                        // notify any listeners of the late response
-                        for (ClientStatusListenerExt listener : m_listeners) {
-                            listener.lateProcedureResponse(response, m_hostname, m_port);
-                        }
+
+            // track the timestamp of the most recent read on this connection
+            m_lastResponseTime = now;
+
+            // handle ping response and get out
+            if (handle == PING_HANDLE) {
+                m_outstandingPing = false;
+                return;
+            }
+
+            // a chunk of a streamed result, the bookkeeping stays until the final response
+            if (response.isPartial()) {
+                CallbackBookeeping stuff = m_callbacks.get(handle);
+                if (stuff != null && stuff.callback instanceof StreamingProcedureCallback) {
+                    stuff.progressTimestamp = now;
+                    if (stuff.readControl == null) {
+                        stuff.readControl = new StreamReadControl();
+                    }
+                    final VoltTable rows = response.getResults()[0];
+                    try {
+                        ((StreamingProcedureCallback)stuff.callback).clientCallbackRows(
+                                response.getPartialTableIndex(), rows, stuff.readControl);
+                    } catch (Exception e) {
+                        uncaughtException(stuff.callback, response, e);
                     }
                 }
-                // handle a proper callback
-                else {
-                    callTime = stuff.timestamp;
-                    delta = (int)(now - callTime);
-                    cb = stuff.callback;
-                    assert(cb != null);
-                    final byte status = response.getStatus();
-                    boolean abort = false;
-                    boolean error = false;
-                    if (status == ClientResponse.USER_ABORT || status == ClientResponse.GRACEFUL_FAILURE) {
-                        abort = true;
-                    } else if (status != ClientResponse.SUCCESS) {
-                        error = true;
+                return;
+            }
+
+            CallbackBookeeping stuff = m_callbacks.remove(handle);
+            if (stuff != null) {
+                callbackRemoved(stuff);
+            }
+            // presumably (hopefully) this is a response for a timed-out message
+            if (stuff == null) {
+                // also ignore internal (topology and procedure) calls
+                if (handle >= 0) {
+                    // notify any listeners of the late response
+                    for (ClientStatusListenerExt listener : m_listeners) {
+                        listener.lateProcedureResponse(response, m_hostname, m_port);
                     }
-                    int clusterRoundTrip = response.getClusterRoundtrip();
-                    m_rateLimiter.transactionResponseReceived(now, clusterRoundTrip);
-                    updateStats(stuff.name, delta, clusterRoundTrip, abort, error);
                 }
             }
+            // handle a proper callback
+            else {
+                callTime = stuff.timestamp;
+                delta = (int)(now - callTime);
+                cb = stuff.callback;
+                assert(cb != null);
+                final byte status = response.getStatus();
+                boolean abort = false;
+                boolean error = false;
+                if (status == ClientResponse.USER_ABORT || status == ClientResponse.GRACEFUL_FAILURE) {
+                    abort = true;
+                } else if (status != ClientResponse.SUCCESS) {
+                    error = true;
+                }
+                int clusterRoundTrip = response.getClusterRoundtrip();
+                m_rateLimiter.transactionResponseReceived(now, clusterRoundTrip);
+                updateStats(stuff.name, (nowNanos - stuff.nanoTimestamp) / 1000, clusterRoundTrip, abort, error);
+            }
 
             // cb might be null on late response
             if (cb != null) {
@@ -436,77 +686,87 @@ class Distributer {
         @Override
         public void stopping(Connection c) {
             super.stopping(c);
-            synchronized (this) {
-                //Prevent queueing of new work to this connection
-                synchronized (Distributer.this) {
-                    /*
-                     * Repair all cluster topology data with the node connection removed
-                     */
-                    Iterator<Map.Entry<Integer, NodeConnection>> i = m_partitionMasters.entrySet().iterator();
-                    while (i.hasNext()) {
-                        Map.Entry<Integer, NodeConnection> entry = i.next();
-                        if (entry.getValue() == this) {
-                            i.remove();
-                        }
+            synchronized (Distributer.this) {
+                /*
+                 * Repair all cluster topology data with the node connection removed
+                 */
+                Map<Integer, NodeConnection> partitionMasters = new HashMap<Integer, NodeConnection>();
+                for (Map.Entry<Integer, NodeConnection> entry : m_partitionMasters.entrySet()) {
+                    if (entry.getValue() != this) {
+                        partitionMasters.put(entry.getKey(), entry.getValue());
                     }
+                }
+                m_partitionMasters = partitionMasters;
 
-                    i = m_hostIdToConnection.entrySet().iterator();
-                    while (i.hasNext()) {
-                        Map.Entry<Integer, NodeConnection> entry = i.next();
-                        if (entry.getValue() == this) {
-                            i.remove();
-                        }
+                Iterator<Map.Entry<Integer, NodeConnection>> i = m_hostIdToConnection.entrySet().iterator();
+                while (i.hasNext()) {
+                    Map.Entry<Integer, NodeConnection> entry = i.next();
+                    if (entry.getValue() == this) {
+                        i.remove();
                     }
+                }
 
-                    Iterator<Map.Entry<Integer, NodeConnection[]>> i2 = m_partitionReplicas.entrySet().iterator();
-                    List<Pair<Integer, NodeConnection[]>> entriesToRewrite = new ArrayList<Pair<Integer, NodeConnection[]>>();
-                    while (i2.hasNext()) {
-                        Map.Entry<Integer, NodeConnection[]> entry = i2.next();
-                        for (NodeConnection nc : entry.getValue()) {
-                            if (nc == this) {
-                                entriesToRewrite.add(Pair.of(entry.getKey(), entry.getValue()));
-                            }
+                Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<Integer, NodeConnection[]>();
+                for (Map.Entry<Integer, NodeConnection[]> entry : m_partitionReplicas.entrySet()) {
+                    List<NodeConnection> survivors = new ArrayList<NodeConnection>();
+                    for (NodeConnection nc : entry.getValue()) {
+                        if (nc != this) {
+                            survivors.add(nc);
                         }
                     }
-
-                    for (Pair<Integer, NodeConnection[]> entry : entriesToRewrite) {
-                        m_partitionReplicas.remove(entry.getFirst());
-                        NodeConnection survivors[] = new NodeConnection[entry.getSecond().length - 1];
-                        if (survivors.length == 0) break;
-                        int zz = 0;
-                        for (int ii = 0; ii < entry.getSecond().length; ii++) {
-                            if (entry.getSecond()[ii] != this) {
-                                survivors[zz++] = entry.getSecond()[ii];
-                            }
-                        }
-                        m_partitionReplicas.put(entry.getFirst(), survivors);
+                    if (survivors.size() > 0) {
+                        partitionReplicas.put(entry.getKey(), survivors.toArray(new NodeConnection[0]));
                     }
+                }
+                m_partitionReplicas = partitionReplicas;
 
-                    m_connections.remove(this);
-                    //Notify listeners that a connection has been lost
-                    for (ClientStatusListenerExt s : m_listeners) {
-                        s.connectionLost(m_hostname, m_port, m_connections.size(), m_closeCause);
-                    }
+                m_connections.remove(this);
+                m_connectionSnapshot = m_connections.toArray(new NodeConnection[0]);
+                //Notify listeners that a connection has been lost
+                for (ClientStatusListenerExt s : m_listeners) {
+                    s.connectionLost(m_hostname, m_port, m_connections.size(), m_closeCause);
                 }
-                m_isConnected = false;
+            }
 
-                //Invoke callbacks for all queued invocations with a failure response
-                final ClientResponse r =
-                    new ClientResponseImpl(
-                            ClientResponse.CONNECTION_LOST, new VoltTable[0],
-                            "Connection to database host (" + m_socketAddress +
-                    ") was lost before a response was received");
-                for (final CallbackBookeeping callBk : m_callbacks.values()) {
-                    try {
-                        callBk.callback.clientCallback(r);
-                    }
-                    catch (Exception e) {
-                        uncaughtException(callBk.callback, r, e);
-                    }
-                    m_rateLimiter.transactionResponseReceived(System.currentTimeMillis(), -1);
-                    m_callbacksToInvoke.decrementAndGet();
+            /*
+             * Partitions led by the lost host will get new leaders, route to them once promoted.
+             * Until then the repaired maps fall back to round-robin for those partitions.
+             */
+            if (m_useClientAffinity && !m_ex.isShutdown()) {
+                try {
+                    m_ex.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            refreshTopology();
+                        }
+                    }, TOPOLOGY_FAILURE_REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                }
+            }
+
+            //Prevent queueing of new work to this connection
+            m_isConnected = false;
+
+            //Invoke callbacks for all queued invocations with a failure response
+            final ClientResponse r =
+                new ClientResponseImpl(
+                        ClientResponse.CONNECTION_LOST, new VoltTable[0],
+                        "Connection to database host (" + m_socketAddress +
+                ") was lost before a response was received");
+            for (Long handle : m_callbacks.keySet()) {
+                final CallbackBookeeping callBk = m_callbacks.remove(handle);
+                if (callBk == null) {
+                    continue;
+                }
+                try {
+                    callBk.callback.clientCallback(r);
                 }
-                m_callbacks.clear();
+                catch (Exception e) {
+                    uncaughtException(callBk.callback, r, e);
+                }
+                m_rateLimiter.transactionResponseReceived(System.currentTimeMillis(), -1);
+                m_callbacksToInvoke.decrementAndGet();
             }
         }
 
@@ -560,20 +820,16 @@ class Distributer {
         boolean more;
         do {
             more = false;
-            synchronized (this) {
-                for (NodeConnection cxn : m_connections) {
-                    more = more || cxn.m_callbacksToInvoke.get() > 0;
-                }
+            for (NodeConnection cxn : m_connections) {
+                more = more || cxn.m_callbacksToInvoke.get() > 0;
             }
             if (more) {
                 Thread.sleep(5);
             }
         } while(more);
 
-        synchronized (this) {
-            for (NodeConnection cxn : m_connections ) {
-                assert(cxn.m_callbacks.size() == 0);
-            }
+        for (NodeConnection cxn : m_connections ) {
+            assert(cxn.m_callbacks.size() == 0);
         }
     }
 
@@ -599,6 +855,33 @@ class Distributer {
 
         // schedule the task that looks for timed-out proc calls and connections
         m_timeoutReaperHandle = m_ex.scheduleAtFixedRate(new CallExpiration(), 1, 1, TimeUnit.SECONDS);
+
+        if (m_useClientAffinity) {
+            m_ex.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshTopology();
+                }
+            }, TOPOLOGY_REFRESH_INTERVAL_MS, TOPOLOGY_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Ask the cluster for the current partition leaders and hash function. The response is
+     * applied by a TopoUpdateCallback unless a newer topology has already been applied.
+     */
+    void refreshTopology() {
+        if (m_connectionSnapshot.length == 0) {
+            return;
+        }
+        final long handle = m_sysHandle.getAndDecrement();
+        ProcedureInvocation spi = new ProcedureInvocation(handle, "@Statistics", "TOPO", 0);
+        try {
+            //The handle is specific to topology updates and has special cased handling
+            queue(spi, new TopoUpdateCallback(handle), true);
+        } catch (NoConnectionsException e) {
+            // the last connection went away, the next connection will fetch the topology
+        }
     }
 
     void createConnection(String host, String program, String password, int port)
@@ -650,6 +933,7 @@ class Distributer {
             m_buildString = (String)socketChannelAndInstanceIdAndBuildString[2];
 
             m_connections.add(cxn);
+            m_connectionSnapshot = m_connections.toArray(new NodeConnection[0]);
         }
 
         if (m_useClientAffinity) {
@@ -657,11 +941,9 @@ class Distributer {
                 m_hostIdToConnection.put(hostId, cxn);
             }
 
-            ProcedureInvocation spi = new ProcedureInvocation(m_sysHandle.getAndDecrement(), "@Statistics", "TOPO", 0);
-            //The handle is specific to topology updates and has special cased handling
-            queue(spi, new TopoUpdateCallback(), true);
+            refreshTopology();
 
-            spi = new ProcedureInvocation(m_sysHandle.getAndDecrement(), "@SystemCatalog", "PROCEDURES");
+            ProcedureInvocation spi = new ProcedureInvocation(m_sysHandle.getAndDecrement(), "@SystemCatalog", "PROCEDURES");
             //The handle is specific to procedure updates and has special cased handling
             queue(spi, new ProcUpdateCallback(), true);
         }
@@ -684,99 +966,240 @@ class Distributer {
         assert(invocation != null);
         assert(cb != null);
 
-        NodeConnection cxn = null;
-        boolean backpressure = true;
+        NodeConnection cxn = pickConnection(invocation, ignoreBackpressure);
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * Backpressure is only reported under the distributer monitor, after checking again,
+         * so that the report can't race with offBackPressure() (which also reports under the
+         * monitor) and result in a lost wakeup.
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
-
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
+        if (cxn == null) {
+            synchronized (this) {
+                cxn = pickConnection(invocation, ignoreBackpressure);
+                if (cxn == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
+                    return false;
+                }
             }
+        }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways.
-             */
-            if (m_useClientAffinity && m_hashinatorInitialized) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+        /*
+         * Do the heavy weight serialization outside of any locks
+         */
+        ByteBuffer buf = ByteBuffer.allocate(4 + invocation.getSerializedSize());
+        buf.putInt(buf.capacity() - 4);
+        try {
+            invocation.flattenToBuffer(buf);
+            buf.flip();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        cxn.createWork(invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure);
 
-                if (procedureInfo != null) {
-                    Integer hashedPartition = MpInitiator.MP_INIT_PID;
-                    if (!procedureInfo.multiPart) {
-                        hashedPartition = invocation.getHashinatedParam(procedureInfo.partitionParameter);
-                    }
-                    /*
-                     * If the procedure is read only and single part, load balance across replicas
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure()) {
-                                        cxn = nc;
-                                        break;
-                                    }
-                                }
-                            }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
-                        }
-                    } else {
-                        /*
-                         * Writes have to go to the master
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
-                            backpressure = false;
-                        }
+        return true;
+    }
+
+    /**
+     * Queue a batch of invocations. Invocations are grouped by the connection they route to and
+     * each group is queued with one write, split only where the rate limiter makes it wait. Either
+     * the whole batch is queued or, if any target connection has backpressure, none of it is.
+     */
+    boolean queueBatch(
+            List<ProcedureInvocation> invocations,
+            List<ProcedureCallback> callbacks,
+            final boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        assert(invocations.size() == callbacks.size());
+        final int size = invocations.size();
+
+        final NodeConnection targets[] = new NodeConnection[size];
+        if (!pickConnections(invocations, targets, ignoreBackpressure)) {
+            synchronized (this) {
+                if (!pickConnections(invocations, targets, ignoreBackpressure)) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
                     }
+                    return false;
                 }
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
-                }
+        }
+
+        /*
+         * Group by connection preserving the order of invocations within each group.
+         * A batch normally targets one or a handful of connections.
+         */
+        final Map<NodeConnection, List<Integer>> groups = new HashMap<NodeConnection, List<Integer>>();
+        for (int i = 0; i < size; i++) {
+            List<Integer> group = groups.get(targets[i]);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(targets[i], group);
+            }
+            group.add(i);
+        }
+
+        for (Map.Entry<NodeConnection, List<Integer>> entry : groups.entrySet()) {
+            final List<Integer> group = entry.getValue();
+            final int groupSize = group.size();
+            final ProcedureInvocation groupInvocations[] = new ProcedureInvocation[groupSize];
+            final int sizes[] = new int[groupSize];
+            final ProcedureCallback groupCallbacks[] = new ProcedureCallback[groupSize];
+            for (int i = 0; i < groupSize; i++) {
+                final int index = group.get(i);
+                groupInvocations[i] = invocations.get(index);
+                sizes[i] = groupInvocations[i].getSerializedSize();
+                groupCallbacks[i] = callbacks.get(index);
             }
+            entry.getKey().createWorkBatch(groupInvocations, sizes, groupCallbacks, ignoreBackpressure);
+        }
 
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        return true;
+    }
+
+    /**
+     * A run of invocations for one connection, written as ordinary length-prefixed invocation
+     * frames. The invocations are serialized on the network thread straight into the write
+     * stream's pooled direct buffers.
+     */
+    private static class InvocationBatch implements DirectDeferredSerialization {
+        private final ProcedureInvocation m_invocations[];
+        private final int m_sizes[];
+        private final int m_start;
+        private final int m_end;
+
+        InvocationBatch(ProcedureInvocation invocations[], int sizes[], int start, int end) {
+            m_invocations = invocations;
+            m_sizes = sizes;
+            m_start = start;
+            m_end = end;
+        }
+
+        @Override
+        public int serialize(PooledBuffers buffers) throws IOException {
+            for (int i = m_start; i < m_end; i++) {
+                final int frameSize = 4 + m_sizes[i];
+                if (frameSize <= buffers.maxClaim()) {
+                    ByteBuffer buf = buffers.claim(frameSize);
+                    buf.putInt(m_sizes[i]);
+                    m_invocations[i].flattenToBuffer(buf);
+                    assert(!buf.hasRemaining());
+                } else {
+                    ByteBuffer buf = ByteBuffer.allocate(frameSize);
+                    buf.putInt(m_sizes[i]);
+                    m_invocations[i].flattenToBuffer(buf);
+                    buf.flip();
+                    buffers.put(buf);
                 }
             }
+            return m_end - m_start;
+        }
+
+        @Override
+        public ByteBuffer[] serialize() throws IOException {
+            int totalSize = 0;
+            for (int i = m_start; i < m_end; i++) {
+                totalSize += 4 + m_sizes[i];
+            }
+            ByteBuffer buf = ByteBuffer.allocate(totalSize);
+            for (int i = m_start; i < m_end; i++) {
+                buf.putInt(m_sizes[i]);
+                m_invocations[i].flattenToBuffer(buf);
+            }
+            buf.flip();
+            return new ByteBuffer[] { buf };
+        }
+
+        @Override
+        public void cancel() {}
+    }
+
+    /**
+     * Fill in the target connection for every invocation in a batch.
+     * @return false if any invocation can't be queued due to backpressure
+     */
+    private boolean pickConnections(
+            List<ProcedureInvocation> invocations,
+            NodeConnection targets[],
+            boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = pickConnection(invocations.get(i), ignoreBackpressure);
+            if (targets[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Choose the connection for an invocation from the current snapshots of the connections
+     * and the affinity maps.
+     * @return A connection without backpressure (or any connection if ignoreBackpressure is set),
+     * or null if the invocation can't be queued due to backpressure.
+     * @throws NoConnectionsException
+     */
+    private NodeConnection pickConnection(ProcedureInvocation invocation, boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        final NodeConnection connections[] = m_connectionSnapshot;
+        final int totalConnections = connections.length;
+
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
         }
 
         /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways.
          */
-        if (cxn != null) {
-            ByteBuffer buf = ByteBuffer.allocate(4 + invocation.getSerializedSize());
-            buf.putInt(buf.capacity() - 4);
-            try {
-                invocation.flattenToBuffer(buf);
-                buf.flip();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        final TheHashinator hashinator = m_hashinator;
+        if (m_useClientAffinity && hashinator != null) {
+            final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+
+            if (procedureInfo != null) {
+                Integer hashedPartition = MpInitiator.MP_INIT_PID;
+                if (!procedureInfo.multiPart) {
+                    hashedPartition = invocation.getHashinatedParam(hashinator, procedureInfo.partitionParameter);
+                }
+                /*
+                 * If the procedure is read only and single part, load balance across replicas
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly) {
+                    NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        NodeConnection cxn =
+                                partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure()) {
+                                    cxn = nc;
+                                    break;
+                                }
+                            }
+                        }
+                        return (!cxn.hadBackPressure() || ignoreBackpressure) ? cxn : null;
+                    }
+                } else {
+                    /*
+                     * Writes have to go to the master
+                     */
+                    NodeConnection cxn = m_partitionMasters.get(hashedPartition);
+                    if (cxn != null) {
+                        return (!cxn.hadBackPressure() || ignoreBackpressure) ? cxn : null;
+                    }
+                }
             }
-            cxn.createWork(invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure);
         }
 
-        return !backpressure;
+        for (int i=0; i < totalConnections; ++i) {
+            NodeConnection cxn = connections[Math.abs(m_nextConnection.incrementAndGet() % totalConnections)];
+            if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                return cxn;
+            }
+        }
+        return null;
     }
 
     /**
@@ -812,9 +1235,7 @@ class Distributer {
     }
 
     synchronized void addClientStatusListener(ClientStatusListenerExt listener) {
-        if (!m_listeners.contains(listener)) {
-            m_listeners.add(listener);
-        }
+        m_listeners.addIfAbsent(listener);
     }
 
     synchronized boolean removeClientStatusListener(ClientStatusListenerExt listener) {
@@ -830,7 +1251,7 @@ class Distributer {
                 new TreeMap<Long, Map<String, ClientStats>>();
 
             for (NodeConnection conn : m_connections) {
-                synchronized (conn) {
+                synchronized (conn.m_stats) {
                     Map<String, ClientStats> connMap = new TreeMap<String, ClientStats>();
                     for (Entry<String, ClientStats> e : conn.m_stats.entrySet()) {
                         connMap.put(e.getKey(), (ClientStats) e.getValue().clone());
@@ -901,7 +1322,8 @@ class Distributer {
             //Just in case the new client connects to the old version of Volt that only returns 1 topology table
             // We're going to get the MPI back in this table, so subtract it out from the number of partitions.
             int numPartitions = vt.getRowCount() - 1;
-            TheHashinator.initialize(LegacyHashinator.class, LegacyHashinator.getConfigureBytes(numPartitions));
+            m_hashinator = TheHashinator.constructHashinator(
+                    LegacyHashinator.class, LegacyHashinator.getConfigureBytes(numPartitions));
         } else {
             //Second table contains the hash function
             boolean advanced = tables[1].advanceRow();
@@ -910,13 +1332,12 @@ class Distributer {
                                    "performance will be lower because transactions can't be routed at this client");
                 return;
             }
-            TheHashinator.initialize(
+            m_hashinator = TheHashinator.constructHashinator(
                     HashinatorType.valueOf(tables[1].getString("HASHTYPE")).hashinatorClass,
                     tables[1].getVarbinary("HASHCONFIG"));
         }
-        m_hashinatorInitialized = true;
-        m_partitionMasters.clear();
-        m_partitionReplicas.clear();
+        Map<Integer, NodeConnection> partitionMasters = new HashMap<Integer, NodeConnection>();
+        Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<Integer, NodeConnection[]>();
         // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
         // hash to it.  Go ahead and include it in the maps, we can use it at some point to
         // route MP transactions directly to the MPI node.
@@ -931,17 +1352,19 @@ class Distributer {
                     connections.add(m_hostIdToConnection.get(hostId));
                 }
             }
-            m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
+            partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
 
             Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
             if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+                partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
             }
         }
+        m_partitionMasters = partitionMasters;
+        m_partitionReplicas = partitionReplicas;
     }
 
     private void updateProcedurePartitioning(VoltTable vt) {
-        m_procedureInfo.clear();
+        Map<String, Procedure> procedureInfo = new HashMap<String, Procedure>();
         while (vt.advanceRow()) {
             try {
                 //Data embedded in JSON object in remarks column
@@ -951,15 +1374,16 @@ class Distributer {
                 boolean readOnly = jsObj.getBoolean(JdbcDatabaseMetaDataGenerator.JSON_READ_ONLY);
                 if (jsObj.getBoolean(JdbcDatabaseMetaDataGenerator.JSON_SINGLE_PARTITION)) {
                     int partitionParameter = jsObj.getInt(JdbcDatabaseMetaDataGenerator.JSON_PARTITION_PARAMETER);
-                    m_procedureInfo.put(procedureName, new Procedure(false,readOnly, partitionParameter));
+                    procedureInfo.put(procedureName, new Procedure(false,readOnly, partitionParameter));
                 } else {
                     // Multi Part procedure JSON descriptors omit the partitionParameter
-                    m_procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE));
+                    procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE));
                 }
 
             } catch (JSONException e) {
                 e.printStackTrace();
             }
         }
+        m_procedureInfo = procedureInfo;
     }
 }
@@ -0,0 +1,85 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of asynchronous procedure invocations submitted together with
+ * {@link Client#callProceduresBatch(ProcedureCallBatch)}. Invocations routed to the same
+ * connection are serialized into a single buffer and handed to the network in a single write,
+ * which amortizes the per-call allocation and queueing cost for workloads that issue many
+ * small procedure calls, such as bulk loading with single partition inserts.
+ *
+ * Each invocation still gets its own response and callback, and callbacks for a batch are
+ * not guaranteed to be invoked in the order the invocations were added. A batch can be
+ * cleared and reused once it has been submitted.
+ */
+public class ProcedureCallBatch {
+
+    final List<ProcedureCallback> m_callbacks;
+    final List<String> m_procNames;
+    final List<Object[]> m_parameters;
+
+    public ProcedureCallBatch() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize Number of invocations the batch is expected to hold.
+     */
+    public ProcedureCallBatch(int expectedSize) {
+        m_callbacks = new ArrayList<ProcedureCallback>(expectedSize);
+        m_procNames = new ArrayList<String>(expectedSize);
+        m_parameters = new ArrayList<Object[]>(expectedSize);
+    }
+
+    /**
+     * Add an invocation to the batch.
+     * @param callback ProcedureCallback that will be invoked with procedure results. May be null.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return this batch
+     */
+    public ProcedureCallBatch add(ProcedureCallback callback, String procName, Object... parameters) {
+        if (procName == null) {
+            throw new IllegalArgumentException("Procedure name can't be null");
+        }
+        m_callbacks.add(callback);
+        m_procNames.add(procName);
+        m_parameters.add(parameters);
+        return this;
+    }
+
+    /** @return the number of invocations in the batch */
+    public int size() {
+        return m_procNames.size();
+    }
+
+    public boolean isEmpty() {
+        return m_procNames.isEmpty();
+    }
+
+    /** Remove all invocations so the batch can be reused */
+    public void clear() {
+        m_callbacks.clear();
+        m_procNames.clear();
+        m_parameters.clear();
+    }
+}
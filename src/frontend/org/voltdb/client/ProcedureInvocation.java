@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.voltdb.ParameterSet;
+import org.voltdb.TheHashinator;
 import org.voltdb.messaging.FastSerializer;
 
 /**
@@ -39,6 +40,9 @@ public class ProcedureInvocation {
     private final long m_originalUniqueId;
     private final ProcedureInvocationType m_type;
 
+    // rows per chunk for streamed results, 0 for a single response
+    private int m_fetchSize = 0;
+
     public ProcedureInvocation(long handle, String procName, Object... parameters) {
         this(-1, -1, handle, procName, parameters);
     }
@@ -60,6 +64,19 @@ public class ProcedureInvocation {
         }
     }
 
+    /**
+     * Ask the server to stream large results back in chunks of this many rows.
+     * Only servers that understand streamed results accept such invocations.
+     */
+    void setFetchSize(int rows) {
+        assert(rows >= 0);
+        m_fetchSize = rows;
+    }
+
+    int getFetchSize() {
+        return m_fetchSize;
+    }
+
     /** return the clientHandle value */
     long getHandle() {
         return m_clientHandle;
@@ -75,20 +92,28 @@ public class ProcedureInvocation {
         } catch (Exception e) {/*No UTF-8? Really?*/}
         int size =
             1 + (m_type == ProcedureInvocationType.REPLICATED ? 16 : 0) +
+            (m_fetchSize > 0 ? 4 : 0) +
             m_procNameBytes.length + 4 + 8 + m_parameters.getSerializedSize();
         return size;
     }
 
-    public Integer getHashinatedParam(int index) {
-        return m_parameters.getHashinatedParam(index);
+    public Integer getHashinatedParam(TheHashinator hashinator, int index) {
+        return m_parameters.getHashinatedParam(hashinator, index);
     }
 
     public ByteBuffer flattenToBuffer(ByteBuffer buf) throws IOException {
-        buf.put(m_type.getValue());//Version
+        if (m_fetchSize > 0) {
+            buf.put((byte) (m_type.getValue() | ProcedureInvocationType.STREAMED_RESULTS_FLAG));//Version
+        } else {
+            buf.put(m_type.getValue());//Version
+        }
         if (m_type == ProcedureInvocationType.REPLICATED) {
             buf.putLong(m_originalTxnId);
             buf.putLong(m_originalUniqueId);
         }
+        if (m_fetchSize > 0) {
+            buf.putInt(m_fetchSize);
+        }
         FastSerializer.writeString(m_procNameBytes, buf);
         buf.putLong(m_clientHandle);
         m_parameters.flattenToBuffer(buf);
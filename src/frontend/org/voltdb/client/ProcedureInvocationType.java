@@ -25,11 +25,17 @@ package org.voltdb.client;
  *
  * The type is embedded in the version byte of procedure invocation when send
  * across the wire.
+ *
+ * The next bit of the version byte is a flag, independent of the type, asking
+ * for large results to be streamed back in chunks. When it is set the invocation
+ * carries the chunk size in rows right after the replication fields.
  */
 public enum ProcedureInvocationType {
     ORIGINAL((byte) 0),
     REPLICATED ((byte) (1 << 7));
 
+    public static final byte STREAMED_RESULTS_FLAG = (byte) (1 << 6);
+
     private final byte value;
 
     private ProcedureInvocationType(byte val) {
@@ -17,7 +17,7 @@
 
 package org.voltdb.client;
 
-import org.voltdb.LatencyBucketSet;
+import org.voltdb.LatencyHistogram;
 
 public class ProcedureStatsTracker {
 
@@ -33,21 +33,18 @@ public class ProcedureStatsTracker {
         // cumulative latency measured by the cluster, used to calculate avg lat.
         long m_clusterRoundTripTime = 0; // microsecs
 
-        int m_maxRoundTripTime = Integer.MIN_VALUE; // microsecs
-        int m_maxClusterRoundTripTime = Integer.MIN_VALUE; // microsecs
+        long m_maxRoundTripTime = Long.MIN_VALUE; // microsecs
+        int m_maxClusterRoundTripTime = Integer.MIN_VALUE; // millisecs
 
-        LatencyBucketSet m_latencyBy1ms =
-                new LatencyBucketSet(1, ClientStats.ONE_MS_BUCKET_COUNT);
-        LatencyBucketSet m_latencyBy10ms =
-                new LatencyBucketSet(10, ClientStats.TEN_MS_BUCKET_COUNT);
-        LatencyBucketSet m_latencyBy100ms =
-                new LatencyBucketSet(100, ClientStats.HUNDRED_MS_BUCKET_COUNT);
+        LatencyHistogram m_latencyHistogram =
+                new LatencyHistogram(ClientStats.HIGHEST_TRACKABLE_LATENCY_MICROS,
+                                     ClientStats.LATENCY_SIGNIFICANT_DIGITS);
 
         public Stats(long since) {
             this.since = since;
         }
 
-        public void update(int roundTripTime, int clusterRoundTripTime,
+        public void update(long roundTripTime, int clusterRoundTripTime,
                            boolean abort, boolean error)
         {
             m_maxRoundTripTime = Math.max(roundTripTime, m_maxRoundTripTime);
@@ -63,10 +60,7 @@ public class ProcedureStatsTracker {
             m_roundTripTime += roundTripTime;
             m_clusterRoundTripTime += clusterRoundTripTime;
 
-            // calculate the latency buckets to increment and increment.
-            m_latencyBy1ms.update(roundTripTime);
-            m_latencyBy10ms.update(roundTripTime);
-            m_latencyBy100ms.update(roundTripTime);
+            m_latencyHistogram.recordValue(roundTripTime);
         }
     }
 
@@ -87,7 +81,7 @@ public class ProcedureStatsTracker {
         m_intervalStats = new Stats(now);
     }
 
-    void update(int roundTripTime, int clusterRoundTripTime, boolean abort, boolean error) {
+    void update(long roundTripTime, int clusterRoundTripTime, boolean abort, boolean error) {
         m_lifetimeStats.update(roundTripTime, clusterRoundTripTime, abort, error);
         m_intervalStats.update(roundTripTime, clusterRoundTripTime, abort, error);
     }
@@ -18,6 +18,7 @@
 package org.voltdb.client;
 
 import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provide the {@link Client} with a way to throttle throughput in one
@@ -26,6 +27,9 @@ import java.util.ArrayDeque;
  * send rate to get a good balance of througput and latency on the
  * server.
  *
+ * When neither a rate limit nor auto-tuning is configured only the
+ * outstanding transaction count matters, and it is maintained with a
+ * CAS so that many caller threads don't serialize on this object.
  */
 class RateLimiter {
 
@@ -34,16 +38,16 @@ class RateLimiter {
     final int RECENT_HISTORY_SIZE = 5;
     final int MINIMUM_MOVEMENT = 5;
 
-    protected boolean m_autoTune = false;
-    protected int m_targetTxnsPerSecond = Integer.MAX_VALUE;
+    protected volatile boolean m_autoTune = false;
+    protected volatile int m_targetTxnsPerSecond = Integer.MAX_VALUE;
     //protected int m_targetTxnsPerBlock = Integer.MAX_VALUE;
     protected int m_latencyTarget = 5;
 
     protected int m_currentBlockSendCount = 0;
     protected int m_currentBlockRecvSuccessCount = 0;
-    protected int m_outstandingTxns = 0;
+    protected final AtomicInteger m_outstandingTxns = new AtomicInteger(0);
 
-    protected int m_maxOutstandingTxns = 10;
+    protected volatile int m_maxOutstandingTxns = 10;
 
     protected long m_currentBlockTimestamp = -1;
 
@@ -146,61 +150,104 @@ class RateLimiter {
         return limits;
     }
 
-    synchronized void transactionResponseReceived(long timestamp, int internalLatency) {
-        ensureCurrentBlockIsKosher(timestamp);
-        --m_outstandingTxns;
-        assert(m_outstandingTxns >= 0);
-        if (internalLatency != -1) {
-            ++m_currentBlockRecvSuccessCount;
-            m_currentBlockTotalInternalLatency += internalLatency;
+    /**
+     * True if only the outstanding transaction count limits sending, in which
+     * case the per-block bookkeeping can be skipped entirely.
+     */
+    private boolean isUnthrottled() {
+        return !m_autoTune && (m_targetTxnsPerSecond == Integer.MAX_VALUE);
+    }
+
+    void transactionResponseReceived(long timestamp, int internalLatency) {
+        if (isUnthrottled()) {
+            int outstanding = m_outstandingTxns.decrementAndGet();
+            assert(outstanding >= 0);
+            return;
+        }
+        synchronized (this) {
+            ensureCurrentBlockIsKosher(timestamp);
+            int outstanding = m_outstandingTxns.decrementAndGet();
+            assert(outstanding >= 0);
+            if (internalLatency != -1) {
+                ++m_currentBlockRecvSuccessCount;
+                m_currentBlockTotalInternalLatency += internalLatency;
+            }
         }
     }
 
     /**
-     *
-     *
-     * @param timestamp The time as measured when the call is made.
-     * @param ignoreBackpressure If true, never block.
-     * @return The time as measured when the call returns.
+     * Lock free version of {@link #trySendTxn(long, boolean)} used when there is no rate limit.
      */
-    long sendTxnWithOptionalBlockAndReturnCurrentTime(long timestamp, boolean ignoreBackpressure) {
+    private boolean tryUnthrottledTxn(boolean ignoreBackpressure) {
         while (true) {
-            synchronized(this) {
-                // switch to a new block if 100ms has passed
-                // possibly compute a new target rate
-                ensureCurrentBlockIsKosher(timestamp);
+            int outstanding = m_outstandingTxns.get();
+            if ((outstanding < m_maxOutstandingTxns) || ignoreBackpressure) {
+                if (m_outstandingTxns.compareAndSet(outstanding, outstanding + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            return false;
+        }
+    }
 
-                assert((timestamp - m_currentBlockTimestamp) <= BLOCK_SIZE);
+    /**
+     * Account for sending a transaction if the rate limit and the outstanding
+     * transaction limit allow it right now.
+     *
+     * @param timestamp The time as measured when the call is made.
+     * @param ignoreBackpressure If true, always succeed.
+     * @return true if the transaction was accounted for and can be sent.
+     */
+    boolean trySendTxn(long timestamp, boolean ignoreBackpressure) {
+        if (isUnthrottled()) {
+            return tryUnthrottledTxn(ignoreBackpressure);
+        }
+        synchronized(this) {
+            // switch to a new block if 100ms has passed
+            // possibly compute a new target rate
+            ensureCurrentBlockIsKosher(timestamp);
 
-                // don't let the time be before the start of the current block
-                // also ensure faketime - m_currentBlockTimestamp is positive
-                long faketime = timestamp < m_currentBlockTimestamp ? m_currentBlockTimestamp : timestamp;
+            assert((timestamp - m_currentBlockTimestamp) <= BLOCK_SIZE);
 
-                long targetTxnsPerBlock = m_targetTxnsPerSecond / (1000 / BLOCK_SIZE);
+            // don't let the time be before the start of the current block
+            // also ensure faketime - m_currentBlockTimestamp is positive
+            long faketime = timestamp < m_currentBlockTimestamp ? m_currentBlockTimestamp : timestamp;
 
-                // compute the percentage of the current 100ms block that has passed
-                double expectedTxnsSent =
-                        targetTxnsPerBlock * (faketime - m_currentBlockTimestamp + 1.0) / BLOCK_SIZE;
-                expectedTxnsSent = Math.ceil(expectedTxnsSent);
+            long targetTxnsPerBlock = m_targetTxnsPerSecond / (1000 / BLOCK_SIZE);
 
-                assert(expectedTxnsSent <= targetTxnsPerBlock); // stupid fp math
-                assert((expectedTxnsSent >= 1.0) || (targetTxnsPerBlock == 0));
+            // compute the percentage of the current 100ms block that has passed
+            double expectedTxnsSent =
+                    targetTxnsPerBlock * (faketime - m_currentBlockTimestamp + 1.0) / BLOCK_SIZE;
+            expectedTxnsSent = Math.ceil(expectedTxnsSent);
 
-                // if the rate is under target, no problems
-                if (((m_currentBlockSendCount < expectedTxnsSent) &&
-                     (m_outstandingTxns < m_maxOutstandingTxns)) ||
-                    (ignoreBackpressure == true)) {
+            assert(expectedTxnsSent <= targetTxnsPerBlock); // stupid fp math
+            assert((expectedTxnsSent >= 1.0) || (targetTxnsPerBlock == 0));
 
-                    // bookkeeping
-                    ++m_currentBlockSendCount;
-                    ++m_outstandingTxns;
+            // if the rate is under target, no problems
+            if (((m_currentBlockSendCount < expectedTxnsSent) &&
+                 (m_outstandingTxns.get() < m_maxOutstandingTxns)) ||
+                (ignoreBackpressure == true)) {
 
-                    // exit the while loop
-                    break;
-                }
+                // bookkeeping
+                ++m_currentBlockSendCount;
+                m_outstandingTxns.incrementAndGet();
+                return true;
             }
+            return false;
+        }
+    }
 
-            // if the rate is above target, pause for the smallest time possible
+    /**
+     *
+     *
+     * @param timestamp The time as measured when the call is made.
+     * @param ignoreBackpressure If true, never block.
+     * @return The time as measured when the call returns.
+     */
+    long sendTxnWithOptionalBlockAndReturnCurrentTime(long timestamp, boolean ignoreBackpressure) {
+        while (!trySendTxn(timestamp, ignoreBackpressure)) {
+            // if the rate is above target or too many are outstanding, pause for the smallest time possible
             try { Thread.sleep(1); } catch (InterruptedException e) {}
             timestamp = System.currentTimeMillis();
         }
@@ -213,6 +260,6 @@ class RateLimiter {
         System.out.printf("Target throughput/s is %d and max outstanding txns is %d\n",
                 m_targetTxnsPerSecond, m_maxOutstandingTxns);
         System.out.printf("Current outstanding is %d and recent internal latency is %.2f\n",
-                m_outstandingTxns, m_prevInternalLatencyAvgs.peekFirst());
+                m_outstandingTxns.get(), m_prevInternalLatencyAvgs.peekFirst());
     }
 }
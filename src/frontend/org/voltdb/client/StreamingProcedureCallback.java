@@ -0,0 +1,60 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import org.voltdb.VoltTable;
+
+/**
+ * Callback for invocations made with
+ * {@link Client#callProcedureStreamed(StreamingProcedureCallback, int, String, Object...)}.
+ * Rows of large result tables arrive in chunks through {@link #clientCallbackRows} before
+ * the usual {@link #clientCallback} is invoked with the status. The tables of that final
+ * response only hold the rows that were not already delivered as chunks.
+ *
+ * Both methods are invoked on the client's network thread and must not block, every other
+ * callback of the client waits behind them. A consumer that can't keep up buffers the
+ * chunks and asks the client to stop reading through {@link ReadControl#pause()}.
+ */
+public interface StreamingProcedureCallback extends ProcedureCallback {
+    /**
+     * Lets a consumer hold back the stream it is receiving.
+     */
+    public interface ReadControl {
+        /**
+         * Stop reading from the connection the stream arrives on. Reading only stops while
+         * the paused streams are the only calls outstanding on that connection, so a paused
+         * stream never holds back the responses to other calls; chunks that arrive anyway
+         * are still delivered. Pausing a paused stream has no effect.
+         */
+        public void pause();
+
+        /**
+         * Undo {@link #pause()}, may be called from any thread. The stream is resumed
+         * automatically when its final response arrives.
+         */
+        public void resume();
+    }
+
+    /**
+     * Called once per chunk, in order, for every result table larger than the fetch size.
+     * @param tableIndex Index of the result table the rows belong to.
+     * @param rows The next chunk of rows, with the table's full schema.
+     * @param control Pauses and resumes this stream.
+     */
+    public void clientCallbackRows(int tableIndex, VoltTable rows, ReadControl control) throws Exception;
+}
@@ -14,20 +14,28 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.voltdb.compiler;
 
-import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
 /**
  * Keep a cache two level cache of plans generated by the Ad Hoc
@@ -40,9 +48,16 @@ import org.voltdb.planner.BoundPlan;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Both levels are concurrent caches bounded by an estimate of the bytes they
+ * hold and evict in approximately least recently used order, so planner
+ * threads don't serialize on the cache. Once the literal cache is nearly full,
+ * a literal is only admitted if a frequency sketch has seen it requested
+ * before. Workloads that issue a stream of distinct literals then can't flush
+ * the literals that are actually reused, those one-off statements are still
+ * served by the parameterized level.
  */
-public class AdHocCompilerCache implements Serializable {
-    private static final long serialVersionUID = 1L;
+public class AdHocCompilerCache {
 
     //////////////////////////////////////////////////////////////////////////
     // STATIC CODE TO MANAGE CACHE LIFETIMES / GLOBALNESS
@@ -71,26 +86,36 @@ public class AdHocCompilerCache implements Serializable {
     // PER-INSTANCE AWESOMEC CACHING CODE
     //////////////////////////////////////////////////////////////////////////
 
+    static final long DEFAULT_MAX_LITERAL_BYTES = 32L * 1024 * 1024;
+    static final long DEFAULT_MAX_CORE_BYTES = 32L * 1024 * 1024;
+
+    /** literal cache fill fraction above which new literals have to pass admission */
+    static final double ADMISSION_THRESHOLD = 0.9;
+    /** requests the sketch must have seen for a literal to be admitted to a nearly full cache */
+    static final int ADMISSION_FREQUENCY = 2;
+
     // cache sizes determined at construction time
-    final int MAX_LITERAL_ENTRIES;
-    final int MAX_CORE_ENTRIES;
+    final long MAX_LITERAL_BYTES;
+    final long MAX_CORE_BYTES;
+    final long LITERAL_ADMISSION_BYTES;
 
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final Cache<String, AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
-     *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+     *  to what values to enable its specialized (expression-indexed) plan.
+     *  The lists are immutable, adding a variant replaces the list. */
+    final Cache<String, List<BoundPlan> > m_coreCache;
+
+    /** how often literals have been requested recently */
+    final FrequencySketch m_literalFrequency = new FrequencySketch(1 << 16);
+
+    /** estimated bytes held by each cache */
+    final AtomicLong m_literalBytes = new AtomicLong();
+    final AtomicLong m_coreBytes = new AtomicLong();
+
+    /** literals that were planned but not admitted to the nearly full literal cache */
+    final AtomicLong m_literalRejections = new AtomicLong();
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -99,88 +124,123 @@ public class AdHocCompilerCache implements Serializable {
      * Constructor with default cache sizes.
      */
     private AdHocCompilerCache() {
-        this(1000, 1000);
+        this(DEFAULT_MAX_LITERAL_BYTES, DEFAULT_MAX_CORE_BYTES);
     }
 
-
     /**
      * Constructor with specific cache sizes is only called directly for testing.
      *
-     * @param maxLiteralEntries cache size for literals
-     * @param maxCoreEntries cache size for parameterized plans
+     * @param maxLiteralBytes cache size for literals
+     * @param maxCoreBytes cache size for parameterized plans
      */
-    AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries) {
-        MAX_LITERAL_ENTRIES = maxLiteralEntries;
-        MAX_CORE_ENTRIES = maxCoreEntries;
-
-        // an LRU cache map
-        m_literalCache = new LinkedHashMap<String, AdHocPlannedStatement>(MAX_LITERAL_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, AdHocPlannedStatement> eldest) {
-                if (size() > MAX_LITERAL_ENTRIES) {
-                    ++m_literalEvictions;
-                    return true;
-                }
-                return false;
+    AdHocCompilerCache(long maxLiteralBytes, long maxCoreBytes) {
+        MAX_LITERAL_BYTES = maxLiteralBytes;
+        MAX_CORE_BYTES = maxCoreBytes;
+        LITERAL_ADMISSION_BYTES = (long)(maxLiteralBytes * ADMISSION_THRESHOLD);
+
+        m_literalCache = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_LITERAL_BYTES)
+                .weigher(new Weigher<String, AdHocPlannedStatement>() {
+                    @Override
+                    public int weigh(String sql, AdHocPlannedStatement plan) {
+                        return literalWeight(sql, plan);
+                    }
+                })
+                .removalListener(new RemovalListener<String, AdHocPlannedStatement>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, AdHocPlannedStatement> removed) {
+                        m_literalBytes.addAndGet(-literalWeight(removed.getKey(), removed.getValue()));
+                    }
+                })
+                .recordStats()
+                .build();
+
+        m_coreCache = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_CORE_BYTES)
+                .weigher(new Weigher<String, List<BoundPlan> >() {
+                    @Override
+                    public int weigh(String parsedToken, List<BoundPlan> boundVariants) {
+                        return coreWeight(parsedToken, boundVariants);
+                    }
+                })
+                .removalListener(new RemovalListener<String, List<BoundPlan> >() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, List<BoundPlan> > removed) {
+                        m_coreBytes.addAndGet(-coreWeight(removed.getKey(), removed.getValue()));
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /*
+     * Rough estimates of the memory held by cache entries, object headers and
+     * references are lumped into a fixed overhead
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    static int stringWeight(String s) {
+        return s == null ? 0 : ENTRY_OVERHEAD + 2 * s.length();
+    }
+
+    static int corePlanWeight(CorePlan core) {
+        int weight = ENTRY_OVERHEAD + 2 * 20; // 2 sha1 hashes
+        if (core.aggregatorFragment != null) {
+            weight += core.aggregatorFragment.length;
+        }
+        if (core.collectorFragment != null) {
+            weight += core.collectorFragment.length;
+        }
+        if (core.parameterTypes != null) {
+            weight += 8 * core.parameterTypes.length;
+        }
+        return weight;
+    }
+
+    static int literalWeight(String sql, AdHocPlannedStatement plan) {
+        int weight = stringWeight(sql) + ENTRY_OVERHEAD + plan.sql.length + corePlanWeight(plan.core);
+        if (plan.extractedParamStrings != null) {
+            for (String literal : plan.extractedParamStrings) {
+                weight += stringWeight(literal);
             }
-        };
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
+        }
+        return weight;
+    }
+
+    static int coreWeight(String parsedToken, List<BoundPlan> boundVariants) {
+        int weight = stringWeight(parsedToken);
+        for (BoundPlan boundPlan : boundVariants) {
+            weight += ENTRY_OVERHEAD + corePlanWeight(boundPlan.core);
+            if (boundPlan.constants != null) {
+                for (String constant : boundPlan.constants) {
+                    weight += stringWeight(constant);
                 }
-                return false;
             }
-        };
+        }
+        return weight;
     }
 
     /**
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
-        String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
-        String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+    void printStats() {
+        String line1 = String.format("CACHE STATS - Literals: %s, %d bytes, %d rejected\n",
+                m_literalCache.stats(), m_literalBytes.get(), m_literalRejections.get());
+        String line2 = String.format("CACHE STATS - Plans:    %s, %d bytes\n",
+                m_coreCache.stats(), m_coreBytes.get());
 
         System.out.print(line1 + line2);
         System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
-        if (retval != null) {
-            ++m_literalHits;
-        }
-        return retval;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        m_literalFrequency.increment(sql.hashCode());
+        return m_literalCache.getIfPresent(sql);
     }
 
     /**
@@ -188,13 +248,8 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
-        if (retval != null) {
-            ++m_planHits;
-        }
-        return retval;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        return m_coreCache.getIfPresent(parsedToken);
     }
 
     /**
@@ -205,9 +260,9 @@ public class AdHocCompilerCache implements Serializable {
      * separate plan instances with the same value are input for the
      * same SQL literal.
      */
-    public synchronized void put(String sql,
-                                 String parsedToken,
-                                 AdHocPlannedStatement planIn)
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -218,21 +273,22 @@ public class AdHocCompilerCache implements Serializable {
         // uncomment this to get some raw stdout cache performance stats every 5s
         //startPeriodicStatsPrinting();
 
-        BoundPlan matched = null;
         BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings());
-        // deal with the parameterized plan cache first
-        List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-        if (boundVariants == null) {
-            boundVariants = new ArrayList<BoundPlan>();
-            m_coreCache.put(parsedToken, boundVariants);
-            // Note that there is an edge case in which more than one plan is getting counted as one
-            // "plan insertion". This only happens when two different plans arose from the same parameterized
-            // query (token) because one invocation used the correct constants to trigger an expression index and
-            // another invocation did not.  These are not counted separately (which would have to happen below
-            // after each call to boundVariants.add) because they are not evicted separately.
-            // It seems saner to use consistent units when counting insertions vs. evictions.
-            ++m_planInsertions;
-        } else {
+        // deal with the parameterized plan cache first,
+        // retry if another planner thread changed the variants concurrently
+        final ConcurrentMap<String, List<BoundPlan> > coreMap = m_coreCache.asMap();
+        while (true) {
+            List<BoundPlan> boundVariants = coreMap.get(parsedToken);
+            if (boundVariants == null) {
+                List<BoundPlan> created = Collections.singletonList(unmatched);
+                if (coreMap.putIfAbsent(parsedToken, created) == null) {
+                    m_coreBytes.addAndGet(coreWeight(parsedToken, created));
+                    break;
+                }
+                continue;
+            }
+
+            BoundPlan matched = null;
             for (BoundPlan boundPlan : boundVariants) {
                 if (boundPlan.equals(unmatched)) {
                     matched = boundPlan;
@@ -248,19 +304,34 @@ public class AdHocCompilerCache implements Serializable {
                                                      matched.constants,
                                                      planIn.partitionParam);
                 }
+                break;
+            }
+
+            // Two different plans arose from the same parameterized query (token) because
+            // one invocation used the correct constants to trigger an expression index and
+            // another invocation did not. Keep both, they are evicted together.
+            List<BoundPlan> extended = new ArrayList<BoundPlan>(boundVariants.size() + 1);
+            extended.addAll(boundVariants);
+            extended.add(unmatched);
+            extended = Collections.unmodifiableList(extended);
+            if (coreMap.replace(parsedToken, boundVariants, extended)) {
+                m_coreBytes.addAndGet(coreWeight(parsedToken, extended));
+                break;
             }
-        }
-        if (matched == null) {
-            // Don't count insertions (of possibly repeated tokens) here
-            //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-            boundVariants.add(unmatched);
         }
 
-        // then deal with the
-        AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+        // then deal with the literal cache
+        final int weight = literalWeight(sql, plan);
+        if (m_literalBytes.get() + weight > LITERAL_ADMISSION_BYTES &&
+                m_literalFrequency.frequency(sql.hashCode()) < ADMISSION_FREQUENCY) {
+            // nearly full and this literal hasn't been asked for before, don't let it
+            // push out literals that have
+            m_literalRejections.incrementAndGet();
+            return;
+        }
+        AdHocPlannedStatement cachedPlan = m_literalCache.asMap().putIfAbsent(sql, plan);
         if (cachedPlan == null) {
-            m_literalCache.put(sql, plan);
-            ++m_literalInsertions;
+            m_literalBytes.addAndGet(weight);
         }
         else {
             assert(cachedPlan.equals(plan));
@@ -271,7 +342,7 @@ public class AdHocCompilerCache implements Serializable {
      * Start a timer that prints cache stats to the console every 5s.
      * Used for development until we get better stats integration.
      */
-    public void startPeriodicStatsPrinting() {
+    public synchronized void startPeriodicStatsPrinting() {
         if (m_statsTimer == null) {
             m_statsTimer = new Timer();
             m_statsTimer.scheduleAtFixedRate(new TimerTask() {
@@ -288,7 +359,7 @@ public class AdHocCompilerCache implements Serializable {
      * @return  literal cache size as a count
      */
     public int getLiteralCacheSize() {
-        return m_literalCache.size();
+        return (int)m_literalCache.size();
     }
 
     /**
@@ -296,6 +367,127 @@ public class AdHocCompilerCache implements Serializable {
      * @return  core cache size as a count
      */
     public int getCoreCacheSize() {
-        return m_coreCache.size();
+        return (int)m_coreCache.size();
+    }
+
+    /**
+     * @return estimated bytes held by the literal cache
+     */
+    public long getLiteralCacheBytes() {
+        return m_literalBytes.get();
+    }
+
+    /**
+     * @return estimated bytes held by the core (parameterized) cache
+     */
+    public long getCoreCacheBytes() {
+        return m_coreBytes.get();
+    }
+
+    /**
+     * @return literals evicted to stay within the size limit since the cache was created
+     */
+    public long getLiteralCacheEvictions() {
+        return m_literalCache.stats().evictionCount();
+    }
+
+    /**
+     * @return parameterized plans evicted to stay within the size limit since the cache was created
+     */
+    public long getCoreCacheEvictions() {
+        return m_coreCache.stats().evictionCount();
+    }
+
+    /**
+     * @return literals that were planned but not admitted to the literal cache
+     */
+    public long getLiteralCacheRejections() {
+        return m_literalRejections.get();
+    }
+
+    /**
+     * Approximate counts of how often hashes were seen recently, a count-min sketch of
+     * 4 bit counters. Counters are halved once as many increments as there are counters
+     * have been made, so old popularity fades. Updates are lock free.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = new long[] {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        static final int MAX_COUNT = 15;
+
+        private final AtomicLongArray m_table;
+        private final int m_mask;
+        private final int m_sampleSize;
+        private final AtomicInteger m_increments = new AtomicInteger();
+
+        /**
+         * @param counters number of counters, a power of two of at least 16
+         */
+        FrequencySketch(int counters) {
+            assert(Integer.bitCount(counters) == 1 && counters >= 16);
+            m_table = new AtomicLongArray(counters / 16);
+            m_mask = m_table.length() - 1;
+            m_sampleSize = counters;
+        }
+
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int)h & m_mask;
+        }
+
+        // which of the 16 counters in the long the row uses
+        private static int shiftOf(int hash, int row) {
+            return ((hash >>> (row << 3)) & 15) << 2;
+        }
+
+        int frequency(int hash) {
+            hash = spread(hash);
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                long counters = m_table.get(indexOf(hash, row));
+                frequency = Math.min(frequency, (int)((counters >>> shiftOf(hash, row)) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            hash = spread(hash);
+            for (int row = 0; row < SEEDS.length; row++) {
+                final int index = indexOf(hash, row);
+                final int shift = shiftOf(hash, row);
+                while (true) {
+                    final long counters = m_table.get(index);
+                    if (((counters >>> shift) & 15) == MAX_COUNT) {
+                        break;
+                    }
+                    if (m_table.compareAndSet(index, counters, counters + (1L << shift))) {
+                        break;
+                    }
+                }
+            }
+            if (m_increments.incrementAndGet() == m_sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < m_table.length(); i++) {
+                while (true) {
+                    final long counters = m_table.get(i);
+                    if (m_table.compareAndSet(i, counters, (counters >>> 1) & RESET_MASK)) {
+                        break;
+                    }
+                }
+            }
+            m_increments.addAndGet(-m_sampleSize / 2);
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            return hash ^ (hash >>> 16);
+        }
     }
 }
@@ -56,6 +56,9 @@ public class AdHocPlannedStmtBatch extends AsyncCompilerResult implements Clonea
 
     private boolean isExplainWork = false;
 
+    // rows per chunk if the client asked for the result to be streamed
+    private int fetchSize = 0;
+
     /**
      * Statement batch constructor.
      *
@@ -211,4 +214,12 @@ public class AdHocPlannedStmtBatch extends AsyncCompilerResult implements Clonea
     public boolean isExplainWork() {
         return isExplainWork;
     }
+
+    public void setFetchSize(int rows) {
+        fetchSize = rows;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
 }
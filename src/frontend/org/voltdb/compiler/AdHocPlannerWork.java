@@ -37,6 +37,9 @@ public class AdHocPlannerWork extends AsyncCompilerWork {
     final long originalUniqueId;
     private boolean isExplainWork = false;
 
+    // rows per chunk if the client asked for the result to be streamed
+    private int fetchSize = 0;
+
     public AdHocPlannerWork(long replySiteId, boolean shouldShutdown, long clientHandle,
             long connectionId, String hostname, boolean adminConnection, Object clientData,
             String sqlBatchText, List<String> sqlStatements, Object partitionParam, CatalogContext context,
@@ -81,4 +84,12 @@ public class AdHocPlannerWork extends AsyncCompilerWork {
     public boolean isExplainWork() {
         return isExplainWork;
     }
+
+    public void setFetchSize(int rows) {
+        fetchSize = rows;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
 }
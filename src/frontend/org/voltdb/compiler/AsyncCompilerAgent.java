@@ -195,6 +195,7 @@ public class AsyncCompilerAgent {
         if( work.isExplainWork() ) {
             plannedStmtBatch.setIsExplainWork();
         }
+        plannedStmtBatch.setFetchSize(work.getFetchSize());
         return plannedStmtBatch;
     }
 }
@@ -17,23 +17,199 @@
 
 package org.voltdb.compiler;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.VoltTable;
+import org.voltdb.common.Constants;
+import org.voltdb.utils.CatalogUtil;
+
+/**
+ * Row count estimates used to cost plans. Without statistics every table is assumed
+ * to hold 100k to 1M rows and plan nodes fall back to their fixed selectivity guesses.
+ * Estimates built from TABLE and INDEX statistics, or loaded from a file written from
+ * them, carry real per-partition row and index entry counts instead.
+ */
 public class DatabaseEstimates {
 
+    public static class IndexEstimates {
+        /** Entries in the index on the largest partition */
+        public long entryCount = 0;
+        /** Distinct keys in the index on the largest partition, 0 if unknown */
+        public long distinctKeys = 0;
+    }
+
     public static class TableEstimates {
         public long maxTuples = 1000000;
         public long minTuples = 100000;
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
+        public HashMap<String, IndexEstimates> indexes = new HashMap<String, IndexEstimates>();
     }
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
 
+    private boolean m_fromStatistics = false;
+
     public TableEstimates getEstimatesForTable(String tableName) {
-        if (tables.containsKey(tableName) == false)
-            tables.put(tableName, new TableEstimates());
+        TableEstimates estimates = tables.get(tableName);
+        // don't cache the defaults, estimates may be shared by planner threads
+        return estimates == null ? new TableEstimates() : estimates;
+    }
+
+    /**
+     * @return the estimates for an index, or null if there are none
+     */
+    public IndexEstimates getEstimatesForIndex(String tableName, String indexName) {
+        TableEstimates estimates = tables.get(tableName);
+        return estimates == null ? null : estimates.indexes.get(indexName);
+    }
+
+    /**
+     * @return true if the estimates came from statistics about actual data, and plan nodes
+     * can cost with them instead of relying on the defaults
+     */
+    public boolean hasStatistics() {
+        return m_fromStatistics;
+    }
+
+    void setHasStatistics(boolean fromStatistics) {
+        m_fromStatistics = fromStatistics;
+    }
+
+    /**
+     * Build estimates from the per-partition results of the TABLE and INDEX statistics
+     * selectors. Each fragment runs against one partition, so tables and indexes are
+     * estimated at the size of their largest partition.
+     * @param tableStats TABLE statistics, may be null
+     * @param indexStats INDEX statistics, may be null
+     */
+    public static DatabaseEstimates fromStatistics(VoltTable tableStats, VoltTable indexStats) {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        estimates.m_fromStatistics = true;
+        if (tableStats != null) {
+            tableStats.resetRowPosition();
+            while (tableStats.advanceRow()) {
+                final String tableName = tableStats.getString("TABLE_NAME");
+                final long tuples = tableStats.getLong("TUPLE_COUNT");
+                TableEstimates table = estimates.tables.get(tableName);
+                if (table == null) {
+                    table = new TableEstimates();
+                    table.maxTuples = tuples;
+                    table.minTuples = tuples;
+                    estimates.tables.put(tableName, table);
+                } else {
+                    table.maxTuples = Math.max(table.maxTuples, tuples);
+                    table.minTuples = Math.min(table.minTuples, tuples);
+                }
+            }
+            tableStats.resetRowPosition();
+        }
+        if (indexStats != null) {
+            indexStats.resetRowPosition();
+            while (indexStats.advanceRow()) {
+                final String tableName = indexStats.getString("TABLE_NAME");
+                final String indexName = indexStats.getString("INDEX_NAME");
+                final long entries = indexStats.getLong("ENTRY_COUNT");
+                final boolean unique = indexStats.getLong("IS_UNIQUE") != 0;
+                TableEstimates table = estimates.tables.get(tableName);
+                if (table == null) {
+                    // an index on a table without table statistics doesn't help
+                    continue;
+                }
+                IndexEstimates index = table.indexes.get(indexName);
+                if (index == null) {
+                    index = new IndexEstimates();
+                    table.indexes.put(indexName, index);
+                }
+                index.entryCount = Math.max(index.entryCount, entries);
+                if (unique) {
+                    index.distinctKeys = index.entryCount;
+                }
+            }
+            indexStats.resetRowPosition();
+        }
+        return estimates;
+    }
+
+    public String toJSONString() throws JSONException {
+        JSONStringer stringer = new JSONStringer();
+        stringer.object();
+        stringer.key("fromStatistics").value(m_fromStatistics);
+        stringer.key("tables").object();
+        for (Map.Entry<String, TableEstimates> e : tables.entrySet()) {
+            TableEstimates table = e.getValue();
+            stringer.key(e.getKey()).object();
+            stringer.key("maxTuples").value(table.maxTuples);
+            stringer.key("minTuples").value(table.minTuples);
+            stringer.key("indexes").object();
+            for (Map.Entry<String, IndexEstimates> ie : table.indexes.entrySet()) {
+                stringer.key(ie.getKey()).object();
+                stringer.key("entryCount").value(ie.getValue().entryCount);
+                stringer.key("distinctKeys").value(ie.getValue().distinctKeys);
+                stringer.endObject();
+            }
+            stringer.endObject();
+            stringer.endObject();
+        }
+        stringer.endObject();
+        stringer.endObject();
+        return stringer.toString();
+    }
+
+    public static DatabaseEstimates fromJSONString(String json) throws JSONException {
+        JSONObject jsObj = new JSONObject(json);
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        estimates.m_fromStatistics = jsObj.getBoolean("fromStatistics");
+        JSONObject jsTables = jsObj.getJSONObject("tables");
+        Iterator<?> tableNames = jsTables.keys();
+        while (tableNames.hasNext()) {
+            final String tableName = (String)tableNames.next();
+            JSONObject jsTable = jsTables.getJSONObject(tableName);
+            TableEstimates table = new TableEstimates();
+            table.maxTuples = jsTable.getLong("maxTuples");
+            table.minTuples = jsTable.getLong("minTuples");
+            JSONObject jsIndexes = jsTable.getJSONObject("indexes");
+            Iterator<?> indexNames = jsIndexes.keys();
+            while (indexNames.hasNext()) {
+                final String indexName = (String)indexNames.next();
+                JSONObject jsIndex = jsIndexes.getJSONObject(indexName);
+                IndexEstimates index = new IndexEstimates();
+                index.entryCount = jsIndex.getLong("entryCount");
+                index.distinctKeys = jsIndex.getLong("distinctKeys");
+                table.indexes.put(indexName, index);
+            }
+            estimates.tables.put(tableName, table);
+        }
+        return estimates;
+    }
+
+    /**
+     * Write the estimates to a file, replacing it atomically
+     */
+    public void writeToFile(File file) throws IOException, JSONException {
+        final File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            fos.write(toJSONString().getBytes(Constants.UTF8ENCODING));
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
 
-        return tables.get(tableName);
+    public static DatabaseEstimates readFromFile(File file) throws IOException, JSONException {
+        byte bytes[] = CatalogUtil.toBytes(file);
+        return fromJSONString(new String(bytes, Constants.UTF8ENCODING));
     }
 }
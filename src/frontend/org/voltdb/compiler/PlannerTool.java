@@ -17,6 +17,7 @@
 
 package org.voltdb.compiler;
 
+import java.io.File;
 import java.util.List;
 
 import org.hsqldb_voltpatches.HSQLInterface;
@@ -29,6 +30,7 @@ import org.voltdb.PlannerStatsCollector.CacheUse;
 import org.voltdb.StatsAgent;
 import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
 import org.voltdb.common.Constants;
@@ -58,6 +60,61 @@ public class PlannerTool {
 
     public static final int AD_HOC_JOINED_TABLE_LIMIT = 5;
 
+    /**
+     * System property naming a file the row count estimates are loaded from at startup
+     * and written to whenever they are refreshed from statistics.
+     */
+    public static final String STATISTICS_FILE_PROPERTY = "PLANNER_STATISTICS_FILE";
+
+    // Row count estimates shared by all ad hoc planning, replaced wholesale on refresh
+    private static volatile DatabaseEstimates m_estimates = loadEstimates();
+
+    static DatabaseEstimates loadEstimates() {
+        final String path = System.getProperty(STATISTICS_FILE_PROPERTY);
+        if (path != null && new File(path).exists()) {
+            try {
+                return DatabaseEstimates.readFromFile(new File(path));
+            } catch (Exception e) {
+                hostLog.warn("Unable to load planner statistics from " + path + ", using default estimates", e);
+            }
+        }
+        return new DatabaseEstimates();
+    }
+
+    public static DatabaseEstimates getEstimates() {
+        return m_estimates;
+    }
+
+    public static void setEstimates(DatabaseEstimates estimates) {
+        assert(estimates != null);
+        m_estimates = estimates;
+    }
+
+    /**
+     * Rebuild the planner's row count estimates from this host's TABLE and INDEX statistics
+     * and persist them if a statistics file is configured. Plans already cached keep the
+     * costing they were chosen with.
+     */
+    public static void updateEstimatesFromStatistics(StatsAgent statsAgent) {
+        final Long now = System.currentTimeMillis();
+        VoltTable tableStats = statsAgent.getStatsAggregate(StatsSelector.TABLE, false, now);
+        if (tableStats == null || tableStats.getRowCount() == 0) {
+            return;
+        }
+        VoltTable indexStats = statsAgent.getStatsAggregate(StatsSelector.INDEX, false, now);
+        DatabaseEstimates estimates = DatabaseEstimates.fromStatistics(tableStats, indexStats);
+        m_estimates = estimates;
+
+        final String path = System.getProperty(STATISTICS_FILE_PROPERTY);
+        if (path != null) {
+            try {
+                estimates.writeToFile(new File(path));
+            } catch (Exception e) {
+                hostLog.warn("Unable to write planner statistics to " + path, e);
+            }
+        }
+    }
+
     public PlannerTool(final Cluster cluster, final Database database, int catalogVersion) {
         assert(cluster != null);
         assert(database != null);
@@ -141,7 +198,7 @@ public class PlannerTool {
             PartitioningForStatement partitioning = new PartitioningForStatement(partitionParam, inferSP, inferSP);
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-                    partitioning, m_hsql, new DatabaseEstimates(), true,
+                    partitioning, m_hsql, m_estimates, true,
                     AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
             CompiledPlan plan = null;
             String[] extractedLiterals = null;
@@ -223,7 +280,9 @@ public class PlannerTool {
         }
         finally {
             if (m_plannerStats != null) {
-                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1);
+                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(),
+                                                  m_cache.getLiteralCacheEvictions(), m_cache.getCoreCacheEvictions(),
+                                                  cacheUse, -1);
             }
         }
     }
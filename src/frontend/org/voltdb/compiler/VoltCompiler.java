@@ -1386,14 +1386,14 @@ public class VoltCompiler {
     }
 
     static void addDatabaseEstimatesInfo(final DatabaseEstimates estimates, final Database db) {
-        // Not implemented yet. Don't panic.
-
-        /*for (Table table : db.getTables()) {
-            DatabaseEstimates.TableEstimates tableEst = new DatabaseEstimates.TableEstimates();
-            tableEst.maxTuples = 1000000;
-            tableEst.minTuples = 100000;
-            estimates.tables.put(table, tableEst);
-        }*/
+        // Without a statistics file every table gets the default estimates
+        DatabaseEstimates fromStatistics = PlannerTool.loadEstimates();
+        for (Table table : db.getTables()) {
+            if (fromStatistics.tables.containsKey(table.getTypeName())) {
+                estimates.tables.put(table.getTypeName(), fromStatistics.tables.get(table.getTypeName()));
+            }
+        }
+        estimates.setHasStatistics(fromStatistics.hasStatistics() && !estimates.tables.isEmpty());
     }
 
     ProcedureDescriptor getProcedure(
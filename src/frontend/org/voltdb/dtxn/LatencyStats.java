@@ -22,112 +22,62 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.voltdb.ClientInterface;
+import org.voltdb.LatencyHistogram;
 import org.voltdb.SiteStatsSource;
 import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
 
-import com.google.common.collect.ImmutableList;
-
 /**
- * Class that provides latency information in buckets. Each bucket contains the
- * number of procedures with latencies in the range.
+ * Class that provides latency percentiles for the transactions completed by
+ * this host's client interfaces. Each host reports a single row with the
+ * percentiles in microseconds and the compact serialized histogram so that
+ * callers can merge the histograms across hosts.
  */
 public class LatencyStats extends SiteStatsSource {
-    /**
-     * A dummy iterator that wraps and int and provides the
-     * Iterator<Object> necessary for getStatsRowKeyIterator()
-     *
-     */
-    private static class BucketIterator implements Iterator<Object> {
-        private final int buckets;
-        private int current = -1;
-
-        private BucketIterator(int buckets) {
-            // Store the 0-indexed size
-            this.buckets = buckets - 1;
-        }
 
-        @Override
-        public boolean hasNext() {
-            if (current == buckets) {
-                return false;
-            }
-            return true;
-        }
+    /** The highest latency, in microseconds, tracked without clamping. */
+    public static final long HIGHEST_TRACKABLE_LATENCY_MICROS = 10L * 60 * 1000 * 1000; // 10 minutes
+    /** The number of significant decimal digits tracked by the histograms. */
+    public static final int LATENCY_SIGNIFICANT_DIGITS = 2;
 
-        @Override
-        public Object next() {
-            return ++current;
-        }
-
-        @Override
-        public void remove() {
-
-        }
+    public static LatencyHistogram makeHistogram()
+    {
+        return new LatencyHistogram(HIGHEST_TRACKABLE_LATENCY_MICROS, LATENCY_SIGNIFICANT_DIGITS);
     }
 
+    /**
+     * Single writer histogram of latencies owned by an admission control group.
+     * Samples are recorded without allocation on the network thread, the stats
+     * thread reads the counts unsynchronized, which can only make a report
+     * slightly stale.
+     */
     public static class LatencyInfo
     {
-        private volatile ImmutableList<Long> m_latencyStats;
-        private volatile long m_max;
+        private final LatencyHistogram m_histogram = makeHistogram();
 
         public LatencyInfo()
         {
-            Long[] buckets = {0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l,
-                0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l,
-                0l, 0l, 0l, 0l, 0l, 0l};
-            m_latencyStats = ImmutableList.copyOf(buckets);
-            m_max = (m_latencyStats.size() - 1) * BUCKET_RANGE;
         }
 
-        public void addSample(int delta)
+        public void addSample(long deltaMicros)
         {
-            int bucketIndex = Math.min((int) (delta / BUCKET_RANGE), m_latencyStats.size() - 1);
-
-            // if the host's clock moves backwards, bucketIndex can be negative
-            // this next line of code is a lie, but a beautiful one that keeps your server up
-            if (bucketIndex < 0) bucketIndex = 0;
-
-            m_max = Math.max(delta, m_max);
-            ImmutableList.Builder<Long> builder = ImmutableList.builder();
-            for (int i = 0; i < m_latencyStats.size(); i++) {
-                if (i == bucketIndex) {
-                    builder.add(m_latencyStats.get(i) + 1);
-                }
-                else {
-                    builder.add(m_latencyStats.get(i));
-                }
-            }
-            m_latencyStats = builder.build();
+            m_histogram.recordValue(deltaMicros);
         }
 
-        void mergeLatencyInfo(LatencyInfo other)
+        void mergeInto(LatencyHistogram totals)
         {
-            assert(other != null);
-            assert(m_latencyStats.size() == other.m_latencyStats.size());
-            m_max = Math.max(m_max, other.m_max);
-            ImmutableList.Builder<Long> builder = ImmutableList.builder();
-            for (int i = 0; i < m_latencyStats.size(); i++) {
-                builder.add(m_latencyStats.get(i) + other.m_latencyStats.get(i));
-            }
-            m_latencyStats = builder.build();
-        }
-
-        List<Long> getBuckets()
-        {
-            return m_latencyStats;
-        }
-
-        long getMax()
-        {
-            return m_max;
+            assert(totals != null);
+            totals.add(m_histogram);
         }
     }
 
-    private static final long BUCKET_RANGE = 10; // 10ms
-    private LatencyInfo m_totals;
+    private LatencyHistogram m_totals = makeHistogram();
+    // cumulative totals at the last interval poll
+    private LatencyHistogram m_lastTotals = makeHistogram();
+    private long m_lastPollTime = System.currentTimeMillis();
+    private long m_intervalMs = 0;
 
     public LatencyStats(long siteId) {
         super(siteId, false);
@@ -137,36 +87,68 @@ public class LatencyStats extends SiteStatsSource {
     @Override
     protected Iterator<Object> getStatsRowKeyIterator(boolean interval)
     {
-        m_totals = new LatencyInfo();
+        LatencyHistogram totals = makeHistogram();
         for (ClientInterface ci : VoltDB.instance().getClientInterfaces()) {
             List<LatencyInfo> thisci = ci.getLatencyStats();
             for (LatencyInfo info : thisci) {
-                m_totals.mergeLatencyInfo(info);
+                info.mergeInto(totals);
             }
         }
-        return new BucketIterator(m_totals.getBuckets().size());
+
+        final long now = System.currentTimeMillis();
+        if (interval) {
+            m_totals = LatencyHistogram.diff(totals, m_lastTotals);
+            m_intervalMs = now - m_lastPollTime;
+            m_lastTotals = totals;
+            m_lastPollTime = now;
+        }
+        else {
+            m_totals = totals;
+            m_intervalMs = 0;
+        }
+
+        // one row per host
+        return new Iterator<Object>() {
+            boolean givenNext = false;
+            @Override
+            public boolean hasNext() {
+                return !givenNext;
+            }
+            @Override
+            public Object next() {
+                givenNext = true;
+                return new Object();
+            }
+            @Override
+            public void remove() {}
+        };
     }
 
     @Override
     protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
         super.populateColumnSchema(columns);
-        columns.add(new ColumnInfo("BUCKET_MIN", VoltType.INTEGER));
-        columns.add(new ColumnInfo("BUCKET_MAX", VoltType.INTEGER));
-        columns.add(new ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("INTERVAL", VoltType.BIGINT));
+        columns.add(new ColumnInfo("COUNT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P95", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P999", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P9999", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HISTOGRAM", VoltType.VARBINARY));
     }
 
     @Override
     protected void updateStatsRow(Object rowKey, Object[] rowValues) {
-        final int bucket = (Integer) rowKey;
-
-        rowValues[columnNameToIndex.get("BUCKET_MIN")] = bucket * BUCKET_RANGE;
-        if (bucket < m_totals.getBuckets().size() - 1) {
-            rowValues[columnNameToIndex.get("BUCKET_MAX")] = (bucket + 1) * BUCKET_RANGE;
-        } else {
-            // max for the last bucket is the max of the largest latency
-            rowValues[columnNameToIndex.get("BUCKET_MAX")] = m_totals.getMax();
-        }
-        rowValues[columnNameToIndex.get("INVOCATIONS")] = m_totals.getBuckets().get(bucket);
+        rowValues[columnNameToIndex.get("INTERVAL")] = m_intervalMs;
+        rowValues[columnNameToIndex.get("COUNT")] = m_totals.getTotalCount();
+        rowValues[columnNameToIndex.get("P50")] = m_totals.getValueAtPercentile(0.5);
+        rowValues[columnNameToIndex.get("P95")] = m_totals.getValueAtPercentile(0.95);
+        rowValues[columnNameToIndex.get("P99")] = m_totals.getValueAtPercentile(0.99);
+        rowValues[columnNameToIndex.get("P999")] = m_totals.getValueAtPercentile(0.999);
+        rowValues[columnNameToIndex.get("P9999")] = m_totals.getValueAtPercentile(0.9999);
+        rowValues[columnNameToIndex.get("MAX")] = m_totals.getMaxValue();
+        rowValues[columnNameToIndex.get("HISTOGRAM")] = m_totals.toCompactBytes();
         super.updateStatsRow(rowKey, rowValues);
     }
 }
@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.concurrent.Callable;
@@ -91,6 +92,15 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             new AtomicReference<Pair<Mailbox,ImmutableList<Long>>>(Pair.of((Mailbox)null, ImmutableList.<Long>builder().build()));
     private final Semaphore m_bufferPushPermits = new Semaphore(16);
 
+    /*
+     * The end USO and push time of every block that hasn't been acked, so the lag
+     * of this source can be read without going through m_es. Only touched on m_es.
+     */
+    private final ArrayDeque<long[]> m_pendingBlockTimes = new ArrayDeque<long[]>();
+    private final long m_createTime = System.currentTimeMillis();
+    private volatile long m_pendingBytes = 0;
+    private volatile long m_oldestPendingTime = 0;
+
     private final int m_nullArrayLength;
 
     /**
@@ -135,6 +145,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         String nonce = signature + "_" + HSId + "_" + partitionId;
 
         m_committedBuffers = new StreamBlockQueue(overflowPath, nonce);
+        updateLag();
 
         /*
          * This is not the catalog relativeIndex(). This ID incorporates
@@ -255,6 +266,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
 
         String nonce = m_signature + "_" + m_HSId + "_" + m_partitionId;
         m_committedBuffers = new StreamBlockQueue(overflowPath, nonce);
+        updateLag();
 
         // compute the number of bytes necessary to hold one bit per
         // schema column
@@ -298,6 +310,40 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             }
         }
         m_firstUnpolledUso = Math.max(m_firstUnpolledUso, lastUso);
+
+        while (!m_pendingBlockTimes.isEmpty() && m_pendingBlockTimes.peek()[0] <= releaseOffset) {
+            m_pendingBlockTimes.poll();
+        }
+        updateLag();
+    }
+
+    private void updateLag() {
+        m_pendingBytes = m_committedBuffers.sizeInBytes();
+        if (m_pendingBytes == 0) {
+            m_pendingBlockTimes.clear();
+            m_oldestPendingTime = 0;
+        } else if (m_pendingBlockTimes.isEmpty()) {
+            // Blocks recovered from overflow, all we know is they are older than this source
+            m_oldestPendingTime = m_createTime;
+        } else {
+            m_oldestPendingTime = m_pendingBlockTimes.peek()[1];
+        }
+    }
+
+    /**
+     * @return the number of bytes pushed to this source that haven't been acked
+     */
+    public long getPendingBytes() {
+        return m_pendingBytes;
+    }
+
+    /**
+     * @return how long the oldest unacked block has been waiting, or 0 if everything
+     * pushed to this source has been acked
+     */
+    public long getLagMillis(long now) {
+        final long oldest = m_oldestPendingTime;
+        return oldest == 0 ? 0 : Math.max(0, now - oldest);
     }
 
     private void exportActionImpl(RawProcessor.ExportInternalMessage m) {
@@ -574,6 +620,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                                     deleted.set(true);
                                 }
                             }, uso, false));
+                    m_pendingBlockTimes.offer(new long[] { uso + buffer.capacity(), System.currentTimeMillis() });
                 } catch (IOException e) {
                     exportLog.error(e);
                     if (!deleted.get()) {
@@ -600,6 +647,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                 exportLog.error(e);
             }
         }
+        updateLag();
         pollImpl(m_pollFuture);
     }
 
@@ -654,6 +702,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             public void run() {
                 try {
                     m_committedBuffers.truncateToTxnId(txnId, m_nullArrayLength);
+                    updateLag();
                     if (m_committedBuffers.isEmpty() && m_endOfStream) {
                         if (m_pollFuture != null) {
                             m_pollFuture.set(null);
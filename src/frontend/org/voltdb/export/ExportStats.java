@@ -0,0 +1,68 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Reports how far behind each export data source on this host is, as the bytes
+ * pushed to it that haven't been acked and the age of the oldest of them.
+ */
+public class ExportStats extends StatsSource {
+
+    public ExportStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(VoltSystemProcedure.CNAME_PARTITION_ID, VoltSystemProcedure.CTYPE_ID));
+        columns.add(new ColumnInfo("TABLE_NAME", VoltType.STRING));
+        columns.add(new ColumnInfo("GENERATION", VoltType.BIGINT));
+        columns.add(new ColumnInfo("LAG_BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("LAG_SECONDS", VoltType.FLOAT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final ExportDataSource source = (ExportDataSource)rowKey;
+        rowValues[columnNameToIndex.get(VoltSystemProcedure.CNAME_PARTITION_ID)] = source.getPartitionId();
+        rowValues[columnNameToIndex.get("TABLE_NAME")] = source.getTableName();
+        rowValues[columnNameToIndex.get("GENERATION")] = source.getGeneration();
+        rowValues[columnNameToIndex.get("LAG_BYTES")] = source.getPendingBytes();
+        rowValues[columnNameToIndex.get("LAG_SECONDS")] = source.getLagMillis(System.currentTimeMillis()) / 1000.0;
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        final ExportManager manager = ExportManager.instance();
+        if (manager == null) {
+            return Collections.emptyList().iterator();
+        }
+        return new ArrayList<Object>(manager.getDataSources()).iterator();
+    }
+}
@@ -56,8 +56,16 @@ public class StreamBlockQueue {
 
     private final String m_nonce;
 
+    /**
+     * How often the overflow writer fdatasyncs in the background, 0 (the default) leaves
+     * all syncing to sync()
+     */
+    private static final long OVERFLOW_SYNC_INTERVAL_MS = Long.getLong("EXPORT_OVERFLOW_SYNC_INTERVAL_MS", 0);
+
     public StreamBlockQueue(String path, String nonce) throws java.io.IOException {
-        m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path));
+        //Write overflow in the background so the export data source's thread doesn't create
+        //segment files or wait on the disk when it pushes buffers
+        m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path), true, OVERFLOW_SYNC_INTERVAL_MS);
         m_nonce = nonce;
     }
 
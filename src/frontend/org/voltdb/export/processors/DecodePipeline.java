@@ -0,0 +1,237 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export.processors;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.ByteOrder;
+import java.util.concurrent.RejectedExecutionException;
+import jsr166y.ThreadLocalRandom;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.export.ExportDataSource;
+import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
+import org.voltdb.exportclient.ExportDecoderBase;
+import org.voltdb.exportclient.ExportDecoderBase.RestartBlockException;
+import org.voltdb.exportclient.ExportRowCursor;
+
+/**
+ * Decodes the blocks of one data source on a thread of its own, so a slow
+ * decoder only holds up its own source. Up to maxInFlight blocks are polled
+ * ahead of the decoder. Blocks are decoded and acked in the order they were
+ * polled.
+ */
+class DecodePipeline {
+    private final ExportDataSource m_source;
+    private final ExportDecoderBase m_edb;
+    private final AdvertisedDataSource m_ads;
+    private final int m_maxInFlight;
+    private final VoltLogger m_logger;
+    private final ListeningExecutorService m_es;
+    private final ExportRowCursor m_cursor;
+    // polled blocks not yet acked, guarded by this
+    private int m_inFlight = 0;
+    private boolean m_polling = false;
+    private boolean m_done = false;
+
+    DecodePipeline(ExportDataSource source, ExportDecoderBase edb, AdvertisedDataSource ads,
+            int maxInFlight, VoltLogger logger) {
+        m_source = source;
+        m_edb = edb;
+        m_ads = ads;
+        m_maxInFlight = maxInFlight;
+        m_logger = logger;
+        m_es = CoreUtils.getSingleThreadExecutor(
+                "Export decoder " + source.getTableName() + " partition " + source.getPartitionId()
+                + " gen " + source.getGeneration());
+        m_cursor = edb.createRowCursor();
+    }
+
+    /*
+     * Poll the next block unless a poll is already outstanding or enough blocks
+     * are waiting to be decoded. The source only allows one poll at a time.
+     */
+    void poll() {
+        synchronized (this) {
+            if (m_done || m_polling || m_inFlight >= m_maxInFlight) {
+                return;
+            }
+            m_polling = true;
+            m_inFlight++;
+        }
+        final ListenableFuture<BBContainer> fut = m_source.poll();
+        fut.addListener(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (DecodePipeline.this) {
+                    m_polling = false;
+                }
+                BBContainer cont = null;
+                try {
+                    cont = fut.get();
+                } catch (Exception e) {
+                    m_logger.error("Error polling export block", e);
+                    blockDone();
+                    return;
+                }
+                if (cont == null) {
+                    endOfStream();
+                    return;
+                }
+                final BBContainer block = cont;
+                try {
+                    m_es.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            decode(block);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shut down, the block will be polled again by the next generation
+                    return;
+                }
+                poll();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void blockDone() {
+        synchronized (this) {
+            m_inFlight--;
+        }
+        poll();
+    }
+
+    private void endOfStream() {
+        synchronized (this) {
+            m_done = true;
+        }
+        try {
+            // runs behind the blocks already queued for decoding
+            m_es.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sourceNoLongerAdvertised();
+                    m_es.shutdown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //It's okay, means it was already shut down
+        }
+    }
+
+    void sourceNoLongerAdvertised() {
+        runOnDecoderExecutor(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (m_ads) {
+                    m_edb.sourceNoLongerAdvertised(m_ads);
+                }
+            }
+        });
+    }
+
+    /*
+     * Decoders that need a dedicated thread (e.g. to block on a remote database)
+     * supply their own executor, wait for it so blocks are still acked in order
+     */
+    private void runOnDecoderExecutor(Runnable r) {
+        try {
+            m_edb.getExecutor().submit(r).get();
+        } catch (Exception e) {
+            m_logger.error("Error processing export block", e);
+        }
+    }
+
+    private void decode(final BBContainer cont) {
+        runOnDecoderExecutor(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decodeBlock(cont);
+                } catch (Exception e) {
+                    Throwables.propagate(e);
+                }
+            }
+        });
+        blockDone();
+    }
+
+    private void decodeBlock(BBContainer cont) throws Exception {
+        try {
+            //Position to restart at on error
+            final int startPosition = cont.b.position();
+
+            //Track the amount of backoff to use next time, will be updated on repeated failure
+            int backoffQuantity = 10 + (int)(10 * ThreadLocalRandom.current().nextDouble());
+
+            /*
+             * If there is an error processing the block the decoder thinks is recoverable
+             * start the block from the beginning and repeat until it is processed.
+             * Also allow the decoder to request exponential backoff
+             */
+            while (true) {
+                cont.b.position(startPosition);
+                try {
+                    m_edb.onBlockStart();
+                    cont.b.order(ByteOrder.LITTLE_ENDIAN);
+                    while (cont.b.hasRemaining()) {
+                        int length = cont.b.getInt();
+                        final int rowStart = cont.b.position();
+                        m_edb.processRow(m_cursor.reset(cont.b, rowStart, length));
+                        cont.b.position(rowStart + length);
+                    }
+                    m_edb.onBlockCompletion();
+                    break;
+                } catch (RestartBlockException e) {
+                    if (e.requestBackoff) {
+                        Thread.sleep(backoffQuantity);
+                        //Cap backoff to 8 seconds, then double modulo some randomness
+                        if (backoffQuantity < 8000) {
+                            backoffQuantity += (backoffQuantity * .5);
+                            backoffQuantity +=
+                                    (backoffQuantity * .5 * ThreadLocalRandom.current().nextDouble());
+                        }
+                    }
+                }
+            }
+        } finally {
+            cont.discard();
+        }
+    }
+
+    void shutdown() {
+        synchronized (this) {
+            m_done = true;
+        }
+        try {
+            m_es.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sourceNoLongerAdvertised();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //It's okay, means it was already shut down
+        }
+        m_es.shutdown();
+    }
+}
@@ -18,18 +18,12 @@ package org.voltdb.export.processors;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.util.concurrent.ListenableFuture;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.RejectedExecutionException;
-import jsr166y.ThreadLocalRandom;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.InputHandler;
-import org.voltcore.utils.DBBPool.BBContainer;
-import org.voltcore.utils.Pair;
 import org.voltdb.VoltType;
 import org.voltdb.export.ExportDataProcessor;
 import org.voltdb.export.ExportDataSource;
@@ -37,7 +31,6 @@ import org.voltdb.export.ExportGeneration;
 import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
 import org.voltdb.exportclient.ExportClientBase;
 import org.voltdb.exportclient.ExportDecoderBase;
-import org.voltdb.exportclient.ExportDecoderBase.RestartBlockException;
 
 public class GuestProcessor implements ExportDataProcessor {
 
@@ -47,8 +40,10 @@ public class GuestProcessor implements ExportDataProcessor {
     private ExportClientBase m_client;
     private VoltLogger m_logger;
 
-    private final List<Pair<ExportDecoderBase, AdvertisedDataSource>> m_decoders =
-            new ArrayList<Pair<ExportDecoderBase, AdvertisedDataSource>>();
+    // Blocks polled ahead of the decoder for each data source
+    private static final int MAX_IN_FLIGHT_BLOCKS = Integer.getInteger("EXPORT_MAX_IN_FLIGHT_BLOCKS", 2);
+
+    private final List<DecodePipeline> m_decoders = new ArrayList<DecodePipeline>();
 
 
     // Instantiated at ExportManager
@@ -108,88 +103,18 @@ public class GuestProcessor implements ExportDataProcessor {
                                         types,
                                         new ArrayList<Integer>(source.m_columnLengths));
                         ExportDecoderBase edb = m_client.constructExportDecoder(ads);
-                        m_decoders.add(Pair.of(edb, ads));
-                        final ListenableFuture<BBContainer> fut = source.poll();
-                        constructListener( source, fut, edb, ads);
-
+                        DecodePipeline pipeline =
+                                new DecodePipeline(source, edb, ads, MAX_IN_FLIGHT_BLOCKS, m_logger);
+                        synchronized (m_decoders) {
+                            m_decoders.add(pipeline);
+                        }
+                        pipeline.poll();
                     }
                 });
             }
         }
     }
 
-    private void constructListener(
-            final ExportDataSource source,
-            final ListenableFuture<BBContainer> fut,
-            final ExportDecoderBase edb,
-            final AdvertisedDataSource ads) {
-        /*
-         * The listener runs in the thread specified by the EDB.
-         * It can be same thread executor for things like export to file where the destination
-         * is always available and there is no reason to do additional buffering.
-         *
-         * For JDBC we want a dedicated thread to block on calls to the remote database
-         * so the data source thread can overflow data to disk.
-         */
-        fut.addListener(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    BBContainer cont = fut.get();
-                    if (cont == null) {
-                        synchronized (ads) {
-                            edb.sourceNoLongerAdvertised(ads);
-                        }
-                        return;
-                    }
-                    try {
-                        //Position to restart at on error
-                        final int startPosition = cont.b.position();
-
-                        //Track the amount of backoff to use next time, will be updated on repeated failure
-                        int backoffQuantity = 10 + (int)(10 * ThreadLocalRandom.current().nextDouble());
-
-                        /*
-                         * If there is an error processing the block the decoder thinks is recoverable
-                         * start the block from the beginning and repeat until it is processed.
-                         * Also allow the decoder to request exponential backoff
-                         */
-                        while (true) {
-                            cont.b.position(startPosition);
-                            try {
-                                edb.onBlockStart();
-                                cont.b.order(ByteOrder.LITTLE_ENDIAN);
-                                while (cont.b.hasRemaining()) {
-                                    int length = cont.b.getInt();
-                                    byte[] rowdata = new byte[length];
-                                    cont.b.get(rowdata, 0, length);
-                                    edb.processRow(length, rowdata);
-                                }
-                                edb.onBlockCompletion();
-                                break;
-                            } catch (RestartBlockException e) {
-                                if (e.requestBackoff) {
-                                    Thread.sleep(backoffQuantity);
-                                    //Cap backoff to 8 seconds, then double modulo some randomness
-                                    if (backoffQuantity < 8000) {
-                                        backoffQuantity += (backoffQuantity * .5);
-                                        backoffQuantity +=
-                                                (backoffQuantity * .5 * ThreadLocalRandom.current().nextDouble());
-                                    }
-                                }
-                            }
-                        }
-                    } finally {
-                        cont.discard();
-                    }
-                } catch (Exception e) {
-                    m_logger.error("Error processing export block", e);
-                }
-                constructListener(source, source.poll(), edb, ads);
-            }
-        }, edb.getExecutor());
-    }
-
     @Override
     public void queueWork(Runnable r) {
         new Thread(r, "GuestProcessor gen " + m_generation + " shutdown task").start();
@@ -203,18 +128,9 @@ public class GuestProcessor implements ExportDataProcessor {
 
     @Override
     public void shutdown() {
-        for (final Pair<ExportDecoderBase, AdvertisedDataSource> p : m_decoders) {
-            try {
-                p.getFirst().getExecutor().submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (p.getSecond()) {
-                            p.getFirst().sourceNoLongerAdvertised(p.getSecond());
-                        }
-                    }
-                });
-            } catch (RejectedExecutionException e) {
-                //It's okay, means it was already shut down
+        synchronized (m_decoders) {
+            for (DecodePipeline pipeline : m_decoders) {
+                pipeline.shutdown();
             }
         }
         m_client.shutdown();
@@ -0,0 +1,534 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+import org.voltdb.utils.CompressionService;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A binary, column oriented file format for exported rows.
+ *
+ * The file starts with a header holding the column names and types. Rows follow in
+ * blocks, each block is stored column by column and compressed with Snappy. Every
+ * column of a block has a null bitmap followed by its non-null values in one of these
+ * encodings, picked per block from the values themselves:
+ * <ul>
+ * <li>RLE - runs of equal values, for integral, timestamp and float columns</li>
+ * <li>DELTA - zig-zag varint differences between consecutive integral or timestamp values</li>
+ * <li>DICTIONARY - distinct strings, varbinaries or decimals once followed by varint indexes</li>
+ * <li>PLAIN - fixed width floats or length prefixed bytes</li>
+ * </ul>
+ */
+public final class ColumnarExportFile {
+    public static final int MAGIC = 0x56434F4C; // VCOL
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".vcol";
+    public static final int DEFAULT_ROWS_PER_BLOCK = 64 * 1024;
+
+    static final byte PLAIN = 0;
+    static final byte RLE = 1;
+    static final byte DELTA = 2;
+    static final byte DICTIONARY = 3;
+
+    private ColumnarExportFile() {}
+
+    private static boolean isLongType(VoltType type) {
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case TIMESTAMP:
+        case FLOAT:
+            return true;
+        case STRING:
+        case VARBINARY:
+        case DECIMAL:
+            return false;
+        default:
+            throw new IllegalArgumentException("Unsupported column type: " + type);
+        }
+    }
+
+    /**
+     * Buffers rows column by column and writes them out a block at a time, when the
+     * block is full or on flush(). Not thread safe.
+     */
+    public static class Writer {
+        private final DataOutputStream m_out;
+        private final VoltType[] m_types;
+        private final int m_rowsPerBlock;
+        private final boolean[][] m_nulls;
+        private final long[][] m_longs;
+        private final byte[][][] m_bytes;
+        private final int[] m_valueCounts;
+        private int m_rowCount = 0;
+        private final ByteArrayOutputStream m_blockBytes = new ByteArrayOutputStream(1024 * 64);
+        private final DataOutputStream m_block = new DataOutputStream(m_blockBytes);
+
+        public Writer(OutputStream out, List<String> names, List<VoltType> types) throws IOException {
+            this(out, names, types, DEFAULT_ROWS_PER_BLOCK);
+        }
+
+        public Writer(OutputStream out, List<String> names, List<VoltType> types, int rowsPerBlock)
+                throws IOException {
+            if (names.size() != types.size()) {
+                throw new IllegalArgumentException("Column name and type counts differ");
+            }
+            if (rowsPerBlock < 1) {
+                throw new IllegalArgumentException("Rows per block must be > 0");
+            }
+            m_out = new DataOutputStream(out);
+            m_types = types.toArray(new VoltType[types.size()]);
+            m_rowsPerBlock = rowsPerBlock;
+            m_nulls = new boolean[m_types.length][rowsPerBlock];
+            m_longs = new long[m_types.length][];
+            m_bytes = new byte[m_types.length][][];
+            m_valueCounts = new int[m_types.length];
+            for (int i = 0; i < m_types.length; i++) {
+                if (isLongType(m_types[i])) {
+                    m_longs[i] = new long[rowsPerBlock];
+                } else {
+                    m_bytes[i] = new byte[rowsPerBlock][];
+                }
+            }
+
+            m_out.writeInt(MAGIC);
+            m_out.writeInt(VERSION);
+            m_out.writeInt(m_types.length);
+            for (int i = 0; i < m_types.length; i++) {
+                m_out.writeByte(m_types[i].getValue());
+                m_out.writeUTF(names.get(i));
+            }
+        }
+
+        /**
+         * Append a row of values, as produced by ExportDecoderBase.decodeRow(), starting
+         * at the given offset into the row.
+         */
+        public void writeRow(Object[] row, int offset) throws IOException {
+            for (int i = 0; i < m_types.length; i++) {
+                final Object value = row[offset + i];
+                if (value == null) {
+                    m_nulls[i][m_rowCount] = true;
+                    continue;
+                }
+                m_nulls[i][m_rowCount] = false;
+                final int index = m_valueCounts[i]++;
+                switch (m_types[i]) {
+                case TINYINT:
+                case SMALLINT:
+                case INTEGER:
+                case BIGINT:
+                    m_longs[i][index] = ((Number)value).longValue();
+                    break;
+                case TIMESTAMP:
+                    m_longs[i][index] = ((TimestampType)value).getTime();
+                    break;
+                case FLOAT:
+                    m_longs[i][index] = Double.doubleToRawLongBits(((Number)value).doubleValue());
+                    break;
+                case STRING:
+                    m_bytes[i][index] = ((String)value).getBytes(Charsets.UTF_8);
+                    break;
+                case VARBINARY:
+                    m_bytes[i][index] = (byte[])value;
+                    break;
+                case DECIMAL:
+                    m_bytes[i][index] = ((BigDecimal)value).toString().getBytes(Charsets.UTF_8);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported column type: " + m_types[i]);
+                }
+            }
+            if (++m_rowCount == m_rowsPerBlock) {
+                writeBlock();
+            }
+        }
+
+        /**
+         * Write out the buffered rows as a (possibly short) block and flush the stream
+         */
+        public void flush() throws IOException {
+            writeBlock();
+            m_out.flush();
+        }
+
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                m_out.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (m_rowCount == 0) {
+                return;
+            }
+            m_blockBytes.reset();
+            for (int i = 0; i < m_types.length; i++) {
+                writeNulls(m_nulls[i]);
+                if (m_longs[i] != null) {
+                    writeLongs(m_types[i], m_longs[i], m_valueCounts[i]);
+                } else {
+                    writeBytes(m_bytes[i], m_valueCounts[i]);
+                    // don't pin the values of this block
+                    Arrays.fill(m_bytes[i], 0, m_valueCounts[i], null);
+                }
+                m_valueCounts[i] = 0;
+            }
+            m_block.flush();
+
+            final byte[] compressed =
+                    CompressionService.compressBytes(m_blockBytes.toByteArray(), 0, m_blockBytes.size());
+            m_out.writeInt(m_rowCount);
+            m_out.writeInt(compressed.length);
+            m_out.write(compressed);
+            m_rowCount = 0;
+        }
+
+        private void writeNulls(boolean[] nulls) throws IOException {
+            boolean hasNulls = false;
+            for (int row = 0; row < m_rowCount && !hasNulls; row++) {
+                hasNulls = nulls[row];
+            }
+            m_block.writeBoolean(hasNulls);
+            if (hasNulls) {
+                for (int row = 0; row < m_rowCount; row += 8) {
+                    int bits = 0;
+                    for (int bit = 0; bit < 8 && row + bit < m_rowCount; bit++) {
+                        if (nulls[row + bit]) {
+                            bits |= 0x80 >>> bit;
+                        }
+                    }
+                    m_block.writeByte(bits);
+                }
+            }
+        }
+
+        private void writeLongs(VoltType type, long[] values, int count) throws IOException {
+            int runs = count > 0 ? 1 : 0;
+            for (int i = 1; i < count; i++) {
+                if (values[i] != values[i - 1]) {
+                    runs++;
+                }
+            }
+
+            if (runs * 2 <= count) {
+                m_block.writeByte(RLE);
+                writeVarint(m_block, runs);
+                int start = 0;
+                for (int i = 1; i <= count; i++) {
+                    if (i == count || values[i] != values[start]) {
+                        writeVarint(m_block, i - start);
+                        writeVarint(m_block, zigZag(values[start]));
+                        start = i;
+                    }
+                }
+            } else if (type == VoltType.FLOAT) {
+                m_block.writeByte(PLAIN);
+                for (int i = 0; i < count; i++) {
+                    m_block.writeLong(values[i]);
+                }
+            } else {
+                m_block.writeByte(DELTA);
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    writeVarint(m_block, zigZag(values[i] - previous));
+                    previous = values[i];
+                }
+            }
+        }
+
+        private void writeBytes(byte[][] values, int count) throws IOException {
+            Map<ByteBuffer, Integer> dictionary = new HashMap<ByteBuffer, Integer>();
+            List<byte[]> entries = new ArrayList<byte[]>();
+            int[] indexes = new int[count];
+            boolean useDictionary = true;
+            for (int i = 0; i < count; i++) {
+                ByteBuffer key = ByteBuffer.wrap(values[i]);
+                Integer index = dictionary.get(key);
+                if (index == null) {
+                    index = entries.size();
+                    if (index * 2 >= count && count > 1) {
+                        useDictionary = false;
+                        break;
+                    }
+                    dictionary.put(key, index);
+                    entries.add(values[i]);
+                }
+                indexes[i] = index;
+            }
+
+            if (useDictionary) {
+                m_block.writeByte(DICTIONARY);
+                writeVarint(m_block, entries.size());
+                for (byte[] entry : entries) {
+                    writeVarint(m_block, entry.length);
+                    m_block.write(entry);
+                }
+                for (int i = 0; i < count; i++) {
+                    writeVarint(m_block, indexes[i]);
+                }
+            } else {
+                m_block.writeByte(PLAIN);
+                for (int i = 0; i < count; i++) {
+                    writeVarint(m_block, values[i].length);
+                    m_block.write(values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads back the rows of a columnar export file as arrays of the same objects
+     * ExportDecoderBase.decodeRow() produces.
+     */
+    public static class Reader {
+        private final DataInputStream m_in;
+        private final List<String> m_names;
+        private final List<VoltType> m_types;
+        private Object[][] m_columns;
+        private int m_rowCount = 0;
+        private int m_nextRow = 0;
+
+        public Reader(InputStream in) throws IOException {
+            m_in = new DataInputStream(in);
+            if (m_in.readInt() != MAGIC) {
+                throw new IOException("Not a columnar export file");
+            }
+            final int version = m_in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported columnar export file version " + version);
+            }
+            final int columnCount = m_in.readInt();
+            List<String> names = new ArrayList<String>(columnCount);
+            List<VoltType> types = new ArrayList<VoltType>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                types.add(VoltType.get(m_in.readByte()));
+                names.add(m_in.readUTF());
+            }
+            m_names = Collections.unmodifiableList(names);
+            m_types = Collections.unmodifiableList(types);
+            m_columns = new Object[columnCount][];
+        }
+
+        public List<String> getColumnNames() {
+            return m_names;
+        }
+
+        public List<VoltType> getColumnTypes() {
+            return m_types;
+        }
+
+        /**
+         * @return the next row, or null at the end of the file
+         */
+        public Object[] readRow() throws IOException {
+            if (m_nextRow == m_rowCount && !readBlock()) {
+                return null;
+            }
+            Object[] row = new Object[m_columns.length];
+            for (int i = 0; i < m_columns.length; i++) {
+                row[i] = m_columns[i][m_nextRow];
+            }
+            m_nextRow++;
+            return row;
+        }
+
+        public void close() throws IOException {
+            m_in.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            final int rowCount;
+            try {
+                rowCount = m_in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            final byte[] compressed = new byte[m_in.readInt()];
+            m_in.readFully(compressed);
+            final ByteBuffer block = ByteBuffer.wrap(CompressionService.decompressBytes(compressed));
+
+            for (int i = 0; i < m_columns.length; i++) {
+                final boolean[] nulls = new boolean[rowCount];
+                int count = rowCount;
+                if (block.get() != 0) {
+                    for (int row = 0; row < rowCount; row += 8) {
+                        final int bits = block.get();
+                        for (int bit = 0; bit < 8 && row + bit < rowCount; bit++) {
+                            if ((bits & (0x80 >>> bit)) != 0) {
+                                nulls[row + bit] = true;
+                                count--;
+                            }
+                        }
+                    }
+                }
+                final Object[] values = isLongType(m_types.get(i)) ?
+                        readLongs(block, m_types.get(i), count) : readBytes(block, m_types.get(i), count);
+
+                final Object[] column = new Object[rowCount];
+                for (int row = 0, index = 0; row < rowCount; row++) {
+                    if (!nulls[row]) {
+                        column[row] = values[index++];
+                    }
+                }
+                m_columns[i] = column;
+            }
+            m_rowCount = rowCount;
+            m_nextRow = 0;
+            return true;
+        }
+
+        private static Object[] readLongs(ByteBuffer block, VoltType type, int count) throws IOException {
+            final Object[] values = new Object[count];
+            final byte encoding = block.get();
+            if (encoding == RLE) {
+                final int runs = (int)readVarint(block);
+                for (int run = 0, i = 0; run < runs; run++) {
+                    final int length = (int)readVarint(block);
+                    final Object value = toObject(type, unZigZag(readVarint(block)));
+                    for (int end = i + length; i < end; i++) {
+                        values[i] = value;
+                    }
+                }
+            } else if (encoding == DELTA) {
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    previous += unZigZag(readVarint(block));
+                    values[i] = toObject(type, previous);
+                }
+            } else if (encoding == PLAIN) {
+                for (int i = 0; i < count; i++) {
+                    values[i] = toObject(type, block.getLong());
+                }
+            } else {
+                throw new IOException("Unknown column encoding " + encoding);
+            }
+            return values;
+        }
+
+        private static Object[] readBytes(ByteBuffer block, VoltType type, int count) throws IOException {
+            final Object[] values = new Object[count];
+            final byte encoding = block.get();
+            if (encoding == DICTIONARY) {
+                final Object[] entries = new Object[(int)readVarint(block)];
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = toObject(type, readLengthPrefixed(block));
+                }
+                for (int i = 0; i < count; i++) {
+                    values[i] = entries[(int)readVarint(block)];
+                }
+            } else if (encoding == PLAIN) {
+                for (int i = 0; i < count; i++) {
+                    values[i] = toObject(type, readLengthPrefixed(block));
+                }
+            } else {
+                throw new IOException("Unknown column encoding " + encoding);
+            }
+            return values;
+        }
+
+        private static byte[] readLengthPrefixed(ByteBuffer block) {
+            final byte[] bytes = new byte[(int)readVarint(block)];
+            block.get(bytes);
+            return bytes;
+        }
+
+        private static Object toObject(VoltType type, long value) {
+            switch (type) {
+            case TINYINT:
+                return (byte)value;
+            case SMALLINT:
+                return (short)value;
+            case INTEGER:
+                return (int)value;
+            case BIGINT:
+                return value;
+            case TIMESTAMP:
+                return new TimestampType(value);
+            case FLOAT:
+                return Double.longBitsToDouble(value);
+            default:
+                throw new IllegalArgumentException("Unsupported column type: " + type);
+            }
+        }
+
+        private static Object toObject(VoltType type, byte[] value) {
+            switch (type) {
+            case STRING:
+                return new String(value, Charsets.UTF_8);
+            case VARBINARY:
+                return value;
+            case DECIMAL:
+                return new BigDecimal(new String(value, Charsets.UTF_8));
+            default:
+                throw new IllegalArgumentException("Unsupported column type: " + type);
+            }
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
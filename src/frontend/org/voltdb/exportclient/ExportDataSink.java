@@ -46,6 +46,8 @@ public class ExportDataSink {
     final int partitionId;
     final String m_tableName;
     final ExportDecoderBase m_decoder;
+    // reused for every row handed to the decoder
+    private ExportRowCursor m_cursor = null;
     final long m_generation;
 
     // the preferred connection for a given partition/table combo
@@ -173,6 +175,10 @@ public class ExportDataSink {
             //Track the amount of backoff to use next time, will be updated on repeated failure
             int backoffQuantity = 10 + (int)(10 * ThreadLocalRandom.current().nextDouble());
 
+            if (m_cursor == null) {
+                m_cursor = m_decoder.createRowCursor();
+            }
+
             while (true) {
                 m.getData().position(startPosition);
 
@@ -181,9 +187,9 @@ public class ExportDataSink {
                     // run the verifier until m.getData() is consumed
                     while (m.getData().hasRemaining()) {
                         int length = m.getData().getInt();
-                        byte[] rowdata = new byte[length];
-                        m.getData().get(rowdata, 0, length);
-                        m_decoder.processRow(length, rowdata);
+                        final int rowStart = m.getData().position();
+                        m_decoder.processRow(m_cursor.reset(m.getData(), rowStart, length));
+                        m.getData().position(rowStart + length);
                     }
 
                     // Perform completion work on the decoder
@@ -65,6 +65,26 @@ public abstract class ExportDecoderBase {
      */
     abstract public boolean processRow(int rowSize, byte[] rowData) throws RestartBlockException;
 
+    /**
+     * Process a row read in place from the Export stream. The default copies the row
+     * out of the block and hands it to processRow(int, byte[]). Decoders that read their
+     * fields from the cursor can override this to skip the per row copy and boxing.
+     *
+     * @param row
+     *            a cursor positioned on the row, only valid for the duration of the call
+     * @return whether or not the row processing was successful
+     */
+    public boolean processRow(ExportRowCursor row) throws RestartBlockException {
+        return processRow(row.getRowLength(), row.getRowBytes());
+    }
+
+    /**
+     * Create a cursor for this decoder's schema to pass rows to processRow(ExportRowCursor)
+     */
+    public ExportRowCursor createRowCursor() {
+        return new ExportRowCursor(m_tableSchema);
+    }
+
     abstract public void sourceNoLongerAdvertised(AdvertisedDataSource source);
 
     /**
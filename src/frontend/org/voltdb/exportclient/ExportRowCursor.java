@@ -0,0 +1,257 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A flyweight view of one exported row, read in place from the block buffer.
+ *
+ * A cursor is reset onto each row of a block in turn. Resetting reads the null flags
+ * and records where each column starts, the typed getters then read the column straight
+ * out of the buffer. Nothing is allocated per row, and the primitive getters don't box.
+ * The getters that return objects (strings, decimals, getObject()) allocate like
+ * ExportDecoderBase.decodeRow() does.
+ *
+ * A cursor is only valid until it is reset or the block buffer is released, and is
+ * not thread safe.
+ */
+public class ExportRowCursor {
+    private final VoltType[] m_types;
+    private final int[] m_offsets;
+    private final boolean[] m_nulls;
+    private final int m_nullArrayLength;
+    private ByteBuffer m_buffer;
+    private int m_rowStart;
+    private int m_rowLength;
+    private boolean m_valid;
+
+    public ExportRowCursor(List<VoltType> types) {
+        m_types = types.toArray(new VoltType[types.size()]);
+        m_offsets = new int[m_types.length];
+        m_nulls = new boolean[m_types.length];
+        m_nullArrayLength = ((m_types.length + 7) & -8) >> 3;
+    }
+
+    /**
+     * Point the cursor at the row of rowLength bytes starting at rowStart in buffer.
+     * The buffer's position and limit are not changed. A row whose columns don't fit
+     * in rowLength leaves the cursor invalid, see isValid().
+     */
+    public ExportRowCursor reset(ByteBuffer buffer, int rowStart, int rowLength) {
+        if (buffer.order() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IllegalArgumentException("Export rows are little endian");
+        }
+        m_buffer = buffer;
+        m_rowStart = rowStart;
+        m_rowLength = rowLength;
+        m_valid = false;
+
+        final int rowEnd = rowStart + rowLength;
+        int offset = rowStart + m_nullArrayLength;
+        if (offset > rowEnd) {
+            return this;
+        }
+        for (int i = 0; i < m_types.length; i++) {
+            // See ExportDecoderBase.extractNullFlags() for the layout of the flags
+            m_nulls[i] = (buffer.get(rowStart + (i >> 3)) & (0x80 >>> (i % 8))) != 0;
+            m_offsets[i] = offset;
+            if (m_nulls[i]) {
+                continue;
+            }
+            switch (m_types[i]) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case FLOAT:
+            case TIMESTAMP:
+                offset += 8;
+                break;
+            case STRING:
+            case VARBINARY:
+            case DECIMAL:
+                if (offset + 4 > rowEnd) {
+                    return this;
+                }
+                final int length = buffer.getInt(offset);
+                if (length < 0) {
+                    return this;
+                }
+                offset += 4 + length;
+                break;
+            default:
+                return this;
+            }
+            if (offset > rowEnd) {
+                return this;
+            }
+        }
+        m_valid = true;
+        return this;
+    }
+
+    /**
+     * @return false if the row the cursor was last reset onto is malformed, in which
+     * case only getRowLength() and getRowBytes() may be used
+     */
+    public boolean isValid() {
+        return m_valid;
+    }
+
+    public int getColumnCount() {
+        return m_types.length;
+    }
+
+    public VoltType getColumnType(int column) {
+        return m_types[column];
+    }
+
+    public boolean isNull(int column) {
+        return m_nulls[column];
+    }
+
+    /**
+     * The value of a TINYINT, SMALLINT, INTEGER or BIGINT column
+     */
+    public long getLong(int column) {
+        return m_buffer.getLong(m_offsets[column]);
+    }
+
+    public double getDouble(int column) {
+        return m_buffer.getDouble(m_offsets[column]);
+    }
+
+    /**
+     * The value of a TIMESTAMP column in microseconds since the epoch
+     */
+    public long getTimestamp(int column) {
+        return m_buffer.getLong(m_offsets[column]);
+    }
+
+    /**
+     * The length in bytes of a STRING, VARBINARY or DECIMAL column
+     */
+    public int getLength(int column) {
+        return m_buffer.getInt(m_offsets[column]);
+    }
+
+    /**
+     * The position in the buffer of the first byte of a STRING, VARBINARY or
+     * DECIMAL column, for reading the value in place.
+     */
+    public int getValueOffset(int column) {
+        return m_offsets[column] + 4;
+    }
+
+    public ByteBuffer getBuffer() {
+        return m_buffer;
+    }
+
+    /**
+     * Copy the bytes of a STRING, VARBINARY or DECIMAL column into dest
+     *
+     * @return the number of bytes copied
+     */
+    public int getBytes(int column, byte[] dest, int destOffset) {
+        final int length = getLength(column);
+        copy(getValueOffset(column), dest, destOffset, length);
+        return length;
+    }
+
+    public byte[] getBytes(int column) {
+        final byte[] bytes = new byte[getLength(column)];
+        getBytes(column, bytes, 0);
+        return bytes;
+    }
+
+    public String getString(int column) {
+        if (m_buffer.hasArray()) {
+            return new String(m_buffer.array(), m_buffer.arrayOffset() + getValueOffset(column),
+                    getLength(column), Charsets.UTF_8);
+        }
+        return new String(getBytes(column), Charsets.UTF_8);
+    }
+
+    public BigDecimal getDecimal(int column) {
+        return new BigDecimal(getString(column));
+    }
+
+    /**
+     * The value of the column boxed as ExportDecoderBase.decodeRow() would return it
+     */
+    public Object getObject(int column) throws IOException {
+        if (m_nulls[column]) {
+            return null;
+        }
+        switch (m_types[column]) {
+        case TINYINT:
+            return (byte)getLong(column);
+        case SMALLINT:
+            return (short)getLong(column);
+        case INTEGER:
+            return (int)getLong(column);
+        case BIGINT:
+            return getLong(column);
+        case FLOAT:
+            return getDouble(column);
+        case TIMESTAMP:
+            return new TimestampType(getTimestamp(column));
+        case STRING:
+            return getString(column);
+        case VARBINARY:
+            return getBytes(column);
+        case DECIMAL:
+            return getDecimal(column);
+        default:
+            throw new IOException("Invalid column type: " + m_types[column]);
+        }
+    }
+
+    /**
+     * Copy the whole row out of the buffer in the format processRow(int, byte[]) takes
+     */
+    public byte[] getRowBytes() {
+        final byte[] rowData = new byte[m_rowLength];
+        copy(m_rowStart, rowData, 0, m_rowLength);
+        return rowData;
+    }
+
+    private void copy(int offset, byte[] dest, int destOffset, int length) {
+        if (m_buffer.hasArray()) {
+            System.arraycopy(m_buffer.array(), m_buffer.arrayOffset() + offset, dest, destOffset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dest[destOffset + i] = m_buffer.get(offset + i);
+            }
+        }
+    }
+
+    public int getRowLength() {
+        return m_rowLength;
+    }
+}
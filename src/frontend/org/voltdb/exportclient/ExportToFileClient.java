@@ -18,6 +18,7 @@
 package org.voltdb.exportclient;
 
 import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -61,8 +62,8 @@ import com.google.common.base.Throwables;
 /**
  * Uses the Export feature of VoltDB to write exported tables to files.
  *
- * command line args: --servers {comma-separated list of VoltDB server to which to connect} --type [csv|tsv] csv for
- * comma-separated values, tsv for tab-separated values --outdir {path where output files should be written} --nonce
+ * command line args: --servers {comma-separated list of VoltDB server to which to connect} --type [csv|tsv|columnar] csv for
+ * comma-separated values, tsv for tab-separated values, columnar for the binary ColumnarExportFile format --outdir {path where output files should be written} --nonce
  * {string-to-unique-ify output files} --user {username for cluster export user} --password {password for cluster export
  * user} --period {period (in minutes) to use when rolling the file over} --dateformat {format of the date/time stamp
  * added to each new rolling file}
@@ -79,6 +80,8 @@ public class ExportToFileClient extends ExportClientBase {
 
     // use thread-local to avoid SimpleDateFormat thread-safety issues
     protected ThreadLocal<SimpleDateFormat> m_ODBCDateformat;
+    protected OutputFormat m_format;
+    // only used by the CSV and TSV formats
     protected char m_delimiter;
     protected char[] m_fullDelimiters;
     protected String m_extension;
@@ -116,6 +119,15 @@ public class ExportToFileClient extends ExportClientBase {
         HEX
     }
 
+    /**
+     * The kind of files written. COLUMNAR is the binary ColumnarExportFile format.
+     */
+    public static enum OutputFormat {
+        CSV,
+        TSV,
+        COLUMNAR
+    }
+
     private BinaryEncoding m_binaryEncoding;
 
     /**
@@ -123,9 +135,88 @@ public class ExportToFileClient extends ExportClientBase {
     */
     public void notifyRollIsComplete(File[] files) {}
 
+    /**
+     * Writes the decoded rows of one table to one output file
+     */
+    interface RowWriter {
+        void writeRow(Object[] row) throws IOException;
+        void flush() throws IOException;
+        void close() throws IOException;
+    }
+
+    // Converts every field to a string and writes CSV or TSV lines
+    class CSVRowWriter implements RowWriter {
+        private final CSVWriter m_writer;
+        private final List<VoltType> m_types;
+
+        CSVRowWriter(CSVWriter writer, List<VoltType> types) {
+            m_writer = writer;
+            m_types = types;
+        }
+
+        @Override
+        public void writeRow(Object[] row) throws IOException {
+            String[] fields = new String[m_types.size() - m_firstfield];
+
+            for (int i = m_firstfield; i < m_types.size(); i++) {
+                if (row[i] == null) {
+                    fields[i - m_firstfield] = "NULL";
+                } else if (m_types.get(i) == VoltType.VARBINARY) {
+                    if (m_binaryEncoding == BinaryEncoding.HEX) {
+                        fields[i - m_firstfield] = Encoder.hexEncode((byte[]) row[i]);
+                    } else {
+                        fields[i - m_firstfield] = Encoder.base64Encode((byte[]) row[i]);
+                    }
+                } else if (m_types.get(i) == VoltType.STRING) {
+                    fields[i - m_firstfield] = (String) row[i];
+                } else if (m_types.get(i) == VoltType.TIMESTAMP) {
+                    TimestampType timestamp = (TimestampType) row[i];
+                    fields[i - m_firstfield] = m_ODBCDateformat.get().format(timestamp.asApproximateJavaDate());
+                } else {
+                    fields[i - m_firstfield] = row[i].toString();
+                }
+            }
+            m_writer.writeNext(fields);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            m_writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_writer.close();
+        }
+    }
+
+    // Keeps the values binary and writes them column by column
+    class ColumnarRowWriter implements RowWriter {
+        private final ColumnarExportFile.Writer m_writer;
+
+        ColumnarRowWriter(ColumnarExportFile.Writer writer) {
+            m_writer = writer;
+        }
+
+        @Override
+        public void writeRow(Object[] row) throws IOException {
+            m_writer.writeRow(row, m_firstfield);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            m_writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_writer.close();
+        }
+    }
+
     class PeriodicExportContext {
         File m_dirContainingFiles;
-        final Map<FileHandle, CSVWriter> m_writers = new TreeMap<FileHandle, CSVWriter>();
+        final Map<FileHandle, RowWriter> m_writers = new TreeMap<FileHandle, RowWriter>();
         boolean m_hasClosed = false;
         protected Date start;
         protected final Set<String> m_batchSchemasWritten = new HashSet<String>();
@@ -255,8 +346,8 @@ public class ExportToFileClient extends ExportClientBase {
             if (m_hasClosed) return;
 
             // flush and close any files that are open
-            for (Entry<FileHandle, CSVWriter> entry : m_writers.entrySet()) {
-                CSVWriter writer = entry.getValue();
+            for (Entry<FileHandle, RowWriter> entry : m_writers.entrySet()) {
+                RowWriter writer = entry.getValue();
                 if (writer == null) continue;
                 try {
                     writer.flush();
@@ -351,9 +442,9 @@ public class ExportToFileClient extends ExportClientBase {
             notifyRollIsComplete(notifySet);
         }
 
-        CSVWriter getWriter(String tableName, long generation) {
+        RowWriter getWriter(String tableName, long generation, AdvertisedDataSource source) {
             FileHandle handle = new FileHandle(tableName, generation);
-            CSVWriter writer = m_writers.get(handle);
+            RowWriter writer = m_writers.get(handle);
             if (writer != null)
                 return writer;
 
@@ -366,17 +457,28 @@ public class ExportToFileClient extends ExportClientBase {
                 throw new RuntimeException();
             }
             try {
-                OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(newFile, false), "UTF-8");
-                if (m_fullDelimiters != null) {
-                    writer = new CSVWriter(new BufferedWriter(osw, 4096 * 4),
-                            m_fullDelimiters[0], m_fullDelimiters[1], m_fullDelimiters[2], String.valueOf(m_fullDelimiters[3]));
+                if (m_format == OutputFormat.COLUMNAR) {
+                    List<String> names = source.columnNames.subList(m_firstfield, source.columnNames.size());
+                    List<VoltType> types = source.columnTypes.subList(m_firstfield, source.columnTypes.size());
+                    writer = new ColumnarRowWriter(new ColumnarExportFile.Writer(
+                            new BufferedOutputStream(new FileOutputStream(newFile, false), 4096 * 16),
+                            names, types));
                 }
-                else if (m_delimiter == ',')
-                    // CSV
-                    writer = new CSVWriter(new BufferedWriter(osw, 4096 * 4), m_delimiter);
                 else {
-                    // TSV
-                    writer = CSVWriter.getStrictTSVWriter(new BufferedWriter(osw, 4096 * 4));
+                    OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(newFile, false), "UTF-8");
+                    CSVWriter csvWriter;
+                    if (m_fullDelimiters != null) {
+                        csvWriter = new CSVWriter(new BufferedWriter(osw, 4096 * 4),
+                                m_fullDelimiters[0], m_fullDelimiters[1], m_fullDelimiters[2], String.valueOf(m_fullDelimiters[3]));
+                    }
+                    else if (m_format == OutputFormat.CSV)
+                        // CSV
+                        csvWriter = new CSVWriter(new BufferedWriter(osw, 4096 * 4), m_delimiter);
+                    else {
+                        // TSV
+                        csvWriter = CSVWriter.getStrictTSVWriter(new BufferedWriter(osw, 4096 * 4));
+                    }
+                    writer = new CSVRowWriter(csvWriter, source.columnTypes);
                 }
             }
             catch (Exception e) {
@@ -443,21 +545,21 @@ public class ExportToFileClient extends ExportClientBase {
     }
 
 
-    // This class outputs exported rows converted to CSV or TSV values
-    // for the table named in the constructor's AdvertisedDataSource
+    // This class outputs exported rows converted to CSV or TSV values, or in the
+    // columnar format, for the table named in the constructor's AdvertisedDataSource
     class ExportToFileDecoder extends ExportDecoderBase {
         private final long m_generation;
         private final String m_tableName;
         protected String m_schemaString = "ERROR SERIALIZING SCHEMA";
         private final HashSet<AdvertisedDataSource> m_sources = new HashSet<AdvertisedDataSource>();
-        private FutureTask<CSVWriter> m_firstBlockTask;
-        private CSVWriter m_writer;
+        private FutureTask<RowWriter> m_firstBlockTask;
+        private RowWriter m_writer;
 
         private void resetWriter() {
-            m_firstBlockTask = new FutureTask<CSVWriter>(new Callable<CSVWriter>() {
+            m_firstBlockTask = new FutureTask<RowWriter>(new Callable<RowWriter>() {
                 @Override
-                public CSVWriter call() throws Exception {
-                    CSVWriter writer = m_current.getWriter(m_tableName, m_generation);
+                public RowWriter call() throws Exception {
+                    RowWriter writer = m_current.getWriter(m_tableName, m_generation, m_source);
                     m_current.writeSchema(m_tableName, m_generation, m_schemaString);
                     return writer;
                 }
@@ -522,27 +624,30 @@ public class ExportToFileClient extends ExportClientBase {
             }
 
             try {
-                String[] fields = new String[m_tableSchema.size() - m_firstfield];
-
-                for (int i = m_firstfield; i < m_tableSchema.size(); i++) {
-                    if (row[i] == null) {
-                        fields[i - m_firstfield] = "NULL";
-                    } else if (m_tableSchema.get(i) == VoltType.VARBINARY) {
-                        if (m_binaryEncoding == BinaryEncoding.HEX) {
-                            fields[i - m_firstfield] = Encoder.hexEncode((byte[]) row[i]);
-                        } else {
-                            fields[i - m_firstfield] = Encoder.base64Encode((byte[]) row[i]);
-                        }
-                    } else if (m_tableSchema.get(i) == VoltType.STRING) {
-                        fields[i - m_firstfield] = (String) row[i];
-                    } else if (m_tableSchema.get(i) == VoltType.TIMESTAMP) {
-                        TimestampType timestamp = (TimestampType) row[i];
-                        fields[i - m_firstfield] = m_ODBCDateformat.get().format(timestamp.asApproximateJavaDate());
-                    } else {
-                        fields[i - m_firstfield] = row[i].toString();
-                    }
+                m_writer.writeRow(row);
+            }
+            catch (Exception x) {
+                x.printStackTrace();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Decode the row in place rather than from a copy of it
+         */
+        @Override
+        public boolean processRow(ExportRowCursor cursor) {
+            if (!cursor.isValid()) {
+                return processRow(cursor.getRowLength(), cursor.getRowBytes());
+            }
+
+            try {
+                Object[] row = new Object[cursor.getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.getObject(i);
                 }
-                m_writer.writeNext(fields);
+                m_writer.writeRow(row);
             }
             catch (Exception x) {
                 x.printStackTrace();
@@ -609,7 +714,7 @@ public class ExportToFileClient extends ExportClientBase {
             boolean withSchema,
             int throughputMonitorPeriod,
             BinaryEncoding be) {
-        this(delimiter, nonce, outdir, period, dateformatString, fullDelimiters,
+        this(formatForDelimiter(delimiter), nonce, outdir, period, dateformatString, fullDelimiters,
                 firstfield, useAdminPorts, batched, withSchema, throughputMonitorPeriod,
                 true, TimeZone.getDefault(), be);
     }
@@ -632,9 +737,28 @@ public class ExportToFileClient extends ExportClientBase {
                               boolean autodiscoverTopology,
                               TimeZone tz,
                               BinaryEncoding be) {
+        this(formatForDelimiter(delimiter), nonce, outdir, period, dateformatString, fullDelimiters,
+                firstfield, useAdminPorts, batched, withSchema, throughputMonitorPeriod,
+                autodiscoverTopology, tz, be);
+    }
+
+    public ExportToFileClient(OutputFormat format,
+                              String nonce,
+                              File outdir,
+                              int period,
+                              String dateformatString,
+                              String fullDelimiters,
+                              int firstfield,
+                              boolean useAdminPorts,
+                              boolean batched,
+                              boolean withSchema,
+                              int throughputMonitorPeriod,
+                              boolean autodiscoverTopology,
+                              TimeZone tz,
+                              BinaryEncoding be) {
         super(useAdminPorts, throughputMonitorPeriod, autodiscoverTopology);
         configureInternal(
-                delimiter,
+                format,
                 nonce,
                 outdir,
                 period,
@@ -728,7 +852,7 @@ public class ExportToFileClient extends ExportClientBase {
         }
 
         m_logger.info(String.format("Writing to disk in %s format",
-                (m_delimiter == ',') ? "CSV" : "TSV"));
+                m_format));
         m_logger.info(String.format("Prepending export data files with nonce: %s",
                 m_nonce));
         m_logger.info(String.format("Using date format for file names: %s",
@@ -751,7 +875,7 @@ public class ExportToFileClient extends ExportClientBase {
         System.out.println("java -cp <classpath> org.voltdb.exportclient.ExportToFileClient "
                         + "--servers server1[,server2,...,serverN] "
                         + "--connect (admin|client) "
-                        + "--type (csv|tsv) "
+                        + "--type (csv|tsv|columnar) "
                         + "--nonce file_prefix "
                         + "[--batched] "
                         + "[--with-schema] "
@@ -775,7 +899,7 @@ public class ExportToFileClient extends ExportClientBase {
         String user = null;
         String password = null;
         String nonce = null;
-        char delimiter = '\0';
+        OutputFormat format = null;
         File outdir = null;
         int firstfield = 0;
         int period = 60;
@@ -833,11 +957,13 @@ public class ExportToFileClient extends ExportClientBase {
                 }
                 String type = args[ii + 1];
                 if (type.equalsIgnoreCase("csv")) {
-                    delimiter = ',';
+                    format = OutputFormat.CSV;
                 } else if (type.equalsIgnoreCase("tsv")) {
-                    delimiter = '\t';
+                    format = OutputFormat.TSV;
+                } else if (type.equalsIgnoreCase("columnar")) {
+                    format = OutputFormat.COLUMNAR;
                 } else {
-                    System.err.println("Error: --type must be one of CSV or TSV");
+                    System.err.println("Error: --type must be one of CSV, TSV or COLUMNAR");
                     printHelpAndQuit(-1);
                 }
                 ii++;
@@ -997,13 +1123,13 @@ public class ExportToFileClient extends ExportClientBase {
         if (outdir == null) {
             outdir = new VoltFile(".");
         }
-        if (delimiter == '\0') {
+        if (format == null) {
             System.err.println("ExportToFile: must provide an output type");
             printHelpAndQuit(-1);
         }
 
         // create the export to file client
-        ExportToFileClient client = new ExportToFileClient(delimiter,
+        ExportToFileClient client = new ExportToFileClient(format,
                                                            nonce,
                                                            outdir,
                                                            period,
@@ -1051,18 +1177,20 @@ public class ExportToFileClient extends ExportClientBase {
         if (nonce == null) {
             throw new IllegalArgumentException("ExportToFile: must provide a filename nonce");
         }
-        char delimiter = '\0';
+        OutputFormat format = null;
         String type = conf.getProperty("type", "").trim();
         if (type != null) {
             if (type.equalsIgnoreCase("csv")) {
-                delimiter = ',';
+                format = OutputFormat.CSV;
             } else if (type.equalsIgnoreCase("tsv")) {
-                delimiter = '\t';
+                format = OutputFormat.TSV;
+            } else if (type.equalsIgnoreCase("columnar")) {
+                format = OutputFormat.COLUMNAR;
             } else {
-                throw new IllegalArgumentException("Error: --type must be one of CSV or TSV");
+                throw new IllegalArgumentException("Error: --type must be one of CSV, TSV or COLUMNAR");
             }
         }
-        if (delimiter == '\0') {
+        if (format == null) {
             throw new IllegalArgumentException("ExportToFile: must provide an output type");
         }
 
@@ -1108,7 +1236,7 @@ public class ExportToFileClient extends ExportClientBase {
                 conf.getProperty("binaryencoding", "HEX").trim().toUpperCase());
 
         configureInternal(
-                delimiter,
+                format,
                 nonce,
                 outdir,
                 period,
@@ -1121,8 +1249,15 @@ public class ExportToFileClient extends ExportClientBase {
                 encoding);
     }
 
+    /*
+     * Any delimiter other than a comma has always meant TSV
+     */
+    private static OutputFormat formatForDelimiter(char delimiter) {
+        return (delimiter == ',') ? OutputFormat.CSV : OutputFormat.TSV;
+    }
+
     private void configureInternal(
-                              char delimiter,
+                              OutputFormat format,
                               String nonce,
                               File outdir,
                               int period,
@@ -1133,8 +1268,20 @@ public class ExportToFileClient extends ExportClientBase {
                               boolean withSchema,
                               final TimeZone tz,
                               final BinaryEncoding be) {
-        m_delimiter = delimiter;
-        m_extension = (delimiter == ',') ? ".csv" : ".tsv";
+        m_format = format;
+        switch (format) {
+        case CSV:
+            m_delimiter = ',';
+            m_extension = ".csv";
+            break;
+        case TSV:
+            m_delimiter = '\t';
+            m_extension = ".tsv";
+            break;
+        default:
+            m_extension = ColumnarExportFile.EXTENSION;
+            break;
+        }
         m_nonce = nonce;
         m_outDir = outdir;
         m_tableDecoders = new HashMap<Long, HashMap<String, ExportToFileDecoder>>();
@@ -34,6 +34,7 @@ import org.voltdb.NodeDRGateway;
 import org.voltdb.Promotable;
 import org.voltdb.StartAction;
 import org.voltdb.StatsAgent;
+import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltZK;
 import org.voltdb.messaging.DumpMessage;
@@ -48,6 +49,9 @@ public class MpInitiator extends BaseInitiator implements Promotable
 {
     public static final int MP_INIT_PID = TxnEgo.PARTITIONID_MAX_VALUE;
 
+    // Sites which run read-only transactions concurrently
+    private MpRoSitePool m_sitePool = null;
+
     public MpInitiator(HostMessenger messenger, long buddyHSId, StatsAgent agent)
     {
         super(VoltZK.iv2mpi,
@@ -82,6 +86,21 @@ public class MpInitiator extends BaseInitiator implements Promotable
 
         super.configureCommon(backend, serializedCatalog, catalogContext,
                 csp, numberOfPartitions, startAction, null, null, cl, coreBindIds, null);
+
+        // Read-only procedures run on a pool of sites if the deployment configures
+        // one, except with HSQL where the MPI's site runs them against its own backend
+        int poolSize = MpRoSitePool.getDefaultPoolSize();
+        if (backend == BackendTarget.HSQLDB_BACKEND) {
+            poolSize = 0;
+        }
+        m_sitePool = new MpRoSitePool(getInitiatorHSId(), backend, catalogContext,
+                m_partitionId, poolSize, csp);
+        ((MpScheduler)m_scheduler).setMpRoSitePool(m_sitePool);
+        m_sitePool.start();
+        agent.registerStatsSource(StatsSelector.INITIATORQUEUE,
+                getInitiatorHSId(),
+                new MpQueueStats(getInitiatorHSId(), ((MpScheduler)m_scheduler).getMpTransactionTaskQueue()));
+
         // add ourselves to the ephemeral node list which BabySitters will watch for this
         // partition
         LeaderElector.createParticipantNode(m_messenger.getZK(),
@@ -190,6 +209,19 @@ public class MpInitiator extends BaseInitiator implements Promotable
     {
         // note this will never require snapshot isolation because the MPI has no snapshot funtionality
         m_executionSite.updateCatalog(diffCmds, context, csp, false, true);
+        // Same story for the read pool: the catalog update is a write, so no
+        // read can be running on the pool while it happens.
+        m_sitePool.updateCatalog(context, csp);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        super.shutdown();
+        // the scheduler's shutdown has poisoned any running reads
+        if (m_sitePool != null) {
+            m_sitePool.shutdown();
+        }
     }
 
     @Override
@@ -54,11 +54,11 @@ public class MpProcedureTask extends ProcedureTask
 
     MpProcedureTask(Mailbox mailbox, String procName, TransactionTaskQueue queue,
                   Iv2InitiateTaskMessage msg, List<Long> pInitiators,
-                  long buddyHSId, boolean isRestart)
+                  long buddyHSId, boolean isRestart, Object distributionLock)
     {
         super(mailbox, procName,
               new MpTransactionState(mailbox, msg, pInitiators,
-                                     buddyHSId, isRestart),
+                                     buddyHSId, isRestart, distributionLock),
               queue);
         m_isRestart = isRestart;
         m_msg = msg;
@@ -198,7 +198,7 @@ public class MpProcedureTask extends ProcedureTask
         complete.setOriginalTxnId(m_msg.getOriginalTxnId());
         m_initiator.send(com.google.common.primitives.Longs.toArray(m_initiatorHSIds), complete);
         m_txnState.setDone();
-        m_queue.flush();
+        m_queue.flush(getTxnId());
     }
 
     private void restartTransaction()
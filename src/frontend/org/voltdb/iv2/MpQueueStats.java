@@ -0,0 +1,76 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.SiteStatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Statistics on the MPI's transaction queue, one row for the MPI's own site
+ * which runs writes and one row for the pool of sites which runs reads.
+ * Returned as the second table of the INITIATOR statistics.
+ */
+public class MpQueueStats extends SiteStatsSource {
+
+    public static final String WRITE_POOL = "WRITE";
+    public static final String READ_POOL = "READ";
+
+    private final MpTransactionTaskQueue m_queue;
+
+    public MpQueueStats(long siteId, MpTransactionTaskQueue queue) {
+        super(siteId, false);
+        m_queue = queue;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("POOL", VoltType.STRING));
+        columns.add(new ColumnInfo("SITES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("RUNNING", VoltType.INTEGER));
+        columns.add(new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        rowValues[columnNameToIndex.get("POOL")] = rowKey;
+        if (WRITE_POOL.equals(rowKey)) {
+            rowValues[columnNameToIndex.get("SITES")] = 1;
+            rowValues[columnNameToIndex.get("RUNNING")] = m_queue.getRunningWrites();
+            rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = m_queue.getQueuedWrites();
+        } else {
+            rowValues[columnNameToIndex.get("SITES")] = m_queue.getReadSiteCount();
+            rowValues[columnNameToIndex.get("RUNNING")] = m_queue.getRunningReads();
+            rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = m_queue.getQueuedReads();
+        }
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        // Queue depths are instantaneous, interval and totals are the same
+        ArrayList<Object> pools = new ArrayList<Object>();
+        pools.add(WRITE_POOL);
+        pools.add(READ_POOL);
+        return pools.iterator();
+    }
+}
@@ -0,0 +1,467 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.Pair;
+import org.voltdb.BackendTarget;
+import org.voltdb.CatalogContext;
+import org.voltdb.CatalogSpecificPlanner;
+import org.voltdb.DependencyPair;
+import org.voltdb.HsqlBackend;
+import org.voltdb.LoadedProcedureSet;
+import org.voltdb.ParameterSet;
+import org.voltdb.ProcedureRunner;
+import org.voltdb.ProcedureRunnerFactory;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.SiteSnapshotConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StatsSelector;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TheHashinator;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltProcedure.VoltAbortException;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.dtxn.SiteTracker;
+import org.voltdb.dtxn.TransactionState;
+import org.voltdb.exceptions.EEException;
+import org.voltdb.rejoin.TaskLog;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A site that coordinates read-only multi-partition transactions for the MPI.
+ * The MPI's own Site never runs any fragments itself, all of the distributed
+ * work is sent to the partitions and the coordinator fragments are borrowed
+ * by the buddy site, so a read-only transaction only needs a thread to run the
+ * procedure's Java on.  An MpRoSite is that thread: it has no execution
+ * engine, only its own copy of the procedures.  MpRoSitePool runs several of
+ * them so that read-only MP transactions don't have to wait for each other.
+ */
+public class MpRoSite implements Runnable, SiteProcedureConnection
+{
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
+    // Set to false to make the run loop exit after the current task
+    private volatile boolean m_shouldContinue = true;
+
+    // HSId of the MPI this site is coordinating transactions for
+    final long m_siteId;
+    final int m_partitionId;
+    final int m_poolIndex;
+
+    final SiteTaskerQueue m_scheduler;
+    final BackendTarget m_backend;
+    final LoadedProcedureSet m_loadedProcedures;
+    CatalogContext m_context;
+    long m_currentTxnId = Long.MIN_VALUE;
+
+    /**
+     * SystemProcedures are "friends" with MpRoSites and have access to the
+     * little internal state there is.  Anything that would need an execution
+     * engine is unsupported, read-only MP sysprocs only coordinate.
+     */
+    SystemProcedureExecutionContext m_sysprocContext = new SystemProcedureExecutionContext() {
+        @Override
+        public Database getDatabase() {
+            return m_context.database;
+        }
+
+        @Override
+        public Cluster getCluster() {
+            return m_context.cluster;
+        }
+
+        @Override
+        public long getLastCommittedSpHandle() {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+
+        @Override
+        public long getCurrentTxnId() {
+            return m_currentTxnId;
+        }
+
+        @Override
+        public long getNextUndo() {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+
+        @Override
+        public ImmutableMap<String, ProcedureRunner> getProcedures() {
+            throw new RuntimeException("Not implemented in iv2");
+        }
+
+        @Override
+        public long getSiteId() {
+            return m_siteId;
+        }
+
+        @Override
+        public boolean isLowestSiteId()
+        {
+            // The MPI never is the lowest site
+            return false;
+        }
+
+        @Override
+        public int getHostId() {
+            return CoreUtils.getHostIdFromHSId(m_siteId);
+        }
+
+        @Override
+        public int getPartitionId() {
+            return m_partitionId;
+        }
+
+        @Override
+        public long getCatalogCRC() {
+            return m_context.getCatalogCRC();
+        }
+
+        @Override
+        public int getCatalogVersion() {
+            return m_context.catalogVersion;
+        }
+
+        @Override
+        public SiteTracker getSiteTracker() {
+            throw new RuntimeException("Not implemented in iv2");
+        }
+
+        @Override
+        public SiteTracker getSiteTrackerForSnapshot() {
+            return VoltDB.instance().getSiteTrackerForSnapshot();
+        }
+
+        @Override
+        public int getNumberOfPartitions() {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+
+        @Override
+        public void setNumberOfPartitions(int partitionCount) {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+
+        @Override
+        public SiteProcedureConnection getSiteProcedureConnection()
+        {
+            return MpRoSite.this;
+        }
+
+        @Override
+        public SiteSnapshotConnection getSiteSnapshotConnection()
+        {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+
+        @Override
+        public void updateBackendLogLevels() {
+            // No backend to update
+        }
+
+        @Override
+        public boolean updateCatalog(String diffCmds, CatalogContext context,
+                CatalogSpecificPlanner csp, boolean requiresSnapshotIsolation)
+        {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+
+        @Override
+        public void updateHashinator(Pair<TheHashinator.HashinatorType, byte[]> config)
+        {
+            throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+        }
+    };
+
+    /** Create a new RO MP execution site */
+    public MpRoSite(
+            long siteId,
+            int poolIndex,
+            BackendTarget backend,
+            CatalogContext context,
+            CatalogSpecificPlanner csp,
+            int partitionId)
+    {
+        m_siteId = siteId;
+        m_poolIndex = poolIndex;
+        m_context = context;
+        m_partitionId = partitionId;
+        m_backend = backend;
+        // Pool sites are idle most of the time, never spin on their queues
+        m_scheduler = new SiteTaskerQueue(SiteTaskerQueue.QueueType.LINKED,
+                                          SiteTaskerQueue.DEFAULT_RING_CAPACITY, 1);
+        m_scheduler.setStarvationTracker(new StarvationTracker(siteId));
+
+        ProcedureRunnerFactory prf = new ProcedureRunnerFactory();
+        prf.configure(this, m_sysprocContext);
+        m_loadedProcedures = new LoadedProcedureSet(this, prf, siteId, poolIndex);
+        m_loadedProcedures.loadProcedures(context, backend, csp);
+    }
+
+    /** Hand a task to this site's run loop.  Can be called from any thread. */
+    void offer(SiteTasker task)
+    {
+        m_scheduler.offer(task);
+    }
+
+    /**
+     * Update the catalog.  The pool only calls this while the site is idle,
+     * the next task it runs will see the new procedures.
+     */
+    void updateCatalog(CatalogContext context, CatalogSpecificPlanner csp)
+    {
+        m_context = context;
+        m_loadedProcedures.loadProcedures(m_context, m_backend, csp);
+    }
+
+    /** Ask the run loop to exit.  Tasks already queued still run first. */
+    void startShutdown()
+    {
+        m_scheduler.offer(new SiteTasker() {
+            @Override
+            public void run(SiteProcedureConnection siteConnection)
+            {
+                m_shouldContinue = false;
+            }
+
+            @Override
+            public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog)
+            {
+                m_shouldContinue = false;
+            }
+        });
+    }
+
+    @Override
+    public void run()
+    {
+        Thread.currentThread().setName("MpRoSite " + m_poolIndex + ": " + CoreUtils.hsIdToString(m_siteId));
+        try {
+            while (m_shouldContinue) {
+                SiteTasker task = m_scheduler.take();
+                if (task instanceof TransactionTask) {
+                    m_currentTxnId = ((TransactionTask)task).getTxnId();
+                }
+                task.run(this);
+            }
+        }
+        catch (OutOfMemoryError e)
+        {
+            // Even though OOM should be caught by the Throwable section below,
+            // it sadly needs to be handled seperately. The goal here is to make
+            // sure VoltDB crashes.
+            String errmsg = "MpRoSite: " + m_poolIndex + ": " + CoreUtils.hsIdToString(m_siteId) +
+                " ran out of Java memory. " + "This node will shut down.";
+            VoltDB.crashLocalVoltDB(errmsg, true, e);
+        }
+        catch (InterruptedException e) {
+            hostLog.info("MpRoSite " + m_poolIndex + " interrupted, exiting");
+        }
+        catch (Throwable t)
+        {
+            String errmsg = "MpRoSite: " + m_poolIndex + ": " + CoreUtils.hsIdToString(m_siteId) +
+                " encountered an " + "unexpected error and will die, taking this VoltDB node down.";
+            VoltDB.crashLocalVoltDB(errmsg, true, t);
+        }
+    }
+
+    //
+    // SiteProcedureConnection needed by ProcedureRunner
+    //
+    @Override
+    public long getLatestUndoToken()
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public long getNextUndoToken()
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public HsqlBackend getHsqlBackendIfExists()
+    {
+        // The pool is never used with the HSQL backend
+        return null;
+    }
+
+    @Override
+    public long getCorrespondingSiteId()
+    {
+        return m_siteId;
+    }
+
+    @Override
+    public int getCorrespondingPartitionId()
+    {
+        return m_partitionId;
+    }
+
+    @Override
+    public int getCorrespondingHostId()
+    {
+        return CoreUtils.getHostIdFromHSId(m_siteId);
+    }
+
+    @Override
+    public void updateBackendLogLevels()
+    {
+    }
+
+    @Override
+    public byte[] loadTable(long txnId, String clusterName, String databaseName,
+            String tableName, VoltTable data,
+            boolean returnUniqueViolations, long undoToken) throws VoltAbortException
+    {
+        throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
+    }
+
+    @Override
+    public byte[] loadTable(long spHandle, int tableId,
+            VoltTable data, boolean returnUniqueViolations,
+            long undoToken)
+    {
+        throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
+    }
+
+    @Override
+    public VoltTable[] executePlanFragments(int numFragmentIds,
+            long[] planFragmentIds, long[] inputDepIds,
+            Object[] parameterSets, long spHandle, long uniqueId, boolean readOnly)
+            throws EEException
+    {
+        throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
+    }
+
+    @Override
+    public void simulateExecutePlanFragments(long txnId, boolean readOnly)
+    {
+        throw new RuntimeException("Not supported in IV2.");
+    }
+
+    @Override
+    public Map<Integer, List<VoltTable>> recursableRun(
+            TransactionState currentTxnState)
+    {
+        return currentTxnState.recursableRun(this);
+    }
+
+    @Override
+    public void truncateUndoLog(boolean rollback, long beginUndoToken, long txnId, long spHandle)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public void stashWorkUnitDependencies(Map<Integer, List<VoltTable>> dependencies)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public DependencyPair executeSysProcPlanFragment(
+            TransactionState txnState,
+            Map<Integer, List<VoltTable>> dependencies, long fragmentId,
+            ParameterSet params)
+    {
+        ProcedureRunner runner = m_loadedProcedures.getSysproc(fragmentId);
+        return runner.executeSysProcPlanFragment(txnState, dependencies, fragmentId, params);
+    }
+
+    @Override
+    public ProcedureRunner getProcedureRunner(String procedureName) {
+        return m_loadedProcedures.getProcByName(procedureName);
+    }
+
+    @Override
+    public void setRejoinComplete(
+            JoinProducerBase.JoinCompletionAction replayComplete,
+            Map<String, Map<Integer, Pair<Long, Long>>> exportSequenceNumbers)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public long[] getUSOForExportTable(String signature)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public void toggleProfiler(int toggle)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public void tick()
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public void quiesce()
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public void exportAction(boolean syncAction,
+                             long ackOffset,
+                             Long sequenceNumber,
+                             Integer partitionId, String tableSignature)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public VoltTable[] getStats(StatsSelector selector, int[] locators,
+                                boolean interval, Long now)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public Future<?> doSnapshotWork()
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public void setPerPartitionTxnIds(long[] perPartitionTxnIds)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+
+    @Override
+    public long[] validatePartitioning(long[] tableIds, int hashinatorType, byte[] hashinatorConfig)
+    {
+        throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
+    }
+}
@@ -0,0 +1,188 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.BackendTarget;
+import org.voltdb.CatalogContext;
+import org.voltdb.CatalogSpecificPlanner;
+
+/**
+ * Provide a pool of MpRoSites to coordinate read-only multi-partition
+ * transactions concurrently.  Each transaction is bound to one site from
+ * doWork() until completeWork(), so that all of its tasks, including a
+ * restart, run on the same thread.
+ *
+ * Only the MpTransactionTaskQueue uses the pool, and always with its own
+ * lock held, so the pool itself is not synchronized.
+ */
+public class MpRoSitePool {
+    static final VoltLogger tmLog = new VoltLogger("TM");
+
+    // Off unless the deployment asks for it with <mpreadpool size="N"/>
+    public static final int DEFAULT_POOL_SIZE = 0;
+
+    // Process wide configuration from the deployment file
+    private static volatile int s_defaultPoolSize = DEFAULT_POOL_SIZE;
+
+    /**
+     * Set the number of read-only MP sites created by MPIs configured afterwards.
+     * Zero turns the pool off, and every MP transaction runs on the MPI's site.
+     */
+    public static void setDefaultPoolSize(int poolSize) {
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("MP read pool size must not be negative: " + poolSize);
+        }
+        s_defaultPoolSize = poolSize;
+    }
+
+    public static int getDefaultPoolSize() {
+        return s_defaultPoolSize;
+    }
+
+    // Sites which are not running any transaction
+    private final Deque<MpRoSite> m_idleSites = new ArrayDeque<MpRoSite>();
+    // Sites bound to the transaction they are running
+    private final Map<Long, MpRoSite> m_busySites = new HashMap<Long, MpRoSite>();
+    private final List<MpRoSite> m_allSites = new ArrayList<MpRoSite>();
+    private final List<Thread> m_siteThreads = new ArrayList<Thread>();
+
+    private final long m_siteId;
+    private final BackendTarget m_backend;
+    private CatalogContext m_catalogContext;
+    private CatalogSpecificPlanner m_csp;
+
+    MpRoSitePool(
+            long siteId,
+            BackendTarget backend,
+            CatalogContext context,
+            int partitionId,
+            int poolSize,
+            CatalogSpecificPlanner csp)
+    {
+        m_siteId = siteId;
+        m_backend = backend;
+        m_catalogContext = context;
+        m_csp = csp;
+
+        for (int i = 0; i < poolSize; i++) {
+            MpRoSite site = new MpRoSite(m_siteId, i, m_backend, m_catalogContext, m_csp, partitionId);
+            m_allSites.add(site);
+            m_idleSites.push(site);
+        }
+    }
+
+    /** Start the site threads. */
+    void start()
+    {
+        for (MpRoSite site : m_allSites) {
+            Thread siteThread = new Thread(site);
+            siteThread.setDaemon(true);
+            m_siteThreads.add(siteThread);
+            siteThread.start();
+        }
+    }
+
+    /**
+     * Update the catalog of every site.  Only safe while no read is running,
+     * the MpTransactionTaskQueue guarantees that by running catalog updates as
+     * exclusive writes.
+     */
+    void updateCatalog(CatalogContext context, CatalogSpecificPlanner csp)
+    {
+        assert(m_busySites.isEmpty());
+        m_catalogContext = context;
+        m_csp = csp;
+        for (MpRoSite site : m_allSites) {
+            site.updateCatalog(m_catalogContext, m_csp);
+        }
+    }
+
+    /**
+     * Stop all of the site threads.  Tasks which have already been handed to
+     * a site still run before it exits.
+     */
+    void shutdown()
+    {
+        for (MpRoSite site : m_allSites) {
+            site.startShutdown();
+        }
+        try {
+            for (Thread siteThread : m_siteThreads) {
+                siteThread.join();
+            }
+        } catch (InterruptedException e) {
+            tmLog.info("Interrupted during shutdown of the MP read-only site pool", e);
+        }
+    }
+
+    /** Total number of sites in the pool. */
+    int getPoolSize()
+    {
+        return m_allSites.size();
+    }
+
+    /** Number of sites currently bound to a transaction. */
+    int getBusySiteCount()
+    {
+        return m_busySites.size();
+    }
+
+    /** Is there an idle site to run another transaction on? */
+    boolean canAcceptWork()
+    {
+        return !m_idleSites.isEmpty();
+    }
+
+    /**
+     * Run a task for the given transaction.  A transaction which is already
+     * running goes back to its own site, otherwise it is bound to an idle one.
+     * @throws IllegalStateException if the transaction is new and no site is idle.
+     */
+    void doWork(long txnId, TransactionTask task)
+    {
+        MpRoSite site = m_busySites.get(txnId);
+        if (site == null) {
+            site = m_idleSites.poll();
+            if (site == null) {
+                throw new IllegalStateException("No idle MP read-only site for transaction " +
+                        TxnEgo.txnIdToString(txnId));
+            }
+            m_busySites.put(txnId, site);
+        }
+        site.offer(task);
+    }
+
+    /** The transaction finished, return its site to the pool. */
+    void completeWork(long txnId)
+    {
+        MpRoSite site = m_busySites.remove(txnId);
+        if (site == null) {
+            throw new IllegalStateException("No MP read-only site is running transaction " +
+                    TxnEgo.txnIdToString(txnId));
+        }
+        m_idleSites.push(site);
+    }
+}
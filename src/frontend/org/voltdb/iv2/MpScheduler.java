@@ -55,6 +55,9 @@ public class MpScheduler extends Scheduler
     private final long m_buddyHSId;
     //Generator of pre-IV2ish timestamp based unique IDs
     private final UniqueIdGenerator m_uniqueIdGenerator;
+    // Held by this MPI's transactions while they send fragments, so concurrent
+    // reads reach every partition in the same order
+    private final Object m_distributionLock = new Object();
 
     // the current not-needed-any-more point of the repair log.
     long m_repairLogTruncationHandle = Long.MIN_VALUE;
@@ -65,12 +68,26 @@ public class MpScheduler extends Scheduler
 
     MpScheduler(int partitionId, long buddyHSId, SiteTaskerQueue taskQueue)
     {
-        super(partitionId, taskQueue);
+        super(partitionId, taskQueue, new MpTransactionTaskQueue(taskQueue));
         m_buddyHSId = buddyHSId;
         m_iv2Masters = new ArrayList<Long>();
         m_uniqueIdGenerator = new UniqueIdGenerator(partitionId, 0);
     }
 
+    MpTransactionTaskQueue getMpTransactionTaskQueue()
+    {
+        return (MpTransactionTaskQueue)m_pendingTasks;
+    }
+
+    /**
+     * Give the scheduler the pool of sites to run read-only transactions on.
+     * Must be called before the MPI accepts any work.
+     */
+    void setMpRoSitePool(MpRoSitePool sitePool)
+    {
+        getMpTransactionTaskQueue().setMpRoSitePool(sitePool);
+    }
+
     @Override
     public void shutdown()
     {
@@ -270,7 +287,8 @@ public class MpScheduler extends Scheduler
         // Multi-partition initiation (at the MPI)
         final MpProcedureTask task =
             new MpProcedureTask(m_mailbox, procedureName,
-                    m_pendingTasks, mp, m_iv2Masters, m_buddyHSId, false);
+                    m_pendingTasks, mp, m_iv2Masters, m_buddyHSId, false,
+                    m_distributionLock);
         m_outstandingTxns.put(task.m_txnState.txnId, task.m_txnState);
         m_pendingTasks.offer(task);
     }
@@ -310,7 +328,8 @@ public class MpScheduler extends Scheduler
         // Multi-partition initiation (at the MPI)
         final MpProcedureTask task =
             new MpProcedureTask(m_mailbox, procedureName,
-                    m_pendingTasks, mp, m_iv2Masters, m_buddyHSId, true);
+                    m_pendingTasks, mp, m_iv2Masters, m_buddyHSId, true,
+                    m_distributionLock);
         m_outstandingTxns.put(task.m_txnState.txnId, task.m_txnState);
         m_pendingTasks.offer(task);
     }
@@ -61,6 +61,17 @@ public class MpTransactionState extends TransactionState
 
     final Iv2InitiateTaskMessage m_initiationMsg;
 
+    /*
+     * Read-only MP transactions run concurrently on the MPI's read pool, and
+     * a partition runs an MP transaction's fragments ahead of any other MP
+     * fragments queued behind it.  If two transactions' fragments reached two
+     * partitions in different orders each would wait on the other forever.
+     * Every send goes out over ordered connections, so sending the whole
+     * distribution under the lock the MPI hands all its transactions gives
+     * all partitions the same order.
+     */
+    private final Object m_distributionLock;
+
     LinkedBlockingDeque<FragmentResponseMessage> m_newDeps =
         new LinkedBlockingDeque<FragmentResponseMessage>();
     Map<Integer, Set<Long>> m_remoteDeps;
@@ -75,10 +86,12 @@ public class MpTransactionState extends TransactionState
 
     MpTransactionState(Mailbox mailbox,
                        TransactionInfoBaseMessage notice,
-                       List<Long> useHSIds, long buddyHSId, boolean isRestart)
+                       List<Long> useHSIds, long buddyHSId, boolean isRestart,
+                       Object distributionLock)
     {
         super(mailbox, notice);
         m_initiationMsg = (Iv2InitiateTaskMessage)notice;
+        m_distributionLock = distributionLock;
         m_useHSIds.addAll(useHSIds);
         m_buddyHSId = buddyHSId;
         m_isRestart = isRestart;
@@ -168,7 +181,9 @@ public class MpTransactionState extends TransactionState
             }
             // send to all non-local sites
             if (non_local_hsids.length > 0) {
-                m_mbox.send(non_local_hsids, m_remoteWork);
+                synchronized (m_distributionLock) {
+                    m_mbox.send(non_local_hsids, m_remoteWork);
+                }
             }
         }
         else {
@@ -222,7 +237,9 @@ public class MpTransactionState extends TransactionState
             }
             // send to all non-local sites
             if (non_local_hsids.length > 0) {
-                m_mbox.send(non_local_hsids, m_remoteWork);
+                synchronized (m_distributionLock) {
+                    m_mbox.send(non_local_hsids, m_remoteWork);
+                }
             }
         }
         // Do distributed fragments, if any
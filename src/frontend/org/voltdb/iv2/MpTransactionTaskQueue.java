@@ -0,0 +1,327 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.exceptions.TransactionRestartException;
+import org.voltdb.messaging.FragmentResponseMessage;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.rejoin.TaskLog;
+
+/**
+ * The MPI's TransactionTaskQueue.  Writes, and everything else that isn't a
+ * read-only procedure, run one at a time on the MPI's Site as before.  Reads
+ * run concurrently on the sites of an MpRoSitePool, as many as the pool has
+ * sites for, as long as no write is running.
+ *
+ * Transactions are released strictly in the order they were offered: a read
+ * queued behind a write waits for the write, and the write waits for every
+ * read released before it to finish.
+ */
+public class MpTransactionTaskQueue extends TransactionTaskQueue
+{
+    // Transactions which have been released to a site and haven't finished.
+    // At most one write, and never reads and a write at the same time.
+    private final Map<Long, TransactionTask> m_currentWrites = new HashMap<Long, TransactionTask>();
+    private final Map<Long, TransactionTask> m_currentReads = new HashMap<Long, TransactionTask>();
+
+    // Repair tasks waiting for the running reads to be poisoned and finish
+    private final Deque<SiteTasker> m_heldRepairs = new ArrayDeque<SiteTasker>();
+    // Repair tasks handed to the MPI's site which haven't run yet.  Nothing
+    // new is released while this is non-zero, the repair must run first.
+    private int m_repairsInProgress = 0;
+
+    private MpRoSitePool m_sitePool = null;
+
+    MpTransactionTaskQueue(SiteTaskerQueue queue)
+    {
+        super(queue);
+    }
+
+    synchronized void setMpRoSitePool(MpRoSitePool sitePool)
+    {
+        m_sitePool = sitePool;
+    }
+
+    /**
+     * Can this task run concurrently with other reads?  Only read-only user
+     * procedures and read-only ad hoc SQL do; read-only system procedures
+     * keep running on the MPI's site.
+     */
+    boolean isParallelRead(TransactionTask task)
+    {
+        if (m_sitePool == null || m_sitePool.getPoolSize() == 0) {
+            return false;
+        }
+        if (!(task instanceof MpProcedureTask) || !task.getTransactionState().isReadOnly()) {
+            return false;
+        }
+        final String procName = ((MpProcedureTask)task).m_procName;
+        return !procName.startsWith("@") || procName.equals("@AdHoc_RO_MP");
+    }
+
+    /**
+     * Stick this task in the backlog and release as much of the backlog as
+     * possible.  Everything the MPI runs goes through the backlog.
+     * @return true if the task was stored in the backlog
+     */
+    @Override
+    synchronized boolean offer(TransactionTask task)
+    {
+        Iv2Trace.logTransactionTaskQueueOffer(task);
+        m_backlog.addLast(task);
+        taskQueueOffer();
+        return !m_backlog.isEmpty() && m_backlog.getLast() == task;
+    }
+
+    // repair is used by MPI repair to inject a repair task into the
+    // SiteTaskerQueue.  Every running transaction is poisoned so that it
+    // rolls back.  A running write is the only thing on the MPI's Site, so
+    // the repair task is queued right away and runs as soon as the write
+    // unblocks.  Running reads are on the pool's sites, the repair task is
+    // held until they have all finished.
+    @Override
+    synchronized void repair(SiteTasker task, List<Long> masters)
+    {
+        ++m_repairsInProgress;
+        final SiteTasker repairTask = new RepairTask(task);
+        if (m_currentReads.isEmpty()) {
+            m_taskQueue.offer(repairTask);
+        }
+        else {
+            m_heldRepairs.addLast(repairTask);
+        }
+        for (TransactionTask running : m_currentWrites.values()) {
+            poison(running, masters);
+        }
+        for (TransactionTask running : m_currentReads.values()) {
+            poison(running, masters);
+        }
+        // Now, iterate through the backlog and update the partition masters
+        // for all MpProcedureTasks which haven't been released yet
+        for (TransactionTask queued : m_backlog) {
+            if (queued instanceof MpProcedureTask) {
+                ((MpProcedureTask)queued).updateMasters(masters);
+            }
+        }
+    }
+
+    private void poison(TransactionTask running, List<Long> masters)
+    {
+        // EveryPartitionTasks and the like don't block on responses, they
+        // only exist to order sends and will finish on their own.
+        if (!(running instanceof MpProcedureTask)) {
+            return;
+        }
+        MpProcedureTask next = (MpProcedureTask)running;
+        next.doRestart(masters);
+        MpTransactionState txn = (MpTransactionState)next.getTransactionState();
+        // inject poison pill
+        FragmentTaskMessage dummy = new FragmentTaskMessage(0L, 0L, 0L, 0L, false, false, false);
+        FragmentResponseMessage poison =
+            new FragmentResponseMessage(dummy, 0L); // Don't care about source HSID here
+        // Provide a TransactionRestartException which will be converted
+        // into a ClientResponse.RESTART, so that the MpProcedureTask can
+        // detect the restart and take the appropriate actions.
+        TransactionRestartException restart = new TransactionRestartException(
+                "Transaction being restarted due to fault recovery or shutdown.", next.getTxnId());
+        poison.setStatus(FragmentResponseMessage.UNEXPECTED_ERROR, restart);
+        txn.offerReceivedFragmentResponse(poison);
+    }
+
+    /**
+     * Runs a repair task on the MPI's site and then lets the backlog move again.
+     */
+    private class RepairTask extends SiteTasker
+    {
+        private final SiteTasker m_repair;
+
+        RepairTask(SiteTasker repair)
+        {
+            m_repair = repair;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection)
+        {
+            try {
+                m_repair.run(siteConnection);
+            } finally {
+                repairComplete();
+            }
+        }
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog)
+        throws IOException
+        {
+            try {
+                m_repair.runForRejoin(siteConnection, taskLog);
+            } finally {
+                repairComplete();
+            }
+        }
+    }
+
+    private synchronized void repairComplete()
+    {
+        --m_repairsInProgress;
+        taskQueueOffer();
+    }
+
+    // Release the task to the site that is going to run it
+    private void taskQueueOffer(TransactionTask task)
+    {
+        Iv2Trace.logSiteTaskerQueueOffer(task);
+        if (m_currentReads.containsKey(task.getTxnId())) {
+            m_sitePool.doWork(task.getTxnId(), task);
+        }
+        else {
+            m_taskQueue.offer(task);
+        }
+    }
+
+    /**
+     * Release tasks from the head of the backlog while they can run: a write
+     * only when nothing else is running, reads while no write is running and
+     * the pool has idle sites.
+     * @return the number of tasks released
+     */
+    private int taskQueueOffer()
+    {
+        int offered = 0;
+        if (m_repairsInProgress > 0) {
+            return offered;
+        }
+        while (!m_backlog.isEmpty()) {
+            TransactionTask task = m_backlog.getFirst();
+            if (isParallelRead(task)) {
+                if (!m_currentWrites.isEmpty() || !m_sitePool.canAcceptWork()) {
+                    break;
+                }
+                m_backlog.removeFirst();
+                m_currentReads.put(task.getTxnId(), task);
+            }
+            else {
+                if (!m_currentWrites.isEmpty() || !m_currentReads.isEmpty()) {
+                    break;
+                }
+                m_backlog.removeFirst();
+                m_currentWrites.put(task.getTxnId(), task);
+            }
+            taskQueueOffer(task);
+            ++offered;
+        }
+        return offered;
+    }
+
+    /**
+     * The transaction with the given ID finished, release whatever can run now.
+     * @return the number of TransactionTasks released
+     */
+    @Override
+    synchronized int flush(long txnId)
+    {
+        if (m_currentReads.remove(txnId) != null) {
+            m_sitePool.completeWork(txnId);
+            if (m_currentReads.isEmpty()) {
+                // The poisoned reads are all done, the repair can run now
+                while (!m_heldRepairs.isEmpty()) {
+                    m_taskQueue.offer(m_heldRepairs.removeFirst());
+                }
+            }
+        }
+        else {
+            m_currentWrites.remove(txnId);
+        }
+        return taskQueueOffer();
+    }
+
+    /**
+     * Restart the running write.  It goes back to the MPI's site, behind the
+     * repair task which caused the restart.  Reads are never restarted, see
+     * MpProcedureTask.run().
+     */
+    @Override
+    synchronized void restart()
+    {
+        for (TransactionTask task : m_currentWrites.values()) {
+            taskQueueOffer(task);
+        }
+    }
+
+    /**
+     * How many Tasks are un-runnable?
+     * @return
+     */
+    @Override
+    synchronized int size()
+    {
+        return m_backlog.size();
+    }
+
+    /** How many reads in the backlog will run on the pool once released? */
+    synchronized int getQueuedReads()
+    {
+        int reads = 0;
+        for (TransactionTask task : m_backlog) {
+            if (isParallelRead(task)) {
+                ++reads;
+            }
+        }
+        return reads;
+    }
+
+    synchronized int getQueuedWrites()
+    {
+        return m_backlog.size() - getQueuedReads();
+    }
+
+    synchronized int getRunningReads()
+    {
+        return m_currentReads.size();
+    }
+
+    synchronized int getRunningWrites()
+    {
+        return m_currentWrites.size();
+    }
+
+    synchronized int getReadSiteCount()
+    {
+        return m_sitePool == null ? 0 : m_sitePool.getPoolSize();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MpTransactionTaskQueue:").append("\n");
+        sb.append("\tSIZE: ").append(size());
+        sb.append("\tRUNNING READS: ").append(getRunningReads());
+        sb.append("\tRUNNING WRITES: ").append(getRunningWrites());
+        return sb.toString();
+    }
+}
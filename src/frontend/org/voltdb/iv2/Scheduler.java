@@ -103,9 +103,14 @@ abstract public class Scheduler implements InitiatorMessageHandler
     protected Object m_lock;
 
     Scheduler(int partitionId, SiteTaskerQueue taskQueue)
+    {
+        this(partitionId, taskQueue, new TransactionTaskQueue(taskQueue));
+    }
+
+    Scheduler(int partitionId, SiteTaskerQueue taskQueue, TransactionTaskQueue pendingTasks)
     {
         m_tasks = taskQueue;
-        m_pendingTasks = new TransactionTaskQueue(m_tasks);
+        m_pendingTasks = pendingTasks;
         m_partitionId = partitionId;
         m_txnEgo = TxnEgo.makeZero(partitionId);
     }
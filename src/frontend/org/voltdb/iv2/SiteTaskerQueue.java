@@ -14,48 +14,316 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.voltdb.iv2;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
 import jsr166y.LinkedTransferQueue;
 
+import org.voltcore.utils.MpscRingBuffer;
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution.
+ *
+ * Tasks can be held in an unbounded LinkedTransferQueue (the default) or a bounded
+ * MpscRingBuffer. Producers never wait for a full ring, they are often holding the
+ * InitiatorMailbox lock that the site needs to deliver its responses. Tasks that don't fit
+ * spill to an unbounded overflow queue that the site drains once the ring is empty. With a drain batch size greater than one, the site thread moves all
+ * available tasks, up to the batch size, into a local array in one pass and then hands them
+ * out from the array without touching the shared queue. Tasks are still handed out one at a
+ * time so the site checks its state between tasks exactly as before.
+ *
+ * When the queue is empty take() waits according to the WaitStrategy. Spinning trades a
+ * core per site for wake up latency, time spent spinning and parked is reported separately
+ * in the STARVATION statistics.
+ *
+ * take(), poll() and isEmpty() must only be called by the site thread. offer() can be called
+ * from any thread.
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    public static enum QueueType {
+        LINKED, RING
+    }
+
+    /**
+     * What the site thread does when it runs out of tasks.
+     */
+    public static enum WaitStrategy {
+        /** Block in the queue right away, the behavior before wait strategies existed */
+        PARK,
+        /** Poll the queue in a busy loop and never block */
+        SPIN,
+        /** Busy poll for up to the spin limit, then poll between calls to Thread.yield() */
+        YIELD,
+        /**
+         * Busy poll for up to an adaptive number of iterations, then block. The limit doubles
+         * when a task shows up during the spin and halves when the site has to block, between
+         * MIN_ADAPTIVE_SPINS and the configured spin limit.
+         */
+        ADAPTIVE
+    }
+
+    public static final int DEFAULT_RING_CAPACITY = 16384;
+    public static final int DEFAULT_SPIN_LIMIT = 20000;
+    static final int MIN_ADAPTIVE_SPINS = 64;
+
+    // Process wide configuration from the deployment file, used by the default constructor
+    private static volatile QueueType s_defaultType = QueueType.LINKED;
+    private static volatile int s_defaultCapacity = DEFAULT_RING_CAPACITY;
+    private static volatile int s_defaultDrainBatchSize = 1;
+    private static volatile WaitStrategy s_defaultWaitStrategy = WaitStrategy.PARK;
+    private static volatile int s_defaultSpinLimit = DEFAULT_SPIN_LIMIT;
+
+    /**
+     * Set the queue type, ring capacity and drain batch size used by queues created afterwards
+     * with the default constructor.
+     */
+    public static void setDefaultConfiguration(QueueType type, int ringCapacity, int drainBatchSize) {
+        if (ringCapacity < 2) {
+            throw new IllegalArgumentException("Site queue capacity must be at least 2: " + ringCapacity);
+        }
+        if (drainBatchSize < 1) {
+            throw new IllegalArgumentException("Site queue drain batch size must be at least 1: " + drainBatchSize);
+        }
+        s_defaultType = type;
+        s_defaultCapacity = ringCapacity;
+        s_defaultDrainBatchSize = drainBatchSize;
+    }
+
+    /**
+     * Set the wait strategy and spin limit used by queues created afterwards with the
+     * default constructor.
+     */
+    public static void setDefaultWaitStrategy(WaitStrategy strategy, int spinLimit) {
+        if (spinLimit < 1) {
+            throw new IllegalArgumentException("Site queue spin limit must be at least 1: " + spinLimit);
+        }
+        s_defaultWaitStrategy = strategy;
+        s_defaultSpinLimit = spinLimit;
+    }
+
+    private final LinkedTransferQueue<SiteTasker> m_tasks;
+    private final MpscRingBuffer<SiteTasker> m_ring;
+    /*
+     * Ring mode only. Tasks offered while the ring is full, and every task offered after
+     * them until the site has drained them, so each producer's tasks stay in order.
+     */
+    private final ConcurrentLinkedQueue<SiteTasker> m_overflow;
     private StarvationTracker m_starvationTracker;
 
+    // Tasks drained from the shared queue that the site hasn't taken yet, site thread only
+    private final SiteTasker m_batch[];
+    private int m_batchHead = 0;
+    private int m_batchTail = 0;
+    private final int m_drainBatchSize;
+
+    private final WaitStrategy m_waitStrategy;
+    private final int m_spinLimit;
+    // current limit for ADAPTIVE, site thread only
+    private int m_adaptiveSpins;
+
+    // Ring mode only. The site thread, so producers can wake it when it is parked in take().
+    private volatile Thread m_consumer = null;
+    private volatile boolean m_consumerParked = false;
+
+    public SiteTaskerQueue()
+    {
+        this(s_defaultType, s_defaultCapacity, s_defaultDrainBatchSize,
+             s_defaultWaitStrategy, s_defaultSpinLimit);
+    }
+
+    public SiteTaskerQueue(QueueType type, int ringCapacity, int drainBatchSize)
+    {
+        this(type, ringCapacity, drainBatchSize, WaitStrategy.PARK, DEFAULT_SPIN_LIMIT);
+    }
+
+    public SiteTaskerQueue(QueueType type, int ringCapacity, int drainBatchSize,
+                           WaitStrategy waitStrategy, int spinLimit)
+    {
+        if (drainBatchSize < 1) {
+            throw new IllegalArgumentException("Drain batch size must be at least 1: " + drainBatchSize);
+        }
+        if (spinLimit < 1) {
+            throw new IllegalArgumentException("Spin limit must be at least 1: " + spinLimit);
+        }
+        m_waitStrategy = waitStrategy;
+        m_spinLimit = spinLimit;
+        m_adaptiveSpins = spinLimit;
+        if (type == QueueType.RING) {
+            m_tasks = null;
+            m_ring = new MpscRingBuffer<SiteTasker>(ringCapacity);
+            m_overflow = new ConcurrentLinkedQueue<SiteTasker>();
+        } else {
+            m_tasks = new LinkedTransferQueue<SiteTasker>();
+            m_ring = null;
+            m_overflow = null;
+        }
+        m_drainBatchSize = drainBatchSize;
+        m_batch = new SiteTasker[drainBatchSize];
+    }
+
     public boolean offer(SiteTasker task)
     {
-        return m_tasks.offer(task);
+        if (m_ring == null) {
+            return m_tasks.offer(task);
+        }
+        /*
+         * Never wait for the site here, the caller may hold the lock the site needs to make
+         * progress. Once anything has spilled, later tasks follow it into the overflow until
+         * the site catches up, otherwise they could run ahead of it.
+         */
+        if (!m_overflow.isEmpty() || !m_ring.offer(task)) {
+            m_overflow.offer(task);
+        }
+        if (m_consumerParked) {
+            LockSupport.unpark(m_consumer);
+        }
+        return true;
+    }
+
+    private SiteTasker pollRing() {
+        SiteTasker task = m_ring.poll();
+        if (task != null || m_overflow.isEmpty()) {
+            return task;
+        }
+        /*
+         * A producer only spills after its earlier tasks are in the ring, so run those first.
+         * The ring can look empty while a producer has claimed a slot but not yet filled it,
+         * wait for the slot rather than let the overflow pass it.
+         */
+        while (!m_ring.isEmpty()) {
+            if ((task = m_ring.poll()) != null) {
+                return task;
+            }
+        }
+        return m_overflow.poll();
+    }
+
+    private SiteTasker pollShared() {
+        return m_ring == null ? m_tasks.poll() : pollRing();
+    }
+
+    /*
+     * Next task from the local batch, refilling it from the shared queue if it's empty
+     */
+    private SiteTasker nextTask() {
+        if (m_batchHead < m_batchTail) {
+            final SiteTasker task = m_batch[m_batchHead];
+            m_batch[m_batchHead++] = null;
+            return task;
+        }
+        m_batchHead = m_batchTail = 0;
+        if (m_drainBatchSize == 1) {
+            return pollShared();
+        }
+        final SiteTasker first = pollShared();
+        if (first == null) {
+            return null;
+        }
+        SiteTasker task;
+        while (m_batchTail < m_drainBatchSize - 1 && (task = pollShared()) != null) {
+            m_batch[m_batchTail++] = task;
+        }
+        return first;
     }
 
     // Block on the site tasker queue.
     public SiteTasker take() throws InterruptedException
     {
-        SiteTasker task = m_tasks.poll();
+        if (m_ring != null) {
+            m_consumer = Thread.currentThread();
+        }
+        SiteTasker task = nextTask();
         if (task == null) {
             m_starvationTracker.beginStarvation();
         } else {
             return task;
         }
         try {
-            return m_tasks.take();
+            switch (m_waitStrategy) {
+            case SPIN:
+                while ((task = nextTask()) == null) {
+                    checkInterrupt();
+                }
+                return task;
+            case YIELD:
+                task = spin(m_spinLimit);
+                while (task == null) {
+                    Thread.yield();
+                    checkInterrupt();
+                    task = nextTask();
+                }
+                return task;
+            case ADAPTIVE:
+                task = spin(m_adaptiveSpins);
+                if (task != null) {
+                    m_adaptiveSpins = Math.min(m_spinLimit, m_adaptiveSpins * 2);
+                    return task;
+                }
+                m_adaptiveSpins = Math.max(Math.min(MIN_ADAPTIVE_SPINS, m_spinLimit), m_adaptiveSpins / 2);
+                break;
+            default:
+                break;
+            }
+            m_starvationTracker.beginParking();
+            if (m_ring == null) {
+                return m_tasks.take();
+            }
+            return takeFromRing();
         } finally {
             m_starvationTracker.endStarvation();
         }
     }
 
+    private SiteTasker spin(int iterations) throws InterruptedException {
+        SiteTasker task;
+        for (int i = 0; i < iterations; i++) {
+            if ((task = nextTask()) != null) {
+                return task;
+            }
+            checkInterrupt();
+        }
+        return null;
+    }
+
+    private static void checkInterrupt() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private SiteTasker takeFromRing() throws InterruptedException {
+        SiteTasker task;
+        m_consumerParked = true;
+        try {
+            // poll again after announcing, see MpscRingBuffer on why this can't miss a wakeup
+            while ((task = pollRing()) == null) {
+                LockSupport.park(this);
+                checkInterrupt();
+            }
+        } finally {
+            m_consumerParked = false;
+        }
+        return task;
+    }
+
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
-        return m_tasks.poll();
+        if (m_ring != null) {
+            m_consumer = Thread.currentThread();
+        }
+        return nextTask();
     }
 
     public boolean isEmpty() {
-        return m_tasks.isEmpty();
+        if (m_batchHead < m_batchTail) {
+            return false;
+        }
+        return m_ring == null ? m_tasks.isEmpty() : m_ring.isEmpty() && m_overflow.isEmpty();
     }
 
     public void setStarvationTracker(StarvationTracker tracker) {
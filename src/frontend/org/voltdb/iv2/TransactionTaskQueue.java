@@ -32,7 +32,7 @@ public class TransactionTaskQueue
 {
     protected static final VoltLogger hostLog = new VoltLogger("HOST");
 
-    final private SiteTaskerQueue m_taskQueue;
+    final protected SiteTaskerQueue m_taskQueue;
 
     /*
      * Multi-part transactions create a backlog of tasks behind them. A queue is
@@ -142,9 +142,12 @@ public class TransactionTaskQueue
 
     /**
      * Try to offer as many runnable Tasks to the SiteTaskerQueue as possible.
+     * @param txnId The transaction ID of the TransactionTask which is completing
+     * and causing the flush.  Only the MPI's queue, which can run several
+     * transactions at once, needs it.
      * @return the number of TransactionTasks queued to the SiteTaskerQueue
      */
-    synchronized int flush()
+    synchronized int flush(long txnId)
     {
         int offered = 0;
         // If the first entry of the backlog is a completed transaction, clear it so it no longer
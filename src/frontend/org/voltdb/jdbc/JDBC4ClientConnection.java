@@ -25,6 +25,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.concurrent.Future;
 
+import org.voltdb.VoltTable;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientConfig;
 import org.voltdb.client.ClientFactory;
@@ -34,6 +35,7 @@ import org.voltdb.client.ClientStatsContext;
 import org.voltdb.client.NoConnectionsException;
 import org.voltdb.client.ProcCallException;
 import org.voltdb.client.ProcedureCallback;
+import org.voltdb.client.StreamingProcedureCallback;
 
 /**
  * Provides a high-level wrapper around the core {@link Client} class to provide performance
@@ -267,6 +269,45 @@ public class JDBC4ClientConnection implements Closeable {
                 procedure, parameters);
     }
 
+    /**
+     * Internal streaming callback used to track the execution performance of streamed calls.
+     */
+    private static class StreamingTrackingCallback extends TrackingCallback implements StreamingProcedureCallback {
+        private final StreamingProcedureCallback UserCallback;
+
+        public StreamingTrackingCallback(JDBC4ClientConnection owner, String procedure,
+                StreamingProcedureCallback userCallback) {
+            super(owner, procedure, userCallback);
+            this.UserCallback = userCallback;
+        }
+
+        @Override
+        public void clientCallbackRows(int tableIndex, VoltTable rows, ReadControl control) throws Exception {
+            this.UserCallback.clientCallbackRows(tableIndex, rows, control);
+        }
+    }
+
+    /**
+     * Executes a procedure asynchronously with large results streamed back to the callback in
+     * chunks of at most fetchSize rows.
+     *
+     * @param callback
+     *            the user-specified callback to call with each chunk and the final response.
+     * @param fetchSize
+     *            the maximum number of rows per chunk.
+     * @param procedure
+     *            the name of the procedure to call.
+     * @param parameters
+     *            the list of parameters to pass to the procedure.
+     * @return the result of the submission false if the client connection was terminated and unable
+     *         to post the request to the server, true otherwise.
+     */
+    public boolean executeStreamed(StreamingProcedureCallback callback, int fetchSize, String procedure,
+            Object... parameters) throws NoConnectionsException, IOException {
+        return this.client.callProcedureStreamed(new StreamingTrackingCallback(this, procedure, callback),
+                fetchSize, procedure, parameters);
+    }
+
     /**
      * Executes a procedure asynchronously, returning a Future that can be used by the caller to
      * wait upon completion before processing the server response.
@@ -149,6 +149,9 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
         if (resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE && resultSetConcurrency == ResultSet.CONCUR_READ_ONLY)
             return createStatement();
         checkClosed();
+        // forward-only statements stream query results when given a fetch size
+        if (resultSetType == ResultSet.TYPE_FORWARD_ONLY && resultSetConcurrency == ResultSet.CONCUR_READ_ONLY)
+            return new JDBC4Statement(this, resultSetType);
         throw SQLError.noSupport();
     }
 
@@ -327,6 +330,8 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
         if (resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE && resultSetConcurrency == ResultSet.CONCUR_READ_ONLY)
             return prepareStatement(sql);
         checkClosed();
+        if (resultSetType == ResultSet.TYPE_FORWARD_ONLY && resultSetConcurrency == ResultSet.CONCUR_READ_ONLY)
+            return new JDBC4PreparedStatement(this, sql, resultSetType);
         throw SQLError.noSupport();
     }
 
@@ -1351,7 +1351,8 @@ public class JDBC4DatabaseMetaData implements java.sql.DatabaseMetaData
     public boolean supportsResultSetConcurrency(int type, int concurrency) throws SQLException
     {
         checkClosed();
-        if (type == ResultSet.TYPE_SCROLL_INSENSITIVE && concurrency == ResultSet.CONCUR_READ_ONLY)
+        if ((type == ResultSet.TYPE_SCROLL_INSENSITIVE || type == ResultSet.TYPE_FORWARD_ONLY) &&
+                concurrency == ResultSet.CONCUR_READ_ONLY)
             return true;
         return false;
     }
@@ -1369,7 +1370,7 @@ public class JDBC4DatabaseMetaData implements java.sql.DatabaseMetaData
     public boolean supportsResultSetType(int type) throws SQLException
     {
         checkClosed();
-        if (type == ResultSet.TYPE_SCROLL_INSENSITIVE)
+        if (type == ResultSet.TYPE_SCROLL_INSENSITIVE || type == ResultSet.TYPE_FORWARD_ONLY)
             return true;
         return false;
     }
@@ -47,7 +47,12 @@ public class JDBC4PreparedStatement extends JDBC4Statement implements java.sql.P
     private final JDBC4ParameterMetaData parameterMetaData;
     JDBC4PreparedStatement(JDBC4Connection connection, String sql) throws SQLException
     {
-        super(connection);
+        this(connection, sql, ResultSet.TYPE_SCROLL_INSENSITIVE);
+    }
+
+    JDBC4PreparedStatement(JDBC4Connection connection, String sql, int resultSetType) throws SQLException
+    {
+        super(connection, resultSetType);
         VoltSQL query = VoltSQL.parseSQL(sql);
         // You must have one or more parameters (otherwise just use a regular statement)
         if (/*!query.hasParameters() || */!query.isOfType(VoltSQL.TYPE_SELECT,VoltSQL.TYPE_INSERT,VoltSQL.TYPE_UPDATE,VoltSQL.TYPE_DELETE))
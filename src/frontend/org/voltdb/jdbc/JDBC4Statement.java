@@ -105,24 +105,7 @@ public class JDBC4Statement implements java.sql.Statement
             {
                 ClientResponse response = e.getClientResponse();
                 if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                    throw getResponseError(e, response, e.getMessage());
                 } else {
                     throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
                 }
@@ -133,6 +116,50 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        /**
+         * Run a query with its rows streamed back in chunks of at most fetchSize rows.
+         * Blocks until the first chunk or the whole (small) result arrives.
+         */
+        protected JDBC4ResultSet executeStreamed(JDBC4Statement statement,
+                JDBC4ClientConnection connection, int fetchSize) throws SQLException
+        {
+            JDBC4StreamedResultSet.RowStream stream = new JDBC4StreamedResultSet.RowStream();
+            try
+            {
+                if (!connection.executeStreamed(stream, fetchSize, "@AdHoc", this.sql[0]))
+                    throw SQLError.get(SQLError.CONNECTION_FAILURE, "Failed to queue the query");
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+            return new JDBC4StreamedResultSet(statement, stream, fetchSize);
+        }
+
+        /**
+         * Map response status to specific JDBC exception, mostly GENERAL_ERROR except
+         * for connection problems.
+         */
+        static SQLException getResponseError(Exception e, ClientResponse response, String message)
+        {
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -314,9 +341,18 @@ public class JDBC4Statement implements java.sql.Statement
     protected Set<JDBC4ResultSet> openResults = new HashSet<JDBC4ResultSet>();
     protected JDBC4ResultSet result = null;
 
+    // TYPE_SCROLL_INSENSITIVE, or TYPE_FORWARD_ONLY to stream query results with a fetch size
+    protected final int resultSetType;
+
     public JDBC4Statement(JDBC4Connection connection)
+    {
+        this(connection, ResultSet.TYPE_SCROLL_INSENSITIVE);
+    }
+
+    JDBC4Statement(JDBC4Connection connection, int resultSetType)
     {
         sourceConnection = connection;
+        this.resultSetType = resultSetType;
     }
 
     protected void checkClosed() throws SQLException
@@ -491,6 +527,16 @@ public class JDBC4Statement implements java.sql.Statement
 
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
+        // A forward-only statement with a fetch size streams the rows of a plain SELECT
+        // instead of materializing the whole result. Procedures may return several tables
+        // and are not streamed.
+        if (this.resultSetType == ResultSet.TYPE_FORWARD_ONLY && this.fetchSize > 0 &&
+                query.isOfType(VoltSQL.TYPE_SELECT))
+        {
+            setCurrentResult(new VoltTable[0], -1);
+            this.result = query.executeStreamed(this, this.sourceConnection.NativeConnection, this.fetchSize);
+            return this.result;
+        }
         setCurrentResult(query.execute(this.sourceConnection.NativeConnection), -1);
         return this.result;
     }
@@ -679,7 +725,7 @@ public class JDBC4Statement implements java.sql.Statement
     public int getResultSetType() throws SQLException
     {
         checkClosed();
-        return ResultSet.TYPE_SCROLL_INSENSITIVE;
+        return this.resultSetType;
     }
 
     // Retrieves the current result as an update count; if the result is a ResultSet object or there are no more results, -1 is returned.
@@ -0,0 +1,252 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.StreamingProcedureCallback;
+
+/**
+ * Forward-only result set over a streamed query result. Rows arrive from the
+ * server in chunks of at most the statement's fetch size. Chunks are queued for
+ * the reader as they arrive; once a few are waiting the stream asks the client
+ * to stop reading until the reader catches up.
+ */
+public class JDBC4StreamedResultSet extends JDBC4ResultSet
+{
+    // chunks received ahead of the reader before reads are paused
+    private static final int CHUNKS_AHEAD = 2;
+
+    /**
+     * Callback side of the stream. Chunks of the first result table are queued as
+     * VoltTables, followed by the final ClientResponse. The callbacks run on the
+     * client's network thread and never wait.
+     */
+    static class RowStream implements StreamingProcedureCallback
+    {
+        private final BlockingQueue<Object> chunks = new LinkedBlockingQueue<Object>();
+        private boolean closed = false;
+        private boolean finished = false;
+        // the control of a paused stream, guarded by this
+        private ReadControl pausedControl = null;
+
+        @Override
+        public synchronized void clientCallbackRows(int tableIndex, VoltTable rows, ReadControl control)
+        {
+            // a single SELECT has a single result table
+            if (closed || tableIndex != 0)
+                return;
+            chunks.add(rows);
+            if (pausedControl == null && chunks.size() >= CHUNKS_AHEAD)
+            {
+                pausedControl = control;
+                control.pause();
+            }
+        }
+
+        @Override
+        public synchronized void clientCallback(ClientResponse response)
+        {
+            // the client resumes the stream itself once the final response arrived
+            pausedControl = null;
+            if (!closed)
+                chunks.add(response);
+        }
+
+        private synchronized void resumeIfDrained()
+        {
+            if (pausedControl != null && chunks.size() < CHUNKS_AHEAD)
+            {
+                pausedControl.resume();
+                pausedControl = null;
+            }
+        }
+
+        /**
+         * Wait for the next chunk of rows. The final response holds the last rows.
+         */
+        VoltTable next() throws SQLException
+        {
+            Object chunk;
+            try
+            {
+                chunk = chunks.take();
+            }
+            catch(InterruptedException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+            resumeIfDrained();
+            if (chunk instanceof ClientResponse)
+            {
+                finished = true;
+                ClientResponse response = (ClientResponse) chunk;
+                if (response.getStatus() != ClientResponse.SUCCESS)
+                    throw JDBC4Statement.VoltSQL.getResponseError(null, response, response.getStatusString());
+                if (response.getResults().length == 0)
+                    throw SQLError.get(SQLError.GENERAL_ERROR, "The query returned no result table");
+                return response.getResults()[0];
+            }
+            return (VoltTable) chunk;
+        }
+
+        boolean isFinished()
+        {
+            return finished;
+        }
+
+        synchronized void close()
+        {
+            // drop the rest of the stream and let the client read again
+            closed = true;
+            chunks.clear();
+            if (pausedControl != null)
+            {
+                pausedControl.resume();
+                pausedControl = null;
+            }
+        }
+    }
+
+    private final RowStream stream;
+    // rows in the chunks already read past
+    private int rowsBefore = 0;
+
+    JDBC4StreamedResultSet(Statement sourceStatement, RowStream stream, int fetchSize) throws SQLException
+    {
+        super(sourceStatement, stream.next());
+        this.stream = stream;
+        setFetchSize(fetchSize);
+    }
+
+    @Override
+    public boolean next() throws SQLException
+    {
+        checkClosed();
+        try
+        {
+            while (!table.advanceRow())
+            {
+                if (stream.isFinished())
+                    return false;
+                rowsBefore += table.getRowCount();
+                table = stream.next();
+            }
+            return true;
+        }
+        catch(SQLException x)
+        {
+            throw x;
+        }
+        catch(Exception x)
+        {
+            throw SQLError.get(x);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        stream.close();
+        super.close();
+    }
+
+    @Override
+    public int getRow() throws SQLException
+    {
+        return rowsBefore + super.getRow();
+    }
+
+    @Override
+    public int getType() throws SQLException
+    {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException
+    {
+        return rowsBefore == 0 && super.isBeforeFirst();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException
+    {
+        return rowsBefore == 0 && super.isFirst();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException
+    {
+        return stream.isFinished() && super.isAfterLast();
+    }
+
+    // Whether the current row is the last one can't be known without reading ahead.
+    @Override
+    public boolean isLast() throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public void afterLast() throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public boolean first() throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public boolean last() throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public boolean previous() throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException
+    {
+        throw SQLError.noSupport();
+    }
+}
@@ -65,6 +65,8 @@ public class JoinNode implements Cloneable {
     List<AccessPath> m_accessPaths = new ArrayList<AccessPath>();
     // Access path under the evaluation
     AccessPath m_currentAccessPath = null;
+    // Whether the join under evaluation is planned as a hash join
+    boolean m_hashJoin = false;
 
     /**
      * Construct a leaf node
@@ -207,7 +207,9 @@ public class PlanAssembler {
                 "Illegal to read an export table.");
             }
             m_parsedSelect = (ParsedSelectStmt) parsedStmt;
-            subAssembler = new SelectSubPlanAssembler(m_catalogDb, parsedStmt, m_partitioning);
+            // Without statistics a hash join never costs less than a nested loop join
+            subAssembler = new SelectSubPlanAssembler(m_catalogDb, parsedStmt, m_partitioning,
+                                                      m_planSelector.m_estimates.hasStatistics());
             return;
         }
         //TODO: eliminate this redundant "else after a return" and un-indent this block.
@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
 import org.voltdb.expressions.AbstractExpression;
@@ -33,9 +34,11 @@ import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.types.PlanNodeType;
 import org.voltdb.utils.PermutationGenerator;
@@ -57,16 +60,22 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     /** The list of all possible join orders, assembled by queueAllJoinOrders */
     ArrayDeque<JoinNode> m_joinOrders = new ArrayDeque<JoinNode>();
 
+    /** Hash joins are only costed below nested loop joins with estimates from statistics */
+    private final boolean m_considerHashJoins;
+
     /**
      *
      * @param db The catalog's Database object.
      * @param parsedStmt The parsed and dissected statement object describing the sql to execute.
      * @param m_partitioning in/out param first element is partition key value, forcing a single-partition statement if non-null,
      * second may be an inferred partition key if no explicit single-partitioning was specified
+     * @param considerHashJoins true to also generate hash join plans for equi-joins
      */
-    SelectSubPlanAssembler(Database db, AbstractParsedStmt parsedStmt, PartitioningForStatement partitioning)
+    SelectSubPlanAssembler(Database db, AbstractParsedStmt parsedStmt, PartitioningForStatement partitioning,
+                           boolean considerHashJoins)
     {
         super(db, parsedStmt, partitioning);
+        m_considerHashJoins = considerHashJoins;
         //If a join order was provided
         if (parsedStmt.joinOrder != null) {
             //Extract the table names from the , separated list
@@ -772,22 +781,40 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     {
         assert(nodes.size() > nextNode);
         JoinNode joinNode = nodes.get(nextNode);
-        if (nodes.size() == nextNode + 1) {
-            for (AccessPath path : joinNode.m_accessPaths) {
-                joinNode.m_currentAccessPath = path;
-                AbstractPlanNode plan = getSelectSubPlanForJoinNode(rootNode);
-                if (plan == null) {
-                    continue;
+        // A join with equality conditions between its children may also be planned as a hash join
+        boolean[] hashJoinChoices = m_considerHashJoins && hasEqualityJoinExpression(joinNode) ?
+                NLJ_OR_HASH_JOIN : NLJ_ONLY;
+        for (AccessPath path : joinNode.m_accessPaths) {
+            joinNode.m_currentAccessPath = path;
+            for (boolean hashJoin : hashJoinChoices) {
+                joinNode.m_hashJoin = hashJoin;
+                if (nodes.size() == nextNode + 1) {
+                    AbstractPlanNode plan = getSelectSubPlanForJoinNode(rootNode);
+                    if (plan == null) {
+                        continue;
+                    }
+                    m_plans.add(plan);
+                }
+                else {
+                    generateSubPlanForJoinNodeRecursively(rootNode, nextNode+1, nodes);
                 }
-                m_plans.add(plan);
             }
-            return;
         }
+    }
 
-        for (AccessPath path : joinNode.m_accessPaths) {
-            joinNode.m_currentAccessPath = path;
-            generateSubPlanForJoinNodeRecursively(rootNode, nextNode+1, nodes);
+    private static final boolean[] NLJ_ONLY = { false };
+    private static final boolean[] NLJ_OR_HASH_JOIN = { false, true };
+
+    private static boolean hasEqualityJoinExpression(JoinNode joinNode) {
+        if (joinNode.m_table != null) {
+            return false;
         }
+        for (AbstractExpression expr : joinNode.m_joinInnerOuterList) {
+            if (expr.getExpressionType() == ExpressionType.COMPARE_EQUAL) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -919,9 +946,15 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
             canHaveNLIJ = false;
         }
 
+        if (joinNode.m_hashJoin && ! canHaveNLJ) {
+            // a hash join needs the same independently scanned inner child as an NLJ
+            return null;
+        }
+
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
+            AbstractJoinPlanNode nljNode =
+                    joinNode.m_hashJoin ? new HashJoinPlanNode() : new NestLoopPlanNode();
             // get all the clauses that join the applicable two tables
             ArrayList<AbstractExpression> joinClauses = innerAccessPath.joinExprs;
             if (innerPlan instanceof IndexScanPlanNode) {
@@ -934,6 +967,10 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 ((IndexScanPlanNode)innerPlan).setPredicate(indexScanPredicate);
             }
             nljNode.setJoinPredicate(ExpressionUtil.combine(joinClauses));
+            if (joinNode.m_hashJoin &&
+                    ! addHashExpressions((HashJoinPlanNode) nljNode, joinClauses, outerPlan, innerPlan)) {
+                return null;
+            }
 
             // combine the tails plan graph with the new head node
             nljNode.addAndLinkChild(outerPlan);
@@ -980,6 +1017,59 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return ajNode;
     }
 
+    /**
+     * Find the join clauses that equate an expression over the outer tables with an
+     * expression of the same type over the inner tables and hash the join on them.
+     * Floating point keys are left to the join predicate, since equal values such as
+     * 0.0 and -0.0 need not hash alike.
+     * @return false if there are no such clauses and the join can't be hashed
+     */
+    private boolean addHashExpressions(HashJoinPlanNode hjNode,
+                                       List<AbstractExpression> joinClauses,
+                                       AbstractPlanNode outerPlan,
+                                       AbstractPlanNode innerPlan)
+    {
+        HashSet<String> outerTables = new HashSet<String>();
+        outerPlan.getTablesReadByFragment(outerTables);
+        HashSet<String> innerTables = new HashSet<String>();
+        innerPlan.getTablesReadByFragment(innerTables);
+
+        boolean found = false;
+        for (AbstractExpression expr : joinClauses) {
+            if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL) {
+                continue;
+            }
+            AbstractExpression left = expr.getLeft();
+            AbstractExpression right = expr.getRight();
+            if (left.getValueType() != right.getValueType() || left.getValueType() == VoltType.FLOAT) {
+                continue;
+            }
+            if (isOverTables(left, outerTables) && isOverTables(right, innerTables)) {
+                hjNode.addHashExpressions(left, right);
+                found = true;
+            }
+            else if (isOverTables(right, outerTables) && isOverTables(left, innerTables)) {
+                hjNode.addHashExpressions(right, left);
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isOverTables(AbstractExpression expr, Set<String> tableNames)
+    {
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return false;
+        }
+        for (TupleValueExpression tve : tves) {
+            if ( ! tableNames.contains(tve.getTableName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean hasReplicatedResult(AbstractPlanNode plan)
     {
         HashSet<String> tablesRead = new HashSet<String>();
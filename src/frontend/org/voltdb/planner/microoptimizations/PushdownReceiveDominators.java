@@ -24,7 +24,13 @@ import org.voltdb.catalog.Database;
 import org.voltdb.planner.CompiledPlan;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.DistinctPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.plannodes.LimitPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
+import org.voltdb.plannodes.OrderByPlanNode;
+import org.voltdb.plannodes.ReceivePlanNode;
 import org.voltdb.types.PlanNodeType;
+import org.voltdb.types.SortDirectionType;
 
 public class PushdownReceiveDominators extends MicroOptimization {
 
@@ -68,8 +74,13 @@ public class PushdownReceiveDominators extends MicroOptimization {
         // walk the dominators for the receive node and move them
         // after the receive/send pair as possible
         for (AbstractPlanNode pn : receive.getDominators()) {
-            if (pn.getPlanNodeType() == PlanNodeType.DISTINCT) {
-                modifiedGraph = pushdownDistinct(receive, pn) || modifiedGraph;
+            // The DISTINCT pushdown stays disabled, as it was while this whole
+            // optimization was. It has no plan or execution coverage across partitions.
+            // if (pn.getPlanNodeType() == PlanNodeType.DISTINCT) {
+            //     modifiedGraph = pushdownDistinct(receive, pn) || modifiedGraph;
+            // }
+            if (pn.getPlanNodeType() == PlanNodeType.ORDERBY) {
+                modifiedGraph = mergeSortedReceive(receive, pn) || modifiedGraph;
             }
         }
         return modifiedGraph;
@@ -120,4 +131,88 @@ public class PushdownReceiveDominators extends MicroOptimization {
         return true;
     }
 
+    /**
+     * If a RECEIVE is immediately below an ORDER BY and every partition
+     * already produces its rows in that same order -- from its own ORDER BY
+     * under a distributed LIMIT or from an ordered index scan -- the ORDER BY
+     * can be inlined into the RECEIVE, which then merges the sorted
+     * partition results instead of sorting their concatenation. A distributed
+     * LIMIT is inlined as well so that the merge can stop early.
+     *
+     * @param receive RECEIVE node to turn into a merging receive
+     * @param orderBy ORDER BY node absorbed
+     * @return true if the graph was transformed
+     */
+    private boolean mergeSortedReceive(AbstractPlanNode receive, AbstractPlanNode orderBy) {
+        // order by must be an immediate parent of receive, and its only child
+        if (orderBy.hasChild(receive) == false || orderBy.getChildCount() != 1)
+            return false;
+
+        // order by must have a single parent.
+        if (orderBy.getParentCount() != 1)
+            return false;
+
+        // an order by with its own inline nodes is not a plain sort
+        if (orderBy.getInlinePlanNodes().isEmpty() == false)
+            return false;
+
+        // receive must have a send child
+        AbstractPlanNode send = receive.getChild(0);
+        if (send.getPlanNodeType() != PlanNodeType.SEND) {
+            assert(false) : "receive without send child?";
+            return false;
+        }
+
+        // find the distributed limit, possibly inlined into a scan
+        AbstractPlanNode distributed = send.getChild(0);
+        LimitPlanNode distLimit = null;
+        if (distributed.getPlanNodeType() == PlanNodeType.LIMIT) {
+            distLimit = (LimitPlanNode) distributed;
+            distributed = distributed.getChild(0);
+        }
+        else {
+            distLimit = (LimitPlanNode) distributed.getInlinePlanNode(PlanNodeType.LIMIT);
+        }
+
+        if ( ! producesOrder(distributed, (OrderByPlanNode) orderBy)) {
+            return false;
+        }
+
+        // passes requirements to transform!
+
+        // The distributed limit already covers the coordinator's offset.
+        LimitPlanNode mergeLimit = null;
+        if (distLimit != null) {
+            assert(distLimit.getOffset() == 0);
+            mergeLimit = distLimit.produceCopyForTransformation();
+        }
+        ((ReceivePlanNode) receive).mergeOrderingFrom((OrderByPlanNode) orderBy, mergeLimit);
+        return true;
+    }
+
+    /**
+     * @param distributed top of the per-partition work below any LIMIT
+     * @param orderBy the coordinator's ORDER BY
+     * @return true if each partition's output is sorted as orderBy requires
+     */
+    private static boolean producesOrder(AbstractPlanNode distributed, OrderByPlanNode orderBy) {
+        switch (distributed.getPlanNodeType()) {
+        case ORDERBY:
+            OrderByPlanNode distOrderBy = (OrderByPlanNode) distributed;
+            return distOrderBy.getSortExpressions().equals(orderBy.getSortExpressions()) &&
+                   distOrderBy.getSortDirections().equals(orderBy.getSortDirections());
+        // Index scans only report a sort direction when their ordering is
+        // equivalent to the one requested in the ORDER BY clause -- unless
+        // a sequential scan was replaced by one just for determinism.
+        case INDEXSCAN:
+            IndexScanPlanNode indexScan = (IndexScanPlanNode) distributed;
+            return indexScan.getSortDirection() != SortDirectionType.INVALID &&
+                   ! indexScan.isForDeterminismOnly();
+        case NESTLOOPINDEX:
+            return ((NestLoopIndexPlanNode) distributed).getSortDirection() != SortDirectionType.INVALID;
+        default:
+            return false;
+        }
+    }
+
 }
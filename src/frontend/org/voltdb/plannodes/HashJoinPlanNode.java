@@ -0,0 +1,180 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.ScalarValueHints;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.types.PlanNodeType;
+
+/**
+ * An equi-join that hashes its inner child's output and probes it with each outer tuple.
+ * Each outer hash expression is paired with the inner hash expression at the same position.
+ * The join predicate keeps every join condition, so the EE filters out hash collisions
+ * just as a nested loop join would.
+ */
+public class HashJoinPlanNode extends AbstractJoinPlanNode {
+
+    public enum Members {
+        OUTER_HASH_EXPRESSIONS,
+        INNER_HASH_EXPRESSIONS;
+    }
+
+    protected final List<AbstractExpression> m_outerHashExpressions = new ArrayList<AbstractExpression>();
+    protected final List<AbstractExpression> m_innerHashExpressions = new ArrayList<AbstractExpression>();
+
+    public HashJoinPlanNode() {
+        super();
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+
+        if (m_outerHashExpressions.isEmpty() ||
+                m_outerHashExpressions.size() != m_innerHashExpressions.size()) {
+            throw new Exception("ERROR: Hash join has " + m_outerHashExpressions.size() +
+                                " outer and " + m_innerHashExpressions.size() + " inner hash expressions");
+        }
+        for (AbstractExpression exp : m_outerHashExpressions) {
+            exp.validate();
+        }
+        for (AbstractExpression exp : m_innerHashExpressions) {
+            exp.validate();
+        }
+    }
+
+    /**
+     * Add a pair of equal expressions to hash on.
+     * @param outer an expression over the outer child's output only
+     * @param inner an expression over the inner child's output only
+     */
+    public void addHashExpressions(AbstractExpression outer, AbstractExpression inner) {
+        m_outerHashExpressions.add((AbstractExpression) outer.clone());
+        m_innerHashExpressions.add((AbstractExpression) inner.clone());
+    }
+
+    public List<AbstractExpression> getOuterHashExpressions() {
+        return Collections.unmodifiableList(m_outerHashExpressions);
+    }
+
+    public List<AbstractExpression> getInnerHashExpressions() {
+        return Collections.unmodifiableList(m_innerHashExpressions);
+    }
+
+    @Override
+    public void resolveColumnIndexes()
+    {
+        super.resolveColumnIndexes();
+        // Unlike the predicates, each side's hash expressions are evaluated
+        // against that side's tuples only
+        resolveHashExpressions(m_outerHashExpressions, m_children.get(0).getOutputSchema());
+        resolveHashExpressions(m_innerHashExpressions, m_children.get(1).getOutputSchema());
+    }
+
+    private static void resolveHashExpressions(List<AbstractExpression> expressions, NodeSchema schema)
+    {
+        for (AbstractExpression exp : expressions) {
+            for (TupleValueExpression tve : ExpressionUtil.getTupleValueExpressions(exp)) {
+                int index = schema.getIndexOfTve(tve);
+                if (index == -1) {
+                    throw new RuntimeException("Unable to find index for hash join TVE: " +
+                                               tve.toString());
+                }
+                tve.setColumnIndex(index);
+            }
+        }
+    }
+
+    @Override
+    public void computeCostEstimates(long childOutputTupleCountEstimate,
+                                     Cluster cluster,
+                                     Database db,
+                                     DatabaseEstimates estimates,
+                                     ScalarValueHints[] paramHints)
+    {
+        // Building the hash table costs more per tuple than scanning, so charge the
+        // inner child twice. Without statistics a nested loop join is costed at just the
+        // sum of its inputs and stays preferred; with them it is costed as the product
+        // and the hash join wins unless the outer input is tiny. Either way the output
+        // estimate matches the nested loop join's, since the join result is the same.
+        long outer = m_children.get(0).getEstimatedOutputTupleCount();
+        long inner = m_children.get(1).getEstimatedOutputTupleCount();
+        m_estimatedProcessedTupleCount = childOutputTupleCountEstimate + inner;
+        m_estimatedOutputTupleCount = childOutputTupleCountEstimate;
+        if (estimates.hasStatistics()) {
+            m_estimatedOutputTupleCount = NestLoopPlanNode.product(outer, inner);
+        }
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException
+    {
+        super.toJSONString(stringer);
+        stringer.key(Members.OUTER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression exp : m_outerHashExpressions) {
+            stringer.value(exp);
+        }
+        stringer.endArray();
+        stringer.key(Members.INNER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression exp : m_innerHashExpressions) {
+            stringer.value(exp);
+        }
+        stringer.endArray();
+    }
+
+    @Override
+    public void loadFromJSONObject( JSONObject jobj, Database db ) throws JSONException
+    {
+        super.loadFromJSONObject(jobj, db);
+        loadExpressions(jobj.getJSONArray(Members.OUTER_HASH_EXPRESSIONS.name()), db, m_outerHashExpressions);
+        loadExpressions(jobj.getJSONArray(Members.INNER_HASH_EXPRESSIONS.name()), db, m_innerHashExpressions);
+    }
+
+    private static void loadExpressions(JSONArray jarray, Database db, List<AbstractExpression> expressions)
+            throws JSONException
+    {
+        expressions.clear();
+        for (int i = 0; i < jarray.length(); i++) {
+            expressions.add(AbstractExpression.fromJSONObject(jarray.getJSONObject(i), db));
+        }
+    }
+
+    @Override
+    protected String explainPlanForNode(String indent) {
+        return "HASH " + this.m_joinType.toString() + " JOIN" + explainFilters(indent);
+    }
+
+}
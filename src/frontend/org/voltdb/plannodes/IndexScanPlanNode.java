@@ -420,7 +420,17 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
             // Using a factor of 0.1 per FULLY covered (equality-filtered) column,
             // the effective scale factor for a single PARTIALLY covered (range-filtered) column
             // comes to SQRT(0.1) which is just under 32% FTW!
-            tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(0.10, keyWidth));
+            DatabaseEstimates.IndexEstimates indexEstimates =
+                    estimates.getEstimatesForIndex(target.getTypeName(), m_catalogIndex.getTypeName());
+            if (estimates.hasStatistics() && indexEstimates != null && indexEstimates.distinctKeys > 0 &&
+                    m_lookupType == IndexLookupType.EQ && keyWidth == colCount) {
+                // With statistics a full key lookup reads the average number of entries per key
+                tuplesToRead += (int) Math.min(Integer.MAX_VALUE / 2,
+                        Math.ceil((double) indexEstimates.entryCount / indexEstimates.distinctKeys));
+            }
+            else {
+                tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(0.10, keyWidth));
+            }
 
             // With all this discounting, make sure that any non-"covering unique" index scan costs more
             // than any "covering unique" one, no matter how many indexed column filters get piled on.
@@ -691,6 +701,10 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         m_forDeterminismOnly = true;
     }
 
+    public boolean isForDeterminismOnly() {
+        return m_forDeterminismOnly;
+    }
+
     // Called by ReplaceWithIndexLimit and ReplaceWithIndexCounter
     // only apply those optimization if it has no (post-)predicates
     // except those (post-)predicates are artifact predicates we
@@ -128,6 +128,23 @@ public class LimitPlanNode extends AbstractPlanNode {
         stringer.key(Members.LIMIT_EXPRESSION.name()).value(m_limitExpression);
     }
 
+    /**
+     * Copy the limit, its parameters and any limit expression, e.g. to
+     * inline a distributed limit's equivalent into a merging RECEIVE.
+     * @return an unlinked, non-inline copy
+     */
+    public LimitPlanNode produceCopyForTransformation() {
+        LimitPlanNode copy = new LimitPlanNode();
+        copy.m_limit = m_limit;
+        copy.m_offset = m_offset;
+        copy.m_limitParameterId = m_limitParameterId;
+        copy.m_offsetParameterId = m_offsetParameterId;
+        if (m_limitExpression != null) {
+            copy.m_limitExpression = (AbstractExpression) m_limitExpression.clone();
+        }
+        return copy;
+    }
+
     public void setLimitParameterIndex(long limitParameterId) {
         m_limitParameterId = limitParameterId;
     }
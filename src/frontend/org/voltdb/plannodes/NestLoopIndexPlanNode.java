@@ -235,6 +235,15 @@ public class NestLoopIndexPlanNode extends AbstractJoinPlanNode {
                 (IndexScanPlanNode) getInlinePlanNode(PlanNodeType.INDEXSCAN);
         assert(indexScan != null);
 
+        if (estimates.hasStatistics()) {
+            // With real row counts the join order matters enough to cost what actually happens:
+            // one index lookup per outer tuple.
+            m_estimatedOutputTupleCount = NestLoopPlanNode.product(
+                    indexScan.getEstimatedOutputTupleCount(), childOutputTupleCountEstimate);
+            m_estimatedProcessedTupleCount = childOutputTupleCountEstimate + NestLoopPlanNode.product(
+                    indexScan.getEstimatedProcessedTupleCount(), childOutputTupleCountEstimate);
+            return;
+        }
         m_estimatedOutputTupleCount = indexScan.getEstimatedOutputTupleCount() + childOutputTupleCountEstimate;
         m_estimatedProcessedTupleCount = indexScan.getEstimatedProcessedTupleCount() + childOutputTupleCountEstimate;
     }
@@ -48,8 +48,27 @@ public class NestLoopPlanNode extends AbstractJoinPlanNode {
 
         m_estimatedOutputTupleCount = childOutputTupleCountEstimate;
         m_estimatedProcessedTupleCount = childOutputTupleCountEstimate;
+
+        // With real row counts, cost the inner side once per outer tuple.
+        if (estimates.hasStatistics() && m_children.size() == 2) {
+            long outer = m_children.get(0).getEstimatedOutputTupleCount();
+            long inner = m_children.get(1).getEstimatedOutputTupleCount();
+            m_estimatedOutputTupleCount = product(outer, inner);
+            m_estimatedProcessedTupleCount = outer + product(outer, inner);
+        }
+    }
+
+    /**
+     * Multiply two tuple counts, saturating well below overflow so that
+     * the sums the cost model takes over a whole plan stay positive.
+     */
+    static long product(long a, long b) {
+        final double product = (double) a * b;
+        return product >= MAX_JOIN_ESTIMATE ? MAX_JOIN_ESTIMATE : (long) product;
     }
 
+    private static final long MAX_JOIN_ESTIMATE = Long.MAX_VALUE / 1024;
+
     @Override
     protected String explainPlanForNode(String indent) {
         return "NEST LOOP " + this.m_joinType.toString() + " JOIN" + explainFilters(indent);
@@ -152,6 +152,10 @@ public class OrderByPlanNode extends AbstractPlanNode {
         return m_sortExpressions;
     }
 
+    public List<SortDirectionType> getSortDirections() {
+        return m_sortDirections;
+    }
+
     @Override
     public void resolveColumnIndexes()
     {
@@ -170,6 +174,16 @@ public class OrderByPlanNode extends AbstractPlanNode {
         }
         m_outputSchema.sortByTveIndex();
 
+        resolveSortIndexesUsingSchema(input_schema);
+    }
+
+    /**
+     * Resolve the sort columns against the schema of the rows being sorted.
+     * Used directly when this node is inlined in a merging RECEIVE.
+     * @param input_schema
+     */
+    public void resolveSortIndexesUsingSchema(NodeSchema input_schema)
+    {
         // Find the proper index for the sort columns.  Not quite
         // sure these should be TVEs in the long term.
         List<TupleValueExpression> sort_tves =
@@ -32,6 +32,10 @@ public class ReceivePlanNode extends AbstractPlanNode {
     boolean m_isContentDeterministic = true;
     String m_nondeterminismDetail = "no ordering was asserted for Receive Plan Node";
 
+    // Cached from the ORDER BY that was inlined to merge the sorted partition results.
+    boolean m_mergeIsOrderDeterministic = false;
+    String m_mergeNondeterminismDetail = null;
+
     public ReceivePlanNode() {
         super();
     }
@@ -69,6 +73,43 @@ public class ReceivePlanNode extends AbstractPlanNode {
             tve.setColumnIndex(index);
         }
         m_outputSchema.sortByTveIndex();
+
+        // A merging receive's sort keys are evaluated on the received rows.
+        OrderByPlanNode orderBy = (OrderByPlanNode) getInlinePlanNode(PlanNodeType.ORDERBY);
+        if (orderBy != null) {
+            orderBy.resolveSortIndexesUsingSchema(input_schema);
+        }
+    }
+
+    /**
+     * Replace the ORDER BY directly above this node with a merge of the
+     * partition results, which must each already arrive in that order.
+     * The optional limit lets the merge stop once enough rows were produced.
+     * @param orderBy the ORDER BY whose only child is this node
+     * @param limit an unlinked LIMIT to inline, or null
+     */
+    public void mergeOrderingFrom(OrderByPlanNode orderBy, LimitPlanNode limit) {
+        assert(orderBy.getChildCount() == 1 && orderBy.getChild(0) == this);
+        assert(orderBy.getParentCount() == 1);
+
+        // The order by judges its determinism through its (still linked) child.
+        m_mergeIsOrderDeterministic = orderBy.isOrderDeterministic();
+        m_mergeNondeterminismDetail = m_mergeIsOrderDeterministic ? null : orderBy.nondeterminismDetail();
+        m_isOrderDeterministic = m_mergeIsOrderDeterministic;
+        m_nondeterminismDetail = m_mergeNondeterminismDetail;
+
+        AbstractPlanNode parent = orderBy.getParent(0);
+        boolean replaced = parent.replaceChild(orderBy, this);
+        assert(replaced);
+
+        addInlinePlanNode(orderBy);
+        if (limit != null) {
+            addInlinePlanNode(limit);
+        }
+    }
+
+    public boolean isMergeReceive() {
+        return getInlinePlanNode(PlanNodeType.ORDERBY) != null;
     }
 
     @Override
@@ -83,6 +124,9 @@ public class ReceivePlanNode extends AbstractPlanNode {
 
     @Override
     protected String explainPlanForNode(String indent) {
+        if (isMergeReceive()) {
+            return "MERGE RECEIVE FROM ALL PARTITIONS";
+        }
         return "RECEIVE FROM ALL PARTITIONS";
     }
 
@@ -126,6 +170,19 @@ public class ReceivePlanNode extends AbstractPlanNode {
      */
     public void cacheDeterminism() {
         AbstractPlanNode childNode = getChild(0);
+        if (isMergeReceive()) {
+            // Merging restores the order the inlined ORDER BY used to impose.
+            m_isContentDeterministic = childNode.isContentDeterministic();
+            m_isOrderDeterministic = m_isContentDeterministic && m_mergeIsOrderDeterministic;
+            if (m_isOrderDeterministic) {
+                m_nondeterminismDetail = null;
+            } else if ( ! m_isContentDeterministic) {
+                m_nondeterminismDetail = childNode.nondeterminismDetail();
+            } else {
+                m_nondeterminismDetail = m_mergeNondeterminismDetail;
+            }
+            return;
+        }
         m_isOrderDeterministic = childNode.isOrderDeterministic();
         if (m_isOrderDeterministic) {
             m_nondeterminismDetail = null;
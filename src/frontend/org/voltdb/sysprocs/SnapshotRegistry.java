@@ -31,8 +31,9 @@ import org.voltdb.sysprocs.saverestore.SnapshotUtil;
  */
 public class SnapshotRegistry {
     private static final int m_maxStatusHistory = 10;
+    private static final int m_maxRestoreHistory = 2;
 
-    private static final TreeSet<Snapshot> m_snapshots = new TreeSet<Snapshot>(
+    private static final java.util.Comparator<Snapshot> m_byTxnId =
             new java.util.Comparator<Snapshot>() {
 
                 @Override
@@ -40,7 +41,14 @@ public class SnapshotRegistry {
                     return Long.valueOf(o1.txnId).compareTo(o2.txnId);
                 }
 
-            });
+            };
+
+    private static final TreeSet<Snapshot> m_snapshots = new TreeSet<Snapshot>(m_byTxnId);
+
+    /*
+     * Restores are kept apart so they don't push snapshots out of the history
+     */
+    private static final TreeSet<Snapshot> m_restores = new TreeSet<Snapshot>(m_byTxnId);
 
     public static class Snapshot {
         public final long txnId;
@@ -53,6 +61,7 @@ public class SnapshotRegistry {
 
         public final long bytesWritten;
         public final SnapshotFormat format;
+        public final boolean isRestore;
 
         private final HashMap< String, Table> tables = new HashMap< String, Table>();
 
@@ -64,6 +73,7 @@ public class SnapshotRegistry {
             this.path = path;
             this.nonce = nonce;
             this.format = format;
+            isRestore = false;
             timeFinished = 0;
             synchronized (this.tables) {
                 for (org.voltdb.catalog.Table table : tables) {
@@ -80,18 +90,34 @@ public class SnapshotRegistry {
             bytesWritten = 0;
         }
 
-        private Snapshot(Snapshot incomplete, long timeFinished) {
+        /*
+         * A restore starts with no tables, they are added as their data is loaded
+         */
+        private Snapshot(long txnId, long timeStarted, String path, String nonce) {
+            this.txnId = txnId;
+            this.timeStarted = timeStarted;
+            this.path = path;
+            this.nonce = nonce;
+            format = SnapshotFormat.NATIVE;
+            isRestore = true;
+            timeFinished = 0;
+            result = false;
+            bytesWritten = 0;
+        }
+
+        private Snapshot(Snapshot incomplete, long timeFinished, boolean failed) {
             txnId = incomplete.txnId;
             timeStarted = incomplete.timeStarted;
             path = incomplete.path;
             nonce = incomplete.nonce;
             format = incomplete.format;
+            isRestore = incomplete.isRestore;
             this.timeFinished = timeFinished;
             synchronized (tables) {
                 tables.putAll(incomplete.tables);
             }
             long bytesWritten = 0;
-            boolean result = true;
+            boolean result = !failed;
             for (Table t : tables.values()) {
                 bytesWritten += t.size;
                 if (t.error != null) {
@@ -125,6 +151,34 @@ public class SnapshotRegistry {
             }
         }
 
+        /**
+         * Account for bytes of a table that have been restored so far,
+         * adding the table if this is its first chunk.
+         */
+        public void addRestoredBytes(String name, String filename, long bytes) {
+            synchronized (tables) {
+                Table t = tables.get(name);
+                if (t == null) {
+                    t = new Table(name, filename);
+                }
+                tables.put(name, new Table(t, t.size + bytes, t.error));
+            }
+        }
+
+        /**
+         * Total bytes accounted to tables so far, for reporting progress
+         * before the snapshot or restore finishes.
+         */
+        public long bytesSoFar() {
+            long bytes = 0;
+            synchronized (tables) {
+                for (Table t : tables.values()) {
+                    bytes += t.size;
+                }
+            }
+            return bytes;
+        }
+
         public Table removeTable(String name) {
             synchronized (tables) {
                 return tables.remove(name);
@@ -173,6 +227,22 @@ public class SnapshotRegistry {
         return s;
     }
 
+    /**
+     * Restores are tracked in their own history so their progress shows up in SNAPSHOTSTATUS
+     */
+    public static synchronized Snapshot startRestore(long txnId, String path, String nonce) {
+        final Snapshot s = new Snapshot(txnId, System.currentTimeMillis(), path, nonce);
+
+        m_restores.add(s);
+        if (m_restores.size() > m_maxRestoreHistory) {
+            Iterator<Snapshot> iter = m_restores.iterator();
+            iter.next();
+            iter.remove();
+        }
+
+        return s;
+    }
+
     public static synchronized void discardSnapshot(Snapshot s) {
         m_snapshots.remove(s);
     }
@@ -180,16 +250,36 @@ public class SnapshotRegistry {
     public static synchronized Snapshot finishSnapshot(Snapshot incomplete) {
         boolean removed = m_snapshots.remove(incomplete);
         assert(removed);
-        final Snapshot completed = new Snapshot(incomplete, System.currentTimeMillis());
+        final Snapshot completed = new Snapshot(incomplete, System.currentTimeMillis(), false);
         m_snapshots.add(completed);
         return completed;
     }
 
+    /**
+     * Finish a restore record, failed if the restore as a whole did not succeed
+     * even though this host loaded its tables without error.
+     */
+    public static synchronized Snapshot finishRestore(Snapshot incomplete, boolean failed) {
+        assert(incomplete.isRestore);
+        if (!m_restores.remove(incomplete)) {
+            // Already aged out of the restore history
+            return incomplete;
+        }
+        final Snapshot completed = new Snapshot(incomplete, System.currentTimeMillis(), failed);
+        m_restores.add(completed);
+        return completed;
+    }
+
     public static synchronized TreeSet<Snapshot> getSnapshotHistory() {
         return new TreeSet<Snapshot>(m_snapshots);
     }
 
+    public static synchronized TreeSet<Snapshot> getRestoreHistory() {
+        return new TreeSet<Snapshot>(m_restores);
+    }
+
     public static synchronized void clear() {
         m_snapshots.clear();
+        m_restores.clear();
     }
 }
@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -502,6 +503,20 @@ public class SnapshotRestore extends VoltSystemProcedure
             long coordinatorHSId = (Long)paramsArray[0];
             Mailbox m = VoltDB.instance().getHostMessenger().createMailbox();
             m_mbox = m;
+
+            /*
+             * Only restores that get past the coordinator's sanity checks are
+             * recorded. This has to happen before the mailbox is reported so no
+             * load fragment can arrive ahead of the record.
+             */
+            if (context.isLowestSiteId()) {
+                if (m_restoreRecord != null) {
+                    // A previous restore never made it to the end of the async run loop
+                    SnapshotRegistry.finishRestore(m_restoreRecord, true);
+                }
+                m_restoreRecord =
+                        SnapshotRegistry.startRestore(m_runner.getTxnState().txnId, m_filePath, m_fileNonce);
+            }
             TRACE_LOG.trace(
                     "Entering async run loop at " + CoreUtils.hsIdToString(context.getSiteId()) +
                     " listening on mbox " + CoreUtils.hsIdToString(m.getHSId()));
@@ -560,6 +575,12 @@ public class SnapshotRestore extends VoltSystemProcedure
                     frm.addDependency(dp.depId, dp.dependency);
                     m.send(ftm.getCoordinatorHSId(), frm);
                 } else if (vm instanceof BinaryPayloadMessage) {
+                    if (context.isLowestSiteId() && m_restoreRecord != null) {
+                        // A non-empty termination payload means the restore failed somewhere
+                        final boolean failed = ((BinaryPayloadMessage)vm).m_payload.length > 0;
+                        SnapshotRegistry.finishRestore(m_restoreRecord, failed);
+                        m_restoreRecord = null;
+                    }
                     if (context.isLowestSiteId() && m_duplicateRowHandler != null) {
                         try {
                             m_duplicateRowHandler.close();
@@ -691,6 +712,10 @@ public class SnapshotRestore extends VoltSystemProcedure
                     if (c == null) {
                         continue;//Should be equivalent to break
                     }
+                    // Every site reads the file, count it once per host
+                    if (context.isLowestSiteId()) {
+                        recordRestoredBytes(table_name, c.b.remaining());
+                    }
 
                     if (needsConversion == null) {
                         VoltTable old_table =
@@ -1451,71 +1476,83 @@ public class SnapshotRestore extends VoltSystemProcedure
                 }
 
                 /*
-                 * Do the usual restore planning to generate the plan fragments for execution at each
-                 * site
-                 */
-                Set<Table> tables_to_restore =
-                        getTablesToRestore(savefileState.getSavedTableNames());
-                VoltTable[] restore_results = new VoltTable[1];
-                restore_results[0] = constructResultsTable();
-                ArrayList<SynthesizedPlanFragment[]> restorePlans =
-                        new ArrayList<SynthesizedPlanFragment[]>();
-
-                for (Table t : tables_to_restore) {
-                    TableSaveFileState table_state =
-                            savefileState.getTableState(t.getTypeName());
-                    SynthesizedPlanFragment[] restore_plan =
-                            table_state.generateRestorePlan( t, st);
-                    if (restore_plan == null) {
-                        SNAP_LOG.error(
-                                "Unable to generate restore plan for " + t.getTypeName() + " table not restored");
-                        throw new VoltAbortException(
-                                "Unable to generate restore plan for " + t.getTypeName() + " table not restored");
-                    }
-                    restorePlans.add(restore_plan);
-                }
-
-                /*
-                 * Now distribute the plan fragments for restoring each table.
+                 * From here on the sites are in their run loops, so they must be told to stop
+                 * even if planning or loading throws, or they would never leave them
                  */
-                Iterator<Table> tableIterator = tables_to_restore.iterator();
-                for (SynthesizedPlanFragment[] restore_plan : restorePlans)
-                {
-                    Table table = tableIterator.next();
-                    TRACE_LOG.trace("Performing restore for table: " + table.getTypeName());
-                    TRACE_LOG.trace("Plan has fragments: " + restore_plan.length);
-                    for (int ii = 0; ii < restore_plan.length - 1; ii++) {
-                        restore_plan[ii].siteId = actualToGenerated.get(restore_plan[ii].siteId);
+                boolean failed = true;
+                try {
+                    /*
+                     * Do the usual restore planning to generate the plan fragments for execution at each
+                     * site
+                     */
+                    Set<Table> tables_to_restore =
+                            getTablesToRestore(savefileState.getSavedTableNames());
+                    VoltTable[] restore_results = new VoltTable[1];
+                    restore_results[0] = constructResultsTable();
+                    ArrayList<SynthesizedPlanFragment[]> restorePlans =
+                            new ArrayList<SynthesizedPlanFragment[]>();
+
+                    for (Table t : tables_to_restore) {
+                        TableSaveFileState table_state =
+                                savefileState.getTableState(t.getTypeName());
+                        SynthesizedPlanFragment[] restore_plan =
+                                table_state.generateRestorePlan( t, st);
+                        if (restore_plan == null) {
+                            SNAP_LOG.error(
+                                    "Unable to generate restore plan for " + t.getTypeName() + " table not restored");
+                            throw new VoltAbortException(
+                                    "Unable to generate restore plan for " + t.getTypeName() + " table not restored");
+                        }
+                        restorePlans.add(restore_plan);
                     }
 
                     /*
-                     * This isn't ye olden executeSysProcPlanFragments. It uses the provided mailbox
-                     * and has it's own tiny run loop to process incoming fragments.
+                     * Now distribute the plan fragments for restoring each table.
                      */
-                    VoltTable[] results =
-                            executeSysProcPlanFragments(restore_plan, m);
-                    while (results[0].advanceRow())
+                    boolean tableFailed = false;
+                    Iterator<Table> tableIterator = tables_to_restore.iterator();
+                    for (SynthesizedPlanFragment[] restore_plan : restorePlans)
                     {
-                        // this will actually add the active row of results[0]
-                        restore_results[0].add(results[0]);
+                        Table table = tableIterator.next();
+                        TRACE_LOG.trace("Performing restore for table: " + table.getTypeName());
+                        TRACE_LOG.trace("Plan has fragments: " + restore_plan.length);
+                        for (int ii = 0; ii < restore_plan.length - 1; ii++) {
+                            restore_plan[ii].siteId = actualToGenerated.get(restore_plan[ii].siteId);
+                        }
 
-                        // if any table at any site fails... then the whole proc fails
-                        if (results[0].getString("RESULT").equalsIgnoreCase("FAILURE")) {
-                            noteOperationalFailure("Restore failed to complete. See response table for additional info.");
+                        /*
+                         * This isn't ye olden executeSysProcPlanFragments. It uses the provided mailbox
+                         * and has it's own tiny run loop to process incoming fragments.
+                         */
+                        VoltTable[] results =
+                                executeSysProcPlanFragments(restore_plan, m);
+                        while (results[0].advanceRow())
+                        {
+                            // this will actually add the active row of results[0]
+                            restore_results[0].add(results[0]);
+
+                            // if any table at any site fails... then the whole proc fails
+                            if (results[0].getString("RESULT").equalsIgnoreCase("FAILURE")) {
+                                noteOperationalFailure("Restore failed to complete. See response table for additional info.");
+                                tableFailed = true;
+                            }
                         }
                     }
-                }
+                    failed = tableFailed;
 
-                /*
-                 * Send a termination message. This will cause the async mailbox plan fragment to stop
-                 * executing allowing the coordinator thread to get back to work.
-                 */
-                for (long hsid : actualToGenerated.values()) {
-                    BinaryPayloadMessage bpm = new BinaryPayloadMessage(new byte[0], new byte[0]);
-                    m.send(hsid, bpm);
+                    return restore_results;
+                } finally {
+                    /*
+                     * Send a termination message. This will cause the async mailbox plan fragment to stop
+                     * executing allowing the coordinator thread to get back to work. The payload tells
+                     * each host whether to record the restore as failed.
+                     */
+                    for (long hsid : actualToGenerated.values()) {
+                        BinaryPayloadMessage bpm =
+                                new BinaryPayloadMessage(new byte[0], failed ? new byte[] { 1 } : new byte[0]);
+                        m.send(hsid, bpm);
+                    }
                 }
-
-                return restore_results;
             }
         });
 
@@ -1577,6 +1614,7 @@ public class SnapshotRestore extends VoltSystemProcedure
                 if (c == null) {
                     continue;   // Should be equivalent to break
                 }
+                recordRestoredBytes(tableName, c.b.remaining());
 
                 if (needsConversion == null) {
                     VoltTable old_table =
@@ -1713,47 +1751,21 @@ public class SnapshotRestore extends VoltSystemProcedure
         VoltTable[] results = new VoltTable[] { constructResultsTable() };
         results[0].addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, 0,
                 "SUCCESS", "NO DATA TO DISTRIBUTE");
-        final Table new_catalog_table = getCatalogTable(tableName);
-        Boolean needsConversion = null;
-        org.voltcore.utils.DBBPool.BBContainer c = null;
+
+        /*
+         * Converting, splitting and compressing the next chunk happens on a helper thread
+         * while the sites load the current one. The helper can't be a compression service
+         * thread because it blocks on chunks that are being decompressed there.
+         */
+        final ChunkPreparer preparer =
+                new ChunkPreparer(tableName, getCatalogTable(tableName), asReplicated, ctx.getNumberOfPartitions());
+        final ExecutorService preparerThread = CoreUtils.getSingleThreadExecutor("Restore " + tableName);
         try {
-            while (hasMoreChunks())
+            Future<PreparedChunk> nextChunk = preparerThread.submit(preparer);
+            PreparedChunk chunk;
+            while ((chunk = nextChunk.get()) != null)
             {
-                VoltTable table = null;
-
-                c = null;
-                c = getNextChunk();
-                if (c == null) {
-                    continue;//Should be equivalent to break
-                }
-
-                if (needsConversion == null) {
-                    VoltTable old_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b.duplicate(), true);
-                    needsConversion = SavedTableConverter.needsConversion(old_table, new_catalog_table);
-                }
-
-                final VoltTable old_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, true);
-                if (needsConversion) {
-                    table = SavedTableConverter.convertTable(old_table,
-                            new_catalog_table);
-                } else {
-                    table = old_table;
-                }
-
-                // use if will load as partitioned table
-                byte[][] partitioned_tables = null;
-                // use if will load as replicated table
-                byte compressedTable[] = null;
-
-                if (asReplicated) {
-                    compressedTable = table.getCompressedBytes();
-                } else {
-                    partitioned_tables = createPartitionedTables(tableName, table, ctx.getNumberOfPartitions());
-                }
-
-                if (c != null) {
-                    c.discard();
-                }
+                nextChunk = preparerThread.submit(preparer);
 
                 int[] dependencyIds = new int[sites_to_partitions.size()];
                 SynthesizedPlanFragment[] pfs = new SynthesizedPlanFragment[sites_to_partitions.size() + 1];
@@ -1772,7 +1784,7 @@ public class SnapshotRestore extends VoltSystemProcedure
                         loadFragment.parameters = ParameterSet.fromArrayNoCopy(
                                 tableName,
                                 dependencyIds[pfs_index],
-                                compressedTable,
+                                chunk.compressedTable,
                                 0,
                                 relevantPartitionIds);
                     } else {
@@ -1780,7 +1792,7 @@ public class SnapshotRestore extends VoltSystemProcedure
                         loadFragment.parameters = ParameterSet.fromArrayNoCopy(
                                 tableName,
                                 dependencyIds[pfs_index],
-                                partitioned_tables[partition_id],
+                                chunk.partitionedTables[partition_id],
                                 1,
                                 new int[] {partition_id});
                     }
@@ -1804,14 +1816,19 @@ public class SnapshotRestore extends VoltSystemProcedure
                 }
                 pfs[sites_to_partitions.size()] = aggregatorFragment;
                 results = executeSysProcPlanFragments(pfs, m_mbox);
+                recordRestoredBytes(tableName, chunk.bytes);
             }
         } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
             VoltTable result = PrivateVoltTableFactory.createUninitializedVoltTable();
             result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, relevantPartitionIds[0],
                     "FAILURE", "Unable to load table: " + tableName +
-                    " error: " + e.getMessage());
+                    " error: " + cause.getMessage());
             return result;
+        } finally {
+            // Stops a read ahead of a chunk that will never be loaded
+            preparerThread.shutdownNow();
         }
 
         return results[0];
@@ -1855,13 +1872,104 @@ public class SnapshotRestore extends VoltSystemProcedure
             partitioned_tables[partition].add(loadedTable);
         }
 
+        // compress the partitions in parallel, they are loaded independently
+        List<Future<byte[]>> compressed = new ArrayList<Future<byte[]>>(number_of_partitions);
+        for (final VoltTable partitioned_table : partitioned_tables) {
+            compressed.add(CompressionService.submitCompressionTask(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return partitioned_table.getCompressedBytes();
+                }
+            }));
+        }
         byte compressedTables[][] = new byte[number_of_partitions][];
         for (int ii = 0; ii < compressedTables.length; ii++) {
-            compressedTables[ii] = partitioned_tables[ii].getCompressedBytes();
+            compressedTables[ii] = compressed.get(ii).get();
         }
         return compressedTables;
     }
 
+    /**
+     * One chunk of a partitioned table, ready to be sent to the sites
+     */
+    private static class PreparedChunk {
+        // use if will load as partitioned table
+        final byte[][] partitionedTables;
+        // use if will load as replicated table
+        final byte[] compressedTable;
+        // size of the chunk as read from the save file
+        final long bytes;
+
+        PreparedChunk(byte[][] partitionedTables, byte[] compressedTable, long bytes) {
+            this.partitionedTables = partitionedTables;
+            this.compressedTable = compressedTable;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Pulls the next chunk out of this host's save files and turns it into
+     * the tables sent to the sites. Returns null when there are no more chunks.
+     * Only ever run on one thread at a time.
+     */
+    private class ChunkPreparer implements Callable<PreparedChunk> {
+        private final String m_tableName;
+        private final Table m_catalogTable;
+        private final boolean m_asReplicated;
+        private final int m_numberOfPartitions;
+        private Boolean m_needsConversion = null;
+
+        ChunkPreparer(String tableName, Table catalogTable, boolean asReplicated, int numberOfPartitions) {
+            m_tableName = tableName;
+            m_catalogTable = catalogTable;
+            m_asReplicated = asReplicated;
+            m_numberOfPartitions = numberOfPartitions;
+        }
+
+        @Override
+        public PreparedChunk call() throws Exception {
+            BBContainer c = null;
+            while (c == null && hasMoreChunks()) {
+                c = getNextChunk();
+            }
+            if (c == null) {
+                return null;
+            }
+
+            try {
+                final long bytes = c.b.remaining();
+                if (m_needsConversion == null) {
+                    VoltTable old_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b.duplicate(), true);
+                    m_needsConversion = SavedTableConverter.needsConversion(old_table, m_catalogTable);
+                }
+
+                VoltTable table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, true);
+                if (m_needsConversion) {
+                    table = SavedTableConverter.convertTable(table, m_catalogTable);
+                }
+
+                if (m_asReplicated) {
+                    return new PreparedChunk(null, table.getCompressedBytes(), bytes);
+                } else {
+                    return new PreparedChunk(
+                            createPartitionedTables(m_tableName, table, m_numberOfPartitions), null, bytes);
+                }
+            } finally {
+                c.discard();
+            }
+        }
+    }
+
+    /*
+     * Progress of the restore on this host is reported through SNAPSHOTSTATUS
+     */
+    private static void recordRestoredBytes(String tableName, long bytes) {
+        final SnapshotRegistry.Snapshot restoreRecord = m_restoreRecord;
+        if (restoreRecord != null) {
+            restoreRecord.addRestoredBytes(tableName, m_fileNonce + "-" + tableName + ".vpt", bytes);
+        }
+    }
+
     private Table getCatalogTable(String tableName)
     {
         return m_database.getTables().get(tableName);
@@ -1926,4 +2034,5 @@ public class SnapshotRestore extends VoltSystemProcedure
     private int m_hostId;
     private static volatile String m_filePath;
     private static volatile String m_fileNonce;
+    private static volatile SnapshotRegistry.Snapshot m_restoreRecord;
 }
@@ -24,9 +24,13 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.zip.Checksum;
 
@@ -42,6 +46,8 @@ import org.voltdb.EELibraryLoader;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.CompressionService;
 
+import com.google.common.util.concurrent.Futures;
+
 /**
  * An abstraction around a table's save file for restore.  Deserializes the
  * meta-data that was stored when the table was saved and makes it available
@@ -82,6 +88,9 @@ public class TableSaveFile
     private static final int DEFAULT_CHUNKSIZE =
             org.voltdb.SnapshotSiteProcessor.m_snapshotBufferLength + (1024 * 256);
 
+    private static final int MAX_COMPRESSED_CHUNKSIZE =
+            CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE);
+
     public TableSaveFile(
             FileChannel dataIn,
             int readAheadChunks,
@@ -384,8 +393,20 @@ public class TableSaveFile
             }
         }
         synchronized (this) {
-            while (!m_availableChunks.isEmpty()) {
-                m_availableChunks.poll().discard();
+            /*
+             * Wait out any chunks still being decompressed so their buffers
+             * make it back before the pools are freed
+             */
+            Future<Container> chunk;
+            while ((chunk = m_availableChunks.poll()) != null) {
+                try {
+                    Container c = chunk.get();
+                    if (c != null) {
+                        c.discard();
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {}
             }
             notifyAll();
         }
@@ -397,6 +418,9 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+        while ((cont = m_inputBuffers.poll()) != null) {
+            cont.discard();
+        }
     }
 
     public Set<Integer> getCorruptedPartitionIds() {
@@ -408,39 +432,69 @@ public class TableSaveFile
     }
 
     // Will get the next chunk of the table that is just over the chunk size
-    public synchronized BBContainer getNextChunk() throws IOException
+    public BBContainer getNextChunk() throws IOException
     {
-        if (m_chunkReaderException != null) {
-            throw m_chunkReaderException;
-        }
-        if (!m_hasMoreChunks) {
-            return m_availableChunks.poll();
-        }
+        while (true) {
+            Future<Container> chunk = null;
+            synchronized (this) {
+                if (m_chunkReaderException != null) {
+                    throw m_chunkReaderException;
+                }
 
-        if (m_chunkReader == null) {
-            m_chunkReader = new ChunkReader();
-            m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
-            m_chunkReaderThread.start();
-        }
+                if (m_chunkReader == null && m_hasMoreChunks) {
+                    m_chunkReader = new ChunkReader();
+                    m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
+                    m_chunkReaderThread.start();
+                }
 
-        Container c = null;
-        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
-            c = m_availableChunks.poll();
-            if (c == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    throw new IOException(e);
+                while (chunk == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
+                    chunk = m_availableChunks.poll();
+                    if (chunk == null) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    if (m_chunkReaderException != null) {
+                        throw m_chunkReaderException;
+                    }
+                }
+                if (chunk == null) {
+                    return null;
                 }
             }
-            if (m_chunkReaderException != null) {
-                throw m_chunkReaderException;
+
+            /*
+             * Chunks are decompressed out of order by the compression service, wait
+             * for this one outside the lock so the reader can keep queueing behind it.
+             * A null chunk was corrupt or for an irrelevant partition and is skipped.
+             */
+            Container c = awaitChunk(chunk);
+            m_chunkReads.release();
+            if (c != null) {
+                return c;
             }
         }
-        if (c != null) {
-            m_chunkReads.release();
+    }
+
+    private Container awaitChunk(Future<Container> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            final IOException failure = e.getCause() instanceof IOException ?
+                    (IOException)e.getCause() : new IOException(e.getCause());
+            synchronized (this) {
+                m_hasMoreChunks = false;
+                if (m_chunkReaderException == null) {
+                    m_chunkReaderException = failure;
+                }
+                notifyAll();
+            }
+            throw failure;
         }
-        return c;
     }
 
     public synchronized boolean hasMoreChunks() throws IOException
@@ -468,7 +522,15 @@ public class TableSaveFile
     private final long m_timestamp;
     private boolean m_hasMoreChunks = true;
     private ConcurrentLinkedQueue<Container> m_buffers = new ConcurrentLinkedQueue<Container>();
-    private final ArrayDeque<Container> m_availableChunks = new ArrayDeque<Container>();
+    /*
+     * Buffers holding compressed chunks between the reader thread and the compression service
+     */
+    private final ConcurrentLinkedQueue<BBContainer> m_inputBuffers = new ConcurrentLinkedQueue<BBContainer>();
+    /*
+     * Chunks in file order, possibly still being decompressed. A chunk that
+     * resolves to null was skipped.
+     */
+    private final ArrayDeque<Future<Container>> m_availableChunks = new ArrayDeque<Future<Container>>();
     private final HashSet<Integer> m_relevantPartitionIds;
     private final ChecksumType m_checksumType;
 
@@ -483,7 +545,7 @@ public class TableSaveFile
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
      */
-    private final HashSet<Integer> m_corruptedPartitions = new HashSet<Integer>();
+    private final Set<Integer> m_corruptedPartitions = Collections.synchronizedSet(new HashSet<Integer>());
 
     /**
      * Ignore corrupted chunks and continue validation of the rest of the chunks.
@@ -509,10 +571,6 @@ public class TableSaveFile
          * that should be easier to understand and validate.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            ByteBuffer fileInputBuffer =
-                    ByteBuffer.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-
             while (m_hasMoreChunks) {
 
                 /*
@@ -575,101 +633,41 @@ public class TableSaveFile
                         throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                     }
 
-                    if (nextChunkLength > fileInputBuffer.capacity()) {
+                    if (nextChunkLength > MAX_COMPRESSED_CHUNKSIZE) {
                         throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
                                 "> DEFAULT_CHUNKSIZE bytes");
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Go fetch the compressed data into a buffer owned by this chunk. Validating
+                     * and decompressing it is handed to the compression service so this thread
+                     * can go straight back to the file for the next chunk. The future goes
+                     * into the queue now so chunks are still handed out in file order.
                      */
-                    fileInputBuffer.clear();
-                    fileInputBuffer.limit(nextChunkLength);
-                    while (fileInputBuffer.hasRemaining()) {
-                        final int read = m_saveFile.read(fileInputBuffer);
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
-                    }
-                    fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
-
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
-                    }
-
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    Container c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
+                    final BBContainer compressed = getInputBuffer();
+                    boolean submitted = false;
                     try {
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        c.b.clear();
-                        c.b.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        c.b.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, c.b);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
+                        compressed.b.clear();
+                        compressed.b.limit(nextChunkLength);
+                        while (compressed.b.hasRemaining()) {
+                            final int read = m_saveFile.read(compressed.b);
+                            if (read == -1) {
+                                throw new EOFException();
                             }
                         }
-                    }
-
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            c.discard();
-                            m_chunkReads.release();
-                            continue;
+                        compressed.b.flip();
+
+                        final Future<Container> chunk = CompressionService.submitCompressionTask(
+                                new ChunkDecompressor(compressed, nextChunkPartitionId, nextChunkCRC));
+                        submitted = true;
+                        synchronized (TableSaveFile.this) {
+                            m_availableChunks.offer(chunk);
+                            TableSaveFile.this.notifyAll();
+                        }
+                    } finally {
+                        if (!submitted) {
+                            m_inputBuffers.offer(compressed);
                         }
-                    }
-
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b.position(0);
-
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        TableSaveFile.this.notifyAll();
                     }
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
@@ -929,7 +927,7 @@ public class TableSaveFile
                     }
 
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
+                        m_availableChunks.offer(Futures.immediateFuture(c));
                         TableSaveFile.this.notifyAll();
                     }
                 } catch (EOFException eof) {
@@ -968,6 +966,116 @@ public class TableSaveFile
                 }
             }
         }
+        private BBContainer getInputBuffer() {
+            BBContainer c = m_inputBuffers.poll();
+            if (c == null) {
+                c = DBBPool.allocateDirect(MAX_COMPRESSED_CHUNKSIZE);
+            }
+            return c;
+        }
+
+        /**
+         * Validates and decompresses one version 2 chunk on a compression service thread.
+         * Returns null if the chunk was skipped.
+         */
+        private class ChunkDecompressor implements Callable<Container> {
+            private final BBContainer m_compressed;
+            private final int m_partitionId;
+            private final int m_crc;
+
+            private ChunkDecompressor(BBContainer compressed, int partitionId, int crc) {
+                m_compressed = compressed;
+                m_partitionId = partitionId;
+                m_crc = crc;
+            }
+
+            @Override
+            public Container call() throws IOException {
+                try {
+                    final ByteBuffer fileInputBuffer = m_compressed.b;
+                    final int uncompressedLength = CompressionService.uncompressedLength(fileInputBuffer);
+
+                    /*
+                     * Validate the rest of the chunk. This can fail if the data is corrupted
+                     * or the length value was corrupted.
+                     */
+                    final int calculatedCRC =
+                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
+                    if (calculatedCRC != m_crc) {
+                        m_corruptedPartitions.add(m_partitionId);
+                        if (m_continueOnCorruptedChunk) {
+                            return null;
+                        } else {
+                            throw new IOException("CRC mismatch in saved table chunk");
+                        }
+                    }
+
+                    /*
+                     * Now allocate space to store the chunk using the VoltTable serialization representation.
+                     * The chunk will contain an integer row count preceding it so it can
+                     * be sucked straight in. There is a little funny business to overwrite the
+                     * partition id that is not part of the serialization format
+                     */
+                    Container c = getOutputBuffer(m_partitionId);
+
+                    /*
+                     * If the length value is wrong or not all data made it to disk this read will
+                     * not complete correctly. There could be overflow, underflow etc.
+                     * so use a try finally block to indicate that all partitions are now corrupt.
+                     * The future will carry the exception back to getNextChunk.
+                     */
+                    boolean completedRead = false;
+                    try {
+                        /*
+                         * Assemble a VoltTable out of the chunk of tuples.
+                         * Put in the header that was cached in the constructor,
+                         * then copy the tuple data. The header is shared, so read it
+                         * through a duplicate.
+                         */
+                        c.b.clear();
+                        c.b.limit(uncompressedLength + m_tableHeader.capacity());
+                        ByteBuffer header = m_tableHeader.duplicate();
+                        header.position(0);
+                        c.b.put(header);
+                        //Doesn't move buffer position, does change the limit
+                        CompressionService.decompressBuffer(fileInputBuffer, c.b);
+                        completedRead = true;
+                    } finally {
+                        if (!completedRead) {
+                            for (int partitionId : m_partitionIds) {
+                                m_corruptedPartitions.add(partitionId);
+                            }
+                        }
+                    }
+
+                    /*
+                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+                     * in case it is the length value that is corrupted
+                     */
+                    if (m_relevantPartitionIds != null) {
+                        if (!m_relevantPartitionIds.contains(m_partitionId)) {
+                            c.discard();
+                            return null;
+                        }
+                    }
+
+                    /*
+                     * VoltTable wants the buffer at the home position 0
+                     */
+                    c.b.position(0);
+                    return c;
+                } catch (BufferUnderflowException e) {
+                    throw new IOException(e);
+                } catch (BufferOverflowException e) {
+                    throw new IOException(e);
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IOException(e);
+                } finally {
+                    m_inputBuffers.offer(m_compressed);
+                }
+            }
+        }
+
         private Container getOutputBuffer(final int nextChunkPartitionId) {
             Container c = m_buffers.poll();
             if (c == null) {
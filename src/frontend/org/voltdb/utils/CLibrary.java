@@ -16,6 +16,9 @@
  */
 package org.voltdb.utils;
 
+import java.io.FileDescriptor;
+import java.lang.reflect.Field;
+
 import org.voltcore.logging.VoltLogger;
 import com.sun.jna.Native;
 
@@ -65,4 +68,76 @@ public class CLibrary {
     }
 
     public static native final int getpid();
+
+    /*
+     * Flags for sync_file_range(2)
+     */
+    public static final int SYNC_FILE_RANGE_WAIT_BEFORE = 1;
+    public static final int SYNC_FILE_RANGE_WRITE = 2;
+    public static final int SYNC_FILE_RANGE_WAIT_AFTER = 4;
+
+    public static final int POSIX_FADV_DONTNEED = 4;
+
+    /**
+     * Linux only calls for controlling write back of the page cache. These are registered
+     * separately so a platform without them doesn't lose the rest of CLibrary.
+     */
+    public static final class Linux {
+        public static final boolean m_available;
+        static {
+            boolean available = false;
+            if (System.getProperty("os.name").equals("Linux")) {
+                try {
+                    Native.register("c");
+                    available = true;
+                } catch (Throwable t) {
+                    hostLog.warn("Failed to load sync_file_range and posix_fadvise via JNA", t);
+                }
+            }
+            m_available = available;
+        }
+
+        public static native final int sync_file_range(int fd, long offset, long nbytes, int flags);
+        public static native final int posix_fadvise(int fd, long offset, long len, int advice);
+    }
+
+    /*
+     * Returns the native file descriptor number or -1 if it isn't accessible
+     */
+    public static int getfd(FileDescriptor fd) {
+        try {
+            Field f = FileDescriptor.class.getDeclaredField("fd");
+            f.setAccessible(true);
+            return f.getInt(fd);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Start write back of a range of a file without waiting for it.
+     * Returns false if it isn't supported on this platform.
+     */
+    public static boolean startWriteBack(int fd, long offset, long nbytes) {
+        if (fd < 0 || !Linux.m_available) {
+            return false;
+        }
+        return Linux.sync_file_range(fd, offset, nbytes, SYNC_FILE_RANGE_WRITE) == 0;
+    }
+
+    /**
+     * Wait for write back of a range of a file to finish and then drop it from
+     * the page cache so it doesn't have to be written back again later.
+     */
+    public static boolean finishWriteBackAndEvict(int fd, long offset, long nbytes) {
+        if (fd < 0 || !Linux.m_available) {
+            return false;
+        }
+        int retval = Linux.sync_file_range(fd, offset, nbytes,
+                SYNC_FILE_RANGE_WAIT_BEFORE | SYNC_FILE_RANGE_WRITE | SYNC_FILE_RANGE_WAIT_AFTER);
+        if (retval != 0) {
+            return false;
+        }
+        return Linux.posix_fadvise(fd, offset, nbytes, POSIX_FADV_DONTNEED) == 0;
+    }
 }
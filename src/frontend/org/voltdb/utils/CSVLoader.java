@@ -30,7 +30,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.supercsv.exception.SuperCsvException;
 import org.supercsv.io.CsvListReader;
@@ -39,7 +43,12 @@ import org.supercsv.prefs.CsvPreference;
 import org.supercsv_voltpatches.tokenizer.Tokenizer;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.CLIConfig;
+import org.voltdb.LegacyHashinator;
+import org.voltdb.ParameterConverter;
+import org.voltdb.TheHashinator;
+import org.voltdb.TheHashinator.HashinatorType;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientConfig;
@@ -65,7 +74,7 @@ public class CSVLoader {
     private static final AtomicLong totalRowCount = new AtomicLong(0);
     private static final int reportEveryNRows = 10000;
     private static final int waitSeconds = 10;
-    private static CSVConfig config = null;
+    static CSVConfig config = null;
     private static long latency = 0;
     private static long start = 0;
     private static boolean standin = false;
@@ -98,7 +107,7 @@ public class CSVLoader {
         blankValues.put(VoltType.DECIMAL, "0");
         blankValues.put(VoltType.VARBINARY, "");
     }
-    private static List <VoltType> typeList = new ArrayList<VoltType>();
+    static List <VoltType> typeList = new ArrayList<VoltType>();
 
     private static final class MyCallback implements ProcedureCallback {
         private final long m_lineNum;
@@ -121,14 +130,222 @@ public class CSVLoader {
             }
 
             long currentCount = inCount.incrementAndGet();
+            reportProgress(currentCount - 1, currentCount);
+        }
+    }
+
+    private static void reportProgress(long before, long after) {
+        if (after / reportEveryNRows > before / reportEveryNRows) {
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            m_log.info( "Inserted " + after + " rows (" + (after * 1000 / elapsed) + " rows/s)" );
+        }
+    }
+
+    /**
+     * Bulk mode. The reader thread keeps tokenizing the input while a pool of loader
+     * threads checks and converts the rows, hashes them to partitions, and ships each
+     * partition's rows as one table through @LoadSinglepartitionTable. Rows of a
+     * replicated table are batched through @LoadMultipartitionTable instead.
+     * If a loader thread fails, the reader finds out on its next add() or close()
+     * instead of waiting forever for room in the queue.
+     */
+    static final class BulkLoader {
+        private static final class Line {
+            final long lineNum;
+            final List<String> data;
+
+            Line(long lineNum, List<String> data) {
+                this.lineNum = lineNum;
+                this.data = data;
+            }
+        }
+        private static final Line END = new Line(-1, null);
+
+        /*
+         * Rows bound for one partition, with what is needed to report them if the load fails
+         */
+        private final class Batch {
+            final VoltTable table = new VoltTable(m_columns);
+            final List<Line> lines = new ArrayList<Line>(m_batchSize);
+            Object partitionValue = null;
+        }
+
+        private final class BatchCallback implements ProcedureCallback {
+            private final Batch m_batch;
+
+            BatchCallback(Batch batch) {
+                m_batch = batch;
+            }
+
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                if (response.getStatus() != ClientResponse.SUCCESS) {
+                    m_log.error( response.getStatusString() );
+                    for (Line line : m_batch.lines) {
+                        String[] info = { line.data.toString(), response.getStatusString() };
+                        synchronizeErrorInfo( line.lineNum, info );
+                    }
+                    return;
+                }
+
+                long rows = m_batch.lines.size();
+                long currentCount = inCount.addAndGet(rows);
+                reportProgress(currentCount - rows, currentCount);
+            }
+        }
+
+        private final Client m_client;
+        private final String m_tableName;
+        private final ColumnInfo[] m_columns;
+        private final int m_partitionIndex;
+        private final TheHashinator m_hashinator;
+        private final int m_batchSize;
+        private final BlockingQueue<Line> m_lines;
+        private final Thread[] m_loaders;
+        private final AtomicReference<Exception> m_failure = new AtomicReference<Exception>();
+
+        BulkLoader(Client client, String tableName, ColumnInfo[] columns, int partitionIndex,
+                TheHashinator hashinator, int batchSize, int threads) {
+            m_client = client;
+            m_tableName = tableName;
+            m_columns = columns;
+            m_partitionIndex = partitionIndex;
+            m_hashinator = hashinator;
+            m_batchSize = batchSize;
+            m_lines = new ArrayBlockingQueue<Line>(batchSize * threads * 2);
+            m_loaders = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                m_loaders[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            load();
+                        } catch (Exception e) {
+                            // Only the first failure is interesting, the rest are interrupts
+                            if (m_failure.compareAndSet(null, e)) {
+                                m_log.error("Bulk loader failed", e);
+                            }
+                        }
+                    }
+                }, "CSV bulk loader " + i);
+                m_loaders[i].start();
+            }
+        }
+
+        void add(long lineNum, List<String> data) throws Exception {
+            checkFailure();
+            enqueue(new Line(lineNum, data));
+        }
+
+        /*
+         * Wait for the loaders to send everything that has been added
+         */
+        void close() throws Exception {
+            for (int i = 0; i < m_loaders.length; i++) {
+                enqueue(END);
+            }
+            for (Thread loader : m_loaders) {
+                loader.join();
+            }
+            checkFailure();
+        }
+
+        /*
+         * A failed loader stops draining the queue, so never block on it indefinitely
+         */
+        private void enqueue(Line line) throws Exception {
+            while (!m_lines.offer(line, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        }
+
+        private void checkFailure() throws Exception {
+            Exception failure = m_failure.get();
+            if (failure != null) {
+                for (Thread loader : m_loaders) {
+                    loader.interrupt();
+                }
+                throw new Exception("Bulk loader failed: " + failure.getMessage(), failure);
+            }
+        }
+
+        private void load() throws Exception {
+            Map<Integer, Batch> batches = new HashMap<Integer, Batch>();
+            Line line;
+            while ((line = m_lines.take()) != END) {
+                String[] correctedLine = line.data.toArray(new String[0]);
+                String lineCheckResult;
+                if ((lineCheckResult = checkparams_trimspace(correctedLine, m_columns.length)) != null) {
+                    String[] info = { line.data.toString(), lineCheckResult };
+                    synchronizeErrorInfo( line.lineNum, info );
+                    continue;
+                }
+
+                Object[] row = new Object[correctedLine.length];
+                int partition = 0;
+                try {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = ParameterConverter.tryToMakeCompatible(
+                                typeList.get(i).classFromType(), correctedLine[i]);
+                    }
+                    if (m_partitionIndex != -1) {
+                        if (VoltType.isNullVoltType(row[m_partitionIndex])) {
+                            throw new Exception("Partition column value is null");
+                        }
+                        partition = m_hashinator.getHashedPartitionForParameter(row[m_partitionIndex]);
+                    }
+                } catch (Exception e) {
+                    String[] info = { line.data.toString(), "Error: " + e.getMessage() };
+                    synchronizeErrorInfo( line.lineNum, info );
+                    continue;
+                }
+
+                Batch batch = batches.get(partition);
+                if (batch == null) {
+                    batch = new Batch();
+                    batch.partitionValue = m_partitionIndex == -1 ? null : row[m_partitionIndex];
+                    batches.put(partition, batch);
+                }
+                try {
+                    batch.table.addRow(row);
+                } catch (RuntimeException e) {
+                    String[] info = { line.data.toString(), "Error: " + e.getMessage() };
+                    synchronizeErrorInfo( line.lineNum, info );
+                    continue;
+                }
+                batch.lines.add(line);
 
-            if (currentCount % reportEveryNRows == 0) {
-                m_log.info( "Inserted " + currentCount + " rows" );
+                if (batch.lines.size() >= m_batchSize) {
+                    send(batch);
+                    batches.remove(partition);
+                }
+            }
+
+            for (Batch batch : batches.values()) {
+                send(batch);
             }
         }
+
+        private void send(Batch batch) throws Exception {
+            boolean queued = false;
+            while (queued == false) {
+                if (m_partitionIndex == -1) {
+                    queued = m_client.callProcedure(new BatchCallback(batch),
+                            "@LoadMultipartitionTable", m_tableName, batch.table);
+                } else {
+                    queued = m_client.callProcedure(new BatchCallback(batch),
+                            "@LoadSinglepartitionTable",
+                            TheHashinator.valueToBytes(batch.partitionValue), m_tableName, batch.table);
+                }
+                if (queued == false) {
+                    Thread.sleep(waitSeconds);
+                }
+            }
+            outCount.addAndGet(batch.lines.size());
+        }
     }
 
-    private static class CSVConfig extends CLIConfig {
+    static class CSVConfig extends CLIConfig {
         @Option(shortOpt = "f", desc = "location of CSV input file")
         String file = "";
 
@@ -168,6 +385,15 @@ public class CSVLoader {
         @Option(desc = "max size of a quoted column in bytes(default: 16777216 = 16MB)")
         long columnsizelimit = DEFAULT_COLUMN_LIMIT_SIZE;
 
+        @Option(desc = "load a table in per-partition batches instead of calling its insert procedure per row", hasArg = false)
+        boolean bulk = false;
+
+        @Option(desc = "number of rows per batch in bulk mode (default: 200)")
+        int batch = 200;
+
+        @Option(desc = "number of threads converting and batching rows in bulk mode (default: number of processors)")
+        int threads = Runtime.getRuntime().availableProcessors();
+
         @Option(shortOpt = "s", desc = "list of servers to connect to (default: localhost)")
         String servers = "localhost";
 
@@ -198,6 +424,12 @@ public class CSVLoader {
                         + Integer.MAX_VALUE);
             if (port < 0)
                 exitWithMessageAndUsage("port number must be >= 0");
+            if (bulk && table.equals(""))
+                exitWithMessageAndUsage("bulk mode requires a table name");
+            if (batch < 1)
+                exitWithMessageAndUsage("batch must be >= 1");
+            if (threads < 1)
+                exitWithMessageAndUsage("threads must be >= 1");
             if ((blank.equalsIgnoreCase("error") ||
                     blank.equalsIgnoreCase("null") ||
                     blank.equalsIgnoreCase("empty")) == false)
@@ -325,6 +557,17 @@ public class CSVLoader {
                 System.exit(-1);
             }
 
+            BulkLoader bulkLoader = null;
+            if (config.bulk) {
+                try {
+                    bulkLoader = createBulkLoader(csvClient, columnCnt);
+                } catch (Exception e) {
+                    m_log.fatal(e.getMessage(), e);
+                    close_cleanup();
+                    System.exit(-1);
+                }
+            }
+
             List<String> lineList = new ArrayList<String>();
 
             while ((config.limitrows-- > 0)) {
@@ -342,6 +585,14 @@ public class CSVLoader {
                         break;
                     }
                     totalRowCount.getAndIncrement();
+                    if (bulkLoader != null) {
+                        try {
+                            bulkLoader.add(totalLineCount.get()+1, lineList);
+                        } catch (Exception e) {
+                            bulkLoadFailed(e);
+                        }
+                        continue;
+                    }
                     boolean queued = false;
                     while (queued == false) {
                         String[] correctedLine = lineList.toArray(new String[0]);
@@ -377,6 +628,13 @@ public class CSVLoader {
                     synchronizeErrorInfo( totalLineCount.get()+1, info );
                 }
             }
+            if (bulkLoader != null) {
+                try {
+                    bulkLoader.close();
+                } catch (Exception e) {
+                    bulkLoadFailed(e);
+                }
+            }
             csvClient.drain();
         } catch (Exception e) {
             e.printStackTrace();
@@ -398,6 +656,64 @@ public class CSVLoader {
         csvClient.close();
     }
 
+    /*
+     * Find the layout and partitioning of the target table and the hash function the
+     * cluster is using, so rows can be bucketed by partition before they are sent
+     */
+    private static BulkLoader createBulkLoader(Client csvClient, int columnCnt) throws Exception {
+        String tableName = config.table.toUpperCase();
+        ColumnInfo[] columns = new ColumnInfo[columnCnt];
+        int partitionIndex = -1;
+        VoltTable columnInfo = csvClient.callProcedure("@SystemCatalog", "COLUMNS").getResults()[0];
+        while (columnInfo.advanceRow()) {
+            if (!tableName.equalsIgnoreCase(columnInfo.getString("TABLE_NAME"))) {
+                continue;
+            }
+            int index = (int)columnInfo.getLong("ORDINAL_POSITION") - 1;
+            if (index < 0 || index >= columnCnt) {
+                throw new Exception("Table " + tableName + " doesn't match its insert procedure");
+            }
+            columns[index] = new ColumnInfo(columnInfo.getString("COLUMN_NAME"), typeList.get(index));
+            if ("PARTITION_COLUMN".equals(columnInfo.getString("REMARKS"))) {
+                partitionIndex = index;
+            }
+        }
+        for (ColumnInfo column : columns) {
+            if (column == null) {
+                throw new Exception("Unable to find the columns of table " + tableName);
+            }
+        }
+
+        TheHashinator hashinator = null;
+        if (partitionIndex != -1) {
+            VoltTable topo[] = csvClient.callProcedure("@Statistics", "TOPO", 0).getResults();
+            if (topo.length == 1) {
+                // The MPI shows up as a partition
+                hashinator = TheHashinator.constructHashinator(LegacyHashinator.class,
+                        LegacyHashinator.getConfigureBytes(topo[0].getRowCount() - 1));
+            } else {
+                if (!topo[1].advanceRow()) {
+                    throw new Exception("Unable to retrieve the hash function from the cluster");
+                }
+                hashinator = TheHashinator.constructHashinator(
+                        HashinatorType.valueOf(topo[1].getString("HASHTYPE")).hashinatorClass,
+                        topo[1].getVarbinary("HASHCONFIG"));
+            }
+        }
+
+        m_log.info("Loading " + tableName + " in batches of " + config.batch + " rows with " +
+                config.threads + " threads");
+        return new BulkLoader(csvClient, tableName, columns, partitionIndex, hashinator,
+                config.batch, config.threads);
+    }
+
+    private static void bulkLoadFailed(Exception e) throws IOException, InterruptedException {
+        m_log.fatal(e.getMessage(), e);
+        produceFiles();
+        close_cleanup();
+        System.exit(-1);
+    }
+
     private static void synchronizeErrorInfo( long errLineNum, String[] info ) throws IOException, InterruptedException {
         synchronized (errorInfo) {
             if (!errorInfo.containsKey(errLineNum)) {
@@ -17,15 +17,21 @@
 
 package org.voltdb.utils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.SyncFailedException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 import org.voltdb.PrivateVoltTableFactory;
 import org.voltdb.VoltTable;
@@ -34,109 +40,137 @@ import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.Pair;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Converts a table save file to CSV. Chunks are decompressed by the save file and
+ * formatted by a pool of converter threads shared by every file being converted,
+ * while read() hands back the formatted chunks in the order they appear in the file.
+ */
 public class CSVTableSaveFile {
-    private final AtomicInteger m_availableBytes = new AtomicInteger(0);
-    private final int m_maxAvailableBytes = 16777216;
-    private final LinkedBlockingQueue<byte[]> m_available = new LinkedBlockingQueue<byte[]>();
-    private final Thread m_converterThreads[] = new Thread[CoreUtils.availableProcessors()];
+    private static final ListeningExecutorService m_es =
+            CoreUtils.getListeningExecutorService("CSV Converter", CoreUtils.availableProcessors());
+    private static final Future<byte[]> END_OF_FILE = Futures.immediateFuture(new byte[0]);
+
+    /*
+     * Bounds the number of chunks being formatted or waiting to be read
+     */
+    private final BlockingQueue<Future<byte[]>> m_available =
+            new ArrayBlockingQueue<Future<byte[]>>(CoreUtils.availableProcessors() * 2);
+    private final Thread m_chunkFeeder;
     private final AtomicReference<IOException> m_exception = new AtomicReference<IOException>(
             null);
-    private final AtomicInteger m_activeConverters = new AtomicInteger(CoreUtils.availableProcessors());
     private final TableSaveFile m_saveFile;
     private final char m_delimiter;
+    private volatile int m_lastNumCharacters = 1024 * 64;
+    private boolean m_done = false;
 
     public CSVTableSaveFile(File saveFile, char delimiter, Integer partitions[])
             throws IOException {
         m_delimiter = delimiter;
         final FileInputStream fis = new FileInputStream(saveFile);
         m_saveFile = new TableSaveFile(fis.getChannel(), 10, partitions);
-        for (int ii = 0; ii < m_converterThreads.length; ii++) {
-            m_converterThreads[ii] = new Thread(new ConverterThread());
-            m_converterThreads[ii].start();
-        }
+        m_chunkFeeder = new Thread(new ChunkFeeder(), "CSV chunk feeder " + saveFile.getName());
+        m_chunkFeeder.start();
     }
 
     /**
-     * Returns a more CSV data in UTF-8 format. Returns null when there is no
+     * Returns a more CSV data in UTF-8 format. Returns an empty array when there is no
      * more data. May block.
      *
-     * @return null if there is no more data or a byte array contain some number
+     * @return an empty array if there is no more data or a byte array contain some number
      *         of complete CSV lines
      *
      * @throws IOException
      */
     public byte[] read() throws IOException {
-        if (m_exception.get() != null) {
-            throw m_exception.get();
+        if (m_done) {
+            return new byte[0];
         }
 
-        byte bytes[] = null;
-        if (m_activeConverters.get() == 0) {
-            bytes = m_available.poll();
-        } else {
-            try {
-                bytes = m_available.take();
-            } catch (InterruptedException e) {
-                throw new IOException(e);
+        try {
+            final byte bytes[] = m_available.take().get();
+            if (bytes.length == 0) {
+                m_done = true;
+                if (m_exception.get() != null) {
+                    throw m_exception.get();
+                }
             }
+            return bytes;
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            m_done = true;
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
         }
-        if (bytes != null) {
-            m_availableBytes.addAndGet(-1 * bytes.length);
-        }
-        return bytes;
     }
 
     public void close() throws IOException, InterruptedException {
-        m_saveFile.close();
-        for (final Thread t : m_converterThreads) {
-            t.interrupt();
-            t.join();
+        m_done = true;
+        m_chunkFeeder.interrupt();
+        m_chunkFeeder.join();
+        Future<byte[]> pending;
+        while ((pending = m_available.poll()) != null) {
+            try {
+                pending.get();
+            } catch (ExecutionException ignore) {}
         }
+        m_saveFile.close();
     }
 
-    private class ConverterThread implements Runnable {
-        private void convertChunks() throws IOException, InterruptedException {
-            int lastNumCharacters = 1024 * 64;
-            while (!Thread.interrupted() && m_saveFile.hasMoreChunks()) {
-                if (m_availableBytes.get() > m_maxAvailableBytes) {
-                    Thread.sleep(5);
-                    continue;
+    /*
+     * Pulls chunks off the save file in order and queues their conversion so that
+     * read() sees them in file order no matter which converter finishes first
+     */
+    private class ChunkFeeder implements Runnable {
+        @Override
+        public void run() {
+            try {
+                BBContainer c;
+                while (!Thread.currentThread().isInterrupted() && (c = m_saveFile.getNextChunk()) != null) {
+                    try {
+                        m_available.put(m_es.submit(new ChunkConverter(c)));
+                    } catch (InterruptedException e) {
+                        c.discard();
+                        return;
+                    }
                 }
+            } catch (IOException e) {
+                m_exception.compareAndSet(null, e);
+            }
+            /*
+             * read() waits for the marker, so wait for room rather than dropping it when
+             * the queue is full. Only close() interrupts, and it doesn't need the marker.
+             */
+            try {
+                m_available.put(END_OF_FILE);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
 
-                BBContainer c = m_saveFile.getNextChunk();
-                if (c == null) {
-                    return;
-                }
+    private class ChunkConverter implements Callable<byte[]> {
+        private final BBContainer m_chunk;
 
-                try {
-                    final VoltTable vt = PrivateVoltTableFactory
-                            .createVoltTableFromBuffer(c.b, true);
-                    Pair<Integer, byte[]> p = VoltTableUtil.toCSV( vt, m_delimiter, null, lastNumCharacters);
-                    lastNumCharacters = p.getFirst();
-                    byte csvBytes[] = p.getSecond();
-                    m_availableBytes.addAndGet(csvBytes.length);
-                    m_available.offer(csvBytes);
-                } finally {
-                    c.discard();
-                }
-            }
+        private ChunkConverter(BBContainer chunk) {
+            m_chunk = chunk;
         }
 
         @Override
-        public void run() {
+        public byte[] call() throws Exception {
             try {
-                try {
-                    convertChunks();
-                } catch (IOException e) {
-                    m_exception.compareAndSet(null, e);
-                } catch (InterruptedException e) {
-                    return;
-                }
+                final VoltTable vt = PrivateVoltTableFactory
+                        .createVoltTableFromBuffer(m_chunk.b, true);
+                Pair<Integer, byte[]> p = VoltTableUtil.toCSV( vt, m_delimiter, null, m_lastNumCharacters);
+                m_lastNumCharacters = p.getFirst();
+                return p.getSecond();
             } finally {
-                int activeConverters = m_activeConverters.decrementAndGet();
-                if (activeConverters == 0) {
-                    m_available.offer(new byte[0]);
-                }
+                m_chunk.discard();
             }
         }
     }
@@ -144,7 +178,7 @@ public class CSVTableSaveFile {
     public static void main(String args[]) throws Exception {
         if (args.length != 2) {
             System.err
-                    .println("Usage: [--partitions 1,3,4] outfile.[csv | tsv] infile.vpt");
+                    .println("Usage: [--partitions 1,3,4] outfile.[csv | tsv][.gz] infile.vpt");
             System.exit(-1);
         }
 
@@ -163,9 +197,11 @@ public class CSVTableSaveFile {
             }
         }
 
-        if (args[0].endsWith(".tsv")) {
+        final boolean compress = args[0].endsWith(".gz");
+        final String format = compress ? args[0].substring(0, args[0].length() - 3) : args[0];
+        if (format.endsWith(".tsv")) {
             delimiter = '\t';
-        } else if (args[0].endsWith(".csv")) {
+        } else if (format.endsWith(".csv")) {
             delimiter = ',';
         } else {
             System.err
@@ -193,15 +229,29 @@ public class CSVTableSaveFile {
             System.exit(-1);
         }
 
-        convertTableSaveFile(delimiter, partitions, outfile, infile);
+        convertTableSaveFile(delimiter, partitions, outfile, infile, compress);
     }
 
     public static void convertTableSaveFile(char delimiter,
             Integer[] partitions, final File outfile, final File infile)
             throws FileNotFoundException, IOException, InterruptedException,
             SyncFailedException {
+        convertTableSaveFile(delimiter, partitions, outfile, infile, false);
+    }
+
+    /**
+     * Append the CSV form of a save file to outfile. If compress is set the data is
+     * appended as a gzip member, so several save files can be converted into the
+     * same compressed output.
+     */
+    public static void convertTableSaveFile(char delimiter,
+            Integer[] partitions, final File outfile, final File infile, boolean compress)
+            throws FileNotFoundException, IOException, InterruptedException,
+            SyncFailedException {
         final FileOutputStream fos = new FileOutputStream(outfile, true);
         try {
+            final OutputStream os = compress ?
+                    new GZIPOutputStream(fos, 1024 * 64) : new BufferedOutputStream(fos, 1024 * 64);
             final CSVTableSaveFile converter = new CSVTableSaveFile(infile,
                     delimiter, partitions);
             try {
@@ -210,12 +260,16 @@ public class CSVTableSaveFile {
                     if (bytes.length == 0) {
                         break;
                     }
-                    fos.write(bytes);
+                    os.write(bytes);
                 }
             } finally {
                 try {
                     converter.close();
                 } finally {
+                    if (os instanceof GZIPOutputStream) {
+                        ((GZIPOutputStream)os).finish();
+                    }
+                    os.flush();
                     fos.getFD().sync();
                 }
             }
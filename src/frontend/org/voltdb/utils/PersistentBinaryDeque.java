@@ -24,6 +24,7 @@ import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
 import java.util.Arrays;
@@ -31,8 +32,16 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop_voltpatches.hbase.utils.DirectMemoryUtils;
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool.BBContainer;
 
 import com.google.common.base.Joiner;
@@ -46,6 +55,16 @@ import com.google.common.base.Joiner;
  * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
  * Push is implemented by creating new segments at the head of the queue containing the objects to be pushed.
  *
+ * Segments are only polled once they are finished and will never be written again, so poll maps the segment
+ * read only and returns slices of the mapping instead of copying each object. The mapping is released when
+ * the segment is deleted after every polled object has been discarded.
+ *
+ * A deque can optionally write in the background. Offer then only queues the objects without taking
+ * the deque's lock and a dedicated writer thread appends them to the write segment. The writer thread
+ * also creates the next write segment ahead of time so that rolling over to a new segment doesn't
+ * create a file, and can fdatasync modified segments on an interval so that an explicit sync has
+ * little left to do. Every other operation first appends the queued objects itself, so the deque
+ * behaves exactly as if offer had written them.
  */
 public class PersistentBinaryDeque implements BinaryDeque {
 
@@ -59,6 +78,18 @@ public class PersistentBinaryDeque implements BinaryDeque {
     private java.util.concurrent.atomic.AtomicLong m_sizeInBytes =
         new java.util.concurrent.atomic.AtomicLong(0);
 
+    /*
+     * Background write state, m_writer is null if offer writes on the caller's thread
+     */
+    private final ScheduledThreadPoolExecutor m_writer;
+    private final ConcurrentLinkedQueue<BBContainer[]> m_pendingWrites = new ConcurrentLinkedQueue<BBContainer[]>();
+    private final AtomicLong m_pendingBytes = new AtomicLong(0);
+    private final AtomicBoolean m_drainScheduled = new AtomicBoolean(false);
+    //First background write failure since the last sync, reported by sync
+    private IOException m_writeError = null;
+    //Empty segment created ahead of time to become the next write segment
+    private DequeSegment m_preallocatedSegment = null;
+
     /**
      * Objects placed in the deque are stored in file segments that are up to 64 megabytes.
      * Segments only support appending objects. A segment will throw an IOException if an attempt
@@ -74,9 +105,18 @@ public class PersistentBinaryDeque implements BinaryDeque {
         private FileChannel m_fc;
 
         //Index of the next object to read, not an offset into the file
-        //The offset is maintained by the ByteBuffer. Used to determine if there is another object
+        //Used to determine if there is another object
         private int m_objectReadIndex = 0;
 
+        //Read only mapping of the finished segment, polled objects are slices of it
+        private MappedByteBuffer m_readBuffer = null;
+        //Offset of the next object's length prefix in the mapping
+        private int m_readOffset = 4;
+        //Entries in the segment when it was mapped
+        private int m_mappedEntries = 0;
+        //Polled objects that haven't been discarded, the mapping can't be released while they exist
+        private int m_outstandingReads = 0;
+
         //ID of this segment
         private final Long m_index;
         private static final int m_chunkSize = (1024 * 1024) * 64;
@@ -176,6 +216,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
 
         private void close() throws IOException {
+            releaseReadBuffer();
             if (m_fc != null) {
                 m_fc.close();
                 m_ras = null;
@@ -183,54 +224,77 @@ public class PersistentBinaryDeque implements BinaryDeque {
             }
         }
 
-        private void sync() throws IOException {
+        /*
+         * Unmap the segment right away if no polled object refers to it. Otherwise just drop
+         * the reference, the mapping is released when the outstanding slices are collected.
+         */
+        private void releaseReadBuffer() {
+            if (m_readBuffer == null) {
+                return;
+            }
+            MappedByteBuffer readBuffer = m_readBuffer;
+            m_readBuffer = null;
+            if (m_outstandingReads == 0) {
+                try {
+                    DirectMemoryUtils.destroyDirectByteBuffer(readBuffer);
+                } catch (Exception e) {
+                    exportLog.warn("Unable to unmap " + m_file + ", it will be unmapped when collected", e);
+                }
+            }
+        }
+
+        private void mapForRead() throws IOException {
+            if (m_fc == null) {
+                open();
+            }
+            final long size = m_fc.size();
+            if (size < 4) {
+                throw new EOFException();
+            }
+            m_readBuffer = m_fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            m_mappedEntries = m_readBuffer.getInt(0);
+        }
+
+        private void sync(boolean metaData) throws IOException {
             if (!m_syncedSinceLastEdit) {
-                m_fc.force(true);
+                m_fc.force(metaData);
             }
             m_syncedSinceLastEdit = true;
         }
 
         private BBContainer poll() throws IOException {
-            if (m_fc == null) {
-                open();
+            if (m_readBuffer == null) {
+                mapForRead();
             }
 
             //No more entries to read
-            if (m_objectReadIndex >= getNumEntries()) {
+            if (m_objectReadIndex >= m_mappedEntries) {
                 return null;
             }
 
+            //Get the length prefix and then slice out the object
+            final int length = m_readBuffer.getInt(m_readOffset);
+            if (length < 1) {
+                throw new IOException("Read an invalid length");
+            }
+            final int start = m_readOffset + 4;
+            if (start + length > m_readBuffer.capacity()) {
+                throw new EOFException();
+            }
+            ByteBuffer view = m_readBuffer.duplicate();
+            view.limit(start + length).position(start);
+            final ByteBuffer resultBuffer = view.slice();
+            m_readOffset = start + length;
+
             m_objectReadIndex++;
 
             //If this is the last object to read from this segment
             //increment the poll segment index so that the next poll
             //selects the correct segment
-            if (m_objectReadIndex >= getNumEntries()) {
+            if (m_objectReadIndex >= m_mappedEntries) {
                 m_currentPollSegmentIndex++;
             }
-
-            //Get the length prefix and then read the object
-            m_bufferForNumEntries.clear();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                int read = m_fc.read(m_bufferForNumEntries);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
-            m_bufferForNumEntries.flip();
-            int length = m_bufferForNumEntries.getInt();
-            if (length < 1) {
-                throw new IOException("Read an invalid length");
-            }
-
-            ByteBuffer resultBuffer = ByteBuffer.allocate(length);
-            while (resultBuffer.hasRemaining()) {
-                int read = m_fc.read(resultBuffer);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
-            resultBuffer.flip();
+            m_outstandingReads++;
 
             return new BBContainer( resultBuffer, 0L) {
                 private boolean discarded = false;
@@ -240,13 +304,17 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 public void discard() {
                     if (!discarded) {
                         discarded = true;
-                        m_discardsUntilDeletion--;
-                        if (m_discardsUntilDeletion == 0) {
-                            m_finishedSegments.remove(m_index);
-                            try {
-                                closeAndDelete();
-                            } catch (IOException e) {
-                                exportLog.error("Error closing and deleting binary deque segment", e);
+                        //The background writer may be syncing the finished segments
+                        synchronized (PersistentBinaryDeque.this) {
+                            m_outstandingReads--;
+                            m_discardsUntilDeletion--;
+                            if (m_discardsUntilDeletion == 0) {
+                                m_finishedSegments.remove(m_index);
+                                try {
+                                    closeAndDelete();
+                                } catch (IOException e) {
+                                    exportLog.error("Error closing and deleting binary deque segment", e);
+                                }
                             }
                         }
                     } else {
@@ -274,31 +342,32 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 length += obj.b.remaining();
             }
 
-            if (remaining() < length) {
-                throw new IOException(m_file + " has insufficient space");
-            }
+            //Whatever fails, every container that hasn't been written is discarded
+            int objectIndex = 0;
+            boolean success = false;
+            try {
+                if (remaining() < length) {
+                    throw new IOException(m_file + " has insufficient space");
+                }
 
-            m_bufferForNumEntries.clear();
-            m_bufferForNumEntries.putInt(length).flip();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                m_fc.write(m_bufferForNumEntries);
-            }
+                m_bufferForNumEntries.clear();
+                m_bufferForNumEntries.putInt(length).flip();
+                while (m_bufferForNumEntries.hasRemaining()) {
+                    m_fc.write(m_bufferForNumEntries);
+                }
 
-            int objectIndex = 0;
-            for (BBContainer obj : objects ) {
-                boolean success = false;
-                try {
+                for (BBContainer obj : objects ) {
                     while (obj.b.hasRemaining()) {
                         m_fc.write(obj.b);
                     }
                     obj.discard();
-                    success = true;
                     objectIndex++;
-                } finally {
-                    if (!success) {
-                        for (int ii = objectIndex; ii < objects.length; ii++) {
-                            objects[ii].discard();
-                        }
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    for (int ii = objectIndex; ii < objects.length; ii++) {
+                        objects[ii].discard();
                     }
                 }
             }
@@ -333,6 +402,21 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * @throws IOException
      */
     public PersistentBinaryDeque(final String nonce, final File path) throws IOException {
+        this(nonce, path, false, 0);
+    }
+
+    /**
+     * Create a persistent binary deque that optionally writes in the background.
+     * @param nonce
+     * @param path
+     * @param backgroundWrites Queue offered objects for a dedicated writer thread that also
+     *                         preallocates the next write segment
+     * @param syncIntervalMillis With background writes, fdatasync modified segments this often.
+     *                           0 leaves syncing to sync()
+     * @throws IOException
+     */
+    public PersistentBinaryDeque(final String nonce, final File path,
+            boolean backgroundWrites, long syncIntervalMillis) throws IOException {
         m_path = path;
         m_nonce = nonce;
 
@@ -367,8 +451,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 }
 
                 if (nonce.equals(parsedNonce) && "pbd".equals(extension)) {
-                    if (pathname.length() == 4) {
-                        //Doesn't have any objects, just the object count
+                    if (pathname.length() <= 4) {
+                        //Doesn't have any objects, just the object count (or not even that
+                        //if it was being preallocated when the process stopped)
                         pathname.delete();
                         return false;
                     }
@@ -408,13 +493,62 @@ public class PersistentBinaryDeque implements BinaryDeque {
                     new VoltFile(m_path, m_nonce + "." + writeSegmentIndex + ".pbd"));
         m_writeSegment.open();
         m_writeSegment.initNumEntries();
+
+        if (backgroundWrites) {
+            m_writer = CoreUtils.getScheduledThreadPoolExecutor(
+                    "PBD writer " + nonce, 1, CoreUtils.SMALL_STACK_SIZE);
+            m_writer.execute(m_preallocateTask);
+            if (syncIntervalMillis > 0) {
+                m_writer.scheduleWithFixedDelay(m_syncTask,
+                        syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            m_writer = null;
+        }
     }
 
-    @Override
-    public synchronized void offer(BBContainer[] objects) throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
+    private final Runnable m_drainTask = new Runnable() {
+        @Override
+        public void run() {
+            m_drainScheduled.set(false);
+            synchronized (PersistentBinaryDeque.this) {
+                drainPendingWrites();
+            }
         }
+    };
+
+    private final Runnable m_preallocateTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (PersistentBinaryDeque.this) {
+                try {
+                    preallocateNextSegment();
+                } catch (IOException e) {
+                    exportLog.warn("Unable to preallocate the next segment of PBD " + m_nonce +
+                            ", it will be created when needed", e);
+                }
+            }
+        }
+    };
+
+    private final Runnable m_syncTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (PersistentBinaryDeque.this) {
+                if (m_writeSegment == null) {
+                    return;
+                }
+                drainPendingWrites();
+                try {
+                    syncSegments(false);
+                } catch (IOException e) {
+                    exportLog.error("Error syncing PBD " + m_nonce, e);
+                }
+            }
+        }
+    };
+
+    private static int objectSize(BBContainer[] objects) throws IOException {
         int needed = 0;
         for (BBContainer b : objects) {
             needed +=  b.b.remaining();
@@ -423,12 +557,125 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (needed > DequeSegment.m_chunkSize - 4) {
             throw new IOException("Maxiumum object size is " + (DequeSegment.m_chunkSize - 4));
         }
+        return needed;
+    }
 
-        if (m_writeSegment.remaining() < needed) {
-            openNewWriteSegment();
+    @Override
+    public void offer(BBContainer[] objects) throws IOException {
+        if (m_writer == null) {
+            synchronized (this) {
+                if (m_writeSegment == null) {
+                    throw new IOException("Closed");
+                }
+                final int needed = objectSize(objects);
+                if (m_writeSegment.remaining() < needed) {
+                    openNewWriteSegment();
+                }
+                m_writeSegment.offer(objects);
+            }
+            return;
+        }
+
+        if (m_closed) {
+            throw new IOException("Closed");
+        }
+        m_pendingBytes.addAndGet(4 + objectSize(objects));
+        m_pendingWrites.offer(objects);
+        if (m_drainScheduled.compareAndSet(false, true)) {
+            try {
+                m_writer.execute(m_drainTask);
+            } catch (RejectedExecutionException e) {
+                //Closed concurrently, the objects are discarded
+                synchronized (this) {
+                    drainPendingWrites();
+                }
+                throw new IOException("Closed");
+            }
         }
+    }
 
-        m_writeSegment.offer(objects);
+    /*
+     * Append the objects queued by offer to the write segment, must hold the deque's lock.
+     * Failures are logged and reported by the next sync since the offer already returned,
+     * the failed objects are discarded.
+     */
+    private void drainPendingWrites() {
+        BBContainer objects[];
+        while ((objects = m_pendingWrites.poll()) != null) {
+            int length = 4;
+            for (BBContainer b : objects) {
+                length += b.b.remaining();
+            }
+            try {
+                if (m_writeSegment == null) {
+                    for (BBContainer b : objects) {
+                        b.discard();
+                    }
+                    throw new IOException("Closed");
+                }
+                if (m_writeSegment.remaining() < length - 4) {
+                    try {
+                        openNewWriteSegment();
+                    } catch (IOException e) {
+                        for (BBContainer b : objects) {
+                            b.discard();
+                        }
+                        throw e;
+                    }
+                }
+                m_writeSegment.offer(objects);
+            } catch (IOException e) {
+                exportLog.error("Error writing to PBD " + m_nonce + " in the background", e);
+                if (m_writeError == null) {
+                    m_writeError = e;
+                }
+            } finally {
+                m_pendingBytes.addAndGet(-length);
+            }
+        }
+    }
+
+    /*
+     * Discard the objects queued by offer without writing them, must hold the deque's lock
+     */
+    private void discardPendingWrites() {
+        BBContainer objects[];
+        while ((objects = m_pendingWrites.poll()) != null) {
+            int length = 4;
+            for (BBContainer b : objects) {
+                length += b.b.remaining();
+                b.discard();
+            }
+            m_pendingBytes.addAndGet(-length);
+        }
+    }
+
+    private void preallocateNextSegment() throws IOException {
+        if (m_writeSegment == null || m_preallocatedSegment != null) {
+            return;
+        }
+        Long nextIndex = m_writeSegment.m_index + 1;
+        DequeSegment segment =
+            new DequeSegment(
+                    nextIndex,
+                    new VoltFile(m_path, m_nonce + "." + nextIndex + ".pbd"));
+        segment.open();
+        segment.initNumEntries();
+        m_preallocatedSegment = segment;
+    }
+
+    private void discardPreallocatedSegment() throws IOException {
+        if (m_preallocatedSegment != null) {
+            DequeSegment segment = m_preallocatedSegment;
+            m_preallocatedSegment = null;
+            segment.closeAndDelete();
+        }
+    }
+
+    private void stopWriter() {
+        if (m_writer != null) {
+            m_writer.shutdown();
+        }
     }
 
     @Override
@@ -436,6 +683,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
+        drainPendingWrites();
         if (!m_finishedSegments.isEmpty()) {
             assert(m_finishedSegments.firstKey().equals(m_currentPollSegmentIndex));
         }
@@ -503,12 +751,21 @@ public class PersistentBinaryDeque implements BinaryDeque {
         m_writeSegment.m_fc.position(4);
         m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
         Long nextIndex = m_writeSegment.m_index + 1;
-        m_writeSegment =
-            new DequeSegment(
-                    nextIndex,
-                    new VoltFile(m_path, m_nonce + "." + nextIndex + ".pbd"));
-        m_writeSegment.open();
-        m_writeSegment.initNumEntries();
+        if (m_preallocatedSegment != null && m_preallocatedSegment.m_index.equals(nextIndex)) {
+            m_writeSegment = m_preallocatedSegment;
+            m_preallocatedSegment = null;
+        } else {
+            discardPreallocatedSegment();
+            m_writeSegment =
+                new DequeSegment(
+                        nextIndex,
+                        new VoltFile(m_path, m_nonce + "." + nextIndex + ".pbd"));
+            m_writeSegment.open();
+            m_writeSegment.initNumEntries();
+        }
+        if (m_writer != null) {
+            m_writer.execute(m_preallocateTask);
+        }
     }
 
     @Override
@@ -516,6 +773,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
+        drainPendingWrites();
         DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
         if (segment == null) {
             assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
@@ -535,9 +793,19 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
-        m_writeSegment.sync();
+        drainPendingWrites();
+        if (m_writeError != null) {
+            IOException e = new IOException("A background write to PBD " + m_nonce + " failed", m_writeError);
+            m_writeError = null;
+            throw e;
+        }
+        syncSegments(true);
+    }
+
+    private void syncSegments(boolean metaData) throws IOException {
+        m_writeSegment.sync(metaData);
         for (DequeSegment segment : m_finishedSegments.values()) {
-            segment.sync();
+            segment.sync(metaData);
         }
     }
 
@@ -546,6 +814,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
+        drainPendingWrites();
+        stopWriter();
+        discardPreallocatedSegment();
         if (m_writeSegment.getNumEntries() > 0) {
             m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
         } else {
@@ -563,6 +834,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
+        drainPendingWrites();
         DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
         if (segment == null) {
             assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
@@ -578,23 +850,36 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     @Override
     public long sizeInBytes() {
-        return m_sizeInBytes.get();
+        return m_sizeInBytes.get() + m_pendingBytes.get();
     }
 
     @Override
     public synchronized void closeAndDelete() throws IOException {
+        stopWriter();
+        discardPendingWrites();
+        discardPreallocatedSegment();
         m_writeSegment.closeAndDelete();
         for (DequeSegment ds : m_finishedSegments.values()) {
             ds.closeAndDelete();
         }
+        m_writeSegment = null;
+        m_closed = true;
     }
 
     @Override
     public synchronized void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+        drainPendingWrites();
         if (m_finishedSegments.isEmpty()) {
             exportLog.debug("PBD " + m_nonce + " has no finished segments");
             return;
         }
+        //Segments may be rewritten or deleted below, polled objects still map them
+        for (DequeSegment segment : m_finishedSegments.values()) {
+            if (segment.m_outstandingReads > 0) {
+                throw new IOException("PBD " + m_nonce + " can't be truncated while polled objects are outstanding");
+            }
+            segment.releaseReadBuffer();
+        }
         //+16 because I am not sure if the max chunk size is enforced right
         ByteBuffer readBuffer = ByteBuffer.allocateDirect(DequeSegment.m_chunkSize + 16);
 
@@ -726,6 +1011,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
         //The write segment may have the wrong index, delete it
         m_writeSegment.closeAndDelete();
+        discardPreallocatedSegment();
 
         /*
          * Reset the poll and write segments
@@ -747,5 +1033,8 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_finishedSegments.isEmpty()) {
             assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
         }
+        if (m_writer != null) {
+            m_writer.execute(m_preallocateTask);
+        }
     }
 }
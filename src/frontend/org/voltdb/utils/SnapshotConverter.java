@@ -27,8 +27,13 @@ import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil.Snapshot;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil.SpecificSnapshotFilter;
@@ -47,6 +52,8 @@ public class SnapshotConverter {
         File outdir = null;
         String type = null;
         char delimiter = '\0';
+        boolean compress = false;
+        int threads = CoreUtils.availableProcessors();
 
         for (int ii = 0; ii < args.length; ii++) {
             String arg = args[ii];
@@ -119,6 +126,23 @@ public class SnapshotConverter {
                     System.exit(-1);
                 }
                 ii++;
+            } else if (arg.equals("--compress")) {
+                compress = true;
+            } else if (arg.equals("--threads")) {
+                if (args.length < ii + 2) {
+                    System.err.println("Error: Not enough args following --threads");
+                    printHelpAndQuit(-1);
+                }
+                try {
+                    threads = Integer.parseInt(args[ii + 1]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Error: --threads must be a positive integer");
+                    printHelpAndQuit(-1);
+                }
+                ii++;
             }  else if (arg.equals("--type")) {
                 if (args.length < ii + 1) {
                     System.err.println("Error: Not enough args following --type");
@@ -250,7 +274,8 @@ public class SnapshotConverter {
          */
         for (Map.Entry<String, Map<File, Set<Integer>>> entry : tableToFilesWithPartitions.entrySet()) {
             String tableName = entry.getKey();
-            File outfile = new File(outdir.getPath() + File.separator + tableName + "." + type.toLowerCase());
+            File outfile = new File(outdir.getPath() + File.separator + tableName + "." + type.toLowerCase() +
+                    (compress ? ".gz" : ""));
             try {
                 if (!outfile.createNewFile()) {
                     System.err.println("Error: Failed to create output file "
@@ -269,43 +294,76 @@ public class SnapshotConverter {
             System.exit(-1);
         }
 
-        /*
-         * Actually convert the tables and write the data to the appropriate destination
-         */
+        if (!convertTables(tableToFilesWithPartitions, outdir, type, delimiter, compress, threads)) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Actually convert the tables and write the data to the appropriate destination.
+     * Tables are converted concurrently, the save files of one table are appended
+     * to its output file one after the other.
+     * @return false if any save file failed to convert
+     */
+    static boolean convertTables(Map<String, Map<File, Set<Integer>>> tableToFilesWithPartitions,
+            File outdir, String type, final char delimiter, final boolean compress, int threads) {
+        final AtomicBoolean success = new AtomicBoolean(true);
+        ExecutorService es = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, tableToFilesWithPartitions.size())),
+                CoreUtils.getThreadFactory("Snapshot Converter"));
         for (Map.Entry<String, Map<File, Set<Integer>>> entry : tableToFilesWithPartitions.entrySet()) {
             String tableName = entry.getKey();
-            File outfile = new File(outdir.getPath() + File.separator + tableName + "." + type.toLowerCase());
-
-            Map<File, Set<Integer>> partitionsFromFile = entry.getValue();
-            for (Map.Entry<File, Set<Integer>> e2 : partitionsFromFile.entrySet()) {
-                File infile = e2.getKey();
-                Set<Integer> partitionSet = e2.getValue();
-                Integer partitions[] = null;
-                if (partitionSet != null) {
-                    partitions = new Integer[partitionSet.size()];
-                    int ii = 0;
-                    for (Integer partition : partitionSet) {
-                        partitions[ii++] = partition;
+            final File outfile = new File(outdir.getPath() + File.separator + tableName + "." + type.toLowerCase() +
+                    (compress ? ".gz" : ""));
+            final Map<File, Set<Integer>> partitionsFromFile = entry.getValue();
+            es.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!convertTable(delimiter, compress, outfile, partitionsFromFile)) {
+                        success.set(false);
                     }
                 }
-                try {
-                    CSVTableSaveFile.convertTableSaveFile(delimiter, partitions, outfile, infile);
-                } catch (Exception e) {
-                    System.err.println(e.getMessage());
-                    System.err.println("Error: Failed to convert " + infile.getPath() + " to " + outfile.getPath());
-                }
-            }
+            });
+        }
+        es.shutdown();
+        try {
+            es.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            System.err.println("Error: Interrupted while converting the snapshot");
+            return false;
         }
+        return success.get();
+    }
 
-        if (fail) {
-            System.exit(-1);
+    private static boolean convertTable(char delimiter, boolean compress, File outfile,
+            Map<File, Set<Integer>> partitionsFromFile) {
+        for (Map.Entry<File, Set<Integer>> e2 : partitionsFromFile.entrySet()) {
+            File infile = e2.getKey();
+            Set<Integer> partitionSet = e2.getValue();
+            Integer partitions[] = null;
+            if (partitionSet != null) {
+                partitions = new Integer[partitionSet.size()];
+                int ii = 0;
+                for (Integer partition : partitionSet) {
+                    partitions[ii++] = partition;
+                }
+            }
+            try {
+                CSVTableSaveFile.convertTableSaveFile(delimiter, partitions, outfile, infile, compress);
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                System.err.println("Error: Failed to convert " + infile.getPath() + " to " + outfile.getPath());
+                return false;
+            }
         }
+        return true;
     }
 
     private static void printHelpAndQuit( int code) {
         System.out.println("java -cp <classpath> -Djava.library.path=<library path> org.voltdb.utils.SnapshotConverter --help");
         System.out.println("java -cp <classpath> -Djava.library.path=<library path> org.voltdb.utils.SnapshotConverter --dir dir1 --dir dir2 --dir dir3" +
-                "--table table1 --table table2 --table table3 --type CSV|TSV --outdir dir snapshot_name --timezone GMT+0");
+                "--table table1 --table table2 --table table3 --type CSV|TSV --outdir dir snapshot_name --timezone GMT+0" +
+                " [--compress] [--threads n]");
         System.exit(code);
     }
 }
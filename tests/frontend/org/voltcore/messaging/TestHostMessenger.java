@@ -56,7 +56,12 @@ public class TestHostMessenger {
     }
 
     private HostMessenger createHostMessenger(int index, boolean start) throws Exception {
+        return createHostMessenger(index, start, 1);
+    }
+
+    private HostMessenger createHostMessenger(int index, boolean start, int connectionsPerHost) throws Exception {
         HostMessenger.Config config = new HostMessenger.Config();
+        config.connectionsPerHost = connectionsPerHost;
         config.internalPort = config.internalPort + index;
         config.zkInterface = "127.0.0.1:" + (2181 + index);
         HostMessenger hm = new HostMessenger(config);
@@ -166,4 +171,115 @@ public class TestHostMessenger {
         hm3.waitForGroupJoin(2);
     }
 
+    @Test
+    public void testCoalescedSends() throws Exception {
+        HostMessenger hm1 = createHostMessenger(0);
+        HostMessenger hm2 = createHostMessenger(1);
+        hm1.waitForGroupJoin(2);
+        hm2.waitForGroupJoin(2);
+
+        Mailbox sink = hm2.createMailbox();
+        final int count = 5000;
+        for (int ii = 0; ii < count; ii++) {
+            // every hundredth message is too large for a pooled network buffer
+            byte payload[] = new byte[ii % 100 == 0 ? 40 * 1024 : ii % 64];
+            Arrays.fill(payload, (byte)ii);
+            hm1.send(sink.getHSId(), new BinaryPayloadMessage(new byte[] { (byte)(ii >> 8), (byte)ii }, payload));
+        }
+
+        for (int ii = 0; ii < count; ii++) {
+            BinaryPayloadMessage bpm = (BinaryPayloadMessage)sink.recvBlocking(10000);
+            assertNotNull(bpm);
+            assertEquals((byte)(ii >> 8), bpm.m_metadata[0]);
+            assertEquals((byte)ii, bpm.m_metadata[1]);
+            assertEquals(ii % 100 == 0 ? 40 * 1024 : ii % 64, bpm.m_payload.length);
+            for (byte b : bpm.m_payload) {
+                assertEquals((byte)ii, b);
+            }
+        }
+
+        // IOSTATS counts each coalesced message, not each pooled buffer it was written in
+        long written[] = hm1.getNetwork().getIOStats(false).get(-1L).getSecond();
+        assertTrue(written[3] >= count);
+    }
+
+    @Test
+    public void testMultipleConnectionsPerHost() throws Exception {
+        HostMessenger hm1 = createHostMessenger(0, true, 3);
+        final HostMessenger hm2 = createHostMessenger(1, false, 3);
+        final HostMessenger hm3 = createHostMessenger(2, false, 3);
+
+        final AtomicReference<Exception> exception = new AtomicReference<Exception>();
+        Thread starts[] = new Thread[2];
+        for (int ii = 0; ii < starts.length; ii++) {
+            final HostMessenger hm = ii == 0 ? hm2 : hm3;
+            starts[ii] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        hm.start();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        exception.set(e);
+                    }
+                }
+            };
+            starts[ii].start();
+        }
+        for (Thread t : starts) {
+            t.join();
+        }
+        if (exception.get() != null) {
+            fail(exception.get().toString());
+        }
+        hm1.waitForGroupJoin(3);
+        hm2.waitForGroupJoin(3);
+        hm3.waitForGroupJoin(3);
+
+        HostMessenger messengers[] = new HostMessenger[] { hm1, hm2, hm3 };
+        for (HostMessenger hm : messengers) {
+            assertEquals(2, hm.m_foreignHosts.size());
+            for (ForeignHost fh : hm.m_foreignHosts.values()) {
+                assertEquals(3, fh.getConnectionCount());
+            }
+        }
+
+        // enough mailboxes that they are striped over all the connections
+        final int mailboxCount = 6;
+        Mailbox sinks[] = new Mailbox[mailboxCount];
+        long sinkHSIds[] = new long[mailboxCount];
+        for (int ii = 0; ii < mailboxCount; ii++) {
+            sinks[ii] = hm3.createMailbox();
+            sinkHSIds[ii] = sinks[ii].getHSId();
+        }
+        ForeignHost toHm3 = hm1.m_foreignHosts.get(hm3.getHostId());
+        Set<Integer> used = new HashSet<Integer>();
+        for (long hsId : sinkHSIds) {
+            used.add(toHm3.connectionIndex(hsId));
+        }
+        assertEquals(3, used.size());
+
+        // alternate single destination and multi destination sends, each mailbox must see its
+        // messages in the order they were sent
+        final int count = 2000;
+        for (int ii = 0; ii < count; ii++) {
+            byte metadata[] = new byte[] { (byte)(ii >> 8), (byte)ii };
+            if (ii % 2 == 0) {
+                hm1.send(sinkHSIds, new BinaryPayloadMessage(metadata, new byte[ii % 100]));
+            } else {
+                for (long hsId : sinkHSIds) {
+                    hm1.send(hsId, new BinaryPayloadMessage(metadata, new byte[ii % 100]));
+                }
+            }
+        }
+        for (Mailbox sink : sinks) {
+            for (int ii = 0; ii < count; ii++) {
+                BinaryPayloadMessage bpm = (BinaryPayloadMessage)sink.recvBlocking(10000);
+                assertNotNull(bpm);
+                assertEquals((byte)(ii >> 8), bpm.m_metadata[0]);
+                assertEquals((byte)ii, bpm.m_metadata[1]);
+                assertEquals(ii % 100, bpm.m_payload.length);
+            }
+        }
+    }
 }
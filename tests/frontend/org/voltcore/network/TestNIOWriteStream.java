@@ -50,6 +50,7 @@
 
 package org.voltcore.network;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
@@ -57,6 +58,7 @@ import java.nio.channels.SelectionKey;
 
 import junit.framework.TestCase;
 
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.EstTimeUpdater;
 
@@ -129,6 +131,11 @@ public class TestNIOWriteStream extends TestCase {
             }
             if (m_behavior == SINK) {
                 int remaining = src.remaining();
+                if (m_captured != null) {
+                    byte bytes[] = new byte[remaining];
+                    src.get(bytes);
+                    m_captured.write(bytes);
+                }
                 src.position(src.limit());
                 return remaining;
             }
@@ -187,6 +194,8 @@ public class TestNIOWriteStream extends TestCase {
 
         public boolean m_open = true;
 
+        public ByteArrayOutputStream m_captured = null;
+
         public int m_behavior;
         public static int SINK = 0;     // accept all data
         public static int FULL = 1;     // accept no data
@@ -337,6 +346,65 @@ public class TestNIOWriteStream extends TestCase {
         wstream.shutdown();
     }
 
+    public void testDirectSerialization() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK);
+        channel.m_captured = new ByteArrayOutputStream();
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        final int large = NetworkDBBPool.BUFFER_SIZE + 100;
+        wstream.enqueue(new DirectDeferredSerialization() {
+            @Override
+            public int serialize(PooledBuffers buffers) {
+                assertEquals(NetworkDBBPool.BUFFER_SIZE, buffers.maxClaim());
+                ByteBuffer first = buffers.claim(3);
+                assertEquals(3, first.capacity());
+                first.put(new byte[] { 1, 2, 3 });
+                ByteBuffer big = ByteBuffer.allocate(large);
+                while (big.hasRemaining()) {
+                    big.put((byte)4);
+                }
+                big.flip();
+                buffers.put(big);
+                // doesn't fit behind the large buffer, starts a new pooled buffer
+                ByteBuffer last = buffers.claim(NetworkDBBPool.BUFFER_SIZE - 50);
+                while (last.hasRemaining()) {
+                    last.put((byte)5);
+                }
+                try {
+                    buffers.claim(NetworkDBBPool.BUFFER_SIZE + 1);
+                    fail();
+                } catch (IllegalArgumentException expected) {}
+                return 3;
+            }
+
+            @Override
+            public ByteBuffer[] serialize() {
+                fail();
+                return null;
+            }
+
+            @Override
+            public void cancel() {}
+        });
+        assertTrue(port.checkWriteSet());
+        wstream.swapAndSerializeQueuedWrites(pool);
+        final int total = 3 + large + NetworkDBBPool.BUFFER_SIZE - 50;
+        assertEquals(total, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        // messages are counted as reported by the serialization, not per pooled buffer
+        assertEquals(total, wstream.getBytesAndMessagesWritten(false)[0]);
+        assertEquals(3, wstream.getBytesAndMessagesWritten(false)[1]);
+
+        byte written[] = channel.m_captured.toByteArray();
+        assertEquals(total, written.length);
+        for (int ii = 0; ii < written.length; ii++) {
+            byte expected = ii < 3 ? (byte)(ii + 1) : (ii < 3 + large ? (byte)4 : (byte)5);
+            assertEquals(expected, written[ii]);
+        }
+        wstream.shutdown();
+    }
+
     public void testLastWriteDelta() throws Exception {
         final MockChannel channel = new MockChannel(MockChannel.SINK);
         MockPort port = new MockPort();
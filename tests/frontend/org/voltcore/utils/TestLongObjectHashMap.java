@@ -0,0 +1,133 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestLongObjectHashMap {
+
+    @Test
+    public void testBasicOperations() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(42));
+        assertNull(map.put(42, "a"));
+        assertEquals("a", map.put(42, "b"));
+        assertEquals("b", map.get(42));
+        assertTrue(map.containsKey(42));
+        assertEquals(1, map.size());
+        assertNull(map.remove(43));
+        assertEquals("b", map.remove(42));
+        assertNull(map.get(42));
+        assertTrue(map.isEmpty());
+
+        // extreme keys are ordinary keys
+        map.put(0, "zero");
+        map.put(Long.MIN_VALUE, "min");
+        map.put(Long.MAX_VALUE, "max");
+        assertEquals("zero", map.get(0));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(0));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullValue() {
+        new LongObjectHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void testGrowth() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<Long>(4);
+        final int initialCapacity = map.capacity();
+        for (long i = 0; i < 10000; i++) {
+            map.put(i << 48 | i, i);
+        }
+        assertEquals(10000, map.size());
+        assertTrue(map.capacity() > initialCapacity);
+        assertTrue(map.occupancy() <= 0.5);
+        for (long i = 0; i < 10000; i++) {
+            assertEquals(Long.valueOf(i), map.get(i << 48 | i));
+        }
+    }
+
+    /**
+     * Random puts and removes compared against a HashMap, exercising backward shift deletion
+     * in a small table where clusters wrap around the end.
+     */
+    @Test
+    public void testRandomAgainstHashMap() {
+        Random r = new Random(0);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<Long>();
+        Map<Long, Long> reference = new HashMap<Long, Long>();
+        for (int i = 0; i < 200000; i++) {
+            long key = r.nextInt(64);
+            if (r.nextBoolean()) {
+                assertEquals(reference.put(key, (long)i), map.put(key, (long)i));
+            } else {
+                assertEquals(reference.remove(key), map.remove(key));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (long key = 0; key < 64; key++) {
+            assertEquals(reference.get(key), map.get(key));
+        }
+
+        Set<Long> values = new HashSet<Long>();
+        for (Long value : map.values()) {
+            assertTrue(values.add(value));
+        }
+        assertEquals(new HashSet<Long>(reference.values()), values);
+        assertTrue(map.maxProbeLength() < map.capacity());
+    }
+
+    /**
+     * Sequential insert/remove churn, like in-flight transaction handles, must not grow the table
+     */
+    @Test
+    public void testChurnReusesSlots() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<Long>();
+        for (long i = 0; i < 8; i++) {
+            map.put(i, i);
+        }
+        final int capacity = map.capacity();
+        for (long i = 8; i < 1000000; i++) {
+            map.put(i, i);
+            assertEquals(Long.valueOf(i - 8), map.remove(i - 8));
+        }
+        assertEquals(8, map.size());
+        assertEquals(capacity, map.capacity());
+    }
+}
@@ -0,0 +1,135 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestMpscRingBuffer {
+
+    @Test
+    public void testCapacityRounding() {
+        assertEquals(2, new MpscRingBuffer<Integer>(2).capacity());
+        assertEquals(8, new MpscRingBuffer<Integer>(5).capacity());
+        assertEquals(16, new MpscRingBuffer<Integer>(16).capacity());
+        try {
+            new MpscRingBuffer<Integer>(1);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testFifoAndWrap() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<Integer>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        int next = 0;
+        int expected = 0;
+        // several laps around the ring
+        for (int lap = 0; lap < 10; lap++) {
+            while (ring.offer(next)) {
+                next++;
+            }
+            assertEquals(4, ring.size());
+            assertEquals(Integer.valueOf(expected), ring.peek());
+            assertEquals(Integer.valueOf(expected++), ring.poll());
+            assertEquals(Integer.valueOf(expected++), ring.poll());
+            assertEquals(2, ring.size());
+        }
+        Integer dest[] = new Integer[8];
+        assertEquals(2, ring.drainTo(dest, 1, 8));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Integer.valueOf(expected++), dest[i + 1]);
+        }
+        assertEquals(next, expected);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testNullRejected() {
+        try {
+            new MpscRingBuffer<Integer>(4).offer(null);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    /*
+     * Several producers offer into a small ring, the consumer checks that each producer's
+     * elements arrive complete and in the order that producer offered them.
+     */
+    @Test
+    public void testMultipleProducers() throws Exception {
+        final int producers = 4;
+        final int perProducer = 200000;
+        final MpscRingBuffer<long[]> ring = new MpscRingBuffer<long[]>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread threads[] = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (long i = 0; i < perProducer; i++) {
+                            final long element[] = new long[] { producer, i };
+                            while (!ring.offer(element)) {
+                                Thread.yield();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+
+        long nextExpected[] = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long element[] = ring.poll();
+            if (element == null) {
+                assertNull(failure.get());
+                Thread.yield();
+                continue;
+            }
+            final int producer = (int)element[0];
+            assertEquals(nextExpected[producer]++, element[1]);
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure.get());
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+    }
+}
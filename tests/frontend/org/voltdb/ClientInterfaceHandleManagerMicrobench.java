@@ -0,0 +1,91 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+
+import org.voltcore.network.Connection;
+
+/**
+ * Measures heap allocation and time per transaction for handle tracking in
+ * ClientInterfaceHandleManager. Each iteration creates a handle and resolves the
+ * handle created a fixed number of transactions earlier, keeping a steady number
+ * of transactions in flight as a busy connection would.
+ *
+ * Usage: ClientInterfaceHandleManagerMicrobench [transactions] [outstanding]
+ */
+public class ClientInterfaceHandleManagerMicrobench {
+
+    enum Workload {
+        // partition ids below 128 hit the Integer cache, larger ones don't
+        SP_WRITE_LOW_PARTITION, SP_WRITE_HIGH_PARTITION, SP_READ, MP_WRITE, SHORT_CIRCUIT_READ
+    }
+
+    private static long run(Workload workload, int transactions, int outstanding) {
+        ClientInterfaceHandleManager cihm =
+                new ClientInterfaceHandleManager(false, mock(Connection.class), AdmissionControlGroup.getDummy());
+        final boolean sp = workload != Workload.MP_WRITE;
+        final int partition = workload == Workload.SP_WRITE_HIGH_PARTITION ? 200 : 7;
+        final boolean readOnly = workload == Workload.SP_READ || workload == Workload.SHORT_CIRCUIT_READ;
+        final boolean shortCircuit = workload == Workload.SHORT_CIRCUIT_READ;
+
+        final long handles[] = new long[outstanding];
+        for (int i = 0; i < outstanding; i++) {
+            handles[i] = cihm.getHandle(sp, partition, i, 100, 0, "proc", 0, readOnly, shortCircuit, 0);
+        }
+        for (int i = outstanding; i < transactions; i++) {
+            final int slot = i % outstanding;
+            if (cihm.findHandle(handles[slot]) == null) {
+                throw new RuntimeException("Lost handle " + handles[slot]);
+            }
+            handles[slot] = cihm.getHandle(sp, partition, i, 100, 0, "proc", 0, readOnly, shortCircuit, 0);
+        }
+        return cihm.getOutstandingTxns();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        final int outstanding = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        for (Workload workload : Workload.values()) {
+            // warm up so the measurement excludes class loading and compilation
+            run(workload, transactions / 10, outstanding);
+
+            final long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            run(workload, transactions, outstanding);
+            final long elapsed = System.nanoTime() - start;
+            final long allocated = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+            System.out.printf("%-24s %8.1f bytes/txn %8.1f ns/txn%n",
+                    workload, allocated / (double)transactions, elapsed / (double)transactions);
+        }
+    }
+}
@@ -45,14 +45,14 @@ public class TestClientInterfaceHandleManager {
                         mockConnection,
                         AdmissionControlGroup.getDummy());
 
-        long handle = dut.getHandle(true, 7, 31337, 10, 10l, "foo", 0, false, false);
+        long handle = dut.getHandle(true, 7, 31337, 10, 10l, "foo", 0, false, false, 0);
         assertEquals(7, ClientInterfaceHandleManager.getPartIdFromHandle(handle));
         assertEquals(0, ClientInterfaceHandleManager.getSeqNumFromHandle(handle));
         ClientInterfaceHandleManager.Iv2InFlight inflight = dut.findHandle(handle);
         assertEquals(handle, inflight.m_ciHandle);
         assertEquals(31337, inflight.m_clientHandle);
 
-        handle = dut.getHandle(false, 12, 31338, 10, 10l, "yankees", 0, true, false);
+        handle = dut.getHandle(false, 12, 31338, 10, 10l, "yankees", 0, true, false, 0);
         assertEquals(ClientInterfaceHandleManager.MP_PART_ID,
                 ClientInterfaceHandleManager.getPartIdFromHandle(handle));
         assertEquals(0, ClientInterfaceHandleManager.getSeqNumFromHandle(handle));
@@ -73,7 +73,7 @@ public class TestClientInterfaceHandleManager {
                         AdmissionControlGroup.getDummy());
         List<Long> handles = new ArrayList<Long>();
         for (int i = 0; i < 10; i++) {
-            handles.add(dut.getHandle(true, 7, 31337 + i, 10, 10l, "yankeefoo", 0, i % 2 == 0 ? true : false, false));
+            handles.add(dut.getHandle(true, 7, 31337 + i, 10, 10l, "yankeefoo", 0, i % 2 == 0 ? true : false, false, 0));
         }
         // pretend handles 0-4 were lost
         for (int i = 5; i < 10; i++) {
@@ -98,7 +98,7 @@ public class TestClientInterfaceHandleManager {
         List<Long> handles = new ArrayList<Long>();
         // Add 10 handles
         for (int i = 0; i < 10; i++) {
-            handles.add(dut.getHandle(true, 7, 31337 + i, 10, 10l, "yankeefoo", 0, i % 2 == 0 ? true : false, false));
+            handles.add(dut.getHandle(true, 7, 31337 + i, 10, 10l, "yankeefoo", 0, i % 2 == 0 ? true : false, false, 0));
         }
         // remove handle 6
         ClientInterfaceHandleManager.Iv2InFlight six = dut.removeHandle(handles.get(6));
@@ -0,0 +1,229 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.DirectDeferredSerialization.PooledBuffers;
+import org.voltdb.client.ClientResponse;
+
+public class TestClientResponseImpl extends TestCase {
+
+    /**
+     * Collects everything written into it and counts how the bytes arrived.
+     */
+    private static class RecordingBuffers implements PooledBuffers {
+        final int m_maxClaim;
+        final List<ByteBuffer> m_written = new ArrayList<ByteBuffer>();
+        int m_claimedBytes = 0;
+        int m_putBytes = 0;
+
+        RecordingBuffers(int maxClaim) {
+            m_maxClaim = maxClaim;
+        }
+
+        @Override
+        public int maxClaim() {
+            return m_maxClaim;
+        }
+
+        @Override
+        public ByteBuffer claim(int size) {
+            assertTrue(size <= m_maxClaim);
+            ByteBuffer buf = ByteBuffer.allocateDirect(size);
+            m_written.add(buf);
+            m_claimedBytes += size;
+            return buf;
+        }
+
+        @Override
+        public void put(ByteBuffer buf) {
+            ByteBuffer copy = ByteBuffer.allocateDirect(buf.remaining());
+            m_putBytes += buf.remaining();
+            copy.put(buf);
+            m_written.add(copy);
+        }
+
+        ByteBuffer contents() {
+            int size = 0;
+            for (ByteBuffer buf : m_written) {
+                assertEquals(0, buf.remaining());
+                size += buf.capacity();
+            }
+            ByteBuffer all = ByteBuffer.allocate(size);
+            for (ByteBuffer buf : m_written) {
+                buf.flip();
+                all.put(buf);
+            }
+            all.flip();
+            return all;
+        }
+    }
+
+    private static VoltTable makeTable(int rows) {
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                                    new VoltTable.ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < rows; i++) {
+            t.addRow(i, "row number " + i);
+        }
+        return t;
+    }
+
+    private static ClientResponseImpl makeResponse(String statusString, VoltTable... tables) {
+        ClientResponseImpl response =
+            new ClientResponseImpl(ClientResponse.SUCCESS, tables, statusString, 42);
+        response.setClusterRoundtrip(7);
+        return response;
+    }
+
+    private static ByteBuffer legacyFlatten(ClientResponseImpl response) {
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
+        buf.putInt(buf.capacity() - 4);
+        response.flattenToBuffer(buf);
+        buf.flip();
+        return buf;
+    }
+
+    public void testSmallResponseIsClaimedInPlace() {
+        ClientResponseImpl response = makeResponse("ok", makeTable(3), makeTable(0));
+        RecordingBuffers buffers = new RecordingBuffers(32 * 1024);
+        response.flattenToBuffers(buffers);
+
+        assertEquals(1, buffers.m_written.size());
+        assertEquals(0, buffers.m_putBytes);
+        assertEquals(legacyFlatten(response), buffers.contents());
+    }
+
+    public void testLargeResponseWritesTablesOnce() {
+        VoltTable big = makeTable(2000);
+        VoltTable small = makeTable(2);
+        ClientResponseImpl response = makeResponse(null, big, small);
+        RecordingBuffers buffers = new RecordingBuffers(1024);
+        response.flattenToBuffers(buffers);
+
+        // the large table goes in by reference, everything else is claimed,
+        // so each byte of the response is copied into the pool exactly once
+        assertEquals(big.getSerializedSize() - 4, buffers.m_putBytes);
+        assertEquals(response.getSerializedSize() + 4,
+                     buffers.m_claimedBytes + buffers.m_putBytes);
+        assertEquals(legacyFlatten(response), buffers.contents());
+    }
+
+    /**
+     * Split the stream written into the buffers back into length-prefixed frames.
+     */
+    private static List<ClientResponseImpl> readFrames(ByteBuffer stream) throws Exception {
+        List<ClientResponseImpl> frames = new ArrayList<ClientResponseImpl>();
+        while (stream.hasRemaining()) {
+            int len = stream.getInt();
+            ByteBuffer frame = stream.slice();
+            frame.limit(len);
+            stream.position(stream.position() + len);
+            ClientResponseImpl response = new ClientResponseImpl();
+            response.initFromBuffer(frame);
+            frames.add(response);
+        }
+        return frames;
+    }
+
+    private static void appendRows(VoltTable dest, VoltTable rows) {
+        rows.resetRowPosition();
+        while (rows.advanceRow()) {
+            dest.add(rows);
+        }
+    }
+
+    public void testStreamedChunks() throws Exception {
+        VoltTable big = makeTable(1000);
+        VoltTable small = makeTable(3);
+        VoltTable medium = makeTable(250);
+        ClientResponseImpl response = makeResponse("done", big, small, medium);
+        RecordingBuffers buffers = new RecordingBuffers(32 * 1024);
+        response.flattenChunksToBuffers(buffers, 100);
+
+        List<ClientResponseImpl> frames = readFrames(buffers.contents());
+        // 9 chunks of the big table, 2 of the medium one and the final response
+        assertEquals(12, frames.size());
+
+        VoltTable[] reassembled = new VoltTable[] {
+                big.clone(0), small.clone(0), medium.clone(0) };
+        for (int i = 0; i < frames.size() - 1; i++) {
+            ClientResponseImpl chunk = frames.get(i);
+            assertTrue(chunk.isPartial());
+            assertEquals(42, chunk.getClientHandle());
+            assertEquals(1, chunk.getResults().length);
+            assertEquals(100, chunk.getResults()[0].getRowCount());
+            appendRows(reassembled[chunk.getPartialTableIndex()], chunk.getResults()[0]);
+        }
+        assertEquals(0, frames.get(0).getPartialTableIndex());
+        assertEquals(2, frames.get(frames.size() - 2).getPartialTableIndex());
+
+        ClientResponseImpl last = frames.get(frames.size() - 1);
+        assertFalse(last.isPartial());
+        assertEquals(ClientResponse.SUCCESS, last.getStatus());
+        assertEquals("done", last.getStatusString());
+        assertEquals(3, last.getResults().length);
+        assertEquals(100, last.getResults()[0].getRowCount());
+        assertEquals(3, last.getResults()[1].getRowCount());
+        assertEquals(50, last.getResults()[2].getRowCount());
+        for (int i = 0; i < 3; i++) {
+            appendRows(reassembled[i], last.getResults()[i]);
+        }
+
+        assertEquals(big, reassembled[0]);
+        assertEquals(small, reassembled[1]);
+        assertEquals(medium, reassembled[2]);
+
+        // the response itself is left intact
+        assertEquals(1000, response.getResults()[0].getRowCount());
+    }
+
+    public void testStreamedSmallOrFailedResponse() throws Exception {
+        ClientResponseImpl small = makeResponse(null, makeTable(5));
+        RecordingBuffers buffers = new RecordingBuffers(32 * 1024);
+        small.flattenChunksToBuffers(buffers, 100);
+        assertEquals(legacyFlatten(small), buffers.contents());
+
+        ClientResponseImpl failed = new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE,
+                new VoltTable[] { makeTable(500) }, "no", 42);
+        buffers = new RecordingBuffers(32 * 1024);
+        failed.flattenChunksToBuffers(buffers, 100);
+        assertEquals(legacyFlatten(failed), buffers.contents());
+    }
+
+    public void testOversizedHeader() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("status ");
+        }
+        ClientResponseImpl response = makeResponse(sb.toString(), makeTable(50));
+        RecordingBuffers buffers = new RecordingBuffers(512);
+        response.flattenToBuffers(buffers);
+        assertEquals(legacyFlatten(response), buffers.contents());
+    }
+}
@@ -0,0 +1,83 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+import org.voltdb.DefaultSnapshotDataTarget.WritePacer;
+
+public class TestDefaultSnapshotDataTarget extends TestCase {
+
+    private static final int MB = 1024 * 1024;
+    private static final long SECOND = 1000000000L;
+
+    public void testNoLimit()
+    {
+        WritePacer pacer = new WritePacer(0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, pacer.reserve(MB * 64, 0));
+        }
+    }
+
+    public void testBackToBackWritesArePaced()
+    {
+        WritePacer pacer = new WritePacer(2, 0);
+        // The first write goes right away, each MB after it costs half a second
+        assertEquals(0, pacer.reserve(MB, 0));
+        assertEquals(SECOND / 2, pacer.reserve(MB, 0));
+        assertEquals(SECOND, pacer.reserve(MB * 2, 0));
+        // A writer that shows up later only waits for what is left of the schedule
+        assertEquals(SECOND, pacer.reserve(MB, SECOND));
+    }
+
+    public void testIdleTimeIsNotBanked()
+    {
+        WritePacer pacer = new WritePacer(1, 0);
+        assertEquals(0, pacer.reserve(MB, 0));
+        // Ten seconds of nothing doesn't allow ten MB at once afterwards
+        assertEquals(0, pacer.reserve(MB, 11 * SECOND));
+        assertEquals(SECOND, pacer.reserve(MB, 11 * SECOND));
+    }
+
+    public void testSmallWritesAddUp()
+    {
+        WritePacer pacer = new WritePacer(1, 0);
+        for (int i = 0; i < 1024; i++) {
+            pacer.reserve(1024, 0);
+        }
+        long delay = pacer.reserve(1024, 0);
+        // Rounding each 1KB slot down may lose at most a nanosecond per write
+        assertTrue(delay <= SECOND && delay > SECOND - 1024);
+    }
+
+    public void testNegativeNanoTime()
+    {
+        // System.nanoTime() can be negative, a schedule starting there must not stall
+        long start = -5 * SECOND;
+        WritePacer pacer = new WritePacer(1, start);
+        assertEquals(0, pacer.reserve(MB, start));
+        assertEquals(SECOND, pacer.reserve(MB, start));
+        assertEquals(0, pacer.reserve(MB, start + 10 * SECOND));
+    }
+}
@@ -0,0 +1,131 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+    static final long HIGHEST = 60L * 1000 * 1000;
+
+    @Test
+    public void testPercentilesWithinPrecision() throws Exception
+    {
+        LatencyHistogram h = new LatencyHistogram(HIGHEST, 2);
+        // 99 fast transactions and one slow one
+        for (int i = 0; i < 99; i++) {
+            h.recordValue(150);
+        }
+        h.recordValue(900);
+        assertEquals(100, h.getTotalCount());
+        assertEquals(150, h.getValueAtPercentile(0.5), 150 * 0.01);
+        assertEquals(150, h.getValueAtPercentile(0.99), 150 * 0.01);
+        assertEquals(900, h.getValueAtPercentile(1.0), 900 * 0.01);
+        assertEquals(150, h.getMinValue(), 150 * 0.01);
+        assertEquals(900, h.getMaxValue(), 900 * 0.01);
+        assertEquals(157.5, h.getMean(), 0.001);
+    }
+
+    @Test
+    public void testUniformDistribution() throws Exception
+    {
+        LatencyHistogram h = new LatencyHistogram(HIGHEST, 3);
+        for (long i = 1; i <= 100000; i++) {
+            h.recordValue(i);
+        }
+        assertEquals(50000, h.getValueAtPercentile(0.5), 50000 * 0.001);
+        assertEquals(99000, h.getValueAtPercentile(0.99), 99000 * 0.001);
+        assertEquals(100000, h.getMaxValue(), 100000 * 0.001);
+        assertEquals(1, h.getMinValue());
+        assertEquals(1000, h.getCountBetweenValues(1, 1000));
+    }
+
+    @Test
+    public void testClampAndNegative() throws Exception
+    {
+        LatencyHistogram h = new LatencyHistogram(1000, 2);
+        h.recordValue(-5);
+        h.recordValue(Long.MAX_VALUE / 4);
+        assertEquals(2, h.getTotalCount());
+        assertEquals(0, h.getMinValue());
+        assertEquals(1000, h.getMaxValue());
+    }
+
+    @Test
+    public void testAddAndDiff() throws Exception
+    {
+        LatencyHistogram older = new LatencyHistogram(HIGHEST, 2);
+        for (int i = 0; i < 1000; i++) {
+            older.recordValue(100);
+        }
+        LatencyHistogram newer = (LatencyHistogram) older.clone();
+        for (int i = 0; i < 10; i++) {
+            newer.recordValue(5000);
+        }
+        LatencyHistogram interval = LatencyHistogram.diff(newer, older);
+        assertEquals(10, interval.getTotalCount());
+        assertEquals(5000, interval.getMinValue(), 5000 * 0.01);
+        assertEquals(5000.0, interval.getMean(), 0.001);
+
+        LatencyHistogram merged = LatencyHistogram.merge(older, interval);
+        assertEquals(newer.getTotalCount(), merged.getTotalCount());
+        assertEquals(newer.getValueAtPercentile(0.995), merged.getValueAtPercentile(0.995));
+
+        try {
+            older.add(new LatencyHistogram(HIGHEST, 3));
+            fail();
+        }
+        catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testCompactBytesRoundTrip() throws Exception
+    {
+        LatencyHistogram h = new LatencyHistogram(HIGHEST, 2);
+        Random r = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            h.recordValue((long) (r.nextGaussian() * 100 + 500));
+        }
+        h.recordValue(HIGHEST);
+        byte bytes[] = h.toCompactBytes();
+        // sparse histograms should be far smaller than the raw counts
+        assertTrue(bytes.length < 1024);
+
+        LatencyHistogram copy = LatencyHistogram.fromCompactBytes(bytes);
+        assertEquals(h.getTotalCount(), copy.getTotalCount());
+        assertEquals(h.getMean(), copy.getMean(), 0.0);
+        for (double p : new double[] { 0.0, 0.5, 0.9, 0.99, 0.999, 1.0 }) {
+            assertEquals(h.getValueAtPercentile(p), copy.getValueAtPercentile(p));
+        }
+
+        LatencyHistogram empty = LatencyHistogram.fromCompactBytes(
+                new LatencyHistogram(HIGHEST, 1).toCompactBytes());
+        assertEquals(0, empty.getTotalCount());
+        assertEquals(0, empty.getValueAtPercentile(0.99));
+    }
+}
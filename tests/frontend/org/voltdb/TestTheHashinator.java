@@ -358,6 +358,42 @@ public class TestTheHashinator {
         try { ee.release(); } catch (Exception e) {}
     }
 
+    /**
+     * A hashinator instance, as used for client routing, hashes with its own type even
+     * when the process is configured for a different one.
+     */
+    @Test
+    public void testInstanceHashIgnoresConfiguredType() {
+        byte configBytes[] = getConfigBytes(1);
+        ExecutionEngine ee = new ExecutionEngineJNI(1, 1, 0, 0, "", 100, hashinatorType, configBytes);
+
+        final HashinatorType otherType =
+                hashinatorType == HashinatorType.LEGACY ? HashinatorType.ELASTIC : HashinatorType.LEGACY;
+        final HashinatorType configuredType = TheHashinator.getConfiguredHashinatorType();
+        TheHashinator.setConfiguredHashinatorType(otherType);
+        try {
+            for (int i = 0; i < 500; i++) {
+                final int partitionCount = r.nextInt(1000) + 1;
+                configBytes = getConfigBytes(partitionCount);
+                TheHashinator hashinator = TheHashinator.constructHashinator(getHashinatorClass(), configBytes);
+
+                final long longToHash = r.nextLong();
+                assertEquals(ee.hashinate(longToHash, hashinatorType, configBytes),
+                             hashinator.getHashedPartitionForParameter(longToHash));
+
+                final String stringToHash = Long.toString(r.nextLong());
+                assertEquals(ee.hashinate(stringToHash, hashinatorType, configBytes),
+                             hashinator.getHashedPartitionForParameter(stringToHash));
+            }
+            assertEquals(0, TheHashinator.constructHashinator(getHashinatorClass(), configBytes)
+                                         .getHashedPartitionForParameter(null));
+        } finally {
+            TheHashinator.setConfiguredHashinatorType(configuredType);
+        }
+
+        try { ee.release(); } catch (Exception e) {}
+    }
+
     @Test
     public void testSameStringHash() {
         byte configBytes[] = getConfigBytes(1);
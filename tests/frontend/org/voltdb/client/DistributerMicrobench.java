@@ -0,0 +1,273 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.voltcore.network.Connection;
+import org.voltcore.network.QueueMonitor;
+import org.voltcore.network.VoltNetworkPool;
+import org.voltcore.network.VoltProtocolHandler;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+import org.voltdb.messaging.FastDeserializer;
+
+/**
+ * Measures the throughput of the client Distributer's invocation path
+ * (queue, createWork, response dispatch) with an increasing number of
+ * caller threads sharing one Distributer. The server is a stub that
+ * echoes an empty response for every invocation so the numbers reflect
+ * client side contention rather than server work.
+ *
+ * Usage: DistributerMicrobench [threads...] [-connections N] [-seconds N]
+ */
+public class DistributerMicrobench {
+
+    static class EchoHandler extends VoltProtocolHandler {
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            try {
+                FastDeserializer fds = new FastDeserializer(message);
+                StoredProcedureInvocation spi = fds.readObject(StoredProcedureInvocation.class);
+                ClientResponseImpl response =
+                    new ClientResponseImpl(ClientResponseImpl.SUCCESS, new VoltTable[0], null, spi.getClientHandle());
+                ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+                buf.putInt(buf.capacity() - 4);
+                response.flattenToBuffer(buf);
+                buf.clear();
+                c.writeStream().enqueue(buf);
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public void started(Connection c) {}
+        @Override
+        public void starting(Connection c) {}
+        @Override
+        public void stopped(Connection c) {}
+        @Override
+        public void stopping(Connection c) {}
+        @Override
+        public Runnable offBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+        @Override
+        public Runnable onBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    /**
+     * Accepts connections, answers the authentication handshake and hands
+     * the socket to a network pool running an {@link EchoHandler}.
+     */
+    static class EchoServer extends Thread {
+        final AtomicBoolean m_shutdown = new AtomicBoolean(false);
+        final ServerSocketChannel m_socket;
+        final VoltNetworkPool m_network;
+
+        EchoServer(int port) throws IOException {
+            m_network = new VoltNetworkPool(4, null);
+            m_network.start();
+            m_socket = ServerSocketChannel.open();
+            m_socket.configureBlocking(false);
+            m_socket.socket().bind(new InetSocketAddress(port));
+        }
+
+        private static ByteBuffer readFully(SocketChannel client, int length) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.remaining() > 0) {
+                if (client.read(buf) < 0) {
+                    throw new IOException("Connection closed during handshake");
+                }
+            }
+            buf.flip();
+            return buf;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!m_shutdown.get()) {
+                    SocketChannel client = m_socket.accept();
+                    if (client == null) {
+                        Thread.sleep(1);
+                        continue;
+                    }
+                    client.configureBlocking(true);
+                    // length and version, then service, username and password hash
+                    readFully(client, 5);
+                    readFully(client, readFully(client, 4).getInt());
+                    readFully(client, readFully(client, 4).getInt());
+                    readFully(client, 20);
+
+                    final ByteBuffer responseBuffer = ByteBuffer.allocate(34);
+                    responseBuffer.putInt(30);
+                    responseBuffer.put((byte)0);//version
+                    responseBuffer.put((byte)0);//success response
+                    responseBuffer.putInt(0);//hostId
+                    responseBuffer.putLong(0);//connectionId
+                    responseBuffer.putLong(0);//instanceId
+                    responseBuffer.putInt(0);//instanceId pt 2
+                    responseBuffer.putInt(0);
+                    responseBuffer.flip();
+                    while (responseBuffer.hasRemaining()) {
+                        client.write(responseBuffer);
+                    }
+
+                    client.configureBlocking(false);
+                    m_network.registerChannel(client, new EchoHandler());
+                }
+                m_network.shutdown();
+                m_socket.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static class NullCallback implements ProcedureCallback {
+        @Override
+        public void clientCallback(ClientResponse clientResponse) {}
+    }
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+        int connections = 2;
+        int seconds = 5;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-connections")) {
+                connections = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seconds")) {
+                seconds = Integer.parseInt(args[++i]);
+            } else {
+                threadCounts.add(Integer.parseInt(args[i]));
+            }
+        }
+        if (threadCounts.isEmpty()) {
+            for (int t : new int[] { 1, 2, 4, 8, 16, 32 }) {
+                threadCounts.add(t);
+            }
+        }
+
+        final int basePort = 21212;
+        EchoServer servers[] = new EchoServer[connections];
+        for (int i = 0; i < connections; i++) {
+            servers[i] = new EchoServer(basePort + i);
+            servers[i].start();
+        }
+
+        final Distributer dist = new Distributer(false,
+                ClientConfig.DEFAULT_PROCEDURE_TIMOUT_MS,
+                ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                false);
+        dist.m_rateLimiter.setLimits(Integer.MAX_VALUE, 3000 * connections);
+        for (int i = 0; i < connections; i++) {
+            dist.createConnection("localhost", "", "", basePort + i);
+        }
+
+        // warm up
+        runThreads(dist, 4, 2000);
+        dist.drain();
+
+        for (int threads : threadCounts) {
+            final long durationMs = seconds * 1000L;
+            long count = runThreads(dist, threads, durationMs);
+            dist.drain();
+            System.out.printf("%d threads, %d connections: %d calls in %d ms => %.0f calls/sec%n",
+                    threads, connections, count, durationMs, count * 1000.0 / durationMs);
+        }
+
+        dist.shutdown();
+        for (EchoServer server : servers) {
+            server.m_shutdown.set(true);
+            server.join();
+        }
+        System.exit(0);
+    }
+
+    private static long runThreads(final Distributer dist, int threads, final long durationMs) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        final ProcedureCallback callback = new NullCallback();
+
+        for (int i = 0; i < threads; i++) {
+            final long threadHandleBase = (long)i << 40;
+            futures.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    long count = 0;
+                    barrier.await();
+                    final long stopTime = System.currentTimeMillis() + durationMs;
+                    while (count % 100 != 0 || System.currentTimeMillis() < stopTime) {
+                        ProcedureInvocation invocation =
+                                new ProcedureInvocation(threadHandleBase + count, "Noop", count);
+                        dist.queue(invocation, callback, true);
+                        count++;
+                    }
+                    return count;
+                }
+            }));
+        }
+
+        barrier.await();
+        long count = 0;
+        for (Future<Long> future : futures) {
+            count += future.get();
+        }
+        executor.shutdown();
+        return count;
+    }
+}
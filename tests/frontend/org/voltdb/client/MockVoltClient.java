@@ -155,6 +155,19 @@ public class MockVoltClient implements Client, ReplicaProcCaller{
         return false;
     }
 
+    @Override
+    public boolean callProceduresBatch(ProcedureCallBatch batch) {
+        // TODO Auto-generated method stub
+        return false;
+    }
+
+    @Override
+    public boolean callProcedureStreamed(StreamingProcedureCallback callback, int fetchSize,
+            String procName, Object... parameters) {
+        // TODO Auto-generated method stub
+        return false;
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
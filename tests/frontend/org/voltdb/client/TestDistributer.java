@@ -28,9 +28,16 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -39,6 +46,7 @@ import org.voltcore.network.Connection;
 import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltProtocolHandler;
+import org.voltcore.utils.DirectDeferredSerialization.PooledBuffers;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
@@ -67,7 +75,40 @@ public class TestDistributer extends TestCase {
                 if (spi.getProcName().equals("@Ping"))
                     gotPing = true;
 
-                if (sendResponses.get()) {
+                if (sendResponses.get() && spi.getFetchSize() > 0) {
+                    // stream a result that is several chunks long
+                    VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("Foo", VoltType.BIGINT));
+                    for (int i = 0; i < STREAMED_ROWS; i++) {
+                        vt.addRow(i);
+                    }
+                    ClientResponseImpl response = new ClientResponseImpl(ClientResponseImpl.SUCCESS,
+                            new VoltTable[] { vt }, "Extra String", spi.getClientHandle());
+                    final ByteBuffer buf = ByteBuffer.allocate(1024 * 1024);
+                    response.flattenChunksToBuffers(new PooledBuffers() {
+                        @Override
+                        public int maxClaim() {
+                            return buf.remaining();
+                        }
+                        @Override
+                        public ByteBuffer claim(int size) {
+                            ByteBuffer claimed = buf.slice();
+                            claimed.limit(size);
+                            buf.position(buf.position() + size);
+                            return claimed;
+                        }
+                        @Override
+                        public void put(ByteBuffer data) {
+                            buf.put(data);
+                        }
+                    }, spi.getFetchSize());
+                    buf.flip();
+                    ByteBuffer frames = ByteBuffer.allocate(buf.remaining());
+                    frames.put(buf);
+                    frames.flip();
+                    c.writeStream().enqueue(frames);
+                    roundTrips.incrementAndGet();
+                }
+                else if (sendResponses.get()) {
                     VoltTable vt[] = new VoltTable[1];
                     vt[0] = new VoltTable(new VoltTable.ColumnInfo("Foo", VoltType.BIGINT));
                     vt[0].addRow(1);
@@ -248,6 +289,8 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    static final int STREAMED_ROWS = 2500;
+
     public class ProcCallback implements ProcedureCallback {
         @Override
         public void clientCallback(ClientResponse clientResponse) {
@@ -370,6 +413,273 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    @Test
+    public void testQueueBatch() throws Exception {
+
+        // A batch is split across connections and every invocation gets its response.
+        MockVolt volt0, volt1, volt2;
+        volt0 = volt1 = volt2 = null;
+        try {
+            volt0 = new MockVolt(20010);
+            volt0.start();
+            volt1 = new MockVolt(20011);
+            volt1.start();
+            volt2 = new MockVolt(20012);
+            volt2.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_MS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false);
+            dist.createConnection("localhost", "", "", 20010);
+            dist.createConnection("localhost", "", "", 20011);
+            dist.createConnection("localhost", "", "", 20012);
+
+            final CountDownLatch latch = new CountDownLatch(30);
+            final Set<Long> responseHandles = Collections.synchronizedSet(new HashSet<Long>());
+            List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>();
+            List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>();
+            for (int i = 0; i < 30; i++) {
+                invocations.add(new ProcedureInvocation(i, "i1", new Integer(i)));
+                callbacks.add(new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        assertEquals(ClientResponse.SUCCESS, clientResponse.getStatus());
+                        responseHandles.add(((ClientResponseImpl)clientResponse).getClientHandle());
+                        latch.countDown();
+                    }
+                });
+            }
+
+            assertTrue(dist.queueBatch(invocations, callbacks, true));
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            dist.drain();
+
+            assertEquals(30, responseHandles.size());
+            assertEquals(10, volt0.handler.roundTrips.get());
+            assertEquals(10, volt1.handler.roundTrips.get());
+            assertEquals(10, volt2.handler.roundTrips.get());
+            dist.shutdown();
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+                volt0.join();
+            }
+            if (volt1 != null) {
+                volt1.shutdown();
+                volt1.join();
+            }
+            if (volt2 != null) {
+                volt2.shutdown();
+                volt2.join();
+            }
+        }
+    }
+
+    @Test
+    public void testQueueBatchLargerThanMaxOutstanding() throws Exception {
+
+        // A batch with more invocations than the outstanding limit, subject to backpressure,
+        // must send what it has permits for instead of waiting forever for permits.
+        MockVolt volt0 = null;
+        try {
+            volt0 = new MockVolt(20013);
+            volt0.start();
+
+            final Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_MS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false);
+            dist.m_rateLimiter.setLimits(Integer.MAX_VALUE, 5);
+            dist.createConnection("localhost", "", "", 20013);
+
+            final int count = 50;
+            final CountDownLatch latch = new CountDownLatch(count);
+            final List<Long> responseHandles = Collections.synchronizedList(new ArrayList<Long>());
+            final List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>();
+            final List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>();
+            for (int i = 0; i < count; i++) {
+                invocations.add(new ProcedureInvocation(i, "i1", new Integer(i)));
+                callbacks.add(new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        assertEquals(ClientResponse.SUCCESS, clientResponse.getStatus());
+                        responseHandles.add(((ClientResponseImpl)clientResponse).getClientHandle());
+                        latch.countDown();
+                    }
+                });
+            }
+
+            final AtomicBoolean queued = new AtomicBoolean(false);
+            Thread caller = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        queued.set(dist.queueBatch(invocations, callbacks, false));
+                    } catch (NoConnectionsException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            caller.start();
+            caller.join(10000);
+            assertFalse(caller.isAlive());
+            assertTrue(queued.get());
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            dist.drain();
+
+            // one connection, so responses come back in invocation order
+            assertEquals(count, responseHandles.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, responseHandles.get(i).longValue());
+            }
+            assertEquals(count, volt0.handler.roundTrips.get());
+            dist.shutdown();
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+                volt0.join();
+            }
+        }
+    }
+
+
+    @Test
+    public void testStreamedResult() throws Exception {
+        MockVolt volt0 = null;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_MS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false);
+            dist.createConnection("localhost", "", "", 20000);
+
+            final List<Long> rowsSeen = Collections.synchronizedList(new ArrayList<Long>());
+            final AtomicInteger chunks = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(1);
+            StreamingProcedureCallback cb = new StreamingProcedureCallback() {
+                @Override
+                public void clientCallbackRows(int tableIndex, VoltTable rows, ReadControl control) {
+                    assertEquals(0, tableIndex);
+                    assertTrue(rows.getRowCount() <= 1000);
+                    chunks.incrementAndGet();
+                    while (rows.advanceRow()) {
+                        rowsSeen.add(rows.getLong(0));
+                    }
+                }
+                @Override
+                public void clientCallback(ClientResponse response) {
+                    assertEquals(ClientResponse.SUCCESS, response.getStatus());
+                    VoltTable rest = response.getResults()[0];
+                    while (rest.advanceRow()) {
+                        rowsSeen.add(rest.getLong(0));
+                    }
+                    done.countDown();
+                }
+            };
+
+            ProcedureInvocation pi = new ProcedureInvocation(1, "i1", new Integer(1));
+            pi.setFetchSize(1000);
+            dist.queue(pi, cb, true);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            dist.drain();
+
+            assertEquals(2, chunks.get());
+            assertEquals(STREAMED_ROWS, rowsSeen.size());
+            for (int i = 0; i < STREAMED_ROWS; i++) {
+                assertEquals(i, rowsSeen.get(i).longValue());
+            }
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+                volt0.join();
+            }
+        }
+    }
+
+    @Test
+    public void testPausedStreamDoesNotBlockOtherCalls() throws Exception {
+        MockVolt volt0 = null;
+        try {
+            volt0 = new MockVolt(20014);
+            volt0.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_MS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false);
+            dist.createConnection("localhost", "", "", 20014);
+
+            // a consumer that pauses the stream at the first chunk and doesn't resume it
+            final List<VoltTable> chunks = Collections.synchronizedList(new ArrayList<VoltTable>());
+            final AtomicReference<StreamingProcedureCallback.ReadControl> control =
+                    new AtomicReference<StreamingProcedureCallback.ReadControl>();
+            final CountDownLatch firstChunk = new CountDownLatch(1);
+            final CountDownLatch streamDone = new CountDownLatch(1);
+            StreamingProcedureCallback cb = new StreamingProcedureCallback() {
+                @Override
+                public void clientCallbackRows(int tableIndex, VoltTable rows, ReadControl readControl) {
+                    chunks.add(rows);
+                    readControl.pause();
+                    control.set(readControl);
+                    firstChunk.countDown();
+                }
+                @Override
+                public void clientCallback(ClientResponse response) {
+                    assertEquals(ClientResponse.SUCCESS, response.getStatus());
+                    chunks.add(response.getResults()[0]);
+                    streamDone.countDown();
+                }
+            };
+
+            ProcedureInvocation pi = new ProcedureInvocation(1, "i1", new Integer(1));
+            pi.setFetchSize(100);
+            dist.queue(pi, cb, true);
+            assertTrue(firstChunk.await(10, TimeUnit.SECONDS));
+
+            // another call on the same connection still gets its response
+            final CountDownLatch otherDone = new CountDownLatch(1);
+            dist.queue(new ProcedureInvocation(2, "i1", new Integer(2)), new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse response) {
+                    assertEquals(ClientResponse.SUCCESS, response.getStatus());
+                    otherDone.countDown();
+                }
+            }, true);
+            assertTrue(otherDone.await(10, TimeUnit.SECONDS));
+
+            control.get().resume();
+            assertTrue(streamDone.await(10, TimeUnit.SECONDS));
+            dist.drain();
+
+            int rows = 0;
+            synchronized (chunks) {
+                for (VoltTable chunk : chunks) {
+                    while (chunk.advanceRow()) {
+                        assertEquals(rows++, chunk.getLong(0));
+                    }
+                }
+            }
+            assertEquals(STREAMED_ROWS, rows);
+
+            // a finished stream can't be paused again
+            control.get().pause();
+            assertFalse(((Distributer.NodeConnection.StreamReadControl)control.get()).isPaused());
+            dist.shutdown();
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+                volt0.join();
+            }
+        }
+    }
 
     /**
      * Test connection timeouts.
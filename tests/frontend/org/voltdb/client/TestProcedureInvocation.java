@@ -241,6 +241,42 @@ public class TestProcedureInvocation extends TestCase{
         assertEquals("test", spi.getProcName());
     }
 
+    /**
+     * A streamed invocation carries its fetch size, for both a plain and a replicated
+     * invocation, and survives the server's own re-serialization.
+     */
+    public void testStreamedFetchSize() throws Exception {
+        ProcedureInvocation invocation = new ProcedureInvocation(54321, "test", 1);
+        invocation.setFetchSize(500);
+        ProcedureInvocation replicated = new ProcedureInvocation(12345, 56789, 54322, "test", 1);
+        replicated.setFetchSize(600);
+
+        for (ProcedureInvocation pi : new ProcedureInvocation[] { invocation, replicated }) {
+            ByteBuffer buf = ByteBuffer.allocate(pi.getSerializedSize());
+            pi.flattenToBuffer(buf);
+            assertFalse(buf.hasRemaining());
+            buf.flip();
+
+            StoredProcedureInvocation spi = new StoredProcedureInvocation();
+            spi.initFromBuffer(buf);
+            assertEquals(pi == replicated ? ProcedureInvocationType.REPLICATED : ProcedureInvocationType.ORIGINAL,
+                         spi.getType());
+            assertEquals(pi.getFetchSize(), spi.getFetchSize());
+            assertEquals(pi.getHandle(), spi.getClientHandle());
+            assertEquals("test", spi.getProcName());
+            assertEquals(1, spi.getParams().toArray()[0]);
+
+            ByteBuffer copy = ByteBuffer.allocate(spi.getSerializedSize());
+            spi.flattenToBuffer(copy);
+            assertFalse(copy.hasRemaining());
+            copy.flip();
+            StoredProcedureInvocation spi2 = new FastDeserializer(copy).readObject(StoredProcedureInvocation.class);
+            assertEquals(pi.getFetchSize(), spi2.getFetchSize());
+            assertEquals(spi.getType(), spi2.getType());
+            assertEquals(spi.getOriginalTxnId(), spi2.getOriginalTxnId());
+        }
+    }
+
     public void testGetAsBytes() throws Exception {
         StoredProcedureInvocation spi = null;
         try {
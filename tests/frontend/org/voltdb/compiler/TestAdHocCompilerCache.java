@@ -0,0 +1,206 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+
+public class TestAdHocCompilerCache {
+
+    private static final Random s_random = new Random(0);
+
+    private static CorePlan makeCore(int fragmentSize) {
+        byte hash[] = new byte[20];
+        s_random.nextBytes(hash);
+        return new CorePlan(new byte[fragmentSize], null, hash, null,
+                            false, false, true, new VoltType[0], 0);
+    }
+
+    private static AdHocPlannedStatement makePlan(String sql, CorePlan core) {
+        return new AdHocPlannedStatement(sql.getBytes(Constants.UTF8ENCODING), core,
+                                         ParameterSet.emptyParameterSet(), null, null, null);
+    }
+
+    @Test
+    public void testTwoLevels() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(1024 * 1024, 1024 * 1024);
+        assertNull(cache.getWithSQL("select * from t where a = 1"));
+        assertNull(cache.getWithParsedToken("token"));
+
+        AdHocPlannedStatement plan1 = makePlan("select * from t where a = 1", makeCore(100));
+        cache.put("select * from t where a = 1", "token", plan1);
+        assertEquals(plan1, cache.getWithSQL("select * from t where a = 1"));
+        assertEquals(1, cache.getWithParsedToken("token").size());
+
+        // a second literal with the same core plan shares the variant
+        AdHocPlannedStatement plan2 = makePlan("select * from t where a = 2", plan1.core);
+        cache.put("select * from t where a = 2", "token", plan2);
+        assertEquals(1, cache.getWithParsedToken("token").size());
+
+        // a different plan for the same token is kept as another variant
+        AdHocPlannedStatement plan3 = makePlan("select * from t where a = 3", makeCore(100));
+        cache.put("select * from t where a = 3", "token", plan3);
+        List<BoundPlan> variants = cache.getWithParsedToken("token");
+        assertEquals(2, variants.size());
+        try {
+            variants.clear();
+            fail();
+        } catch (UnsupportedOperationException expected) {}
+
+        assertEquals(3, cache.getLiteralCacheSize());
+        assertEquals(1, cache.getCoreCacheSize());
+        assertTrue(cache.getLiteralCacheBytes() > 3 * 100);
+        assertTrue(cache.getCoreCacheBytes() > 2 * 100);
+    }
+
+    @Test
+    public void testSizeLimitedByBytes() {
+        final long limit = 256 * 1024;
+        AdHocCompilerCache cache = new AdHocCompilerCache(limit, limit);
+        for (int i = 0; i < 2000; i++) {
+            String sql = "select * from t where a = " + i;
+            // asked for twice, so it passes admission
+            cache.getWithSQL(sql);
+            cache.getWithSQL(sql);
+            cache.put(sql, "token" + i, makePlan(sql, makeCore(1000)));
+        }
+        assertTrue(cache.getLiteralCacheBytes() <= limit);
+        assertTrue(cache.getCoreCacheBytes() <= limit);
+        assertTrue(cache.getLiteralCacheEvictions() > 0);
+        assertTrue(cache.getCoreCacheEvictions() > 0);
+        assertTrue(cache.getLiteralCacheSize() < 2000);
+        assertEquals(0, cache.getLiteralCacheRejections());
+    }
+
+    @Test
+    public void testAdmissionKeepsReusedLiterals() {
+        final long limit = 256 * 1024;
+        AdHocCompilerCache cache = new AdHocCompilerCache(limit, limit);
+        List<String> hot = new ArrayList<String>();
+        // fill the cache with literals that are asked for repeatedly
+        for (int i = 0; cache.getLiteralCacheBytes() < limit * 0.9; i++) {
+            String sql = "select * from hot where a = " + i;
+            hot.add(sql);
+            cache.getWithSQL(sql);
+            cache.getWithSQL(sql);
+            cache.put(sql, "hot", makePlan(sql, makeCore(1000)));
+        }
+        // a stream of literals that are only asked for once
+        for (int i = 0; i < 1000; i++) {
+            String sql = "select * from cold where a = " + i;
+            assertNull(cache.getWithSQL(sql));
+            cache.put(sql, "cold", makePlan(sql, makeCore(1000)));
+        }
+        assertTrue(cache.getLiteralCacheRejections() > 900);
+        int hits = 0;
+        for (String sql : hot) {
+            if (cache.getWithSQL(sql) != null) {
+                hits++;
+            }
+        }
+        assertTrue("Only " + hits + " of " + hot.size() + " hot literals remain", hits > hot.size() * 0.9);
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        final AdHocCompilerCache cache = new AdHocCompilerCache(64 * 1024 * 1024, 64 * 1024 * 1024);
+        final CorePlan cores[] = new CorePlan[8];
+        for (int i = 0; i < cores.length; i++) {
+            cores[i] = makeCore(100);
+        }
+        final int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread planners[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            planners[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random r = new Random(seed);
+                    try {
+                        start.await();
+                        for (int i = 0; i < 20000; i++) {
+                            int token = r.nextInt(50);
+                            int value = r.nextInt(100);
+                            String sql = "select * from t" + token + " where a = " + value;
+                            if (cache.getWithSQL(sql) == null) {
+                                // the same literal always plans to the same core
+                                cache.put(sql, "token" + token,
+                                          makePlan(sql, cores[(token + value % 2) % cores.length]));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            };
+            planners[t].start();
+        }
+        start.countDown();
+        for (Thread t : planners) {
+            t.join();
+        }
+        assertNull(failure.get());
+
+        // every token ends up with its two possible cores, once each
+        assertEquals(50, cache.getCoreCacheSize());
+        for (int token = 0; token < 50; token++) {
+            assertEquals(2, cache.getWithParsedToken("token" + token).size());
+        }
+        assertEquals(5000, cache.getLiteralCacheSize());
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        AdHocCompilerCache.FrequencySketch sketch = new AdHocCompilerCache.FrequencySketch(1 << 10);
+        assertEquals(0, sketch.frequency(42));
+        sketch.increment(42);
+        sketch.increment(42);
+        assertEquals(2, sketch.frequency(42));
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(7);
+        }
+        assertEquals(AdHocCompilerCache.FrequencySketch.MAX_COUNT, sketch.frequency(7));
+
+        // enough increments of another hash to age every counter once
+        for (int i = 0; i < 1 << 10; i++) {
+            sketch.increment(1000);
+        }
+        assertEquals(AdHocCompilerCache.FrequencySketch.MAX_COUNT / 2, sketch.frequency(7));
+        assertEquals(1, sketch.frequency(42));
+    }
+}
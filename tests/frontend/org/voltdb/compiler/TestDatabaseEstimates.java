@@ -0,0 +1,169 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+
+import org.hsqldb_voltpatches.HSQLInterface;
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.VoltCompiler.DdlProceduresToLoad;
+import org.voltdb.planner.CompiledPlan;
+import org.voltdb.planner.PartitioningForStatement;
+import org.voltdb.planner.QueryPlanner;
+import org.voltdb.planner.TrivialCostModel;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.AbstractScanPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+public class TestDatabaseEstimates {
+
+    private static VoltTable tableStats(Object[]... rows) {
+        VoltTable t = new VoltTable(
+                new ColumnInfo("PARTITION_ID", VoltType.BIGINT),
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("TUPLE_COUNT", VoltType.BIGINT));
+        for (Object[] row : rows) {
+            t.addRow(row);
+        }
+        return t;
+    }
+
+    private static VoltTable indexStats(Object[]... rows) {
+        VoltTable t = new VoltTable(
+                new ColumnInfo("PARTITION_ID", VoltType.BIGINT),
+                new ColumnInfo("INDEX_NAME", VoltType.STRING),
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("IS_UNIQUE", VoltType.TINYINT),
+                new ColumnInfo("ENTRY_COUNT", VoltType.BIGINT));
+        for (Object[] row : rows) {
+            t.addRow(row);
+        }
+        return t;
+    }
+
+    private static DatabaseEstimates bigAndSmall() {
+        return DatabaseEstimates.fromStatistics(
+                tableStats(new Object[] { 0, "BIG", 1000000 },
+                           new Object[] { 1, "BIG", 900000 },
+                           new Object[] { 0, "SMALL", 10 },
+                           new Object[] { 1, "SMALL", 10 }),
+                indexStats(new Object[] { 0, "BIG_PK", "BIG", 1, 1000000 },
+                           new Object[] { 1, "BIG_PK", "BIG", 1, 900000 },
+                           new Object[] { 0, "SMALL_PK", "SMALL", 1, 10 },
+                           new Object[] { 0, "ORPHAN_IDX", "MISSING", 0, 10 }));
+    }
+
+    @Test
+    public void testDefaults() {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        assertFalse(estimates.hasStatistics());
+        DatabaseEstimates.TableEstimates table = estimates.getEstimatesForTable("NOPE");
+        assertEquals(1000000, table.maxTuples);
+        assertEquals(100000, table.minTuples);
+        // looking up a table doesn't add it
+        assertTrue(estimates.tables.isEmpty());
+        assertNull(estimates.getEstimatesForIndex("NOPE", "NOPE_IDX"));
+    }
+
+    @Test
+    public void testFromStatistics() {
+        DatabaseEstimates estimates = bigAndSmall();
+        assertTrue(estimates.hasStatistics());
+        assertEquals(1000000, estimates.getEstimatesForTable("BIG").maxTuples);
+        assertEquals(900000, estimates.getEstimatesForTable("BIG").minTuples);
+        assertEquals(10, estimates.getEstimatesForTable("SMALL").maxTuples);
+
+        DatabaseEstimates.IndexEstimates pk = estimates.getEstimatesForIndex("BIG", "BIG_PK");
+        assertEquals(1000000, pk.entryCount);
+        assertEquals(1000000, pk.distinctKeys);
+        assertNull(estimates.getEstimatesForIndex("MISSING", "ORPHAN_IDX"));
+    }
+
+    @Test
+    public void testFileRoundTrip() throws Exception {
+        DatabaseEstimates estimates = bigAndSmall();
+        estimates.getEstimatesForIndex("SMALL", "SMALL_PK").distinctKeys = 3;
+        File file = File.createTempFile("estimates", ".json");
+        try {
+            estimates.writeToFile(file);
+            DatabaseEstimates read = DatabaseEstimates.readFromFile(file);
+            assertTrue(read.hasStatistics());
+            assertEquals(1000000, read.getEstimatesForTable("BIG").maxTuples);
+            assertEquals(900000, read.getEstimatesForTable("BIG").minTuples);
+            assertEquals(10, read.getEstimatesForIndex("SMALL", "SMALL_PK").entryCount);
+            assertEquals(3, read.getEstimatesForIndex("SMALL", "SMALL_PK").distinctKeys);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String outerTableOfJoin(String sql, DatabaseEstimates estimates) throws Exception {
+        File ddl = File.createTempFile("estimates", ".sql");
+        try {
+            FileWriter writer = new FileWriter(ddl);
+            writer.write("CREATE TABLE BIG (ID INTEGER NOT NULL, V INTEGER, " +
+                         "CONSTRAINT BIG_PK PRIMARY KEY (ID));\n" +
+                         "CREATE TABLE SMALL (ID INTEGER NOT NULL, V INTEGER, " +
+                         "CONSTRAINT SMALL_PK PRIMARY KEY (ID));\n");
+            writer.close();
+            VoltCompiler compiler = new VoltCompiler();
+            HSQLInterface hsql = HSQLInterface.loadHsqldb();
+            Catalog catalog = compiler.loadSchema(hsql, DdlProceduresToLoad.NO_DDL_PROCEDURES, ddl.getPath());
+            Database db = compiler.getCatalogDatabase();
+
+            QueryPlanner planner = new QueryPlanner(sql, "stmt", "proc",
+                    catalog.getClusters().get("cluster"), db,
+                    new PartitioningForStatement("forced", true, true), hsql, estimates, false,
+                    StatementCompiler.DEFAULT_MAX_JOIN_TABLES, new TrivialCostModel(), null, null,
+                    DeterminismMode.SAFER);
+            planner.parse();
+            CompiledPlan plan = planner.plan();
+            assertNotNull(plan);
+            List<AbstractPlanNode> joins = plan.rootPlanGraph.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX);
+            assertEquals(1, joins.size());
+            return ((AbstractScanPlanNode) joins.get(0).getChild(0)).getTargetTableName();
+        } finally {
+            ddl.delete();
+        }
+    }
+
+    @Test
+    public void testStatisticsDriveJoinOrder() throws Exception {
+        // Either order reads "one" table of a million rows without statistics,
+        // but with them the small table belongs on the outside of the join.
+        final String sql = "SELECT * FROM BIG, SMALL WHERE BIG.ID = SMALL.ID AND SMALL.V = 5;";
+        assertEquals("SMALL", outerTableOfJoin(sql, bigAndSmall()));
+        final String reversed = "SELECT * FROM SMALL, BIG WHERE BIG.ID = SMALL.ID AND SMALL.V = 5;";
+        assertEquals("SMALL", outerTableOfJoin(reversed, bigAndSmall()));
+    }
+}
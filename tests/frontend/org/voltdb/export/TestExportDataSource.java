@@ -421,6 +421,77 @@ public class TestExportDataSource extends TestCase {
      * Test basic release.  create two buffers, release the first one, and
      * ensure that our next poll returns the second one.
      */
+    /*
+     * A block of rows holding nothing but a transaction id each, enough for truncation to parse
+     */
+    private static ByteBuffer rowsWithTxnIds(int nullArrayLength, long... txnIds) {
+        ByteBuffer buf = ByteBuffer.allocate(txnIds.length * (4 + nullArrayLength + 8));
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        for (long txnId : txnIds) {
+            buf.putInt(nullArrayLength + 8);
+            buf.position(buf.position() + nullArrayLength);
+            buf.putLong(txnId);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    public void testPendingBytesAndLag() throws Exception
+    {
+        VoltDB.replaceVoltDBInstanceForTest(m_mockVoltDB);
+        Table table = m_mockVoltDB.getCatalogContext().database.getTables().get("TableName");
+        ExportDataSource s = new ExportDataSource( Mockito.mock(Runnable.class),
+                                            "database",
+                                            table.getTypeName(),
+                                            m_part,
+                                            m_site,
+                                            table.getSignature(),
+                                            0,
+                                            table.getColumns(),
+                                            "/tmp");
+        assertEquals(0, s.getPendingBytes());
+        assertEquals(0, s.getLagMillis(System.currentTimeMillis()));
+
+        final int nullArrayLength = ((s.m_columnTypes.size() + 7) & -8) >> 3;
+        ByteBuffer first = rowsWithTxnIds(nullArrayLength, 1, 2);
+        ByteBuffer second = rowsWithTxnIds(nullArrayLength, 3, 4);
+        s.pushExportBuffer(0, 0, first, false, false);
+        Thread.sleep(50);
+        final long secondPushed = System.currentTimeMillis();
+        s.pushExportBuffer(first.capacity(), 0, second, false, false);
+
+        // sizeInBytes() runs behind the pushes on the source's executor
+        assertEquals(first.capacity() + second.capacity(), s.sizeInBytes());
+        assertEquals(first.capacity() + second.capacity(), s.getPendingBytes());
+        // The first block is the oldest one waiting
+        assertTrue(s.getLagMillis(secondPushed + 1000) > 1000);
+
+        // Acking the first block leaves the second as the oldest
+        s.ack(first.capacity());
+        assertEquals(second.capacity(), s.sizeInBytes());
+        assertEquals(second.capacity(), s.getPendingBytes());
+        long lag = s.getLagMillis(secondPushed + 1000);
+        assertTrue(lag > 0 && lag <= 1000);
+
+        // Flatten to disk, truncation only works on persisted blocks
+        ByteBuffer third = rowsWithTxnIds(nullArrayLength, 5, 6);
+        s.pushExportBuffer(first.capacity() + second.capacity(), 0, third, true, false);
+        final long flattenedBytes = s.sizeInBytes();
+        assertEquals(flattenedBytes, s.getPendingBytes());
+
+        // Dropping the third block leaves the second as the oldest
+        s.truncateExportToTxnId(4).get();
+        assertEquals(s.sizeInBytes(), s.getPendingBytes());
+        assertTrue(s.getPendingBytes() < flattenedBytes);
+        lag = s.getLagMillis(secondPushed + 1000);
+        assertTrue(lag > 0 && lag <= 1000);
+
+        // Nothing left means no lag
+        s.truncateExportToTxnId(2).get();
+        assertEquals(0, s.getPendingBytes());
+        assertEquals(0, s.getLagMillis(secondPushed + 1000));
+    }
+
     public void testSimpleRelease() throws Exception
     {
         VoltDB.replaceVoltDBInstanceForTest(m_mockVoltDB);
@@ -0,0 +1,196 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.export.processors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.VoltType;
+import org.voltdb.export.ExportDataSource;
+import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
+import org.voltdb.exportclient.ExportDecoderBase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class TestDecodePipeline extends TestCase {
+
+    private static final VoltLogger m_logger = new VoltLogger("EXPORT");
+
+    /*
+     * Holds up the first block it is given, and runs on whatever executor it is handed
+     */
+    static class TestDecoder extends ExportDecoderBase {
+        final CountDownLatch m_release;
+        final long m_firstBlockSleep;
+        final ListeningExecutorService m_executor;
+        final AtomicInteger m_blocksStarted = new AtomicInteger(0);
+
+        TestDecoder(AdvertisedDataSource source, CountDownLatch release, long firstBlockSleep,
+                ListeningExecutorService executor) {
+            super(source);
+            m_release = release;
+            m_firstBlockSleep = firstBlockSleep;
+            m_executor = executor;
+        }
+
+        @Override
+        public boolean processRow(int rowSize, byte[] rowData) {
+            return true;
+        }
+
+        @Override
+        public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
+        }
+
+        @Override
+        public void onBlockStart() {
+            if (m_blocksStarted.incrementAndGet() == 1) {
+                Uninterruptibles.sleepUninterruptibly(m_firstBlockSleep, TimeUnit.MILLISECONDS);
+            }
+            Uninterruptibles.awaitUninterruptibly(m_release);
+        }
+
+        @Override
+        public ListeningExecutorService getExecutor() {
+            return m_executor;
+        }
+    }
+
+    // Every poll of the source, for the test to complete when it wants
+    private final LinkedBlockingQueue<SettableFuture<BBContainer>> m_polls =
+            new LinkedBlockingQueue<SettableFuture<BBContainer>>();
+    // Blocks in the order they were acked
+    private final List<Integer> m_acks = Collections.synchronizedList(new ArrayList<Integer>());
+    private ExportDataSource m_source;
+    private AdvertisedDataSource m_ads;
+
+    @Override
+    public void setUp() {
+        m_source = mock(ExportDataSource.class);
+        when(m_source.getTableName()).thenReturn("T");
+        when(m_source.poll()).thenAnswer(new Answer<ListenableFuture<BBContainer>>() {
+            @Override
+            public ListenableFuture<BBContainer> answer(InvocationOnMock invocation) {
+                SettableFuture<BBContainer> fut = SettableFuture.create();
+                m_polls.offer(fut);
+                return fut;
+            }
+        });
+        m_ads = new AdvertisedDataSource(0, "foo", "T", 0, 0,
+                new ArrayList<String>(), new ArrayList<VoltType>(), new ArrayList<Integer>());
+    }
+
+    // An empty block that records when it is acked
+    private BBContainer block(final int id) {
+        return new BBContainer(ByteBuffer.allocate(0), 0) {
+            @Override
+            public void discard() {
+                m_acks.add(id);
+            }
+        };
+    }
+
+    private SettableFuture<BBContainer> nextPoll() throws InterruptedException {
+        SettableFuture<BBContainer> fut = m_polls.poll(10, TimeUnit.SECONDS);
+        assertNotNull("Pipeline didn't poll the source", fut);
+        return fut;
+    }
+
+    private void waitForAcks(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (m_acks.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, m_acks.size());
+    }
+
+    public void testInFlightBlocksAreBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TestDecoder decoder = new TestDecoder(m_ads, release, 0, MoreExecutors.sameThreadExecutor());
+        DecodePipeline pipeline = new DecodePipeline(m_source, decoder, m_ads, 2, m_logger);
+
+        pipeline.poll();
+        SettableFuture<BBContainer> first = nextPoll();
+        // Only one poll at a time is allowed by the source
+        pipeline.poll();
+        assertTrue(m_polls.isEmpty());
+
+        // The decoder holds on to the first block, the pipeline polls one more ahead of it
+        first.set(block(1));
+        nextPoll().set(block(2));
+        assertNull(m_polls.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(m_acks.isEmpty());
+
+        // Each block decoded makes room for one more
+        release.countDown();
+        waitForAcks(2);
+        nextPoll().set(block(3));
+        waitForAcks(3);
+        assertEquals(Arrays.asList(1, 2, 3), m_acks);
+
+        pipeline.shutdown();
+    }
+
+    public void testAcksFollowPollOrder() throws Exception {
+        // A decoder on a pool could finish later blocks before the first one
+        ListeningExecutorService decoderPool = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        try {
+            TestDecoder decoder = new TestDecoder(m_ads, new CountDownLatch(0), 200, decoderPool);
+            DecodePipeline pipeline = new DecodePipeline(m_source, decoder, m_ads, 4, m_logger);
+
+            pipeline.poll();
+            for (int i = 1; i <= 4; i++) {
+                nextPoll().set(block(i));
+            }
+            waitForAcks(4);
+            assertEquals(Arrays.asList(1, 2, 3, 4), m_acks);
+            assertEquals(4, decoder.m_blocksStarted.get());
+
+            pipeline.shutdown();
+        } finally {
+            decoderPool.shutdown();
+        }
+    }
+}
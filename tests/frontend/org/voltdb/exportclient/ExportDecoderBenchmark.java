@@ -0,0 +1,146 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.exportclient;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Compares decoding a block of export rows through processRow(int, byte[]) and
+ * decodeRow() with reading the same fields through an ExportRowCursor. Run main()
+ * for numbers from a warmed up JVM.
+ */
+public class ExportDecoderBenchmark extends TestCase {
+
+    static final int ROWS = 100000;
+
+    static class SummingDecoder extends ExportDecoderBase {
+        long m_sum = 0;
+
+        SummingDecoder(AdvertisedDataSource source) {
+            super(source);
+        }
+
+        @Override
+        public boolean processRow(int rowSize, byte[] rowData) {
+            try {
+                Object[] row = decodeRow(rowData);
+                m_sum += ((Number)row[3]).longValue() + ((String)row[6]).length();
+            } catch (Exception e) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
+        }
+    }
+
+    static class CursorSummingDecoder extends SummingDecoder {
+        CursorSummingDecoder(AdvertisedDataSource source) {
+            super(source);
+        }
+
+        @Override
+        public boolean processRow(ExportRowCursor row) {
+            m_sum += row.getLong(3) + row.getLength(6);
+            return true;
+        }
+    }
+
+    static ByteBuffer buildBlock() throws Exception {
+        byte[] rowData = TestExportDecoderBase.encodeRow(TestExportDecoderBase.COLUMN_TYPES,
+                new Object[] {(byte)1, (short)2, 3, 4L, 5.5, new TimestampType(6), "seven", "8.000000000000"});
+        ByteBuffer block = ByteBuffer.allocateDirect((rowData.length + 4) * ROWS).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < ROWS; i++) {
+            block.putInt(rowData.length);
+            block.put(rowData);
+        }
+        block.flip();
+        return block;
+    }
+
+    /*
+     * Hand every row of the block to the decoder the way GuestProcessor does
+     */
+    static long decodeBlock(ExportDecoderBase decoder, ByteBuffer block, boolean copy) throws Exception {
+        block.rewind();
+        final ExportRowCursor cursor = decoder.createRowCursor();
+        while (block.hasRemaining()) {
+            int length = block.getInt();
+            if (copy) {
+                byte[] rowdata = new byte[length];
+                block.get(rowdata, 0, length);
+                decoder.processRow(length, rowdata);
+            } else {
+                final int rowStart = block.position();
+                decoder.processRow(cursor.reset(block, rowStart, length));
+                block.position(rowStart + length);
+            }
+        }
+        return ROWS;
+    }
+
+    static double rowsPerSecond(SummingDecoder decoder, ByteBuffer block, boolean copy, int iterations)
+            throws Exception {
+        long rows = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            rows += decodeBlock(decoder, block, copy);
+        }
+        return rows / ((System.nanoTime() - start) / 1000000000.0);
+    }
+
+    public void testCursorAndCopyDecodeTheSame() throws Exception {
+        ByteBuffer block = buildBlock();
+        SummingDecoder copying = new SummingDecoder(TestExportDecoderBase.constructTestSource());
+        SummingDecoder cursor = new CursorSummingDecoder(TestExportDecoderBase.constructTestSource());
+        decodeBlock(copying, block, true);
+        decodeBlock(cursor, block, false);
+        assertEquals(ROWS * 9L, copying.m_sum);
+        assertEquals(copying.m_sum, cursor.m_sum);
+    }
+
+    public void testThroughput() throws Exception {
+        ByteBuffer block = buildBlock();
+        SummingDecoder copying = new SummingDecoder(TestExportDecoderBase.constructTestSource());
+        SummingDecoder cursor = new CursorSummingDecoder(TestExportDecoderBase.constructTestSource());
+        rowsPerSecond(copying, block, true, 5);
+        rowsPerSecond(cursor, block, false, 5);
+        System.out.printf("copy + decodeRow: %.0f rows/sec, cursor: %.0f rows/sec%n",
+                rowsPerSecond(copying, block, true, 20), rowsPerSecond(cursor, block, false, 20));
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            new ExportDecoderBenchmark().testThroughput();
+        }
+    }
+}
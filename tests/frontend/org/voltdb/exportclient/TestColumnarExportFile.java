@@ -0,0 +1,154 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+public class TestColumnarExportFile extends TestCase {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "TI", "SI", "I", "BI", "F", "TS", "S", "VB", "D");
+    private static final List<VoltType> TYPES = Arrays.asList(
+            VoltType.TINYINT, VoltType.SMALLINT, VoltType.INTEGER, VoltType.BIGINT, VoltType.FLOAT,
+            VoltType.TIMESTAMP, VoltType.STRING, VoltType.VARBINARY, VoltType.DECIMAL);
+
+    private static List<Object[]> generateRows(int count, boolean repetitive) {
+        Random r = new Random(0);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        long timestamp = 1370000000000000L;
+        for (int i = 0; i < count; i++) {
+            timestamp += r.nextInt(1000);
+            int choice = repetitive ? i / 100 : r.nextInt();
+            rows.add(new Object[] {
+                    i % 7 == 0 ? null : (byte)choice,
+                    (short)(repetitive ? 5 : r.nextInt()),
+                    i % 3 == 0 ? null : choice,
+                    repetitive ? (long)i : r.nextLong(),
+                    repetitive ? 1.5 : r.nextDouble(),
+                    new TimestampType(timestamp),
+                    i % 5 == 0 ? null : "value" + (repetitive ? choice % 4 : r.nextInt()),
+                    new byte[] { (byte)choice, (byte)(choice >> 8) },
+                    new BigDecimal(repetitive ? "12.500000000000" : r.nextInt() + ".123456789012")
+            });
+        }
+        return rows;
+    }
+
+    private static byte[] write(List<Object[]> rows, int rowsPerBlock) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ColumnarExportFile.Writer writer = new ColumnarExportFile.Writer(baos, NAMES, TYPES, rowsPerBlock);
+        for (Object[] row : rows) {
+            writer.writeRow(row, 0);
+        }
+        writer.close();
+        return baos.toByteArray();
+    }
+
+    private static void checkRows(List<Object[]> expected, byte[] file) throws Exception {
+        ColumnarExportFile.Reader reader = new ColumnarExportFile.Reader(new ByteArrayInputStream(file));
+        assertEquals(NAMES, reader.getColumnNames());
+        assertEquals(TYPES, reader.getColumnTypes());
+        for (Object[] row : expected) {
+            Object[] actual = reader.readRow();
+            assertNotNull(actual);
+            assertEquals(row.length, actual.length);
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] instanceof byte[]) {
+                    assertTrue(Arrays.equals((byte[])row[i], (byte[])actual[i]));
+                } else {
+                    assertEquals(row[i], actual[i]);
+                }
+            }
+        }
+        assertNull(reader.readRow());
+        reader.close();
+    }
+
+    public void testRoundTrip() throws Exception {
+        List<Object[]> rows = generateRows(1000, false);
+        checkRows(rows, write(rows, ColumnarExportFile.DEFAULT_ROWS_PER_BLOCK));
+    }
+
+    public void testRoundTripEncodedColumns() throws Exception {
+        List<Object[]> rows = generateRows(1000, true);
+        checkRows(rows, write(rows, ColumnarExportFile.DEFAULT_ROWS_PER_BLOCK));
+    }
+
+    public void testMultipleBlocks() throws Exception {
+        List<Object[]> rows = generateRows(1000, true);
+        checkRows(rows, write(rows, 77));
+        rows = generateRows(1000, false);
+        checkRows(rows, write(rows, 1));
+    }
+
+    public void testFlushWritesShortBlocks() throws Exception {
+        List<Object[]> rows = generateRows(10, false);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ColumnarExportFile.Writer writer = new ColumnarExportFile.Writer(baos, NAMES, TYPES);
+        for (Object[] row : rows) {
+            writer.writeRow(row, 0);
+            writer.flush();
+        }
+        writer.flush();
+        checkRows(rows, baos.toByteArray());
+        writer.close();
+    }
+
+    public void testEmptyFile() throws Exception {
+        checkRows(new ArrayList<Object[]>(), write(new ArrayList<Object[]>(), 10));
+    }
+
+    public void testNullColumns() throws Exception {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 20; i++) {
+            rows.add(new Object[NAMES.size()]);
+        }
+        checkRows(rows, write(rows, 16));
+    }
+
+    public void testRepetitiveDataIsSmall() throws Exception {
+        List<Object[]> rows = generateRows(10000, true);
+        // a few bytes a row, where the CSV form of these rows is around 100 bytes
+        assertTrue(write(rows, ColumnarExportFile.DEFAULT_ROWS_PER_BLOCK).length < 10000 * 5);
+    }
+
+    public void testVarints() throws Exception {
+        long values[] = { 0, 1, -1, 63, -64, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values) {
+            assertEquals(value, ColumnarExportFile.unZigZag(ColumnarExportFile.zigZag(value)));
+        }
+    }
+}
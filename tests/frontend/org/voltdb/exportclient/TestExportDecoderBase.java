@@ -23,6 +23,9 @@
 package org.voltdb.exportclient;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -31,6 +34,7 @@ import junit.framework.TestCase;
 import org.voltdb.VoltType;
 import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
 import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.types.TimestampType;
 
 public class TestExportDecoderBase extends TestCase
 {
@@ -109,4 +113,123 @@ public class TestExportDecoderBase extends TestCase
             }
         }
     }
+
+    /**
+     * Encode a row of values in the export wire format, null values are flagged
+     * and left out
+     */
+    static byte[] encodeRow(VoltType[] types, Object[] values) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] nullBits = new byte[((types.length + 7) & -8) >> 3];
+        for (int i = 0; i < types.length; i++) {
+            if (values[i] == null) {
+                nullBits[i >> 3] |= (byte) (0x80 >>> (i % 8));
+            }
+        }
+        buf.put(nullBits);
+        for (int i = 0; i < types.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            switch (types[i]) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                buf.putLong(((Number)values[i]).longValue());
+                break;
+            case FLOAT:
+                buf.putDouble((Double)values[i]);
+                break;
+            case TIMESTAMP:
+                buf.putLong(((TimestampType)values[i]).getTime());
+                break;
+            case STRING:
+            case DECIMAL:
+                byte[] bytes = values[i].toString().getBytes("UTF-8");
+                buf.putInt(bytes.length);
+                buf.put(bytes);
+                break;
+            case VARBINARY:
+                buf.putInt(((byte[])values[i]).length);
+                buf.put((byte[])values[i]);
+                break;
+            default:
+                throw new IOException("Invalid column type: " + types[i]);
+            }
+        }
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    static final Object[] TEST_ROW =
+    {(byte)1, (short)-2, 3, 4L, 5.5, new TimestampType(6),
+     "seven", new BigDecimal("8.000000000000")};
+
+    public void testRowCursorMatchesDecodeRow() throws IOException
+    {
+        StubExportDecoder dut =
+            new StubExportDecoder(constructTestSource());
+        for (int nullColumn = -1; nullColumn < COLUMN_TYPES.length; nullColumn++)
+        {
+            Object[] values = TEST_ROW.clone();
+            if (nullColumn >= 0) {
+                values[nullColumn] = null;
+            }
+            byte[] rowData = encodeRow(COLUMN_TYPES, values);
+            Object[] decoded = dut.decodeRow(rowData);
+
+            // surround the row with other data, the cursor mustn't depend on position
+            ByteBuffer block = ByteBuffer.allocate(rowData.length + 20).order(ByteOrder.LITTLE_ENDIAN);
+            block.position(10);
+            block.put(rowData);
+            block.position(3);
+            ExportRowCursor cursor = dut.createRowCursor().reset(block, 10, rowData.length);
+            assertTrue(cursor.isValid());
+            assertEquals(3, block.position());
+            assertTrue(Arrays.equals(rowData, cursor.getRowBytes()));
+            for (int i = 0; i < COLUMN_TYPES.length; i++)
+            {
+                assertEquals(i == nullColumn, cursor.isNull(i));
+                assertEquals(values[i], decoded[i]);
+                assertEquals(decoded[i], cursor.getObject(i));
+            }
+            if (nullColumn == -1) {
+                assertEquals(3, cursor.getLong(2));
+                assertEquals(5.5, cursor.getDouble(4));
+                assertEquals(6, cursor.getTimestamp(5));
+                assertEquals(5, cursor.getLength(6));
+                byte[] dest = new byte[7];
+                assertEquals(5, cursor.getBytes(6, dest, 2));
+                assertEquals("seven", new String(dest, 2, 5, "UTF-8"));
+            }
+        }
+    }
+
+    public void testRowCursorDirectBuffer() throws IOException
+    {
+        StubExportDecoder dut =
+            new StubExportDecoder(constructTestSource());
+        byte[] rowData = encodeRow(COLUMN_TYPES, TEST_ROW);
+        ByteBuffer block = ByteBuffer.allocateDirect(rowData.length).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(rowData);
+        ExportRowCursor cursor = dut.createRowCursor().reset(block, 0, rowData.length);
+        assertTrue(cursor.isValid());
+        assertEquals("seven", cursor.getString(6));
+        assertEquals(new BigDecimal("8.000000000000"), cursor.getDecimal(7));
+        assertTrue(Arrays.equals(rowData, cursor.getRowBytes()));
+    }
+
+    public void testRowCursorMalformedRow() throws IOException
+    {
+        StubExportDecoder dut =
+            new StubExportDecoder(constructTestSource());
+        byte[] rowData = encodeRow(COLUMN_TYPES, TEST_ROW);
+        ByteBuffer block = ByteBuffer.wrap(rowData).order(ByteOrder.LITTLE_ENDIAN);
+        ExportRowCursor cursor = dut.createRowCursor();
+        assertFalse(cursor.reset(block, 0, rowData.length - 1).isValid());
+        assertEquals(rowData.length - 1, cursor.getRowBytes().length);
+        assertFalse(cursor.reset(block, 0, 0).isValid());
+        assertTrue(cursor.reset(block, 0, rowData.length).isValid());
+    }
 }
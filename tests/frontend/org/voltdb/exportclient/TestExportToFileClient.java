@@ -67,6 +67,46 @@ public class TestExportToFileClient extends TestCase {
         decoder0.sourceNoLongerAdvertised(source0);
     }
 
+    public void testOutputFormat() throws Exception {
+        File outdir = new File("/tmp/" + System.getProperty("user.name"));
+        // A 'c' delimiter is just a delimiter, only the format picks columnar output
+        ExportToFileClient tsvClient =
+            new ExportToFileClient(
+                'c',
+                "testnonce",
+                outdir,
+                60,
+                "yyyyMMddHHmmss",
+                null,
+                0,
+                false,
+                false,
+                false,
+                0,
+                ExportToFileClient.BinaryEncoding.HEX);
+        assertEquals(ExportToFileClient.OutputFormat.TSV, tsvClient.m_format);
+        assertEquals(".tsv", tsvClient.m_extension);
+
+        ExportToFileClient columnarClient =
+            new ExportToFileClient(
+                ExportToFileClient.OutputFormat.COLUMNAR,
+                "testnonce",
+                outdir,
+                60,
+                "yyyyMMddHHmmss",
+                null,
+                0,
+                false,
+                false,
+                false,
+                0,
+                false,
+                TimeZone.getDefault(),
+                ExportToFileClient.BinaryEncoding.HEX);
+        assertEquals(ExportToFileClient.OutputFormat.COLUMNAR, columnarClient.m_format);
+        assertEquals(ColumnarExportFile.EXTENSION, columnarClient.m_extension);
+    }
+
     public void testNoAutoDiscovery() throws Exception {
         final FileFilter filter = new FileFilter() {
             @Override
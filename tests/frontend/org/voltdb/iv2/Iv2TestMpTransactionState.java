@@ -26,6 +26,7 @@ package org.voltdb.iv2;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -34,6 +35,8 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -42,6 +45,8 @@ import junit.framework.TestCase;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.VoltMessage;
 import org.voltdb.ParameterSet;
@@ -233,7 +238,7 @@ public class Iv2TestMpTransactionState extends TestCase
         SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
 
         MpTransactionState dut =
-            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // emulate ProcedureRunner's use for a single local fragment
         dut.setupProcedureResume(true, plan.depsToResume);
@@ -289,7 +294,7 @@ public class Iv2TestMpTransactionState extends TestCase
         SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
 
         MpTransactionState dut =
-            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // emulate ProcedureRunner's use for a single local fragment
         dut.setupProcedureResume(true, plan.depsToResume);
@@ -342,7 +347,7 @@ public class Iv2TestMpTransactionState extends TestCase
         SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
 
         MpTransactionState dut =
-            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // emulate ProcedureRunner's use for a single local fragment
         dut.setupProcedureResume(true, plan.depsToResume);
@@ -397,7 +402,7 @@ public class Iv2TestMpTransactionState extends TestCase
         SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
 
         MpTransactionState dut =
-            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // emulate ProcedureRunner's use for a single local fragment
         dut.setupProcedureResume(true, plan.depsToResume);
@@ -457,7 +462,7 @@ public class Iv2TestMpTransactionState extends TestCase
         SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
 
         MpTransactionState dut =
-            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // emulate ProcedureRunner's use for a single local fragment
         dut.setupProcedureResume(true, plan.depsToResume);
@@ -510,7 +515,7 @@ public class Iv2TestMpTransactionState extends TestCase
         Mailbox mailbox = mock(Mailbox.class);
 
         MpTransactionState dut =
-            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+            new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // create local work and verify the created localwork has the
         // expected truncation point.
@@ -562,7 +567,7 @@ public class Iv2TestMpTransactionState extends TestCase
         SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
 
         MpTransactionState dut =
-                new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false);
+                new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, new Object());
 
         // emulate ProcedureRunner's use for a single local fragment
         dut.setupProcedureResume(true, plan.depsToResume);
@@ -597,4 +602,101 @@ public class Iv2TestMpTransactionState extends TestCase
         assertEquals(batch_size, results.size());
         System.out.println(results);
     }
+
+    /*
+     * Two reads from the same MPI sending several rounds of fragments at once
+     * must reach every partition in the same order, or each partition could
+     * end up waiting on the transaction another partition is running.
+     */
+    @Test
+    public void testConcurrentMultiRoundReadsKeepFragmentOrder() throws Exception
+    {
+        final int rounds = 20;
+        final int batch_size = 2;
+        int hsids = 6;
+        buddyHSId = 0;
+        long[] non_local = configureHSIds(hsids);
+
+        // The mailbox delivers a multicast to one destination at a time, like
+        // the separate connections to each partition do
+        final Map<Long, List<VoltMessage>> received = new HashMap<Long, List<VoltMessage>>();
+        for (long hsid : non_local) {
+            received.put(hsid, Collections.synchronizedList(new ArrayList<VoltMessage>()));
+        }
+        Mailbox mailbox = mock(Mailbox.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                long[] destinations = (long[])invocation.getArguments()[0];
+                VoltMessage msg = (VoltMessage)invocation.getArguments()[1];
+                for (long hsid : destinations) {
+                    received.get(hsid).add(msg);
+                    Thread.yield();
+                }
+                return null;
+            }
+        }).when(mailbox).send(any(long[].class), any(VoltMessage.class));
+
+        Object distributionLock = new Object();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> readers = new ArrayList<Thread>();
+        for (long txnId = 1234l; txnId < 1236l; txnId++) {
+            Iv2InitiateTaskMessage taskmsg =
+                new Iv2InitiateTaskMessage(
+                        0,
+                        -1,
+                        (txnId - 1),
+                        txnId,
+                        System.currentTimeMillis(),
+                        true,
+                        false,
+                        new StoredProcedureInvocation(),
+                        0,
+                        0,
+                        false);
+            final List<MpTestPlan> plans = new ArrayList<MpTestPlan>();
+            for (int i = 0; i < rounds; i++) {
+                plans.add(createTestPlan(batch_size, true, false, false, non_local));
+            }
+            final MpTransactionState dut =
+                new MpTransactionState(mailbox, taskmsg, allHsids, buddyHSId, false, distributionLock);
+            final SiteProcedureConnection siteConnection = mock(SiteProcedureConnection.class);
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        // emulate ProcedureRunner running one batch per round
+                        for (MpTestPlan plan : plans) {
+                            dut.setupProcedureResume(false, plan.depsToResume);
+                            dut.createLocalFragmentWork(plan.localWork, false);
+                            dut.createAllParticipatingFragmentWork(plan.remoteWork);
+                            for (FragmentResponseMessage msg : plan.generatedResponses) {
+                                dut.offerReceivedFragmentResponse(msg);
+                            }
+                            dut.recursableRun(siteConnection);
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        List<VoltMessage> expected = received.get(non_local[0]);
+        assertEquals(2 * rounds, expected.size());
+        for (long hsid : non_local) {
+            List<VoltMessage> actual = received.get(hsid);
+            assertEquals("Fragments reached site " + hsid + " out of order", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame("Fragments reached site " + hsid + " out of order", expected.get(i), actual.get(i));
+            }
+        }
+    }
 }
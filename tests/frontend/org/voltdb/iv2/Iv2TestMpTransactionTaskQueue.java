@@ -0,0 +1,235 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltcore.messaging.Mailbox;
+import org.voltdb.BackendTarget;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class Iv2TestMpTransactionTaskQueue extends TestCase
+{
+    // Pretends to be a pool of sites, remembering what it was asked to run
+    private static class FakeSitePool extends MpRoSitePool
+    {
+        final int m_size;
+        final Map<Long, TransactionTask> m_running = new HashMap<Long, TransactionTask>();
+
+        FakeSitePool(int size)
+        {
+            super(0L, BackendTarget.NATIVE_EE_JNI, null, MpInitiator.MP_INIT_PID, 0, null);
+            m_size = size;
+        }
+
+        @Override
+        int getPoolSize()
+        {
+            return m_size;
+        }
+
+        @Override
+        boolean canAcceptWork()
+        {
+            return m_running.size() < m_size;
+        }
+
+        @Override
+        void doWork(long txnId, TransactionTask task)
+        {
+            assertTrue(m_running.containsKey(txnId) || canAcceptWork());
+            m_running.put(txnId, task);
+        }
+
+        @Override
+        void completeWork(long txnId)
+        {
+            assertNotNull(m_running.remove(txnId));
+        }
+    }
+
+    private SiteTaskerQueue m_siteQueue;
+    private FakeSitePool m_pool;
+    private MpTransactionTaskQueue m_dut;
+    private final List<Long> m_masters = new ArrayList<Long>();
+
+    private void setUpQueue(int poolSize)
+    {
+        m_siteQueue = new SiteTaskerQueue();
+        m_siteQueue.setStarvationTracker(new StarvationTracker(0));
+        m_pool = new FakeSitePool(poolSize);
+        m_dut = new MpTransactionTaskQueue(m_siteQueue);
+        m_dut.setMpRoSitePool(m_pool);
+    }
+
+    private MpProcedureTask createMpProc(long txnId, boolean readOnly, String procName)
+    {
+        Iv2InitiateTaskMessage init = mock(Iv2InitiateTaskMessage.class);
+        when(init.getTxnId()).thenReturn(txnId);
+        when(init.isReadOnly()).thenReturn(readOnly);
+        when(init.getStoredProcedureName()).thenReturn(procName);
+        Mailbox mbox = mock(Mailbox.class);
+        return new MpProcedureTask(mbox, procName, m_dut, init, m_masters, 0L, false, new Object());
+    }
+
+    private MpProcedureTask createRead(long txnId)
+    {
+        return createMpProc(txnId, true, "ReadProc");
+    }
+
+    private MpProcedureTask createWrite(long txnId)
+    {
+        return createMpProc(txnId, false, "WriteProc");
+    }
+
+    @Test
+    public void testReadsRunConcurrently()
+    {
+        setUpQueue(2);
+        m_dut.offer(createRead(1));
+        m_dut.offer(createRead(2));
+        m_dut.offer(createRead(3));
+        // two on the pool, the third waits for a site
+        assertEquals(2, m_dut.getRunningReads());
+        assertEquals(1, m_dut.getQueuedReads());
+        assertTrue(m_pool.m_running.containsKey(1L));
+        assertTrue(m_pool.m_running.containsKey(2L));
+        assertTrue(m_siteQueue.isEmpty());
+
+        assertEquals(1, m_dut.flush(2));
+        assertTrue(m_pool.m_running.containsKey(3L));
+        assertEquals(0, m_dut.size());
+    }
+
+    @Test
+    public void testWritesAreExclusiveAndOrdered()
+    {
+        setUpQueue(4);
+        m_dut.offer(createRead(1));
+        MpProcedureTask write = createWrite(2);
+        m_dut.offer(write);
+        m_dut.offer(createRead(3));
+        // the write waits for the read, and the later read waits for the write
+        // even though the pool has idle sites
+        assertEquals(1, m_dut.getRunningReads());
+        assertEquals(1, m_dut.getQueuedWrites());
+        assertEquals(1, m_dut.getQueuedReads());
+        assertTrue(m_siteQueue.isEmpty());
+
+        assertEquals(1, m_dut.flush(1));
+        assertEquals(1, m_dut.getRunningWrites());
+        assertSame(write, m_siteQueue.poll());
+        assertFalse(m_pool.m_running.containsKey(3L));
+
+        assertEquals(1, m_dut.flush(2));
+        assertTrue(m_pool.m_running.containsKey(3L));
+        assertEquals(0, m_dut.size());
+    }
+
+    @Test
+    public void testOnlyUserReadsAndAdHocUseThePool()
+    {
+        setUpQueue(4);
+        MpProcedureTask sysproc = createMpProc(1, true, "@SnapshotScan");
+        MpProcedureTask adhoc = createMpProc(2, true, "@AdHoc_RO_MP");
+        assertFalse(m_dut.isParallelRead(sysproc));
+        assertTrue(m_dut.isParallelRead(adhoc));
+        assertTrue(m_dut.isParallelRead(createRead(3)));
+        assertFalse(m_dut.isParallelRead(createWrite(4)));
+
+        m_dut.offer(sysproc);
+        m_dut.offer(adhoc);
+        assertSame(sysproc, m_siteQueue.poll());
+        assertTrue(m_pool.m_running.isEmpty());
+        m_dut.flush(1);
+        assertTrue(m_pool.m_running.containsKey(2L));
+    }
+
+    @Test
+    public void testNoPoolRunsReadsOneAtATime()
+    {
+        setUpQueue(0);
+        MpProcedureTask first = createRead(1);
+        MpProcedureTask second = createRead(2);
+        m_dut.offer(first);
+        m_dut.offer(second);
+        assertSame(first, m_siteQueue.poll());
+        assertNull(m_siteQueue.poll());
+        m_dut.flush(1);
+        assertSame(second, m_siteQueue.poll());
+    }
+
+    @Test
+    public void testRepairWaitsForRunningReads() throws Exception
+    {
+        setUpQueue(2);
+        MpProcedureTask read1 = createRead(1);
+        MpProcedureTask read2 = createRead(2);
+        m_dut.offer(read1);
+        m_dut.offer(read2);
+
+        final boolean repaired[] = new boolean[] { false };
+        SiteTasker repair = new SiteTasker() {
+            @Override
+            public void run(SiteProcedureConnection siteConnection) {
+                repaired[0] = true;
+            }
+
+            @Override
+            public void runForRejoin(SiteProcedureConnection siteConnection,
+                    org.voltdb.rejoin.TaskLog taskLog) {
+            }
+        };
+        m_dut.repair(repair, m_masters);
+        // both reads are poisoned
+        assertEquals(1, ((MpTransactionState)read1.getTransactionState()).m_newDeps.size());
+        assertEquals(1, ((MpTransactionState)read2.getTransactionState()).m_newDeps.size());
+        // the repair waits for them to finish
+        assertTrue(m_siteQueue.isEmpty());
+
+        m_dut.flush(1);
+        assertTrue(m_siteQueue.isEmpty());
+        m_dut.flush(2);
+        SiteTasker next = m_siteQueue.poll();
+        assertNotNull(next);
+
+        // nothing new is released until the repair has run
+        m_dut.offer(createRead(3));
+        assertFalse(m_pool.m_running.containsKey(3L));
+        next.run(null);
+        assertTrue(repaired[0]);
+        assertTrue(m_pool.m_running.containsKey(3L));
+    }
+}
@@ -0,0 +1,273 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.rejoin.TaskLog;
+
+public class TestSiteTaskerQueue {
+
+    static class NumberedTask extends SiteTasker {
+        final int m_number;
+        NumberedTask(int number) {
+            m_number = number;
+        }
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog) {}
+    }
+
+    static class CountingTracker extends StarvationTracker {
+        final AtomicInteger m_begins = new AtomicInteger();
+        final AtomicInteger m_ends = new AtomicInteger();
+        final AtomicInteger m_parks = new AtomicInteger();
+        CountingTracker() {
+            super(0);
+        }
+        @Override
+        public void beginStarvation() {
+            m_begins.incrementAndGet();
+            super.beginStarvation();
+        }
+        @Override
+        public void beginParking() {
+            m_parks.incrementAndGet();
+            super.beginParking();
+        }
+        @Override
+        public void endStarvation() {
+            m_ends.incrementAndGet();
+            super.endStarvation();
+        }
+    }
+
+    private static List<SiteTaskerQueue> allConfigurations() {
+        List<SiteTaskerQueue> queues = new ArrayList<SiteTaskerQueue>();
+        for (SiteTaskerQueue.QueueType type : SiteTaskerQueue.QueueType.values()) {
+            for (int drain : new int[] { 1, 4, 64 }) {
+                for (SiteTaskerQueue.WaitStrategy wait : SiteTaskerQueue.WaitStrategy.values()) {
+                    queues.add(new SiteTaskerQueue(type, 8, drain, wait, 100));
+                }
+            }
+        }
+        return queues;
+    }
+
+    /*
+     * Tasks come out in order, and starvation is only reported when the local batch
+     * and the shared queue are both empty.
+     */
+    @Test
+    public void testOrderAndStarvation() throws Exception {
+        for (final SiteTaskerQueue queue : allConfigurations()) {
+            CountingTracker tracker = new CountingTracker();
+            queue.setStarvationTracker(tracker);
+            assertTrue(queue.isEmpty());
+            assertNull(queue.poll());
+            for (int i = 0; i < 6; i++) {
+                assertTrue(queue.offer(new NumberedTask(i)));
+            }
+            assertFalse(queue.isEmpty());
+            for (int i = 0; i < 6; i++) {
+                assertEquals(i, ((NumberedTask)queue.take()).m_number);
+            }
+            assertTrue(queue.isEmpty());
+            assertEquals(0, tracker.m_begins.get());
+
+            final CountDownLatch offered = new CountDownLatch(1);
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {}
+                    queue.offer(new NumberedTask(6));
+                    offered.countDown();
+                }
+            }.start();
+            assertEquals(6, ((NumberedTask)queue.take()).m_number);
+            assertTrue(offered.await(10, TimeUnit.SECONDS));
+            assertEquals(1, tracker.m_begins.get());
+            assertEquals(1, tracker.m_ends.get());
+        }
+    }
+
+    /*
+     * The site thread can offer to its own full ring without deadlocking,
+     * and ordering is preserved.
+     */
+    @Test
+    public void testConsumerOffersToFullRing() throws Exception {
+        for (int drain : new int[] { 1, 4 }) {
+            SiteTaskerQueue queue = new SiteTaskerQueue(SiteTaskerQueue.QueueType.RING, 4, drain);
+            queue.setStarvationTracker(new StarvationTracker(0));
+            int next = 0;
+            queue.offer(new NumberedTask(next++));
+            // makes this thread the consumer
+            assertEquals(0, ((NumberedTask)queue.poll()).m_number);
+            for (int i = 0; i < 20; i++) {
+                queue.offer(new NumberedTask(next++));
+            }
+            for (int i = 1; i < next; i++) {
+                assertEquals(i, ((NumberedTask)queue.take()).m_number);
+            }
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    /*
+     * Producers offering to a full ring spill past it rather than wait, and each
+     * producer's tasks still come out in the order it offered them.
+     */
+    @Test
+    public void testProducersSpillPastFullRing() throws Exception {
+        final SiteTaskerQueue queue = new SiteTaskerQueue(SiteTaskerQueue.QueueType.RING, 4, 3);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        final int producers = 3;
+        final int perProducer = 20000;
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.offer(new NumberedTask(producer * perProducer + i));
+                    }
+                }
+            }.start();
+        }
+        int next[] = new int[producers];
+        for (int i = 0; i < producers * perProducer; i++) {
+            final int number = ((NumberedTask)queue.take()).m_number;
+            final int producer = number / perProducer;
+            assertEquals(next[producer]++, number % perProducer);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    /*
+     * A producer that fills the ring while holding the lock the site thread needs to
+     * finish each task, the way a network thread holds the InitiatorMailbox while the
+     * site delivers its responses to it, must not wait for the site.
+     */
+    @Test
+    public void testFullRingWhileSiteReentersDeliver() throws Exception {
+        final SiteTaskerQueue queue = new SiteTaskerQueue(SiteTaskerQueue.QueueType.RING, 4, 1);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        final Object mailbox = new Object();
+        final int count = 100;
+        final CountDownLatch done = new CountDownLatch(count);
+        Thread site = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        queue.take();
+                        // deliver the response
+                        synchronized (mailbox) {
+                            done.countDown();
+                        }
+                    }
+                } catch (InterruptedException e) {}
+            }
+        };
+        site.start();
+        synchronized (mailbox) {
+            for (int i = 0; i < count; i++) {
+                queue.offer(new NumberedTask(i));
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        site.join();
+        assertTrue(queue.isEmpty());
+    }
+
+    /*
+     * Spinning strategies never report parking, parking strategies do once they give up.
+     */
+    @Test
+    public void testSpinAndParkAccounting() throws Exception {
+        for (SiteTaskerQueue.QueueType type : SiteTaskerQueue.QueueType.values()) {
+            for (SiteTaskerQueue.WaitStrategy wait : SiteTaskerQueue.WaitStrategy.values()) {
+                final SiteTaskerQueue queue = new SiteTaskerQueue(type, 8, 1, wait, 10);
+                CountingTracker tracker = new CountingTracker();
+                queue.setStarvationTracker(tracker);
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {}
+                        queue.offer(new NumberedTask(0));
+                    }
+                }.start();
+                assertEquals(0, ((NumberedTask)queue.take()).m_number);
+                assertEquals(1, tracker.m_begins.get());
+                assertEquals(1, tracker.m_ends.get());
+                final boolean parks = wait == SiteTaskerQueue.WaitStrategy.PARK ||
+                        wait == SiteTaskerQueue.WaitStrategy.ADAPTIVE;
+                assertEquals(parks ? 1 : 0, tracker.m_parks.get());
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedTake() throws Exception {
+        for (final SiteTaskerQueue queue : allConfigurations()) {
+            queue.setStarvationTracker(new StarvationTracker(0));
+            Thread.currentThread().interrupt();
+            try {
+                queue.take();
+                fail();
+            } catch (InterruptedException expected) {}
+        }
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        try {
+            SiteTaskerQueue.setDefaultConfiguration(SiteTaskerQueue.QueueType.RING, 16, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        try {
+            SiteTaskerQueue.setDefaultConfiguration(SiteTaskerQueue.QueueType.RING, 1, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        try {
+            SiteTaskerQueue.setDefaultWaitStrategy(SiteTaskerQueue.WaitStrategy.SPIN, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+}
@@ -35,6 +35,7 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.Arrays;
 import java.util.List;
@@ -377,6 +378,64 @@ public class TestJDBCDriver {
         }
     }
 
+    private static void insertItems(int count) throws SQLException {
+        Statement stmt = conn.createStatement();
+        for (int i = 0; i < count; i++) {
+            stmt.executeUpdate("INSERT INTO ITEM VALUES (" + i + ", " + i + ", 'item" + i + "', " + i + ", 'data" + i + "')");
+        }
+    }
+
+    @Test
+    public void testFetchSizeKeepsScrollableResult() throws SQLException {
+        insertItems(100);
+        try {
+            // a default statement stays scrollable with a fetch size
+            Statement stmt = conn.createStatement();
+            stmt.setFetchSize(10);
+            ResultSet rs = stmt.executeQuery("SELECT I_ID FROM ITEM ORDER BY I_ID");
+            assertEquals(ResultSet.TYPE_SCROLL_INSENSITIVE, rs.getType());
+            assertTrue(rs.last());
+            assertEquals(99, rs.getInt(1));
+            assertTrue(rs.first());
+            assertEquals(0, rs.getInt(1));
+            rs.close();
+        } finally {
+            conn.createStatement().execute("DELETE FROM ITEM");
+        }
+    }
+
+    @Test
+    public void testStreamedResultWithSecondStatement() throws SQLException {
+        insertItems(100);
+        try {
+            Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(10);
+            ResultSet rs = stmt.executeQuery("SELECT I_ID FROM ITEM ORDER BY I_ID");
+            assertEquals(ResultSet.TYPE_FORWARD_ONLY, rs.getType());
+            for (int i = 0; i < 15; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+            }
+
+            // another statement on the same connection while the stream is open
+            Statement other = conn.createStatement();
+            ResultSet count = other.executeQuery("SELECT COUNT(*) FROM ITEM");
+            assertTrue(count.next());
+            assertEquals(100, count.getLong(1));
+            count.close();
+
+            for (int i = 15; i < 100; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(i + 1, rs.getRow());
+            }
+            assertFalse(rs.next());
+            rs.close();
+        } finally {
+            conn.createStatement().execute("DELETE FROM ITEM");
+        }
+    }
+
     public void testVersionMetadata() throws SQLException {
         int major = conn.getMetaData().getDatabaseMajorVersion();
         int minor = conn.getMetaData().getDatabaseMinorVersion();
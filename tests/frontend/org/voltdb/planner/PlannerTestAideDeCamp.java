@@ -63,6 +63,7 @@ public class PlannerTestAideDeCamp {
     int compileCounter = 0;
 
     private CompiledPlan m_currentPlan = null;
+    private DatabaseEstimates m_estimates = new DatabaseEstimates();
 
     /**
      * Loads the schema at ddlurl and setups a voltcompiler / hsql instance.
@@ -87,6 +88,13 @@ public class PlannerTestAideDeCamp {
         return db;
     }
 
+    /**
+     * Plan subsequent statements with these estimates instead of the defaults.
+     */
+    public void setEstimates(DatabaseEstimates estimates) {
+        m_estimates = estimates;
+    }
+
     /**
      * Compile a statement and return the head of the plan.
      * @param sql
@@ -136,7 +144,7 @@ public class PlannerTestAideDeCamp {
         // name will look like "basename-stmt-#"
         String name = catalogStmt.getParent().getTypeName() + "-" + catalogStmt.getTypeName();
 
-        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates estimates = m_estimates;
         TrivialCostModel costModel = new TrivialCostModel();
         PartitioningForStatement partitioning = new PartitioningForStatement(partitionParameter, true, true);
         QueryPlanner planner =
@@ -30,6 +30,7 @@ import junit.framework.TestCase;
 
 import org.apache.commons.lang3.StringUtils;
 import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.DeterminismMode;
 import org.voltdb.plannodes.AbstractPlanNode;
 
@@ -211,4 +212,8 @@ public class PlannerTestCase extends TestCase {
         return m_aide.getDatabase();
     }
 
+    protected void setEstimates(DatabaseEstimates estimates) {
+        m_aide.setEstimates(estimates);
+    }
+
 }
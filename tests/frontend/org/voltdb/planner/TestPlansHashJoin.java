@@ -0,0 +1,163 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import org.json_voltpatches.JSONObject;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.AbstractScanPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
+import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.plannodes.PlanNodeTree;
+import org.voltdb.types.JoinType;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansHashJoin extends PlannerTestCase {
+
+    /**
+     * Estimates as if gathered from statistics, for tables given as name, row count pairs
+     */
+    private void setTableSizes(Object... namesAndCounts) {
+        VoltTable tableStats = new VoltTable(
+                new ColumnInfo("PARTITION_ID", VoltType.BIGINT),
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("TUPLE_COUNT", VoltType.BIGINT));
+        VoltTable indexStats = new VoltTable(
+                new ColumnInfo("PARTITION_ID", VoltType.BIGINT),
+                new ColumnInfo("INDEX_NAME", VoltType.STRING),
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("IS_UNIQUE", VoltType.TINYINT),
+                new ColumnInfo("ENTRY_COUNT", VoltType.BIGINT));
+        for (int ii = 0; ii < namesAndCounts.length; ii += 2) {
+            tableStats.addRow(0, namesAndCounts[ii], namesAndCounts[ii + 1]);
+        }
+        setEstimates(DatabaseEstimates.fromStatistics(tableStats, indexStats));
+    }
+
+    private static AbstractPlanNode findJoin(AbstractPlanNode pn) {
+        for (PlanNodeType type : new PlanNodeType[] {
+                PlanNodeType.HASHJOIN, PlanNodeType.NESTLOOP, PlanNodeType.NESTLOOPINDEX }) {
+            if (pn.findAllNodesOfType(type).size() > 0) {
+                return pn.findAllNodesOfType(type).get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Plan the statement and return its join from whichever fragment does the joining
+     */
+    private AbstractPlanNode compileJoin(String sql) {
+        for (AbstractPlanNode fragment : compileToFragments(sql)) {
+            AbstractPlanNode join = findJoin(fragment);
+            if (join != null) {
+                return join;
+            }
+        }
+        fail("No join in plan for " + sql);
+        return null;
+    }
+
+    private static String scannedTable(AbstractPlanNode pn) {
+        return ((AbstractScanPlanNode) pn).getTargetTableName();
+    }
+
+    public void testNoHashJoinWithoutStatistics() {
+        AbstractPlanNode join = compileJoin("select * FROM R1 JOIN R2 ON R1.C = R2.C");
+        assertTrue(join instanceof NestLoopPlanNode);
+    }
+
+    public void testEquiJoinIsHashed() throws Exception {
+        setTableSizes("R1", 1000, "R2", 1000);
+        AbstractPlanNode pn = compile("select * FROM R1 JOIN R2 ON R1.C = R2.C");
+        AbstractPlanNode join = findJoin(pn);
+        assertNotNull(join);
+        assertTrue(join instanceof HashJoinPlanNode);
+        HashJoinPlanNode hj = (HashJoinPlanNode) join;
+        assertEquals(JoinType.INNER, hj.getJoinType());
+        assertEquals(1, hj.getOuterHashExpressions().size());
+        assertEquals(1, hj.getInnerHashExpressions().size());
+        // the equality stays in the join predicate to weed out hash collisions
+        assertNotNull(hj.getJoinPredicate());
+
+        // the hash expressions survive serialization
+        PlanNodeTree tree = new PlanNodeTree(pn);
+        PlanNodeTree loaded = new PlanNodeTree();
+        loaded.loadFromJSONArray(new JSONObject(tree.toJSONString()).getJSONArray("PLAN_NODES"), getDatabase());
+        HashJoinPlanNode loadedJoin = null;
+        for (AbstractPlanNode node : loaded.getNodeList()) {
+            if (node instanceof HashJoinPlanNode) {
+                loadedJoin = (HashJoinPlanNode) node;
+            }
+        }
+        assertNotNull(loadedJoin);
+        assertEquals(hj.getOuterHashExpressions(), loadedJoin.getOuterHashExpressions());
+        assertEquals(hj.getInnerHashExpressions(), loadedJoin.getInnerHashExpressions());
+    }
+
+    public void testSmallerInputIsHashed() {
+        setTableSizes("R1", 10, "R2", 100000);
+        HashJoinPlanNode hj = (HashJoinPlanNode) compileJoin("select * FROM R2 JOIN R1 ON R1.C = R2.C");
+        assertEquals("R2", scannedTable(hj.getChild(0)));
+        assertEquals("R1", scannedTable(hj.getChild(1)));
+
+        setTableSizes("R1", 100000, "R2", 10);
+        hj = (HashJoinPlanNode) compileJoin("select * FROM R2 JOIN R1 ON R1.C = R2.C");
+        assertEquals("R1", scannedTable(hj.getChild(0)));
+        assertEquals("R2", scannedTable(hj.getChild(1)));
+    }
+
+    public void testOuterJoinHashesInnerTable() {
+        setTableSizes("R1", 100000, "R2", 10);
+        AbstractPlanNode join = compileJoin("select * FROM R2 LEFT JOIN R1 ON R1.C = R2.C");
+        assertTrue(join instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((HashJoinPlanNode) join).getJoinType());
+        // the preserved table stays on the outside even though it is smaller
+        assertEquals("R2", scannedTable(join.getChild(0)));
+        assertEquals("R1", scannedTable(join.getChild(1)));
+    }
+
+    public void testNonEquiJoinIsNotHashed() {
+        setTableSizes("R1", 1000, "R2", 1000);
+        AbstractPlanNode join = compileJoin("select * FROM R1 JOIN R2 ON R1.C > R2.C");
+        assertTrue(join instanceof NestLoopPlanNode);
+    }
+
+    public void testIndexJoinOnLargeTablePreferred() {
+        // a unique index lookup per outer row beats hashing the whole inner table
+        setTableSizes("R1", 1000, "P2", 100000);
+        AbstractPlanNode join = compileJoin("select * FROM R1 JOIN P2 ON R1.A = P2.A");
+        assertTrue(join instanceof NestLoopIndexPlanNode);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        setupSchema(TestJoinOrder.class.getResource("testplans-join-ddl.sql"), "testplanshashjoin", false);
+    }
+
+}
@@ -23,7 +23,11 @@
 
 package org.voltdb.planner;
 
+import java.util.List;
+
 import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.LimitPlanNode;
+import org.voltdb.plannodes.ReceivePlanNode;
 import org.voltdb.types.PlanNodeType;
 
 public class TestPlansOrderBy extends PlannerTestCase {
@@ -170,4 +174,55 @@ public class TestPlansOrderBy extends PlannerTestCase {
     public void testOrderDescWithEquality() {
         validatePlan("SELECT * FROM T WHERE T_D0 = 2 ORDER BY T_D1 DESC", true, false, true, false);
     }
+
+    /// Compile a multi-partition query and return the coordinator's receive node,
+    /// checking that it merges the partition results exactly when expected.
+    private ReceivePlanNode validateMergeReceive(String sql, boolean expectMerge)
+    {
+        List<AbstractPlanNode> pns = compileToFragments(sql);
+        assertEquals(2, pns.size());
+        AbstractPlanNode coordinator = pns.get(0);
+        List<AbstractPlanNode> receives = coordinator.findAllNodesOfType(PlanNodeType.RECEIVE);
+        assertEquals(1, receives.size());
+        ReceivePlanNode receive = (ReceivePlanNode) receives.get(0);
+        assertEquals(expectMerge, receive.isMergeReceive());
+        if (expectMerge) {
+            // A merging receive replaces the coordinator's sort.
+            assertFalse(receive.getParent(0).getPlanNodeType() == PlanNodeType.ORDERBY);
+        }
+        return receive;
+    }
+
+    public void testMergeReceiveOfIndexOrder()
+    {
+        ReceivePlanNode receive = validateMergeReceive("SELECT * FROM P ORDER BY P_D0 LIMIT 3", true);
+        LimitPlanNode limit = (LimitPlanNode) receive.getInlinePlanNode(PlanNodeType.LIMIT);
+        assertNotNull(limit);
+        assertEquals(3, limit.getLimit());
+        assertEquals(0, limit.getOffset());
+
+        receive = validateMergeReceive("SELECT * FROM P ORDER BY P_D0 DESC, P_D1 DESC", true);
+        assertNull(receive.getInlinePlanNode(PlanNodeType.LIMIT));
+    }
+
+    public void testMergeReceiveOfPartitionSorts()
+    {
+        // Each partition sorts and limits to limit + offset rows.
+        ReceivePlanNode receive = validateMergeReceive("SELECT * FROM P ORDER BY P_D2 LIMIT 3 OFFSET 2", true);
+        LimitPlanNode limit = (LimitPlanNode) receive.getInlinePlanNode(PlanNodeType.LIMIT);
+        assertNotNull(limit);
+        assertEquals(5, limit.getLimit());
+        assertEquals(0, limit.getOffset());
+
+        receive = validateMergeReceive("SELECT * FROM P ORDER BY P_D2 LIMIT ?", true);
+        assertNotNull(receive.getInlinePlanNode(PlanNodeType.LIMIT));
+    }
+
+    public void testNoMergeReceiveOfUnorderedPartitions()
+    {
+        // Without a limit, the partitions do not sort on P_D2.
+        validateMergeReceive("SELECT * FROM P ORDER BY P_D2", false);
+        // The order by applies to the coordinator's aggregates.
+        validateMergeReceive("SELECT P_D1, COUNT(*) FROM P GROUP BY P_D1 ORDER BY P_D1 LIMIT 2", false);
+    }
 }
@@ -18,3 +18,12 @@ CREATE TABLE Tmanykeys (
 	CONSTRAINT T_TREE_3 PRIMARY KEY (T_D0, T_D1, T_D2)
 );
 
+
+CREATE TABLE P (
+	P_D0   INTEGER NOT NULL,
+	P_D1   INTEGER NOT NULL,
+	P_D2   INTEGER NOT NULL,
+	CONSTRAINT P_TREE PRIMARY KEY (P_D0, P_D1)
+);
+
+PARTITION TABLE P ON COLUMN P_D0;
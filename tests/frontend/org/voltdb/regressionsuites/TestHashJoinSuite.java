@@ -0,0 +1,275 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.regressionsuites;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.voltdb.BackendTarget;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.client.Client;
+import org.voltdb.client.NoConnectionsException;
+import org.voltdb.client.NullCallback;
+import org.voltdb.client.ProcCallException;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.PlannerTool;
+import org.voltdb.compiler.VoltProjectBuilder;
+
+/**
+ * Runs equi-joins planned as hash joins. The procedures are compiled with a statistics
+ * file in place, without one the planner never considers a hash join.
+ */
+public class TestHashJoinSuite extends RegressionSuite {
+    public TestHashJoinSuite(String name) {
+        super(name);
+    }
+
+    // Every procedure with a join, each must have been planned as a hash join
+    static final String[] JOIN_PROCEDURES = {
+        "HashInner", "HashLeft", "HashNullKeys", "HashNullKeysLeft", "HashMultiKey",
+        "HashPreJoin", "HashWhere", "HashExtraJoinPredicate", "HashCollisions", "HashOverflow"
+    };
+
+    /**
+     * Compare the rows of a result with the expected rows, in any order. Each row is
+     * written as its comma separated integer values, with NULL for nulls.
+     */
+    private static void assertRows(VoltTable vt, String... expected) {
+        List<String> actual = new ArrayList<String>();
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            StringBuilder sb = new StringBuilder();
+            for (int ii = 0; ii < vt.getColumnCount(); ii++) {
+                if (ii > 0) {
+                    sb.append(",");
+                }
+                final long value = vt.getLong(ii);
+                sb.append(vt.wasNull() ? "NULL" : String.valueOf(value));
+            }
+            actual.add(sb.toString());
+        }
+        List<String> expectedRows = new ArrayList<String>(Arrays.asList(expected));
+        Collections.sort(expectedRows);
+        Collections.sort(actual);
+        assertEquals(expectedRows, actual);
+    }
+
+    private void loadJoinTables(Client client)
+            throws NoConnectionsException, IOException, ProcCallException
+    {
+        client.callProcedure("@AdHoc", "DELETE FROM R1;");
+        client.callProcedure("@AdHoc", "DELETE FROM R2;");
+        client.callProcedure("InsertR1", 1, 10, 100);
+        client.callProcedure("InsertR1", 1, 20, 200);
+        client.callProcedure("InsertR1", 2, null, 300);
+        client.callProcedure("InsertR1", 3, 30, null);
+        client.callProcedure("InsertR1", 4, 40, 400);
+        client.callProcedure("InsertR1", 5, null, 500);
+        client.callProcedure("InsertR1", 7, 10, 50);
+        // duplicate build keys, NULL keys and keys without a match on either side
+        client.callProcedure("InsertR2", 1, 10);
+        client.callProcedure("InsertR2", 1, 20);
+        client.callProcedure("InsertR2", 2, null);
+        client.callProcedure("InsertR2", 3, 10);
+        client.callProcedure("InsertR2", 6, 30);
+        client.callProcedure("InsertR2", null, 40);
+        client.callProcedure("InsertR2", 7, null);
+    }
+
+    public void testPlannedAsHashJoins() throws IOException, ProcCallException {
+        Client client = getClient();
+        for (String procName : JOIN_PROCEDURES) {
+            VoltTable vt = client.callProcedure("@ExplainProc", procName).getResults()[0];
+            assertTrue(vt.advanceRow());
+            final String plan = vt.getString("EXECUTION_PLAN");
+            assertTrue(procName + " isn't a hash join: " + plan, plan.contains("HASH"));
+        }
+    }
+
+    public void testInnerAndLeftJoins() throws IOException, ProcCallException {
+        Client client = getClient();
+        loadJoinTables(client);
+
+        assertRows(client.callProcedure("HashInner").getResults()[0],
+                   "1,10,10", "1,10,20", "1,20,10", "1,20,20", "2,NULL,NULL", "3,30,10", "7,10,NULL");
+        assertRows(client.callProcedure("HashLeft").getResults()[0],
+                   "1,10,10", "1,10,20", "1,20,10", "1,20,20", "2,NULL,NULL", "3,30,10",
+                   "4,40,NULL", "5,NULL,NULL", "7,10,NULL");
+    }
+
+    /*
+     * NULL keys never match, on either side, but still produce padded rows in a LEFT join.
+     */
+    public void testNullJoinKeys() throws IOException, ProcCallException {
+        Client client = getClient();
+        loadJoinTables(client);
+
+        assertRows(client.callProcedure("HashNullKeys").getResults()[0],
+                   "1,1", "1,1", "1,3", "3,6", "4,NULL", "7,1", "7,3");
+        assertRows(client.callProcedure("HashNullKeysLeft").getResults()[0],
+                   "1,1", "1,1", "1,3", "2,NULL", "3,6", "4,NULL", "5,NULL", "7,1", "7,3");
+    }
+
+    public void testPredicates() throws IOException, ProcCallException {
+        Client client = getClient();
+        loadJoinTables(client);
+
+        assertRows(client.callProcedure("HashMultiKey").getResults()[0],
+                   "1,10,1", "1,20,1");
+        // outer only ON condition of a LEFT join, outer rows that fail it are padded
+        assertRows(client.callProcedure("HashPreJoin", 150).getResults()[0],
+                   "1,100,NULL", "1,200,10", "1,200,20", "2,300,NULL", "3,NULL,NULL",
+                   "4,400,NULL", "5,500,NULL", "7,50,NULL");
+        // WHERE on a LEFT join applies to matched and padded rows alike
+        assertRows(client.callProcedure("HashWhere").getResults()[0],
+                   "2,NULL", "4,NULL", "5,NULL", "7,NULL");
+        assertRows(client.callProcedure("HashExtraJoinPredicate").getResults()[0],
+                   "1,200,10");
+    }
+
+    /*
+     * (1, 2) and (3, -121) hash to the same bucket with 64 bit boost::hash_combine,
+     * as do (2, 1) and (-121, 3) whichever order the keys are hashed in. Only equal
+     * keys may be joined.
+     */
+    public void testHashCollisions() throws IOException, ProcCallException {
+        Client client = getClient();
+        int[][] keys = { { 1, 2 }, { 3, -121 }, { 2, 1 }, { -121, 3 } };
+        for (int ii = 0; ii < keys.length; ii++) {
+            client.callProcedure("InsertK1", keys[ii][0], keys[ii][1], ii);
+            client.callProcedure("InsertK2", keys[ii][0], keys[ii][1], ii * 10);
+        }
+        assertRows(client.callProcedure("HashCollisions").getResults()[0],
+                   "0,0", "1,10", "2,20", "3,30");
+    }
+
+    /*
+     * A build side too large for the temp table limit fails the query, and what the
+     * hash table charged to the limits is given back, so the same join succeeds
+     * afterwards on less data.
+     */
+    public void testTempTableLimitOverflow() throws Exception {
+        if (isHSQL()) {
+            return;
+        }
+        Client client = getClient();
+        client.callProcedure("InsertSmall", 1, 1);
+        client.callProcedure("InsertSmall", 2, 2);
+        NullCallback callback = new NullCallback();
+        for (int ii = 0; ii < 40000; ii++) {
+            client.callProcedure(callback, "InsertBig", ii, ii * 2);
+        }
+        client.drain();
+
+        try {
+            client.callProcedure("HashOverflow");
+            fail("Building a hash table over 40000 rows should exceed the 1 MB limit");
+        }
+        catch (ProcCallException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("temp table memory"));
+        }
+
+        client.callProcedure("@AdHoc", "DELETE FROM BIG WHERE A >= 1000;");
+        for (int ii = 0; ii < 5; ii++) {
+            assertRows(client.callProcedure("HashOverflow").getResults()[0], "1,2", "2,4");
+        }
+    }
+
+    /**
+     * Estimates as if gathered from statistics, with every table at the given size
+     */
+    static DatabaseEstimates estimates(String[] tables, long tuples) {
+        VoltTable tableStats = new VoltTable(
+                new ColumnInfo("PARTITION_ID", VoltType.BIGINT),
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("TUPLE_COUNT", VoltType.BIGINT));
+        for (String table : tables) {
+            tableStats.addRow(0, table, tuples);
+        }
+        return DatabaseEstimates.fromStatistics(tableStats, null);
+    }
+
+    static public junit.framework.Test suite() throws Exception
+    {
+        VoltServerConfig config = null;
+        MultiConfigSuiteBuilder builder = new MultiConfigSuiteBuilder(TestHashJoinSuite.class);
+        VoltProjectBuilder project = new VoltProjectBuilder();
+
+        project.addSchema(TestHashJoinSuite.class.getResource("testhashjoin-ddl.sql"));
+        project.addStmtProcedure("InsertR1", "INSERT INTO R1 VALUES(?, ?, ?);");
+        project.addStmtProcedure("InsertR2", "INSERT INTO R2 VALUES(?, ?);");
+        project.addStmtProcedure("InsertK1", "INSERT INTO K1 VALUES(?, ?, ?);");
+        project.addStmtProcedure("InsertK2", "INSERT INTO K2 VALUES(?, ?, ?);");
+        project.addStmtProcedure("InsertSmall", "INSERT INTO SMALL VALUES(?, ?);", "SMALL.A: 0");
+        project.addStmtProcedure("InsertBig", "INSERT INTO BIG VALUES(?, ?);", "BIG.A: 0");
+        project.addStmtProcedure("HashInner",
+                "SELECT R1.A, R1.C, R2.C FROM R1, R2 WHERE R1.A = R2.A;");
+        project.addStmtProcedure("HashLeft",
+                "SELECT R1.A, R1.C, R2.C FROM R1 LEFT JOIN R2 ON R1.A = R2.A;");
+        project.addStmtProcedure("HashNullKeys",
+                "SELECT R1.A, R2.A FROM R1 JOIN R2 ON R1.C = R2.C;");
+        project.addStmtProcedure("HashNullKeysLeft",
+                "SELECT R1.A, R2.A FROM R1 LEFT JOIN R2 ON R1.C = R2.C;");
+        project.addStmtProcedure("HashMultiKey",
+                "SELECT R1.A, R1.C, R2.A FROM R1 JOIN R2 ON R1.A = R2.A AND R1.C = R2.C;");
+        project.addStmtProcedure("HashPreJoin",
+                "SELECT R1.A, R1.D, R2.C FROM R1 LEFT JOIN R2 ON R1.A = R2.A AND R1.D > ?;");
+        project.addStmtProcedure("HashWhere",
+                "SELECT R1.A, R2.C FROM R1 LEFT JOIN R2 ON R1.A = R2.A WHERE R2.C IS NULL;");
+        project.addStmtProcedure("HashExtraJoinPredicate",
+                "SELECT R1.A, R1.D, R2.C FROM R1 JOIN R2 ON R1.A = R2.A AND R1.D > R2.C * 15;");
+        project.addStmtProcedure("HashCollisions",
+                "SELECT K1.V, K2.V FROM K1 JOIN K2 ON K1.X = K2.X AND K1.Y = K2.Y;");
+        project.addStmtProcedure("HashOverflow",
+                "SELECT SMALL.A, BIG.B FROM SMALL LEFT JOIN BIG ON SMALL.A = BIG.A;");
+        // small enough for testTempTableLimitOverflow's build side to exceed it
+        project.setMaxTempTableMemory(1);
+
+        // Plan as if every table held 1000 rows, which makes each equi-join a hash join
+        File statistics = File.createTempFile("testhashjoin", ".json");
+        statistics.deleteOnExit();
+        estimates(new String[] { "R1", "R2", "K1", "K2", "SMALL", "BIG" }, 1000).writeToFile(statistics);
+        System.setProperty(PlannerTool.STATISTICS_FILE_PROPERTY, statistics.getPath());
+        try {
+            config = new LocalCluster("testhashjoin-onesite.jar", 1, 1, 0, BackendTarget.NATIVE_EE_JNI);
+            if (!config.compile(project)) fail();
+            builder.addServerConfig(config);
+
+            // HSQLDB
+            config = new LocalCluster("testhashjoin-hsql.jar", 1, 1, 0, BackendTarget.HSQLDB_BACKEND);
+            if (!config.compile(project)) fail();
+            builder.addServerConfig(config);
+        }
+        finally {
+            System.clearProperty(PlannerTool.STATISTICS_FILE_PROPERTY);
+        }
+        return builder;
+    }
+}
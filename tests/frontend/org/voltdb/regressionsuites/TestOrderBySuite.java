@@ -26,6 +26,8 @@ package org.voltdb.regressionsuites;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.voltdb.BackendTarget;
 import org.voltdb.VoltTable;
@@ -557,6 +559,88 @@ public class TestOrderBySuite extends RegressionSuite {
         }
     }
 
+    /** add 60 shuffled rows to O4, returned as {P, I, V} */
+    private List<int[]> loadForMerge(Client client) throws Exception {
+        List<int[]> rows = new ArrayList<int[]>();
+        for (int i = 0; i < 60; i++) {
+            // V repeats, so ties are broken by the primary key
+            rows.add(new int[] { i % 20, i / 20, (i * 37) % 11 });
+        }
+        Collections.shuffle(rows);
+        for (int[] row : rows) {
+            client.callProcedure("InsertO4", row[0], row[1], row[2]);
+        }
+        return rows;
+    }
+
+    /**
+     * Sort rows by the given columns of {P, I, V}, a negative column sorts descending
+     * by column -1 - col.
+     */
+    private static List<int[]> sorted(List<int[]> rows, final int... columns) {
+        List<int[]> result = new ArrayList<int[]>(rows);
+        Collections.sort(result, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                for (int col : columns) {
+                    final boolean desc = col < 0;
+                    final int index = desc ? -1 - col : col;
+                    if (a[index] != b[index]) {
+                        return (a[index] < b[index]) == desc ? 1 : -1;
+                    }
+                }
+                return 0;
+            }
+        });
+        return result;
+    }
+
+    private static void assertMergedRows(List<int[]> expected, int offset, int limit, VoltTable vt) {
+        expected = expected.subList(Math.min(offset, expected.size()),
+                                    Math.min(offset + limit, expected.size()));
+        assertEquals(expected.size(), vt.getRowCount());
+        for (int[] row : expected) {
+            assertTrue(vt.advanceRow());
+            for (int col = 0; col < row.length; col++) {
+                assertEquals(row[col], vt.getLong(col));
+            }
+        }
+    }
+
+    /*
+     * Multi-partition ORDER BY queries whose partitions return sorted rows are
+     * merged by the coordinator's receive rather than sorted again.
+     */
+    public void testMergeReceive() throws Exception {
+        Client client = getClient();
+        for (String procName : new String[] { "O4ByKey", "O4ByKeyDesc", "O4ByValueLimit",
+                                              "O4ByValueDescLimitOffset", "O4ByValueLimitParam" }) {
+            VoltTable vt = client.callProcedure("@ExplainProc", procName).getResults()[0];
+            assertTrue(vt.advanceRow());
+            final String plan = vt.getString("EXECUTION_PLAN");
+            assertTrue(procName + " doesn't merge: " + plan, plan.contains("MERGE RECEIVE"));
+        }
+
+        List<int[]> rows = loadForMerge(client);
+        final int all = rows.size();
+
+        // in index order, from each partition's index scan
+        assertMergedRows(sorted(rows, 0, 1), 0, all,
+                         client.callProcedure("O4ByKey").getResults()[0]);
+        assertMergedRows(sorted(rows, -1, -2), 0, all,
+                         client.callProcedure("O4ByKeyDesc").getResults()[0]);
+
+        // each partition sorts and limits to LIMIT + OFFSET rows
+        assertMergedRows(sorted(rows, 2, 0, 1), 0, 7,
+                         client.callProcedure("O4ByValueLimit").getResults()[0]);
+        assertMergedRows(sorted(rows, -3, 0, 1), 3, 5,
+                         client.callProcedure("O4ByValueDescLimitOffset").getResults()[0]);
+        for (int limit : new int[] { 0, 1, 4, all, all + 10 }) {
+            assertMergedRows(sorted(rows, 2, 0, 1), 0, limit,
+                             client.callProcedure("O4ByValueLimitParam", limit).getResults()[0]);
+        }
+    }
+
     //
     // Suite builder boilerplate
     //
@@ -574,8 +658,16 @@ public class TestOrderBySuite extends RegressionSuite {
         project.addSchema(TestOrderBySuite.class.getResource("testorderby-ddl.sql"));
         project.addPartitionInfo("O1", "PKEY");
         project.addPartitionInfo("a", "a");
+        project.addPartitionInfo("O4", "P");
         project.addStmtProcedure("InsertA", "INSERT INTO A VALUES(?);");
         project.addStmtProcedure("InsertB", "INSERT INTO B VALUES(?);");
+        project.addStmtProcedure("InsertO4", "INSERT INTO O4 VALUES(?, ?, ?);", "O4.P: 0");
+        project.addStmtProcedure("O4ByKey", "SELECT P, I, V FROM O4 ORDER BY P, I;");
+        project.addStmtProcedure("O4ByKeyDesc", "SELECT P, I, V FROM O4 ORDER BY P DESC, I DESC;");
+        project.addStmtProcedure("O4ByValueLimit", "SELECT P, I, V FROM O4 ORDER BY V, P, I LIMIT 7;");
+        project.addStmtProcedure("O4ByValueDescLimitOffset",
+                                 "SELECT P, I, V FROM O4 ORDER BY V DESC, P, I LIMIT 5 OFFSET 3;");
+        project.addStmtProcedure("O4ByValueLimitParam", "SELECT P, I, V FROM O4 ORDER BY V, P, I LIMIT ?;");
         project.addProcedures(PROCEDURES);
 
         config = new LocalCluster("testorderby-onesite.jar", 1, 1, 0, BackendTarget.NATIVE_EE_JNI);
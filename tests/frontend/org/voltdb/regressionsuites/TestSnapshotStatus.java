@@ -78,6 +78,40 @@ public class TestSnapshotStatus extends SaveRestoreBase {
         }
     }
 
+    // Restores are reported apart from the snapshots they were restored from
+    public void testRestoreStatus() throws Exception
+    {
+        Client client = getClient();
+        for (int i = 0; i < 10; i++) {
+            client.callProcedure("InsertA", i, i);
+            client.callProcedure("@AdHoc", "INSERT INTO R VALUES(" + i + ", " + i + ");");
+        }
+        client.callProcedure("@SnapshotSave", TMPDIR, TESTNONCE, 1);
+        client.callProcedure("@AdHoc", "DELETE FROM T;");
+        client.callProcedure("@AdHoc", "DELETE FROM R;");
+        VoltTable[] results = client.callProcedure("@SnapshotRestore", TMPDIR, TESTNONCE).getResults();
+        System.out.println(results[0]);
+        results = client.callProcedure("@SnapshotStatus").getResults();
+        System.out.println(results[0]);
+        int snapshotRows = 0;
+        int restoreRows = 0;
+        while (results[0].advanceRow()) {
+            String result = results[0].getString("RESULT");
+            if (result.startsWith("RESTORE")) {
+                restoreRows++;
+                assertEquals("RESTORE SUCCESS", result);
+            } else {
+                snapshotRows++;
+                assertEquals("SUCCESS", result);
+            }
+            long completed = results[0].getLong("END_TIME");
+            assertTrue("END_TIME was not filled", completed != 0);
+        }
+        // the restore must not show up as another snapshot of the nonce
+        assertEquals(4, snapshotRows);
+        assertTrue(restoreRows > 0);
+    }
+
     //
     // Build a list of the tests to be run. Use the regression suite
     // helpers to allow multiple backends.
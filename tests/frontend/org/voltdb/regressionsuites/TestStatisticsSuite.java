@@ -36,6 +36,7 @@ import org.voltdb_testprocs.regressionsuites.SaveRestoreBase;
 import junit.framework.Test;
 
 import org.voltdb.BackendTarget;
+import org.voltdb.LatencyHistogram;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
@@ -183,14 +184,20 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING LATENCY STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[7];
+        ColumnInfo[] expectedSchema = new ColumnInfo[13];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
         expectedSchema[3] = new ColumnInfo("SITE_ID", VoltType.INTEGER);
-        expectedSchema[4] = new ColumnInfo("BUCKET_MIN", VoltType.INTEGER);
-        expectedSchema[5] = new ColumnInfo("BUCKET_MAX", VoltType.INTEGER);
-        expectedSchema[6] = new ColumnInfo("INVOCATIONS", VoltType.BIGINT);
+        expectedSchema[4] = new ColumnInfo("INTERVAL", VoltType.BIGINT);
+        expectedSchema[5] = new ColumnInfo("COUNT", VoltType.BIGINT);
+        expectedSchema[6] = new ColumnInfo("P50", VoltType.BIGINT);
+        expectedSchema[7] = new ColumnInfo("P95", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("P99", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("P999", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("P9999", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("MAX", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("HISTOGRAM", VoltType.VARBINARY);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -208,15 +215,28 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         // should have at least one row from each host
         results[0].advanceRow();
         validateRowSeenAtAllHosts(results[0], "HOSTNAME", results[0].getString("HOSTNAME"), false);
-        // actually, there are 26 rows per host so:
-        assertEquals(26 * HOSTS, results[0].getRowCount());
-        // Check for non-zero invocations (ENG-4668)
+        // actually, there is one row per host so:
+        assertEquals(HOSTS, results[0].getRowCount());
+        // Check for non-zero invocations (ENG-4668), and that the serialized
+        // histograms from every host merge to the same count
         long invocations = 0;
+        LatencyHistogram merged = null;
         results[0].resetRowPosition();
         while (results[0].advanceRow()) {
-            invocations += results[0].getLong("INVOCATIONS");
+            invocations += results[0].getLong("COUNT");
+            assertTrue(results[0].getLong("P50") <= results[0].getLong("P99"));
+            assertTrue(results[0].getLong("P99") <= results[0].getLong("MAX"));
+            LatencyHistogram h = LatencyHistogram.fromCompactBytes(results[0].getVarbinary("HISTOGRAM"));
+            assertEquals(results[0].getLong("COUNT"), h.getTotalCount());
+            if (merged == null) {
+                merged = h;
+            }
+            else {
+                merged.add(h);
+            }
         }
         assertTrue(invocations > 0);
+        assertEquals(invocations, merged.getTotalCount());
     }
 
     public void testInitiatorStatistics() throws Exception {
@@ -272,6 +292,31 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         validateRowSeenAtAllHosts(results[0], "PROCEDURE_NAME", "NEW_ORDER.insert", true);
     }
 
+    public void testInitiatorQueueStatistics() throws Exception {
+        System.out.println("\n\nTESTING INITIATORQUEUE STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        VoltTable[] results = client.callProcedure("@Statistics", "INITIATORQUEUE", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+
+        // Every host's MPI reports its write site and its read pool
+        ColumnInfo[] expectedQueueSchema = new ColumnInfo[8];
+        expectedQueueSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedQueueSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedQueueSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedQueueSchema[3] = new ColumnInfo("SITE_ID", VoltType.INTEGER);
+        expectedQueueSchema[4] = new ColumnInfo("POOL", VoltType.STRING);
+        expectedQueueSchema[5] = new ColumnInfo("SITES", VoltType.INTEGER);
+        expectedQueueSchema[6] = new ColumnInfo("RUNNING", VoltType.INTEGER);
+        expectedQueueSchema[7] = new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER);
+        System.out.println("Test initiator queue table: " + results[0].toString());
+        validateSchema(results[0], new VoltTable(expectedQueueSchema));
+        assertEquals(HOSTS * 2, results[0].getRowCount());
+        validateRowSeenAtAllHosts(results[0], "POOL", "WRITE", true);
+        validateRowSeenAtAllHosts(results[0], "POOL", "READ", true);
+    }
+
     public void testPartitionCount() throws Exception {
         System.out.println("\n\nTESTING PARTITION COUNT\n\n\n");
         Client client  = getFullyConnectedClient();
@@ -399,7 +444,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING PROCEDURE STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[19];
+        ColumnInfo[] expectedSchema = new ColumnInfo[21];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -419,6 +464,8 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[16] = new ColumnInfo("AVG_PARAMETER_SET_SIZE", VoltType.INTEGER);
         expectedSchema[17] = new ColumnInfo("ABORTS", VoltType.BIGINT);
         expectedSchema[18] = new ColumnInfo("FAILURES", VoltType.BIGINT);
+        expectedSchema[19] = new ColumnInfo("P95_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[20] = new ColumnInfo("P99_EXECUTION_TIME", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -606,7 +653,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING PLANNER STATS\n\n\n");
         Client client  = getClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[14];
+        ColumnInfo[] expectedSchema = new ColumnInfo[16];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -617,10 +664,12 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[7] = new ColumnInfo("CACHE1_HITS", VoltType.INTEGER);
         expectedSchema[8] = new ColumnInfo("CACHE2_HITS", VoltType.INTEGER);
         expectedSchema[9] = new ColumnInfo("CACHE_MISSES", VoltType.INTEGER);
-        expectedSchema[10] = new ColumnInfo("PLAN_TIME_MIN", VoltType.BIGINT);
-        expectedSchema[11] = new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT);
-        expectedSchema[12] = new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT);
-        expectedSchema[13] = new ColumnInfo("FAILURES", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("CACHE1_EVICTIONS", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("CACHE2_EVICTIONS", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("PLAN_TIME_MIN", VoltType.BIGINT);
+        expectedSchema[13] = new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT);
+        expectedSchema[14] = new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT);
+        expectedSchema[15] = new ColumnInfo("FAILURES", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -861,7 +910,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING STARVATION STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[10];
+        ColumnInfo[] expectedSchema = new ColumnInfo[12];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -872,6 +921,8 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[7] = new ColumnInfo("MIN", VoltType.BIGINT);
         expectedSchema[8] = new ColumnInfo("MAX", VoltType.BIGINT);
         expectedSchema[9] = new ColumnInfo("STDDEV", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("SPIN_PERCENT", VoltType.FLOAT);
+        expectedSchema[11] = new ColumnInfo("PARK_PERCENT", VoltType.FLOAT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -0,0 +1,34 @@
+CREATE TABLE R1 (
+	A INTEGER NOT NULL,
+	C INTEGER,
+	D INTEGER
+);
+
+CREATE TABLE R2 (
+	A INTEGER,
+	C INTEGER
+);
+
+CREATE TABLE K1 (
+	X INTEGER NOT NULL,
+	Y INTEGER NOT NULL,
+	V INTEGER NOT NULL
+);
+
+CREATE TABLE K2 (
+	X INTEGER NOT NULL,
+	Y INTEGER NOT NULL,
+	V INTEGER NOT NULL
+);
+
+CREATE TABLE SMALL (
+	A INTEGER NOT NULL,
+	B INTEGER NOT NULL
+);
+PARTITION TABLE SMALL ON COLUMN A;
+
+CREATE TABLE BIG (
+	A INTEGER NOT NULL,
+	B INTEGER NOT NULL
+);
+PARTITION TABLE BIG ON COLUMN A;
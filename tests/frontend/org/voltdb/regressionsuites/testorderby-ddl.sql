@@ -36,3 +36,11 @@ create table b
   a integer not null
 );
 
+
+-- partitioned in test on p, each partition returns rows in primary key order
+CREATE TABLE O4 (
+ P  INTEGER NOT NULL,
+ I  INTEGER NOT NULL,
+ V  INTEGER NOT NULL,
+ PRIMARY KEY (P, I)
+);
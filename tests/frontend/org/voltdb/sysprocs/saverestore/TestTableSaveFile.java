@@ -280,4 +280,35 @@ public class TestTableSaveFile extends TestCase {
         }
         assertEquals(table, reaggregate_table);
     }
+
+    public void testRelevantPartitionChunks() throws Exception {
+        Pair<VoltTable, File> generated = generateTestTable(100000);
+        File f = generated.getSecond();
+
+        FileInputStream fis = new FileInputStream(f);
+        TableSaveFile savefile = new TableSaveFile(fis.getChannel(), 3, new Integer[] { 2, 40, 97 });
+
+        ArrayList<Integer> seenPartitionIds = new ArrayList<Integer>();
+        while (savefile.hasMoreChunks()) {
+            final BBContainer c = savefile.getNextChunk();
+            if (c == null) {
+                continue;
+            }
+            try {
+                seenPartitionIds.add(((TableSaveFile.Container)c).partitionId);
+                VoltTable test_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, false);
+                assertEquals(1000, test_table.getRowCount());
+            } finally {
+                c.discard();
+            }
+        }
+        savefile.close();
+
+        ArrayList<Integer> expected = new ArrayList<Integer>();
+        expected.add(2);
+        expected.add(40);
+        expected.add(97);
+        assertEquals(expected, seenPartitionIds);
+        assertTrue(savefile.getCorruptedPartitionIds().isEmpty());
+    }
 }
@@ -23,6 +23,10 @@
 
 package org.voltdb.utils;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
 import org.junit.*;
 import org.voltdb.utils.CLibrary;
 import static org.junit.Assert.*;
@@ -36,4 +40,36 @@ public class TestCLibrary {
         assertNotNull(limit);
         assertTrue(limit.intValue() >= 1024);//True on any sane system
     }
+
+    @Test
+    public void testWriteBackWithoutDescriptor() throws Exception {
+        assertFalse(CLibrary.startWriteBack(-1, 0, 4096));
+        assertFalse(CLibrary.finishWriteBackAndEvict(-1, 0, 4096));
+    }
+
+    @Test
+    public void testWriteBack() throws Exception {
+        if (!System.getProperty("os.name").equals("Linux")) {
+            assertFalse(CLibrary.Linux.m_available);
+        }
+
+        File file = File.createTempFile("TestCLibrary", ".dat");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            final int length = 1024 * 1024;
+            ByteBuffer data = ByteBuffer.allocate(length);
+            while (data.hasRemaining()) {
+                fos.getChannel().write(data);
+            }
+            int fd = CLibrary.getfd(fos.getFD());
+            assertTrue(fd >= 0);
+            // Elsewhere these report they did nothing and the caller falls back to force()
+            assertEquals(CLibrary.Linux.m_available, CLibrary.startWriteBack(fd, 0, length));
+            assertEquals(CLibrary.Linux.m_available, CLibrary.finishWriteBackAndEvict(fd, 0, length));
+        } finally {
+            fos.close();
+            file.delete();
+        }
+    }
 }
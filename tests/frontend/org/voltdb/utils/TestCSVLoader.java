@@ -28,6 +28,12 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -36,6 +42,7 @@ import org.voltdb.ServerThread;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.compiler.VoltProjectBuilder;
@@ -231,6 +238,100 @@ public class TestCSVLoader extends TestCase {
         test_Interface( mySchema, myOptions, myData, invalidLineCnt, validLineCnt );
     }
 
+    public void testBulk() throws Exception
+    {
+        String mySchema =
+                "create table BLAH (" +
+                        "clm_integer integer default 0 not null, " + // column that is partitioned on
+
+                "clm_tinyint tinyint default 0, " +
+                "clm_smallint smallint default 0, " +
+                "clm_bigint bigint default 0, " +
+
+                "clm_string varchar(20) default null, " +
+                "clm_decimal decimal default null, " +
+                "clm_float float default null, "+
+                "clm_timestamp timestamp default null " +
+                "); ";
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--maxerrors=50",
+                "--user=",
+                "--password=",
+                "--port=",
+                "--bulk",
+                "--batch=2",
+                "--threads=3",
+                "BlAh"
+        };
+        String currentTime = new TimestampType().toString();
+        String []myData = {
+                "1 ,1,1,11111111,first,1.10,1.11,"+currentTime,
+                "2,2,2,222222,second,3.30,NULL,"+currentTime,
+                "3,3,3,333333, third ,NULL, 3.33,"+currentTime,
+                "4,4,4,444444, NULL ,4.40 ,4.44,"+currentTime,
+                "5,5,5,5555555,  \"abcde\"g, 5.50, 5.55,"+currentTime,
+                "6,6,NULL,666666, sixth, 6.60, 6.66,"+currentTime,
+                "7,NULL,7,7777777, seventh, 7.70, 7.77,"+currentTime,
+                "11, 1,1,\"1,000\",first,1.10,1.11,"+currentTime,
+                //invalid lines below
+                "8, 8",
+                "9, NLL,9,\"1,000\",nine,1.10,1.11,"+currentTime,
+                "NULL,13,13,13131313,thirteen,13.13,13.13,"+currentTime,
+        };
+        int invalidLineCnt = 3;
+        int validLineCnt = 8;
+        test_Interface( mySchema, myOptions, myData, invalidLineCnt, validLineCnt );
+    }
+
+    /*
+     * A loader thread that dies must fail the load instead of leaving the reader
+     * blocked on a full queue
+     */
+    public void testBulkLoaderFailure() throws Exception
+    {
+        Client failingClient = (Client)Proxy.newProxyInstance(Client.class.getClassLoader(),
+                new Class<?>[] { Client.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        throw new IOException("Connection to database host lost");
+                    }
+                });
+        CSVLoader.config = new CSVLoader.CSVConfig();
+        CSVLoader.typeList.add(VoltType.INTEGER);
+        final CSVLoader.BulkLoader loader = new CSVLoader.BulkLoader(failingClient, "BLAH",
+                new VoltTable.ColumnInfo[] { new VoltTable.ColumnInfo("CLM_INTEGER", VoltType.INTEGER) },
+                -1, null, 1, 2);
+
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // Far more rows than the queue holds
+                    for (int i = 0; i < 1000; i++) {
+                        loader.add(i + 1, Arrays.asList(Integer.toString(i)));
+                    }
+                    loader.close();
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        try {
+            reader.start();
+            reader.join(10000);
+            assertFalse("Reader blocked after the loader failed", reader.isAlive());
+            assertNotNull(failure.get());
+            assertTrue(failure.get().getCause() instanceof IOException);
+        } finally {
+            CSVLoader.typeList.clear();
+            CSVLoader.config = null;
+        }
+    }
+
     public void testOpenQuote() throws Exception
     {
         String mySchema =
@@ -0,0 +1,283 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.messaging.FastSerializer;
+
+import com.google.common.util.concurrent.Callables;
+
+public class TestCSVTableSaveFile extends TestCase {
+    private static final int ROWS_PER_CHUNK = 50;
+
+    static {
+        org.voltdb.EELibraryLoader.loadExecutionEngineLibrary(true);
+    }
+
+    private File m_tmpDir;
+
+    @Override
+    public void setUp() throws Exception {
+        m_tmpDir = File.createTempFile("csvsavefile", "");
+        m_tmpDir.delete();
+        m_tmpDir.mkdir();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        for (File f : m_tmpDir.listFiles()) {
+            f.delete();
+        }
+        m_tmpDir.delete();
+    }
+
+    private void serializeChunk(VoltTable chunk,
+            DefaultSnapshotDataTarget target,
+            int partitionId) throws Exception {
+        FastSerializer fs = new FastSerializer();
+
+        chunk.writeExternal(fs);
+        BBContainer c = fs.getBBContainer();
+        ByteBuffer b = c.b;
+        b.getInt();
+        int headerLength = b.getInt();
+        b.position(b.position() + headerLength);// at row count
+        BBContainer container = DBBPool.allocateDirectWithAddress(b.remaining() + 4);
+        ByteBuffer payload = container.b;
+        payload.putInt(partitionId);
+        payload.put(b);
+        payload.flip();
+
+        target.write(Callables.returning(container), null);
+    }
+
+    /*
+     * Write a save file with the given number of chunks, the first column numbers
+     * the rows in file order
+     */
+    private File generateSaveFile(String tableName, int chunks) throws Exception {
+        VoltTable.ColumnInfo columnInfo[] = new VoltTable.ColumnInfo[] {
+                new ColumnInfo("RT_ID", VoltType.INTEGER),
+                new ColumnInfo("RT_NAME", VoltType.STRING) };
+        final File f = new File(m_tmpDir, tableName + ".vpt");
+        ArrayList<Integer> partIds = new ArrayList<Integer>();
+        partIds.add(0);
+        DefaultSnapshotDataTarget dsdt = new DefaultSnapshotDataTarget(f,
+                0, "TEST_CLUSTER", "TEST_DATABASE", tableName,
+                1, false, partIds, new VoltTable(columnInfo, columnInfo.length),
+                0, System.currentTimeMillis());
+        int row = 0;
+        for (int i = 0; i < chunks; i++) {
+            VoltTable chunk = new VoltTable(columnInfo, columnInfo.length);
+            for (int j = 0; j < ROWS_PER_CHUNK; j++) {
+                chunk.addRow(row, tableName + "_" + row);
+                row++;
+            }
+            serializeChunk(chunk, dsdt, 0);
+        }
+        dsdt.close();
+        return f;
+    }
+
+    private static void checkLines(InputStream is, String tableName, int rows) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        try {
+            for (int i = 0; i < rows; i++) {
+                assertEquals("\"" + i + "\",\"" + tableName + "_" + i + "\"", reader.readLine());
+            }
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int readAll(final CSVTableSaveFile converter) throws Exception {
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            return es.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int lines = 0;
+                    byte bytes[];
+                    while ((bytes = converter.read()).length > 0) {
+                        for (byte b : bytes) {
+                            if (b == '\n') {
+                                lines++;
+                            }
+                        }
+                    }
+                    return lines;
+                }
+            }).get(60, TimeUnit.SECONDS);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    /*
+     * The feeder reaches the end of the file while the queue is full, the end of
+     * file marker must still reach read()
+     */
+    public void testQueueFullAtEndOfFile() throws Exception {
+        final int queueCapacity = CoreUtils.availableProcessors() * 2;
+        for (int chunks : new int[] { queueCapacity, queueCapacity * 4 }) {
+            File f = generateSaveFile("T" + chunks, chunks);
+            CSVTableSaveFile converter = new CSVTableSaveFile(f, ',', null);
+            try {
+                // let the feeder fill the queue before reading anything
+                Thread.sleep(1000);
+                assertEquals(chunks * ROWS_PER_CHUNK, readAll(converter));
+                assertEquals(0, converter.read().length);
+            } finally {
+                converter.close();
+            }
+        }
+    }
+
+    public void testCloseWithQueueFull() throws Exception {
+        File f = generateSaveFile("T", CoreUtils.availableProcessors() * 4);
+        CSVTableSaveFile converter = new CSVTableSaveFile(f, ',', null);
+        Thread.sleep(1000);
+        converter.read();
+        converter.close();
+        assertEquals(0, converter.read().length);
+    }
+
+    public void testConvertInFileOrder() throws Exception {
+        File f = generateSaveFile("T", 100);
+        File out = new File(m_tmpDir, "T.csv");
+        CSVTableSaveFile.convertTableSaveFile(',', null, out, f);
+        checkLines(new FileInputStream(out), "T", 100 * ROWS_PER_CHUNK);
+    }
+
+    public void testCompressedMembersAppend() throws Exception {
+        File f = generateSaveFile("T", 10);
+        File out = new File(m_tmpDir, "T.csv.gz");
+        CSVTableSaveFile.convertTableSaveFile(',', null, out, f, true);
+        CSVTableSaveFile.convertTableSaveFile(',', null, out, f, true);
+
+        // two gzip members, each with the whole table
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(new FileInputStream(out)), "UTF-8"));
+        try {
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < 10 * ROWS_PER_CHUNK; i++) {
+                    assertEquals("\"" + i + "\",\"T_" + i + "\"", reader.readLine());
+                }
+            }
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Map<String, Map<File, Set<Integer>>> generateTables(int tables) throws Exception {
+        Map<String, Map<File, Set<Integer>>> tableToFiles = new TreeMap<String, Map<File, Set<Integer>>>();
+        for (int i = 0; i < tables; i++) {
+            Map<File, Set<Integer>> files = new HashMap<File, Set<Integer>>();
+            files.put(generateSaveFile("TABLE" + i, 20 + i), null);
+            tableToFiles.put("TABLE" + i, files);
+        }
+        return tableToFiles;
+    }
+
+    public void testSnapshotConverterThreadsAndCompress() throws Exception {
+        Map<String, Map<File, Set<Integer>>> tableToFiles = generateTables(4);
+
+        File plainDir = new File(m_tmpDir, "plain");
+        plainDir.mkdir();
+        File compressedDir = new File(m_tmpDir, "compressed");
+        compressedDir.mkdir();
+        try {
+            assertTrue(SnapshotConverter.convertTables(tableToFiles, plainDir, "CSV", ',', false, 1));
+            assertTrue(SnapshotConverter.convertTables(tableToFiles, compressedDir, "CSV", ',', true, 3));
+
+            for (int i = 0; i < 4; i++) {
+                final String tableName = "TABLE" + i;
+                final int rows = (20 + i) * ROWS_PER_CHUNK;
+                checkLines(new FileInputStream(new File(plainDir, tableName + ".csv")), tableName, rows);
+                checkLines(new GZIPInputStream(
+                        new FileInputStream(new File(compressedDir, tableName + ".csv.gz"))), tableName, rows);
+            }
+        } finally {
+            for (File dir : new File[] { plainDir, compressedDir }) {
+                for (File f : dir.listFiles()) {
+                    f.delete();
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    public void testSnapshotConverterReportsFailure() throws Exception {
+        Map<String, Map<File, Set<Integer>>> tableToFiles = generateTables(2);
+        tableToFiles.get("TABLE1").put(new File(m_tmpDir, "missing.vpt"), null);
+        assertFalse(SnapshotConverter.convertTables(tableToFiles, m_tmpDir, "CSV", ',', false, 2));
+    }
+
+    public void testConvertersSeeAllRows() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 3; i++) {
+            files.add(generateSaveFile("T" + i, 30));
+        }
+        // several converters share the static converter pool
+        List<CSVTableSaveFile> converters = new ArrayList<CSVTableSaveFile>();
+        for (File f : files) {
+            converters.add(new CSVTableSaveFile(f, ',', null));
+        }
+        for (CSVTableSaveFile converter : converters) {
+            try {
+                assertEquals(30 * ROWS_PER_CHUNK, readAll(converter));
+            } finally {
+                converter.close();
+            }
+        }
+    }
+}
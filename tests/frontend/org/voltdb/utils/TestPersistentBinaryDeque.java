@@ -32,6 +32,7 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.TreeSet;
 
 import org.junit.After;
@@ -541,6 +542,145 @@ public class TestPersistentBinaryDeque {
         pbd.close();
     }
 
+    private PersistentBinaryDeque reopenWithBackgroundWrites(long syncIntervalMillis) throws Exception {
+        m_pbd.close();
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, true, syncIntervalMillis);
+        return m_pbd;
+    }
+
+    private static void awaitListingSize(int size) throws Exception {
+        for (int ii = 0; ii < 500 && getSortedDirectoryListing().size() != size; ii++) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, getSortedDirectoryListing().size());
+    }
+
+    @Test
+    public void testBackgroundWritesOfferThenPoll() throws Exception {
+        reopenWithBackgroundWrites(5);
+
+        for (int ii = 0; ii < 96; ii++) {
+            m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(getFilledBuffer(ii)) });
+        }
+        //Queued or written, the objects are accounted for right away
+        assertEquals(96L * (1024 * 1024 * 2 + 4), m_pbd.sizeInBytes());
+        assertFalse(m_pbd.isEmpty());
+        m_pbd.sync();
+
+        for (long ii = 0; ii < 96; ii++) {
+            BBContainer cont = m_pbd.poll();
+            assertNotNull(cont);
+            try {
+                assertEquals(1024 * 1024 * 2, cont.b.remaining());
+                while (cont.b.remaining() > 7) {
+                    assertEquals(ii, cont.b.getLong());
+                }
+            } finally {
+                cont.discard();
+            }
+        }
+        assertNull(m_pbd.poll());
+        assertTrue(m_pbd.isEmpty());
+    }
+
+    @Test
+    public void testBackgroundWritesPreallocateNextSegment() throws Exception {
+        reopenWithBackgroundWrites(0);
+
+        //The write segment and the next one
+        awaitListingSize(2);
+
+        //Fill the first segment and roll over into the preallocated one
+        for (int ii = 0; ii < 40; ii++) {
+            m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(getFilledBuffer(ii)) });
+        }
+        awaitListingSize(3);
+        assertTrue(getSortedDirectoryListing().contains(TEST_NONCE + ".2.pbd"));
+
+        //Closing removes the unused preallocated segment
+        m_pbd.close();
+        assertEquals(2, getSortedDirectoryListing().size());
+
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        for (long ii = 0; ii < 40; ii++) {
+            BBContainer cont = m_pbd.poll();
+            try {
+                assertEquals(ii, cont.b.getLong(0));
+            } finally {
+                cont.discard();
+            }
+        }
+        assertNull(m_pbd.poll());
+    }
+
+    @Test
+    public void testBackgroundWritesClosed() throws Exception {
+        reopenWithBackgroundWrites(0);
+        m_pbd.offer(defaultContainer);
+        m_pbd.close();
+        try {
+            m_pbd.offer(defaultContainer);
+            fail();
+        } catch (IOException e) {}
+
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        BBContainer bb = m_pbd.poll();
+        defaultBuffer.clear();
+        assertEquals(defaultBuffer, bb.b);
+        bb.discard();
+    }
+
+    @Test
+    public void testPollReturnsSlicesOfMappedSegment() throws Exception {
+        for (int ii = 0; ii < 40; ii++) {
+            m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(getFilledBuffer(ii)) });
+        }
+        m_pbd.close();
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR );
+        assertEquals(3, getSortedDirectoryListing().size());
+
+        //Hold on to everything from the first segment (31 objects), it has to stay mapped
+        ArrayList<BBContainer> firstSegment = new ArrayList<BBContainer>();
+        for (long ii = 0; ii < 31; ii++) {
+            BBContainer cont = m_pbd.poll();
+            assertTrue(cont.b.isDirect());
+            assertTrue(cont.b.isReadOnly());
+            assertEquals(1024 * 1024 * 2, cont.b.remaining());
+            firstSegment.add(cont);
+        }
+        for (int ii = 0; ii < firstSegment.size(); ii++) {
+            ByteBuffer b = firstSegment.get(ii).b;
+            while (b.remaining() > 7) {
+                assertEquals(ii, b.getLong());
+            }
+        }
+
+        //Outstanding slices prevent truncation
+        try {
+            m_pbd.parseAndTruncate(new BinaryDequeTruncator() {
+                @Override
+                public ByteBuffer parse(ByteBuffer b) {
+                    return null;
+                }
+            });
+            fail();
+        } catch (IOException e) {}
+
+        //Discarding the last of them deletes the segment
+        for (BBContainer c : firstSegment) {
+            c.discard();
+        }
+        assertFalse(getSortedDirectoryListing().contains(TEST_NONCE + ".0.pbd"));
+        long next = 31;
+        BBContainer cont;
+        while ((cont = m_pbd.poll()) != null) {
+            assertEquals(next++, cont.b.getLong(0));
+            cont.discard();
+        }
+        assertEquals(40, next);
+        assertTrue(m_pbd.isEmpty());
+    }
+
     @Before
     public void setUp() throws Exception {
         if (TEST_DIR.exists()) {